@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.suitebuilder.TestSuiteBuilder;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * The benchmarks, the tests under the benchmark package.  Each one reports its measurements
+ * through BenchmarkResults, a JSON object per line in logcat and in the app's files:
+ * <pre>
+ *   adb shell am instrument -w -e class com.example.android.sunshine.app.BenchmarkSuite \
+ *       com.example.android.sunshine.app.test/android.test.InstrumentationTestRunner
+ *   adb shell run-as com.example.android.sunshine.app cat files/benchmark-results.jsonl
+ * </pre>
+ */
+public class BenchmarkSuite extends TestSuite {
+
+    public static final String BENCHMARK_PACKAGE = "com.example.android.sunshine.app.benchmark";
+
+    public static Test suite() {
+        return new TestSuiteBuilder(BenchmarkSuite.class)
+                .includePackages(BENCHMARK_PACKAGE)
+                .build();
+    }
+
+    public BenchmarkSuite() {
+        super();
+    }
+}
@@ -22,8 +22,11 @@ import junit.framework.TestSuite;
 
 public class FullTestSuite extends TestSuite {
     public static Test suite() {
+        // The benchmarks take minutes and check little, BenchmarkSuite runs them
         return new TestSuiteBuilder(FullTestSuite.class)
-                .includeAllPackagesUnderHere().build();
+                .includeAllPackagesUnderHere()
+                .excludePackages(BenchmarkSuite.BENCHMARK_PACKAGE)
+                .build();
     }
 
     public FullTestSuite() {
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestPagedCursorLoader extends AndroidTestCase {
+
+    private static final String LOCATION_SETTING = "paged";
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int DAYS = 100;
+    private static final int PAGE_SIZE = 10;
+    private static final int MAX_PAGES = 3;
+
+    private static final String[] COLUMNS = {WeatherEntry.COLUMN_DATE};
+
+    private long mFirstDay;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Paged");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 1.0);
+        location.put(LocationEntry.COLUMN_COORD_LONG, 1.0);
+        long locationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+
+        mFirstDay = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues weather = new ContentValues();
+            weather.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            weather.put(WeatherEntry.COLUMN_DATE, mFirstDay + i * DAY_IN_MILLIS);
+            weather.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            weather.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            weather.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weather.put(WeatherEntry.COLUMN_MAX_TEMP, 75.0);
+            weather.put(WeatherEntry.COLUMN_MIN_TEMP, 65.0);
+            weather.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            weather.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weather.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            days[i] = weather;
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    // The window follows the target position, never holds more than its pages, and learns the
+    // exact count once it reaches the end.
+    public void testWindowFollowsTarget() {
+        // The loader's content observer needs a looper, the load itself runs on this thread
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+        PagedCursorLoader loader = new PagedCursorLoader(mContext,
+                WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, mFirstDay),
+                COLUMNS, 0, PAGE_SIZE, MAX_PAGES);
+
+        PagedCursorLoader.PageWindow window = (PagedCursorLoader.PageWindow) loader.loadInBackground();
+        assertWindow(window, 0, MAX_PAGES * PAGE_SIZE);
+        assertFalse(window.hasReachedEnd());
+        window.close();
+
+        // Jumping ahead, the pages before the window are skipped over
+        loader.setTargetPosition(55);
+        window = (PagedCursorLoader.PageWindow) loader.loadInBackground();
+        assertWindow(window, 40, MAX_PAGES * PAGE_SIZE);
+        assertTrue(window.containsPosition(55));
+        assertFalse(window.containsPosition(39));
+        window.close();
+
+        loader.setTargetPosition(DAYS - 1);
+        window = (PagedCursorLoader.PageWindow) loader.loadInBackground();
+        assertWindow(window, 80, 2 * PAGE_SIZE);
+        assertTrue("Error: the end should have been reached", window.hasReachedEnd());
+        assertEquals(DAYS, window.getKnownCount());
+        window.close();
+
+        // Back to the start, the count stays known
+        loader.setTargetPosition(0);
+        window = (PagedCursorLoader.PageWindow) loader.loadInBackground();
+        assertWindow(window, 0, MAX_PAGES * PAGE_SIZE);
+        assertEquals(DAYS, window.getKnownCount());
+        window.close();
+    }
+
+    // Loading the same window again, after a notification that changed nothing, isn't news
+    public void testUnchangedWindowIsSame() {
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+        PagedCursorLoader loader = new PagedCursorLoader(mContext,
+                WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, mFirstDay),
+                COLUMNS, 0, PAGE_SIZE, MAX_PAGES);
+
+        PagedCursorLoader.PageWindow first = (PagedCursorLoader.PageWindow) loader.loadInBackground();
+        PagedCursorLoader.PageWindow second = (PagedCursorLoader.PageWindow) loader.loadInBackground();
+        assertTrue("Error: the same rows should make the same window", second.isSameAs(first));
+        // The snapshot leaves the window where a new cursor would be
+        assertEquals(-1, second.getPosition());
+        second.close();
+
+        loader.setTargetPosition(55);
+        PagedCursorLoader.PageWindow moved = (PagedCursorLoader.PageWindow) loader.loadInBackground();
+        assertFalse(moved.isSameAs(first));
+        moved.close();
+        first.close();
+    }
+
+    private void assertWindow(PagedCursorLoader.PageWindow window, int offset, int count) {
+        assertEquals("Error: wrong window offset", offset, window.getWindowOffset());
+        assertEquals("Error: wrong number of rows held", count, window.getCount());
+        assertTrue(window.getKnownCount() >= offset + count);
+        for (int position = offset; position < offset + count; position++) {
+            assertTrue(window.moveToAbsolutePosition(position));
+            assertEquals("Error: wrong day at position " + position,
+                    mFirstDay + position * DAY_IN_MILLIS, window.getLong(0));
+        }
+        assertFalse(window.moveToAbsolutePosition(offset + count));
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
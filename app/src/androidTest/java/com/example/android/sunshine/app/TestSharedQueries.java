@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Subscriptions are made on the main thread, like the loaders make them; the test thread waits
+    for what the listeners get.
+ */
+public class TestSharedQueries extends AndroidTestCase {
+
+    private static final String LOCATION_SETTING = "shared";
+    private static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MAX_TEMP
+    };
+    private static final int BURST = 20;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private long mLocationId;
+    private Uri mDayUri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Shared");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 1.0);
+        location.put(LocationEntry.COLUMN_COORD_LONG, 1.0);
+        mLocationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, createDay(today, 75.0));
+        mDayUri = WeatherEntry.buildWeatherLocationWithDate(LOCATION_SETTING, today);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    // Two screens of the same day share one query
+    public void testSubscribersShareQuery() throws Exception {
+        final SharedQueries queries = SharedQueries.getInstance(mContext);
+        final CountingListener first = new CountingListener();
+        final CountingListener second = new CountingListener();
+        int loads = queries.getLoadCount();
+        int queryCount = queries.getQueryCount();
+
+        final SharedQueries.Subscription[] subscriptions = new SharedQueries.Subscription[2];
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                subscriptions[0] = queries.subscribe(mDayUri, COLUMNS, first);
+                subscriptions[1] = queries.subscribe(mDayUri, COLUMNS, second);
+            }
+        });
+        waitForResults(first, 1);
+        waitForResults(second, 1);
+        assertEquals(queryCount + 1, queries.getQueryCount());
+        assertEquals("Error: the second subscriber should not have queried again",
+                loads + 1, queries.getLoadCount());
+        assertEquals(75.0, first.mLastMaxTemp);
+
+        unsubscribe(subscriptions);
+        assertEquals(queryCount, queries.getQueryCount());
+    }
+
+    // A burst of notifications runs the query once, and rows that didn't change aren't delivered
+    public void testBurstIsDebounced() throws Exception {
+        final SharedQueries queries = SharedQueries.getInstance(mContext);
+        final CountingListener listener = new CountingListener();
+        final SharedQueries.Subscription[] subscriptions = new SharedQueries.Subscription[1];
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                subscriptions[0] = queries.subscribe(mDayUri, COLUMNS, listener);
+            }
+        });
+        waitForResults(listener, 1);
+
+        int loads = queries.getLoadCount();
+        int skipped = queries.getSkippedLoadCount();
+        for (int i = 0; i < BURST; i++) {
+            mContext.getContentResolver().notifyChange(mDayUri, null);
+        }
+        SystemClock.sleep(SharedQueries.MAX_DELAY_MILLIS * 2);
+        int burstLoads = queries.getLoadCount() - loads;
+        assertTrue("Error: " + burstLoads + " loads for a burst of " + BURST,
+                burstLoads >= 1 && burstLoads <= 2);
+        assertEquals(burstLoads, queries.getSkippedLoadCount() - skipped);
+        assertEquals("Error: unchanged rows were delivered", 1, listener.getResults());
+
+        // A real change comes through
+        ContentValues changed = new ContentValues();
+        changed.put(WeatherEntry.COLUMN_MAX_TEMP, 80.0);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, changed,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(mLocationId)});
+        waitForResults(listener, 2);
+        assertEquals(80.0, listener.mLastMaxTemp);
+
+        unsubscribe(subscriptions);
+    }
+
+    // Redelivering hands out the same rows again, without a query
+    public void testRedeliverDoesNotQuery() throws Exception {
+        final SharedQueries queries = SharedQueries.getInstance(mContext);
+        final CountingListener listener = new CountingListener();
+        final SharedQueries.Subscription[] subscriptions = new SharedQueries.Subscription[1];
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                subscriptions[0] = queries.subscribe(mDayUri, COLUMNS, listener);
+            }
+        });
+        waitForResults(listener, 1);
+        int loads = queries.getLoadCount();
+
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(subscriptions[0].redeliver());
+            }
+        });
+        assertEquals(2, listener.getResults());
+        assertEquals(loads, queries.getLoadCount());
+
+        unsubscribe(subscriptions);
+    }
+
+    private ContentValues createDay(long date, double maxTemp) {
+        ContentValues weather = new ContentValues();
+        weather.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+        weather.put(WeatherEntry.COLUMN_DATE, date);
+        weather.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        weather.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        weather.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        weather.put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp);
+        weather.put(WeatherEntry.COLUMN_MIN_TEMP, 65.0);
+        weather.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        weather.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        weather.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        return weather;
+    }
+
+    private void unsubscribe(final SharedQueries.Subscription[] subscriptions) throws Exception {
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                for (SharedQueries.Subscription subscription : subscriptions) {
+                    subscription.unsubscribe();
+                }
+            }
+        });
+    }
+
+    private void runOnMain(final Runnable runnable) throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Throwable[] failure = new Throwable[1];
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        if (failure[0] != null) {
+            throw new AssertionError(failure[0]);
+        }
+    }
+
+    private void waitForResults(final CountingListener listener, final int results) {
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return listener.getResults() >= results;
+            }
+        }.run();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private static class CountingListener implements SharedQueries.Listener {
+        private volatile int mResults;
+        private volatile double mLastMaxTemp;
+
+        @Override
+        public void onQueryResult(Cursor cursor) {
+            if (cursor.moveToFirst()) {
+                mLastMaxTemp = cursor.getDouble(1);
+            }
+            cursor.close();
+            mResults++;
+        }
+
+        int getResults() {
+            return mResults;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherBatch;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * The datasets the benchmarks run on: a location whose forecast table holds from the 14 days a
+ * sync brings up to 100k rows.  The 14 last rows are today and the days after it, the rest are
+ * days before, so what the app shows stays the same while the table grows.
+ */
+public class BenchmarkFixtures {
+
+    public static final int[] ROW_COUNTS = {14, 1000, 10000, 100000};
+    public static final int FORECAST_DAYS = 14;
+    public static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private static final String[] DESCRIPTIONS = {"Clear", "Clouds", "Rain", "Snow", "Drizzle"};
+    private static final int[] WEATHER_IDS = {800, 803, 500, 600, 300};
+    // Rows per WeatherBatch, a 100k batch is a lot of memory for a test device
+    private static final int CHUNK = 5000;
+
+    /**
+     * @return the _id of a new location.
+     */
+    public static long insertLocation(ContentResolver resolver, String locationSetting) {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        location.put(LocationEntry.COLUMN_CITY_NAME, locationSetting);
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.4);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.1);
+        return ContentUris.parseId(resolver.insert(LocationEntry.CONTENT_URI, location));
+    }
+
+    /**
+     * Fills the forecast of the location with rows days, ending 13 days after today.
+     *
+     * @return today, normalized.
+     */
+    public static long insertForecast(ContentResolver resolver, long locationId, int rows) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long firstDay = today - (rows - FORECAST_DAYS) * DAY_IN_MILLIS;
+        for (int start = 0; start < rows; start += CHUNK) {
+            int count = Math.min(CHUNK, rows - start);
+            createDays(locationId, firstDay + start * DAY_IN_MILLIS, count).insert(resolver);
+        }
+        return today;
+    }
+
+    /**
+     * @return count consecutive days from firstDay, with values that vary like real ones.
+     */
+    public static WeatherBatch createDays(long locationId, long firstDay, int count) {
+        WeatherBatch batch = new WeatherBatch(locationId, count);
+        for (int i = 0; i < count; i++) {
+            int kind = i % DESCRIPTIONS.length;
+            batch.add(firstDay + i * DAY_IN_MILLIS, WEATHER_IDS[kind], DESCRIPTIONS[kind],
+                    5.0 + i % 11, 20.0 + i % 17, 40 + i % 50, 990 + i % 40, 5.5, i % 360);
+        }
+        return batch;
+    }
+
+    /**
+     * Makes the location the preferred one, what the loaders and the widgets show.
+     *
+     * @return the preferred location it replaces, to restore.
+     */
+    public static String setPreferredLocation(Context context, String locationSetting) {
+        String key = context.getString(R.string.pref_location_key);
+        String previous = PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(key, context.getString(R.string.pref_location_default));
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(key, locationSetting).commit();
+        return previous;
+    }
+
+    public static void deleteAll(ContentResolver resolver) {
+        resolver.delete(HistoryEntry.CONTENT_URI, null, null);
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
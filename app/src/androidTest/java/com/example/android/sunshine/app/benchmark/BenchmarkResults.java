@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Where the benchmarks of the suite report their measurements, one JSON object per line, e.g.
+ * <pre>
+ *   {"benchmark":"ProviderQueryBenchmark","metric":"weather_location.p50","rows":1000,
+ *    "value":812.5,"unit":"us","device":"Nexus 5","sdk":23,"time":1419033600000}
+ * </pre>
+ * Lines go to logcat under {@link #LOG_TAG} and are appended to {@link #FILE_NAME} in the app's
+ * files, so a run can be pulled and compared with the previous one.
+ */
+public class BenchmarkResults {
+
+    public static final String LOG_TAG = "SunshineBenchmark";
+    public static final String FILE_NAME = "benchmark-results.jsonl";
+
+    private final Context mContext;
+    private final String mBenchmark;
+
+    public BenchmarkResults(Context context, Class<?> benchmark) {
+        mContext = context;
+        mBenchmark = benchmark.getSimpleName();
+    }
+
+    /**
+     * @param rows The size of the dataset the measurement was taken on.
+     */
+    public void report(String metric, int rows, double value, String unit) {
+        String line;
+        try {
+            line = new JSONObject()
+                    .put("benchmark", mBenchmark)
+                    .put("metric", metric)
+                    .put("rows", rows)
+                    .put("value", value)
+                    .put("unit", unit)
+                    .put("device", Build.MODEL)
+                    .put("sdk", Build.VERSION.SDK_INT)
+                    .put("time", System.currentTimeMillis())
+                    .toString();
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Not a number: " + value, e);
+        }
+        Log.i(LOG_TAG, line);
+        FileOutputStream out = null;
+        try {
+            out = mContext.openFileOutput(FILE_NAME, Context.MODE_APPEND);
+            out.write((line + "\n").getBytes("UTF-8"));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Couldn't write " + FILE_NAME, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing left to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the median, the 90th percentile and the maximum of the latencies, in microseconds,
+     * as metric.p50, metric.p90 and metric.max.
+     */
+    public void reportLatencies(String metric, int rows, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        report(metric + ".p50", rows, percentile(sorted, 50) / 1000.0, "us");
+        report(metric + ".p90", rows, percentile(sorted, 90) / 1000.0, "us");
+        report(metric + ".max", rows, sorted[sorted.length - 1] / 1000.0, "us");
+    }
+
+    /**
+     * @return the percentile of sorted values, the nearest rank.
+     */
+    public static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
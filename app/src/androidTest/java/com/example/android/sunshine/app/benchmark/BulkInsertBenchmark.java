@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherBatch;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Rows per second into the forecast table through bulkInsert(), with ContentValues as any
+    client sends them and with the WeatherBatch the sync adapter hands the provider.  Datasets go
+    from 14 to 100k rows, inserted in chunks the way a client with that much data would.
+ */
+public class BulkInsertBenchmark extends AndroidTestCase {
+
+    private static final String LOCATION_SETTING = "benchmark-insert";
+    // Rows per bulkInsert(), past a few thousand ContentValues are a lot of memory
+    private static final int CHUNK = 1000;
+
+    private BenchmarkResults mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        mResults = new BenchmarkResults(mContext, getClass());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        super.tearDown();
+    }
+
+    public void testBulkInsertThroughput() {
+        long firstDay = BenchmarkFixtures.DAY_IN_MILLIS * 1000;
+        for (int rows : BenchmarkFixtures.ROW_COUNTS) {
+            // Warm up both paths, the first statements compiled are cached
+            insert(rows < CHUNK ? rows : CHUNK, firstDay, false);
+            insert(rows < CHUNK ? rows : CHUNK, firstDay, true);
+
+            long nanos = insert(rows, firstDay, false);
+            mResults.report("content_values.rows_per_s", rows, rows * 1e9 / nanos, "rows/s");
+            nanos = insert(rows, firstDay, true);
+            mResults.report("weather_batch.rows_per_s", rows, rows * 1e9 / nanos, "rows/s");
+        }
+    }
+
+    /**
+     * Inserts the rows in an empty table for a new location.
+     *
+     * @return the nanoseconds the bulk inserts took.
+     */
+    private long insert(int rows, long firstDay, boolean batch) {
+        ContentResolver resolver = mContext.getContentResolver();
+        BenchmarkFixtures.deleteAll(resolver);
+        long locationId = BenchmarkFixtures.insertLocation(resolver, LOCATION_SETTING);
+        long nanos = 0;
+        for (int start = 0; start < rows; start += CHUNK) {
+            int count = Math.min(CHUNK, rows - start);
+            WeatherBatch days = BenchmarkFixtures.createDays(locationId,
+                    firstDay + start * BenchmarkFixtures.DAY_IN_MILLIS, count);
+            ContentValues[] values = batch ? null : days.toContentValues();
+            long begin = System.nanoTime();
+            int inserted = batch ? days.insert(resolver)
+                    : resolver.bulkInsert(WeatherEntry.CONTENT_URI, values);
+            nanos += System.nanoTime() - begin;
+            assertEquals(count, inserted);
+        }
+        assertEquals(rows, count());
+        return nanos;
+    }
+
+    private int count() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null, null,
+                null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.ChangeEntry;
+import com.example.android.sunshine.app.data.WeatherContract.Metrics;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    What a consumer that mirrors the forecast of a location pays to catch up after a sync: reading
+    the whole location again, or reading the change log since its last sequence number and then
+    only the days in it.  Syncs change one day, or the whole forecast, while the table grows.  The
+    result cache is cleared before each catch up, so both go to the database.
+ */
+public class ChangeFeedBenchmark extends AndroidTestCase {
+
+    private static final String LOCATION_SETTING = "benchmark-changes";
+    private static final int SYNCS = 20;
+    private static final int[] CHANGED_DAYS = {1, BenchmarkFixtures.FORECAST_DAYS};
+
+    private BenchmarkResults mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        mResults = new BenchmarkResults(mContext, getClass());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        super.tearDown();
+    }
+
+    public void testCatchUpAfterSync() {
+        ContentResolver resolver = mContext.getContentResolver();
+        for (int rows : BenchmarkFixtures.ROW_COUNTS) {
+            BenchmarkFixtures.deleteAll(resolver);
+            long locationId = BenchmarkFixtures.insertLocation(resolver, LOCATION_SETTING);
+            long today = BenchmarkFixtures.insertForecast(resolver, locationId, rows);
+
+            for (int changedDays : CHANGED_DAYS) {
+                long[] fullNanos = new long[SYNCS];
+                long[] deltaNanos = new long[SYNCS];
+                long sequence = getLatestSequence(resolver);
+                for (int sync = 0; sync < SYNCS; sync++) {
+                    changeDays(resolver, locationId, today, changedDays, sync);
+
+                    call(Metrics.METHOD_CLEAR_CACHE);
+                    long start = System.nanoTime();
+                    int read = readAll(resolver);
+                    fullNanos[sync] = System.nanoTime() - start;
+                    assertEquals(rows, read);
+
+                    call(Metrics.METHOD_CLEAR_CACHE);
+                    start = System.nanoTime();
+                    sequence = readChanges(resolver, sequence, changedDays);
+                    deltaNanos[sync] = System.nanoTime() - start;
+                }
+                mResults.reportLatencies("full_requery_" + changedDays + "_days", rows, fullNanos);
+                mResults.reportLatencies("delta_" + changedDays + "_days", rows, deltaNanos);
+            }
+        }
+    }
+
+    // A sync with a new forecast for the first days from today
+    private static void changeDays(ContentResolver resolver, long locationId, long today,
+                                   int days, int sync) {
+        ContentValues changed = new ContentValues();
+        changed.put(WeatherEntry.COLUMN_MAX_TEMP, 30.0 + sync);
+        int updated = resolver.update(WeatherEntry.CONTENT_URI, changed,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ? AND "
+                        + WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(locationId), Long.toString(today),
+                        Long.toString(today + days * BenchmarkFixtures.DAY_IN_MILLIS)});
+        assertEquals(days, updated);
+    }
+
+    private static int readAll(ContentResolver resolver) {
+        Cursor cursor = resolver.query(WeatherEntry.buildWeatherLocation(LOCATION_SETTING),
+                null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            int read = 0;
+            while (cursor.moveToNext()) {
+                cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP));
+                read++;
+            }
+            return read;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Reads the entries after the sequence number and the days they name, returns the last one
+    private static long readChanges(ContentResolver resolver, long sequence, int expectedDays) {
+        Cursor changes = resolver.query(
+                ChangeEntry.buildChangesSince(LOCATION_SETTING, sequence), null, null, null, null);
+        assertNotNull(changes);
+        try {
+            assertEquals(expectedDays, changes.getCount());
+            int sequenceIndex = changes.getColumnIndex(ChangeEntry._ID);
+            int dateIndex = changes.getColumnIndex(ChangeEntry.COLUMN_DATE);
+            while (changes.moveToNext()) {
+                Uri day = WeatherEntry.buildWeatherLocationWithDate(LOCATION_SETTING,
+                        changes.getLong(dateIndex));
+                Cursor cursor = resolver.query(day, null, null, null, null);
+                assertNotNull(cursor);
+                assertTrue(cursor.moveToFirst());
+                cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP));
+                cursor.close();
+                sequence = changes.getLong(sequenceIndex);
+            }
+            return sequence;
+        } finally {
+            changes.close();
+        }
+    }
+
+    private static long getLatestSequence(ContentResolver resolver) {
+        Cursor cursor = resolver.query(ChangeEntry.buildLatestUri(), null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void call(String method) {
+        mContext.getContentResolver().call(WeatherEntry.CONTENT_URI, method, null, null);
+    }
+}
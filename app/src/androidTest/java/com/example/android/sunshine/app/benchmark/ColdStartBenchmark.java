@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v7.widget.RecyclerView;
+import android.test.InstrumentationTestCase;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Time from starting MainActivity to the first frame that shows a forecast row, what a user
+    waits for when opening the app.  The process is already up under instrumentation, the
+    activity and its loader start cold each time; for a cold process too, use
+    "adb shell am start -W" and its TotalTime.
+ */
+public class ColdStartBenchmark extends InstrumentationTestCase {
+
+    private static final String LOCATION_SETTING = "benchmark-start";
+    private static final int RUNS = 10;
+    private static final long TIMEOUT_SECONDS = 20;
+
+    private Context mContext;
+    private String mPreviousLocation;
+    private BenchmarkResults mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        mPreviousLocation = BenchmarkFixtures.setPreferredLocation(mContext, LOCATION_SETTING);
+        mResults = new BenchmarkResults(mContext, getClass());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BenchmarkFixtures.setPreferredLocation(mContext, mPreviousLocation);
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        super.tearDown();
+    }
+
+    public void testTimeToFirstForecastRow() throws Exception {
+        // Activity lifecycle callbacks need Ice Cream Sandwich
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+        ContentResolver resolver = mContext.getContentResolver();
+        for (int rows : BenchmarkFixtures.ROW_COUNTS) {
+            BenchmarkFixtures.deleteAll(resolver);
+            long locationId = BenchmarkFixtures.insertLocation(resolver, LOCATION_SETTING);
+            BenchmarkFixtures.insertForecast(resolver, locationId, rows);
+
+            startToFirstRow();
+            long[] nanos = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                nanos[i] = startToFirstRow();
+            }
+            mResults.reportLatencies("start_to_first_row", rows, nanos);
+        }
+    }
+
+    /**
+     * Starts MainActivity, waits for a forecast row to be drawn, and finishes the activity.
+     *
+     * @return the nanoseconds from the start to the first frame with a row.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private long startToFirstRow() throws InterruptedException {
+        final CountDownLatch drawn = new CountDownLatch(1);
+        final long[] drawnNanos = new long[1];
+        final Activity[] started = new Activity[1];
+        Application application = (Application) mContext.getApplicationContext();
+        Application.ActivityLifecycleCallbacks callbacks = new LifecycleCallbacks() {
+            @Override
+            public void onActivityResumed(final Activity activity) {
+                if (!(activity instanceof MainActivity) || started[0] != null) {
+                    return;
+                }
+                started[0] = activity;
+                // Resumed before its first frame, the window isn't even added yet
+                final View decorView = activity.getWindow().getDecorView();
+                decorView.getViewTreeObserver().addOnPreDrawListener(
+                        new ViewTreeObserver.OnPreDrawListener() {
+                            @Override
+                            public boolean onPreDraw() {
+                                RecyclerView list = (RecyclerView)
+                                        activity.findViewById(R.id.recyclerview_forecast);
+                                if (list != null && list.getChildCount() > 0) {
+                                    drawnNanos[0] = System.nanoTime();
+                                    decorView.getViewTreeObserver()
+                                            .removeOnPreDrawListener(this);
+                                    drawn.countDown();
+                                }
+                                return true;
+                            }
+                        });
+            }
+        };
+        application.registerActivityLifecycleCallbacks(callbacks);
+        try {
+            long start = System.nanoTime();
+            mContext.startActivity(new Intent(mContext, MainActivity.class)
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK));
+            assertTrue("Error: no forecast row was drawn",
+                    drawn.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return drawnNanos[0] - start;
+        } finally {
+            application.unregisterActivityLifecycleCallbacks(callbacks);
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    if (started[0] != null) {
+                        started[0].finish();
+                    }
+                }
+            });
+            getInstrumentation().waitForIdleSync();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.view.ViewTreeObserver;
+
+import com.example.android.sunshine.app.ForecastFragment;
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Time from restarting the ForecastFragment's loader, as a change of location does, to the first
+    frame that draws the rows it loaded.  The forecast table holds 14 to 100k rows, the list shows
+    the 14 days from today on.
+ */
+public class ForecastLoaderBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    private static final String LOCATION_SETTING = "benchmark-loader";
+    private static final int RUNS = 20;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private Context mContext;
+    private String mPreviousLocation;
+    private BenchmarkResults mResults;
+
+    public ForecastLoaderBenchmark() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        // Before the activity starts, so it comes up on the benchmark's location
+        mPreviousLocation = BenchmarkFixtures.setPreferredLocation(mContext, LOCATION_SETTING);
+        mResults = new BenchmarkResults(mContext, getClass());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BenchmarkFixtures.setPreferredLocation(mContext, mPreviousLocation);
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        super.tearDown();
+    }
+
+    public void testLoaderToFirstFrame() throws Exception {
+        MainActivity activity = getActivity();
+        ForecastFragment fragment = (ForecastFragment) activity.getSupportFragmentManager()
+                .findFragmentById(R.id.fragment_forecast);
+        RecyclerView recyclerView =
+                (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+        ContentResolver resolver = mContext.getContentResolver();
+
+        for (int rows : BenchmarkFixtures.ROW_COUNTS) {
+            BenchmarkFixtures.deleteAll(resolver);
+            long locationId = BenchmarkFixtures.insertLocation(resolver, LOCATION_SETTING);
+            BenchmarkFixtures.insertForecast(resolver, locationId, rows);
+
+            // Also lets the reloads the inserts caused land before measuring
+            firstFrame(fragment, recyclerView);
+            long[] nanos = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                nanos[i] = firstFrame(fragment, recyclerView);
+            }
+            mResults.reportLatencies("loader_to_first_frame", rows, nanos);
+        }
+    }
+
+    /**
+     * @return the nanoseconds from the restart of the loader to the first frame with its rows.
+     */
+    private long firstFrame(final ForecastFragment fragment, final RecyclerView recyclerView)
+            throws InterruptedException {
+        final CountDownLatch drawn = new CountDownLatch(1);
+        final long[] times = new long[2];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final RecyclerView.Adapter adapter = recyclerView.getAdapter();
+                final boolean[] swapped = {false};
+                final RecyclerView.AdapterDataObserver observer =
+                        new RecyclerView.AdapterDataObserver() {
+                            @Override
+                            public void onChanged() {
+                                swapped[0] = true;
+                            }
+                        };
+                adapter.registerAdapterDataObserver(observer);
+                recyclerView.getViewTreeObserver().addOnPreDrawListener(
+                        new ViewTreeObserver.OnPreDrawListener() {
+                            @Override
+                            public boolean onPreDraw() {
+                                if (swapped[0] && recyclerView.getChildCount() > 0) {
+                                    times[1] = System.nanoTime();
+                                    recyclerView.getViewTreeObserver()
+                                            .removeOnPreDrawListener(this);
+                                    adapter.unregisterAdapterDataObserver(observer);
+                                    drawn.countDown();
+                                }
+                                return true;
+                            }
+                        });
+                times[0] = System.nanoTime();
+                fragment.onLocationChanged();
+            }
+        });
+        assertTrue("Error: the forecast was never drawn",
+                drawn.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return times[1] - times[0];
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.SyncResult;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.core.BinaryForecast;
+import com.example.android.sunshine.app.core.ForecastJsonParser;
+import com.example.android.sunshine.app.sync.BinaryForecastSource;
+import com.example.android.sunshine.app.sync.CircuitBreaker;
+import com.example.android.sunshine.app.sync.ForecastHttpClient;
+import com.example.android.sunshine.app.sync.ForecastSource;
+import com.example.android.sunshine.app.sync.HedgedFetcher;
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+import com.example.android.sunshine.app.utils.LocalHttpServer.Response;
+import com.example.android.sunshine.app.utils.OwmFixtures;
+
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+
+/*
+    The tail latency of forecast fetches from a primary backend that answers in 20ms, but takes
+    a second for one request in 25, alone and hedged with a secondary that always answers in
+    20ms.  Reports the 99th percentile besides the usual ones, the tail is what hedging is for.
+ */
+public class HedgedFetchBenchmark extends AndroidTestCase {
+
+    private static final String LOCATION = "94043";
+    private static final int DAYS = 14;
+    private static final int RUNS = 200;
+    private static final long FAST_MILLIS = 20;
+    private static final long SLOW_MILLIS = 1000;
+    private static final int SLOW_EVERY = 25;
+
+    private BenchmarkResults mResults;
+    private LocalHttpServer mPrimaryServer;
+    private LocalHttpServer mSecondaryServer;
+    private ForecastSource mPrimary;
+    private ForecastSource mSecondary;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        CircuitBreaker.resetAll();
+        mResults = new BenchmarkResults(mContext, getClass());
+        BinaryForecast.Writer writer = new BinaryForecast.Writer();
+        ForecastJsonParser.parse(OwmFixtures.forecastJson("Mountain View", DAYS), writer);
+        final byte[] binary = writer.toByteArray();
+
+        mPrimaryServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.ok(binary).delay(
+                        request % SLOW_EVERY == SLOW_EVERY - 1 ? SLOW_MILLIS : FAST_MILLIS);
+            }
+        });
+        mSecondaryServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.ok(binary).delay(FAST_MILLIS);
+            }
+        });
+        mPrimary = new BinaryForecastSource(mPrimaryServer.getUrl("/forecast").toString());
+        mSecondary = new BinaryForecastSource(mSecondaryServer.getUrl("/forecast").toString());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrimaryServer.shutdown();
+        mSecondaryServer.shutdown();
+        CircuitBreaker.resetAll();
+        super.tearDown();
+    }
+
+    public void testTailLatency() throws Exception {
+        ForecastHttpClient client = new ForecastHttpClient();
+        long[] nanos = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            ForecastHttpClient.Response response =
+                    client.get(mPrimary.getForecastUrl(LOCATION, 0, DAYS));
+            try {
+                assertEquals(HttpURLConnection.HTTP_OK, response.getStatus());
+                ForecastHttpClient.readBytes(response.getBody());
+            } finally {
+                response.close();
+            }
+            nanos[i] = System.nanoTime() - start;
+        }
+        report("fetch_primary", nanos);
+
+        HedgedFetcher fetcher = new HedgedFetcher(client, mPrimary, mSecondary);
+        // Until the primary has a percentile the hedge delay is a fixed one
+        for (int i = 0; i < SLOW_EVERY; i++) {
+            fetcher.fetch(LOCATION, 0, DAYS, new SyncResult());
+        }
+        int hedged = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            if (fetcher.fetch(LOCATION, 0, DAYS, new SyncResult()).isHedged()) {
+                hedged++;
+            }
+            nanos[i] = System.nanoTime() - start;
+        }
+        report("fetch_hedged", nanos);
+        mResults.report("fetch_hedged.requests", RUNS, hedged, "hedged");
+        mResults.report("fetch_hedged.delay", RUNS, fetcher.getHedgeDelay(), "ms");
+    }
+
+    private void report(String metric, long[] nanos) {
+        mResults.reportLatencies(metric, RUNS, nanos);
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        mResults.report(metric + ".p99", RUNS, BenchmarkResults.percentile(sorted, 99) / 1000.0,
+                "us");
+    }
+}
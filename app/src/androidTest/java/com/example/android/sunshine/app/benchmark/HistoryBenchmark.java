@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.data.WeatherDbHelper;
+
+/*
+    Measures the current forecast query of the main list while the history grows from nothing to
+    twenty years of days for every location.  The history is left uncompacted, the worst case.
+ */
+public class HistoryBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = HistoryBenchmark.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int LOCATIONS = 10;
+    private static final int FORECAST_DAYS = 14;
+    private static final int QUERIES = 200;
+    private static final int[] HISTORY_YEARS = {0, 1, 5, 20};
+
+    private long[] mLocationIds = new long[LOCATIONS];
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentResolver resolver = mContext.getContentResolver();
+        for (int i = 0; i < LOCATIONS; i++) {
+            ContentValues location = new ContentValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, getLocationSetting(i));
+            location.put(LocationEntry.COLUMN_CITY_NAME, "City " + i);
+            location.put(LocationEntry.COLUMN_COORD_LAT, i);
+            location.put(LocationEntry.COLUMN_COORD_LONG, i);
+            mLocationIds[i] = ContentUris.parseId(
+                    resolver.insert(LocationEntry.CONTENT_URI, location));
+
+            ContentValues[] forecast = new ContentValues[FORECAST_DAYS];
+            for (int day = 0; day < FORECAST_DAYS; day++) {
+                ContentValues weather = new ContentValues();
+                weather.put(WeatherEntry.COLUMN_LOC_KEY, mLocationIds[i]);
+                weather.put(WeatherEntry.COLUMN_DATE, mToday + day * DAY_IN_MILLIS);
+                weather.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+                weather.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+                weather.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+                weather.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + day);
+                weather.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - day);
+                weather.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+                weather.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+                weather.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+                forecast[day] = weather;
+            }
+            resolver.bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testForecastQueryWithGrowingHistory() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        double[] microsPerQuery = new double[HISTORY_YEARS.length];
+        int historyDays = 0;
+        for (int i = 0; i < HISTORY_YEARS.length; i++) {
+            int days = HISTORY_YEARS[i] * 365;
+            addHistory(db, historyDays, days);
+            historyDays = days;
+
+            microsPerQuery[i] = timeForecastQueries();
+            Log.i(LOG_TAG, "history_years=" + HISTORY_YEARS[i]
+                    + " history_rows=" + (historyDays * LOCATIONS)
+                    + " us_per_forecast_query=" + String.format("%.1f", microsPerQuery[i]));
+        }
+        dbHelper.close();
+
+        // Generous bound, the point is that it doesn't grow with the history
+        assertTrue("Error: forecast queries slowed down as the history grew",
+                microsPerQuery[HISTORY_YEARS.length - 1] < 3 * microsPerQuery[0] + 100);
+    }
+
+    // Adds the days [from, to) before today to the history of every location
+    private void addHistory(SQLiteDatabase db, int from, int to) {
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (long locationId : mLocationIds) {
+                for (int day = from; day < to; day++) {
+                    values.put(HistoryEntry.COLUMN_LOC_KEY, locationId);
+                    values.put(HistoryEntry.COLUMN_PERIOD, HistoryEntry.PERIOD_DAY);
+                    values.put(HistoryEntry.COLUMN_START, mToday - (day + 1) * DAY_IN_MILLIS);
+                    values.put(HistoryEntry.COLUMN_MIN_TEMP, day % 20);
+                    values.put(HistoryEntry.COLUMN_MAX_TEMP, day % 20 + 10);
+                    values.put(HistoryEntry.COLUMN_MEAN_TEMP, day % 20 + 5);
+                    values.put(HistoryEntry.COLUMN_MEAN_HUMIDITY, 50);
+                    values.put(HistoryEntry.COLUMN_DAYS, 1);
+                    db.insert(HistoryEntry.TABLE_NAME, null, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // The query of ForecastFragment, for every location in turn
+    private double timeForecastQueries() {
+        ContentResolver resolver = mContext.getContentResolver();
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(
+                    getLocationSetting(i % LOCATIONS), mToday);
+            Cursor cursor = resolver.query(uri, null, null, null,
+                    WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals(FORECAST_DAYS, cursor.getCount());
+            cursor.close();
+        }
+        return (System.nanoTime() - start) / 1000.0 / QUERIES;
+    }
+
+    private static String getLocationSetting(int location) {
+        return "benchmark-" + location;
+    }
+
+    private void deleteAll() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(HistoryEntry.CONTENT_URI, null, null);
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
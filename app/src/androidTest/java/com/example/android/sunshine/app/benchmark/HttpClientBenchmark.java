@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.sync.ForecastHttpClient;
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+import com.example.android.sunshine.app.utils.LocalHttpServer.Response;
+import com.example.android.sunshine.app.utils.OwmFixtures;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/*
+    Compares the ForecastHttpClient with the way the sync adapter used to fetch forecasts: a new
+    connection per request, no Accept-Encoding of its own, and the body read line by line.  Both
+    fetch 14 day forecasts from a local server and parse them, for one location and for several
+    in a row.
+ */
+public class HttpClientBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = HttpClientBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 10;
+    private static final int RUNS = 5;
+
+    private LocalHttpServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.ok(OwmFixtures.forecastJson(
+                        Uri.parse(path).getQueryParameter("q"), 14));
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testOneLocation() throws Exception {
+        compare(1);
+    }
+
+    public void testManyLocations() throws Exception {
+        compare(LOCATIONS);
+    }
+
+    private void compare(int locations) throws Exception {
+        // Warm up both paths
+        runLegacy(locations);
+        runClient(new ForecastHttpClient(), locations);
+
+        long legacyBytes = mServer.getBytesSent();
+        int legacyConnections = mServer.getConnectionCount();
+        long start = System.nanoTime();
+        for (int run = 0; run < RUNS; run++) {
+            runLegacy(locations);
+        }
+        long legacyNanos = System.nanoTime() - start;
+        legacyBytes = mServer.getBytesSent() - legacyBytes;
+        legacyConnections = mServer.getConnectionCount() - legacyConnections;
+
+        ForecastHttpClient client = new ForecastHttpClient();
+        int clientConnections = mServer.getConnectionCount();
+        start = System.nanoTime();
+        for (int run = 0; run < RUNS; run++) {
+            runClient(client, locations);
+        }
+        long clientNanos = System.nanoTime() - start;
+        long clientBytes = client.getBytesReceived();
+        clientConnections = mServer.getConnectionCount() - clientConnections;
+
+        report("legacy", locations, legacyBytes, legacyNanos, legacyConnections);
+        report("client", locations, clientBytes, clientNanos, clientConnections);
+
+        // Platforms that ask for gzip on their own already compressed the legacy responses
+        assertTrue("Error: the client should not transfer more bytes", clientBytes <= legacyBytes);
+        assertTrue("Error: the client should reuse connections",
+                clientConnections < legacyConnections);
+    }
+
+    private static void report(String name, int locations, long bytes, long nanos,
+                               int connections) {
+        Log.i(LOG_TAG, name + " locations=" + locations
+                + " bytes_per_sync=" + bytes / RUNS
+                + " ms_per_sync=" + String.format("%.2f", nanos / 1e6 / RUNS)
+                + " connections=" + connections);
+    }
+
+    private void runClient(ForecastHttpClient client, int locations) throws Exception {
+        for (int i = 0; i < locations; i++) {
+            ForecastHttpClient.Response response = client.get(getUrl(i));
+            try {
+                new JSONObject(ForecastHttpClient.readString(response.getBody()));
+            } finally {
+                response.close();
+            }
+        }
+    }
+
+    // The fetch as it was before ForecastHttpClient
+    private void runLegacy(int locations) throws Exception {
+        for (int i = 0; i < locations; i++) {
+            HttpURLConnection urlConnection = (HttpURLConnection) getUrl(i).openConnection();
+            BufferedReader reader = null;
+            try {
+                urlConnection.setRequestMethod("GET");
+                urlConnection.connect();
+                InputStream inputStream = urlConnection.getInputStream();
+                StringBuffer buffer = new StringBuffer();
+                reader = new BufferedReader(new InputStreamReader(inputStream));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    buffer.append(line + "\n");
+                }
+                new JSONObject(buffer.toString());
+            } finally {
+                urlConnection.disconnect();
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    private URL getUrl(int location) throws Exception {
+        return mServer.getUrl("/data/2.5/forecast/daily?q=City" + location
+                + "&mode=json&units=metric&cnt=14");
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.core.GeoGrid;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.Random;
+
+/*
+    Time finding the cached locations near a device location fix: the nearest URI, which reads
+    the grid cells around the point, against reading every location and measuring it.  The
+    locations are spread over the inhabited latitudes, or all packed within a degree of the
+    point, the worst case for the grid.  Up to 10k locations.
+ */
+public class NearestLocationBenchmark extends AndroidTestCase {
+
+    private static final int[] LOCATION_COUNTS = {100, 1000, 10000};
+    private static final int RUNS = 50;
+    private static final double LATITUDE = 37.39;
+    private static final double LONGITUDE = -122.08;
+    private static final double MAX_DISTANCE_KM = LocationEntry.DEFAULT_MAX_DISTANCE_KM;
+    private static final int LIMIT = 5;
+
+    private BenchmarkResults mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        mResults = new BenchmarkResults(mContext, getClass());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        super.tearDown();
+    }
+
+    public void testNearestSpread() {
+        run("spread", false);
+    }
+
+    public void testNearestClustered() {
+        run("clustered", true);
+    }
+
+    private void run(String dataset, boolean clustered) {
+        ContentResolver resolver = mContext.getContentResolver();
+        for (int count : LOCATION_COUNTS) {
+            BenchmarkFixtures.deleteAll(resolver);
+            insertLocations(resolver, count, clustered);
+
+            long expected = scanNearest(resolver);
+            assertEquals("Error: the grid and the scan found other locations",
+                    expected, queryNearest(resolver));
+            long[] nanos = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                queryNearest(resolver);
+                nanos[i] = System.nanoTime() - start;
+            }
+            mResults.reportLatencies("nearest_grid_" + dataset, count, nanos);
+
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                scanNearest(resolver);
+                nanos[i] = System.nanoTime() - start;
+            }
+            mResults.reportLatencies("nearest_scan_" + dataset, count, nanos);
+        }
+    }
+
+    private static void insertLocations(ContentResolver resolver, int count, boolean clustered) {
+        Random random = new Random(count);
+        ContentValues location = new ContentValues();
+        for (int i = 0; i < count; i++) {
+            double latitude;
+            double longitude;
+            if (clustered) {
+                latitude = LATITUDE + random.nextDouble() * 2 - 1;
+                longitude = LONGITUDE + random.nextDouble() * 2 - 1;
+            } else {
+                latitude = random.nextDouble() * 130 - 60;
+                longitude = random.nextDouble() * 360 - 180;
+            }
+            location.clear();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, "benchmark-nearest-" + i);
+            location.put(LocationEntry.COLUMN_CITY_NAME, "City " + i);
+            location.put(LocationEntry.COLUMN_COORD_LAT, latitude);
+            location.put(LocationEntry.COLUMN_COORD_LONG, longitude);
+            resolver.insert(LocationEntry.CONTENT_URI, location);
+        }
+    }
+
+    // @return the _id of the nearest location, or -1
+    private static long queryNearest(ContentResolver resolver) {
+        Cursor cursor = resolver.query(
+                LocationEntry.buildNearestUri(LATITUDE, LONGITUDE, MAX_DISTANCE_KM, LIMIT),
+                new String[]{LocationEntry._ID}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // What finding the nearest location takes without the grid
+    private static long scanNearest(ContentResolver resolver) {
+        Cursor cursor = resolver.query(LocationEntry.CONTENT_URI, new String[]{LocationEntry._ID,
+                        LocationEntry.COLUMN_COORD_LAT, LocationEntry.COLUMN_COORD_LONG},
+                null, null, null);
+        try {
+            long nearest = -1;
+            double nearestDistance = MAX_DISTANCE_KM;
+            while (cursor.moveToNext()) {
+                double distance = GeoGrid.distanceKm(LATITUDE, LONGITUDE, cursor.getDouble(1),
+                        cursor.getDouble(2));
+                if (distance <= nearestDistance) {
+                    nearest = cursor.getLong(0);
+                    nearestDistance = distance;
+                }
+            }
+            return nearest;
+        } finally {
+            cursor.close();
+        }
+    }
+}
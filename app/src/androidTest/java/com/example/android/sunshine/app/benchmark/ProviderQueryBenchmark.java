@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Latency of a query per URI shape the app uses, on forecast tables of 14 to 100k rows.  Every
+    query fills its cursor window, the cost a loader pays before anything is shown.
+ */
+public class ProviderQueryBenchmark extends AndroidTestCase {
+
+    private static final String LOCATION_SETTING = "benchmark-query";
+    private static final int PAGE_SIZE = 20;
+    private static final int WARM_UP = 3;
+
+    private BenchmarkResults mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        mResults = new BenchmarkResults(mContext, getClass());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        super.tearDown();
+    }
+
+    public void testQueryLatencyPerUri() {
+        ContentResolver resolver = mContext.getContentResolver();
+        for (int rows : BenchmarkFixtures.ROW_COUNTS) {
+            BenchmarkFixtures.deleteAll(resolver);
+            long locationId = BenchmarkFixtures.insertLocation(resolver, LOCATION_SETTING);
+            long today = BenchmarkFixtures.insertForecast(resolver, locationId, rows);
+            // A scan of the big tables takes long, fewer of them are enough
+            int queries = rows >= 10000 ? 10 : 50;
+
+            measure("weather_location", rows, queries,
+                    WeatherEntry.buildWeatherLocation(LOCATION_SETTING), rows);
+            measure("weather_location_start_date", rows, queries,
+                    WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, today),
+                    BenchmarkFixtures.FORECAST_DAYS);
+            measure("weather_location_date", rows, queries,
+                    WeatherEntry.buildWeatherLocationWithDate(LOCATION_SETTING, today), 1);
+            measure("weather_location_page", rows, queries,
+                    WeatherEntry.buildWeatherLocationPage(LOCATION_SETTING,
+                            today - BenchmarkFixtures.DAY_IN_MILLIS, PAGE_SIZE),
+                    BenchmarkFixtures.FORECAST_DAYS);
+            measure("weather", rows, queries, WeatherEntry.CONTENT_URI, rows);
+            measure("location", rows, queries, LocationEntry.CONTENT_URI, 1);
+        }
+    }
+
+    private void measure(String shape, int rows, int queries, Uri uri, int expectedCount) {
+        for (int i = 0; i < WARM_UP; i++) {
+            assertEquals("Error: " + uri + " returned the wrong rows", expectedCount, query(uri));
+        }
+        long[] nanos = new long[queries];
+        for (int i = 0; i < queries; i++) {
+            long start = System.nanoTime();
+            query(uri);
+            nanos[i] = System.nanoTime() - start;
+        }
+        mResults.reportLatencies(shape, rows, nanos);
+    }
+
+    private int query(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            // Counting fills the window
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.Metrics;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Latency of the two queries the provider caches, today's row and the forecast from today, when
+    they go to the database and when the cache answers them.  Then the hit rate of what the app
+    does over a day: every widget, Muzei, wear and the notification read today, the list and
+    the detail widget read the forecast, and a few syncs change today in between.
+ */
+public class ResultCacheBenchmark extends AndroidTestCase {
+
+    private static final String LOCATION_SETTING = "benchmark-cache";
+    private static final int QUERIES = 50;
+    private static final int WARM_UP = 3;
+    // Readers of today's row and of the list per refresh, see the cached URIs in WeatherProvider
+    private static final int TODAY_READERS = 5;
+    private static final int LIST_READERS = 2;
+    private static final int REFRESHES = 48;
+    private static final int REFRESHES_PER_SYNC = 12;
+
+    private BenchmarkResults mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        mResults = new BenchmarkResults(mContext, getClass());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        super.tearDown();
+    }
+
+    public void testCachedQueryLatency() {
+        ContentResolver resolver = mContext.getContentResolver();
+        for (int rows : BenchmarkFixtures.ROW_COUNTS) {
+            BenchmarkFixtures.deleteAll(resolver);
+            long locationId = BenchmarkFixtures.insertLocation(resolver, LOCATION_SETTING);
+            long today = BenchmarkFixtures.insertForecast(resolver, locationId, rows);
+
+            Uri todayUri = WeatherEntry.buildWeatherLocationWithDate(LOCATION_SETTING, today);
+            Uri listUri = WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, today);
+            measure("today_uncached", rows, todayUri, 1, true);
+            measure("today_cached", rows, todayUri, 1, false);
+            measure("start_date_uncached", rows, listUri, BenchmarkFixtures.FORECAST_DAYS, true);
+            measure("start_date_cached", rows, listUri, BenchmarkFixtures.FORECAST_DAYS, false);
+        }
+    }
+
+    public void testHitRateOverADay() {
+        ContentResolver resolver = mContext.getContentResolver();
+        long locationId = BenchmarkFixtures.insertLocation(resolver, LOCATION_SETTING);
+        long today = BenchmarkFixtures.insertForecast(resolver, locationId,
+                BenchmarkFixtures.FORECAST_DAYS);
+        Uri todayUri = WeatherEntry.buildWeatherLocationWithDate(LOCATION_SETTING, today);
+        Uri listUri = WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, today);
+        call(Metrics.METHOD_CLEAR_CACHE);
+        call(Metrics.METHOD_RESET_METRICS);
+
+        for (int refresh = 0; refresh < REFRESHES; refresh++) {
+            if (refresh % REFRESHES_PER_SYNC == 0) {
+                // A sync with a new forecast for today only
+                ContentValues changed = new ContentValues();
+                changed.put(WeatherEntry.COLUMN_MAX_TEMP, 20.0 + refresh);
+                resolver.update(WeatherEntry.CONTENT_URI, changed,
+                        WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE
+                                + " = ?",
+                        new String[]{Long.toString(locationId), Long.toString(today)});
+            }
+            for (int i = 0; i < TODAY_READERS; i++) {
+                query(todayUri);
+            }
+            for (int i = 0; i < LIST_READERS; i++) {
+                query(listUri);
+            }
+        }
+
+        Bundle stats = call(Metrics.METHOD_GET_CACHE_STATS);
+        long hits = stats.getLong(Metrics.KEY_HITS);
+        long misses = stats.getLong(Metrics.KEY_MISSES);
+        int rows = BenchmarkFixtures.FORECAST_DAYS;
+        mResults.report("hit_rate", rows, 100.0 * hits / (hits + misses), "%");
+        if (hits > 0) {
+            mResults.report("hit_mean", rows,
+                    (double) stats.getLong(Metrics.KEY_HIT_TOTAL_MICROS) / hits, "us");
+        }
+        if (misses > 0) {
+            mResults.report("miss_mean", rows,
+                    (double) stats.getLong(Metrics.KEY_MISS_TOTAL_MICROS) / misses, "us");
+        }
+        mResults.report("invalidations", rows, stats.getLong(Metrics.KEY_INVALIDATIONS), "count");
+    }
+
+    private void measure(String metric, int rows, Uri uri, int expectedCount, boolean uncached) {
+        for (int i = 0; i < WARM_UP; i++) {
+            assertEquals("Error: " + uri + " returned the wrong rows", expectedCount, query(uri));
+        }
+        long[] nanos = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            if (uncached) {
+                call(Metrics.METHOD_CLEAR_CACHE);
+            }
+            long start = System.nanoTime();
+            query(uri);
+            nanos[i] = System.nanoTime() - start;
+        }
+        mResults.reportLatencies(metric, rows, nanos);
+    }
+
+    private int query(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Bundle call(String method) {
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI, method, null, null);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.SharedQueries;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    What a burst of notifications costs the screens showing a day: the queries it runs, the
+    results it delivers, and how long after the last notification the new rows arrive.  Three
+    subscribers stand in for the two pane detail, the detail activity and the list's first row;
+    a CursorLoader per screen would run one query per screen and notification.
+ */
+public class SharedQueryBenchmark extends AndroidTestCase {
+
+    private static final String LOCATION_SETTING = "benchmark-shared";
+    private static final int[] BURSTS = {1, 10, 50};
+    private static final int SUBSCRIBERS = 3;
+    private static final int ROUNDS = 5;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private BenchmarkResults mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        mResults = new BenchmarkResults(mContext, getClass());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        super.tearDown();
+    }
+
+    public void testNotificationBursts() throws Exception {
+        final ContentResolver resolver = mContext.getContentResolver();
+        final long locationId = BenchmarkFixtures.insertLocation(resolver, LOCATION_SETTING);
+        final long today = BenchmarkFixtures.insertForecast(resolver, locationId,
+                BenchmarkFixtures.FORECAST_DAYS);
+        final Uri dayUri = WeatherEntry.buildWeatherLocationWithDate(LOCATION_SETTING, today);
+        final SharedQueries queries = SharedQueries.getInstance(mContext);
+        final CountingListener listener = new CountingListener();
+        final SharedQueries.Subscription[] subscriptions =
+                new SharedQueries.Subscription[SUBSCRIBERS];
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < SUBSCRIBERS; i++) {
+                    subscriptions[i] = queries.subscribe(dayUri, null, listener);
+                }
+            }
+        });
+        listener.await(SUBSCRIBERS);
+
+        double maxTemp = 20.0;
+        for (int burst : BURSTS) {
+            int loads = queries.getLoadCount();
+            int results = listener.getResults();
+            long[] nanos = new long[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                // Only the last notification of a burst comes with a change
+                for (int i = 0; i < burst - 1; i++) {
+                    resolver.notifyChange(dayUri, null);
+                }
+                int expected = listener.getResults() + SUBSCRIBERS;
+                ContentValues changed = new ContentValues();
+                changed.put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp++);
+                long start = System.nanoTime();
+                resolver.update(WeatherEntry.CONTENT_URI, changed,
+                        WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE
+                                + " = ?",
+                        new String[]{Long.toString(locationId), Long.toString(today)});
+                listener.await(expected);
+                nanos[round] = System.nanoTime() - start;
+                // Let whatever is still debouncing settle before the next round
+                SystemClock.sleep(SharedQueries.MAX_DELAY_MILLIS);
+            }
+            mResults.reportLatencies("burst_" + burst + "_last_change_to_result",
+                    BenchmarkFixtures.FORECAST_DAYS, nanos);
+            mResults.report("burst_" + burst + "_queries_per_round",
+                    BenchmarkFixtures.FORECAST_DAYS,
+                    (double) (queries.getLoadCount() - loads) / ROUNDS, "count");
+            mResults.report("burst_" + burst + "_results_per_round",
+                    BenchmarkFixtures.FORECAST_DAYS,
+                    (double) (listener.getResults() - results) / ROUNDS, "count");
+            mResults.report("burst_" + burst + "_cursor_loader_queries_per_round",
+                    BenchmarkFixtures.FORECAST_DAYS, burst * SUBSCRIBERS, "count");
+        }
+
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                for (SharedQueries.Subscription subscription : subscriptions) {
+                    subscription.unsubscribe();
+                }
+            }
+        });
+    }
+
+    private void runOnMain(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static class CountingListener implements SharedQueries.Listener {
+        private int mResults;
+
+        @Override
+        public synchronized void onQueryResult(Cursor cursor) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            mResults++;
+            notifyAll();
+        }
+
+        synchronized int getResults() {
+            return mResults;
+        }
+
+        synchronized void await(int results) throws InterruptedException {
+            long deadline = SystemClock.uptimeMillis() + 5000;
+            while (mResults < results) {
+                long left = deadline - SystemClock.uptimeMillis();
+                assertTrue("Error: the result never came", left > 0);
+                wait(left);
+            }
+        }
+    }
+}
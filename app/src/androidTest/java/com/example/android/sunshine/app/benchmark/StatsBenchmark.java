@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares the stats URI with what a client had to do before it: query the forecast and the
+    history of the range and aggregate them itself.  Ranges go from the 14 day forecast to twenty
+    years of daily history, archived through the provider like the sync adapter does.
+ */
+public class StatsBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = StatsBenchmark.class.getSimpleName();
+
+    private static final String LOCATION_SETTING = "benchmark-stats";
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int FORECAST_DAYS = 14;
+    private static final int HISTORY_DAYS = 20 * 365;
+    private static final int QUERIES = 20;
+    private static final int[] RANGE_DAYS = {FORECAST_DAYS, 365, 5 * 365, HISTORY_DAYS};
+
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentResolver resolver = mContext.getContentResolver();
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Stats");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 1.0);
+        location.put(LocationEntry.COLUMN_COORD_LONG, 1.0);
+        long locationId = ContentUris.parseId(resolver.insert(LocationEntry.CONTENT_URI, location));
+
+        ContentValues[] days = new ContentValues[HISTORY_DAYS + FORECAST_DAYS];
+        for (int i = 0; i < days.length; i++) {
+            ContentValues weather = new ContentValues();
+            weather.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            weather.put(WeatherEntry.COLUMN_DATE, mToday + (i - HISTORY_DAYS) * DAY_IN_MILLIS);
+            weather.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            weather.put(WeatherEntry.COLUMN_HUMIDITY, 40 + i % 50);
+            weather.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weather.put(WeatherEntry.COLUMN_MAX_TEMP, 20.0 + i % 17);
+            weather.put(WeatherEntry.COLUMN_MIN_TEMP, 5.0 + i % 11);
+            weather.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            weather.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weather.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            days[i] = weather;
+        }
+        resolver.bulkInsert(WeatherEntry.CONTENT_URI, days);
+        resolver.delete(WeatherEntry.buildArchiveUri(), WeatherEntry.COLUMN_DATE + " < ?",
+                new String[]{Long.toString(mToday)});
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testStatsAgainstClientScan() {
+        for (int rangeDays : RANGE_DAYS) {
+            // Ranges end with the forecast and reach back into the history
+            long end = mToday + FORECAST_DAYS * DAY_IN_MILLIS;
+            long start = end - rangeDays * DAY_IN_MILLIS;
+
+            // Warm up both, and check they agree
+            assertEquals(scan(start, end), queryStats(start, end), 1e-6);
+
+            long begin = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                queryStats(start, end);
+            }
+            double statsMicros = (System.nanoTime() - begin) / 1000.0 / QUERIES;
+
+            begin = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                scan(start, end);
+            }
+            double scanMicros = (System.nanoTime() - begin) / 1000.0 / QUERIES;
+
+            Log.i(LOG_TAG, "range_days=" + rangeDays
+                    + " us_per_stats_query=" + String.format("%.1f", statsMicros)
+                    + " us_per_client_scan=" + String.format("%.1f", scanMicros));
+            if (rangeDays >= 365) {
+                assertTrue("Error: the summaries should beat a scan of a year or more",
+                        statsMicros < scanMicros);
+            }
+        }
+    }
+
+    // Returns the mean temperature, the other columns cost the same
+    private double queryStats(long start, long end) {
+        Cursor cursor = mContext.getContentResolver().query(
+                StatsEntry.buildStatsLocationWithRange(LOCATION_SETTING, start, end),
+                null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getDouble(cursor.getColumnIndex(StatsEntry.COLUMN_MEAN_TEMP));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private double scan(long start, long end) {
+        ContentResolver resolver = mContext.getContentResolver();
+        int days = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double meanSum = 0;
+        double humiditySum = 0;
+
+        Cursor cursor = resolver.query(WeatherEntry.buildWeatherLocationWithStartDate(
+                        LOCATION_SETTING, start),
+                new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MIN_TEMP,
+                        WeatherEntry.COLUMN_MAX_TEMP, WeatherEntry.COLUMN_HUMIDITY},
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(0) >= end) {
+                    continue;
+                }
+                min = Math.min(min, cursor.getDouble(1));
+                max = Math.max(max, cursor.getDouble(2));
+                meanSum += (cursor.getDouble(1) + cursor.getDouble(2)) / 2;
+                humiditySum += cursor.getDouble(3);
+                days++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        cursor = resolver.query(
+                HistoryEntry.buildHistoryLocationWithRange(LOCATION_SETTING, start, end),
+                new String[]{HistoryEntry.COLUMN_MIN_TEMP, HistoryEntry.COLUMN_MAX_TEMP,
+                        HistoryEntry.COLUMN_MEAN_TEMP, HistoryEntry.COLUMN_MEAN_HUMIDITY,
+                        HistoryEntry.COLUMN_DAYS},
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                int periodDays = cursor.getInt(4);
+                min = Math.min(min, cursor.getDouble(0));
+                max = Math.max(max, cursor.getDouble(1));
+                meanSum += cursor.getDouble(2) * periodDays;
+                humiditySum += cursor.getDouble(3) * periodDays;
+                days += periodDays;
+            }
+        } finally {
+            cursor.close();
+        }
+        assertTrue(min <= max && humiditySum > 0);
+        return meanSum / days;
+    }
+
+    private void deleteAll() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(HistoryEntry.CONTENT_URI, null, null);
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
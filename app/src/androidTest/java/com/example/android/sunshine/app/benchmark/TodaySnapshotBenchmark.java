@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.annotation.TargetApi;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.os.Build;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.TodaySnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.widget.TodayWidgetIntentService;
+
+/*
+    Time a Today widget update takes when the process just started, from the provider against
+    from the snapshot the sync publishes.  A new process can't be started under instrumentation:
+    closing the provider's database and clearing its cache before each update stands in for one,
+    what is left warm is the class loading.  For a truly cold process, kill it and time the
+    widget update broadcast with "adb shell am broadcast".
+ */
+public class TodaySnapshotBenchmark extends AndroidTestCase {
+
+    private static final String LOCATION_SETTING = "benchmark-snapshot";
+    private static final int RUNS = 30;
+    private static final int[] TODAY_LAYOUTS = {R.layout.widget_today_small,
+            R.layout.widget_today, R.layout.widget_today_large};
+
+    private String mPreviousLocation;
+    private BenchmarkResults mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        mPreviousLocation = BenchmarkFixtures.setPreferredLocation(mContext, LOCATION_SETTING);
+        mResults = new BenchmarkResults(mContext, getClass());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TodaySnapshot.getFile(mContext).delete();
+        BenchmarkFixtures.setPreferredLocation(mContext, mPreviousLocation);
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        super.tearDown();
+    }
+
+    public void testColdWidgetUpdate() {
+        // Closing the provider and its cache needs Honeycomb
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        ContentResolver resolver = mContext.getContentResolver();
+        for (int rows : BenchmarkFixtures.ROW_COUNTS) {
+            BenchmarkFixtures.deleteAll(resolver);
+            long locationId = BenchmarkFixtures.insertLocation(resolver, LOCATION_SETTING);
+            BenchmarkFixtures.insertForecast(resolver, locationId, rows);
+
+            TodaySnapshot.getFile(mContext).delete();
+            long[] nanos = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                closeProvider();
+                long start = System.nanoTime();
+                assertNotNull("Error: the Today widget found no forecast",
+                        TodayWidgetIntentService.buildViews(mContext, TODAY_LAYOUTS));
+                nanos[i] = System.nanoTime() - start;
+            }
+            mResults.reportLatencies("cold_widget_update_provider", rows, nanos);
+
+            assertTrue(TodaySnapshot.publish(mContext, LOCATION_SETTING));
+            for (int i = 0; i < RUNS; i++) {
+                closeProvider();
+                long start = System.nanoTime();
+                assertNotNull("Error: the Today widget found no forecast",
+                        TodayWidgetIntentService.buildViews(mContext, TODAY_LAYOUTS));
+                nanos[i] = System.nanoTime() - start;
+            }
+            mResults.reportLatencies("cold_widget_update_snapshot", rows, nanos);
+        }
+    }
+
+    /**
+     * Leaves the provider the way a new process finds it: database closed, nothing cached.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void closeProvider() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.Metrics.METHOD_CLEAR_CACHE, null, null);
+        ContentProviderClient client =
+                resolver.acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        try {
+            client.getLocalContentProvider().shutdown();
+        } finally {
+            client.release();
+        }
+    }
+}
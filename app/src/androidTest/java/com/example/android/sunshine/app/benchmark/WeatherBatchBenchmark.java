@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherBatch;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.OwmFixtures;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Vector;
+
+/*
+    Compares the bytes a sync allocates storing a 14 day forecast: the Vector of ContentValues the
+    sync adapter used to build and bulk insert, against a WeatherBatch handed to the provider.
+    Both read their values from the same parsed JSON, and every run changes all the days so the
+    rows are really written.
+ */
+public class WeatherBatchBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = WeatherBatchBenchmark.class.getSimpleName();
+
+    private static final String LOCATION_SETTING = "benchmark-batch";
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int DAYS = 14;
+    private static final int RUNS = 20;
+
+    private JSONArray mDays;
+    private long mLocationId;
+    private long mToday;
+    private int mRun;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mDays = new JSONObject(OwmFixtures.forecastJson("Batch", DAYS)).getJSONArray("list");
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Batch");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 1.0);
+        location.put(LocationEntry.COLUMN_COORD_LONG, 1.0);
+        mLocationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testAllocationsPerSync() throws Exception {
+        // Warm up both paths, the first statements compiled are cached
+        insertContentValues();
+        insertBatch();
+
+        long legacyBytes = 0;
+        long batchBytes = 0;
+        long legacyNanos = 0;
+        long batchNanos = 0;
+        for (int run = 0; run < RUNS; run++) {
+            startCounting();
+            long start = System.nanoTime();
+            assertEquals(DAYS, insertContentValues());
+            legacyNanos += System.nanoTime() - start;
+            legacyBytes += stopCounting();
+
+            startCounting();
+            start = System.nanoTime();
+            assertEquals(DAYS, insertBatch());
+            batchNanos += System.nanoTime() - start;
+            batchBytes += stopCounting();
+        }
+
+        Log.i(LOG_TAG, "content_values alloc_bytes_per_sync=" + legacyBytes / RUNS
+                + " us_per_sync=" + legacyNanos / 1000 / RUNS);
+        Log.i(LOG_TAG, "weather_batch alloc_bytes_per_sync=" + batchBytes / RUNS
+                + " us_per_sync=" + batchNanos / 1000 / RUNS);
+        // Allocation counting is only implemented by Dalvik, ART reports nothing
+        if (legacyBytes > 0) {
+            assertTrue("Error: the batch should allocate less", batchBytes < legacyBytes);
+        }
+    }
+
+    // The ingestion as it was before WeatherBatch
+    private int insertContentValues() throws JSONException {
+        int run = mRun++;
+        Vector<ContentValues> cVVector = new Vector<ContentValues>(mDays.length());
+        for (int i = 0; i < mDays.length(); i++) {
+            JSONObject day = mDays.getJSONObject(i);
+            JSONObject weather = day.getJSONArray("weather").getJSONObject(0);
+            JSONObject temperature = day.getJSONObject("temp");
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, mToday + i * DAY_IN_MILLIS);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, day.getInt("humidity"));
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, day.getDouble("pressure"));
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, day.getDouble("speed"));
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, day.getDouble("deg"));
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, temperature.getDouble("max") + run);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, temperature.getDouble("min"));
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, weather.getString("main"));
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, weather.getInt("id"));
+            cVVector.add(weatherValues);
+        }
+        ContentValues[] cvArray = new ContentValues[cVVector.size()];
+        cVVector.toArray(cvArray);
+        return mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, cvArray);
+    }
+
+    private int insertBatch() throws JSONException {
+        int run = mRun++;
+        WeatherBatch batch = new WeatherBatch(mLocationId, mDays.length());
+        for (int i = 0; i < mDays.length(); i++) {
+            JSONObject day = mDays.getJSONObject(i);
+            JSONObject weather = day.getJSONArray("weather").getJSONObject(0);
+            JSONObject temperature = day.getJSONObject("temp");
+            batch.add(mToday + i * DAY_IN_MILLIS, weather.getInt("id"), weather.getString("main"),
+                    temperature.getDouble("min"), temperature.getDouble("max") + run,
+                    day.getInt("humidity"), day.getDouble("pressure"), day.getDouble("speed"),
+                    day.getDouble("deg"));
+        }
+        return batch.insert(mContext.getContentResolver());
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void startCounting() {
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long stopCounting() {
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocSize();
+    }
+
+    private void deleteAll() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
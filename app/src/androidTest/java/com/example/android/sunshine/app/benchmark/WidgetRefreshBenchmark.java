@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.widget.DetailWidgetRemoteViewsService;
+import com.example.android.sunshine.app.widget.TodayWidgetIntentService;
+
+/*
+    Time a refresh of each widget takes in the app: the Today widget's views for its three
+    layouts, and every row of the detail widget's list.  Handing the views to the launcher isn't
+    measured, it's the same for any dataset.  The forecast table holds 14 to 100k rows.
+ */
+public class WidgetRefreshBenchmark extends AndroidTestCase {
+
+    private static final String LOCATION_SETTING = "benchmark-widget";
+    private static final int RUNS = 30;
+    private static final int[] TODAY_LAYOUTS = {R.layout.widget_today_small,
+            R.layout.widget_today, R.layout.widget_today_large};
+
+    private String mPreviousLocation;
+    private BenchmarkResults mResults;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        mPreviousLocation = BenchmarkFixtures.setPreferredLocation(mContext, LOCATION_SETTING);
+        mResults = new BenchmarkResults(mContext, getClass());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BenchmarkFixtures.setPreferredLocation(mContext, mPreviousLocation);
+        BenchmarkFixtures.deleteAll(mContext.getContentResolver());
+        super.tearDown();
+    }
+
+    public void testWidgetRefresh() {
+        ContentResolver resolver = mContext.getContentResolver();
+        for (int rows : BenchmarkFixtures.ROW_COUNTS) {
+            BenchmarkFixtures.deleteAll(resolver);
+            long locationId = BenchmarkFixtures.insertLocation(resolver, LOCATION_SETTING);
+            BenchmarkFixtures.insertForecast(resolver, locationId, rows);
+
+            assertNotNull("Error: the Today widget found no forecast",
+                    TodayWidgetIntentService.buildViews(mContext, TODAY_LAYOUTS));
+            long[] nanos = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                TodayWidgetIntentService.buildViews(mContext, TODAY_LAYOUTS);
+                nanos[i] = System.nanoTime() - start;
+            }
+            mResults.reportLatencies("today_widget_refresh", rows, nanos);
+
+            // The detail widget's service needs Honeycomb
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                assertEquals(BenchmarkFixtures.FORECAST_DAYS, refreshDetailWidget());
+                for (int i = 0; i < RUNS; i++) {
+                    long start = System.nanoTime();
+                    refreshDetailWidget();
+                    nanos[i] = System.nanoTime() - start;
+                }
+                mResults.reportLatencies("detail_widget_refresh", rows, nanos);
+            }
+        }
+    }
+
+    /**
+     * Does what the launcher has the factory do on a refresh: reload the data and get every row.
+     *
+     * @return the rows.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private int refreshDetailWidget() {
+        DetailWidgetRemoteViewsService.DetailViewsFactory factory =
+                new DetailWidgetRemoteViewsService.DetailViewsFactory(mContext);
+        factory.onCreate();
+        try {
+            factory.onDataSetChanged();
+            int count = factory.getCount();
+            for (int i = 0; i < count; i++) {
+                RemoteViews views = factory.getViewAt(i);
+                assertNotNull(views);
+            }
+            return count;
+        } finally {
+            factory.onDestroy();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.OwmFixtures;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    The binary forecast the proxy serves, decoded to the same days as the JSON it was made from.
+ */
+public class TestBinaryForecast extends AndroidTestCase {
+
+    // The encoding keeps a tenth of each measurement
+    private static final double PRECISION = 0.05 + 1e-9;
+
+    // Keeps what it is handed, a day as its numbers
+    static class RecordingHandler implements ForecastHandler {
+        long mCityId;
+        String mCityName;
+        double mLatitude;
+        double mLongitude;
+        int mDayCount = -1;
+        final List<String> mDescriptions = new ArrayList<String>();
+        final List<double[]> mDays = new ArrayList<double[]>();
+
+        @Override
+        public void onCity(long cityId, String cityName, double latitude, double longitude,
+                           int dayCount) {
+            mCityId = cityId;
+            mCityName = cityName;
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mDayCount = dayCount;
+        }
+
+        @Override
+        public void onDay(int index, int weatherId, String description, double low,
+                          double high, int humidity, double pressure, double windSpeed,
+                          double windDirection) {
+            assertEquals(mDays.size(), index);
+            mDescriptions.add(description);
+            mDays.add(new double[]{weatherId, low, high, humidity, pressure, windSpeed,
+                    windDirection});
+        }
+    }
+
+    public void testTranscodedForecast() throws Exception {
+        String json = OwmFixtures.forecastJson("Mountain View", 14);
+        RecordingHandler fromJson = new RecordingHandler();
+        assertEquals(HttpURLConnection.HTTP_OK, ForecastJsonParser.parse(json, fromJson));
+
+        BinaryForecast.Writer writer = new BinaryForecast.Writer();
+        ForecastJsonParser.parse(json, writer);
+        byte[] message = writer.toByteArray();
+        assertTrue("Error: the binary forecast should be smaller than the JSON",
+                message.length < json.length() / 4);
+
+        RecordingHandler decoded = new RecordingHandler();
+        assertEquals(HttpURLConnection.HTTP_OK, BinaryForecast.decode(message, decoded));
+        assertEquals(fromJson.mCityId, decoded.mCityId);
+        assertEquals(fromJson.mCityName, decoded.mCityName);
+        assertEquals(fromJson.mLatitude, decoded.mLatitude, 1e-6);
+        assertEquals(fromJson.mLongitude, decoded.mLongitude, 1e-6);
+        assertEquals(14, decoded.mDayCount);
+        assertEquals(fromJson.mDescriptions, decoded.mDescriptions);
+        assertEquals(14, decoded.mDays.size());
+        for (int i = 0; i < decoded.mDays.size(); i++) {
+            double[] expected = fromJson.mDays.get(i);
+            double[] actual = decoded.mDays.get(i);
+            for (int j = 0; j < expected.length; j++) {
+                assertEquals("Error: day " + i + " differs: " + Arrays.toString(actual),
+                        expected[j], actual[j], j == 6 ? 0.5 : PRECISION);
+            }
+        }
+    }
+
+    public void testBelowZeroAndUnicode() throws Exception {
+        BinaryForecast.Writer writer = new BinaryForecast.Writer();
+        writer.onCity(3448439, "S\u00e3o Paulo", -23.5475, -46.63611, 1);
+        writer.onDay(0, 600, "Snow", -12.34, -0.5, 100, 1040.5, 0, 359);
+
+        RecordingHandler decoded = new RecordingHandler();
+        BinaryForecast.decode(writer.toByteArray(), decoded);
+        assertEquals("S\u00e3o Paulo", decoded.mCityName);
+        assertEquals(-23.5475, decoded.mLatitude, 1e-6);
+        double[] day = decoded.mDays.get(0);
+        assertEquals(600, day[0], 0);
+        assertEquals(-12.3, day[1], 1e-9);
+        assertEquals(-0.5, day[2], 1e-9);
+        assertEquals(100, day[3], 0);
+        assertEquals(1040.5, day[4], 1e-9);
+        assertEquals(359, day[6], 0);
+    }
+
+    public void testError() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                BinaryForecast.decode(BinaryForecast.error(HttpURLConnection.HTTP_NOT_FOUND),
+                        handler));
+        assertEquals("Error: the handler should hear nothing of an error", -1,
+                handler.mDayCount);
+    }
+
+    public void testMalformed() {
+        BinaryForecast.Writer writer = new BinaryForecast.Writer();
+        writer.onCity(5375480, "Mountain View", 37.38605, -122.08385, 1);
+        writer.onDay(0, 800, "Clear", 10, 20, 50, 1013, 3, 90);
+        byte[] message = writer.toByteArray();
+        try {
+            BinaryForecast.decode(Arrays.copyOf(message, message.length - 1),
+                    new RecordingHandler());
+            fail("Error: a message cut short should not decode");
+        } catch (EOFException e) {
+            // Expected
+        } catch (IOException e) {
+            fail("Error: a message cut short should be an EOFException");
+        }
+        try {
+            BinaryForecast.decode(OwmFixtures.forecastJson("Mountain View", 1).getBytes(),
+                    new RecordingHandler());
+            fail("Error: JSON is not a binary forecast");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
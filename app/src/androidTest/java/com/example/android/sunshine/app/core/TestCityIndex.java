@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import android.test.AndroidTestCase;
+
+import java.nio.ByteBuffer;
+
+/*
+    Prefix search and the check of a location setting, over a small index built in memory.
+ */
+public class TestCityIndex extends AndroidTestCase {
+
+    private CityIndex mIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        CityIndex.Writer writer = new CityIndex.Writer();
+        assertTrue(writer.add(5375480, "Mountain View", "US", 37.38605, -122.08385));
+        assertTrue(writer.add(5601538, "Mountain Home", "us", 43.13295, -115.69120));
+        assertTrue(writer.add(3448439, "S\u00e3o Paulo", "BR", -23.5475, -46.63611));
+        assertTrue(writer.add(2988507, "Paris", "FR", 48.85341, 2.3488));
+        assertTrue(writer.add(4717560, "Paris", "US", 33.66094, -95.55551));
+        assertFalse("Error: a city without a name was added", writer.add(1, " - ", "US", 0, 0));
+        mIndex = CityIndex.wrap(ByteBuffer.wrap(writer.toByteArray()));
+        assertNotNull(mIndex);
+    }
+
+    public void testFindPrefix() {
+        assertEquals(5, mIndex.size());
+
+        int[] found = mIndex.findPrefix("mOUNT", 10);
+        assertEquals(2, found.length);
+        // In the order of their keys
+        assertEquals("Mountain Home, US", mIndex.getLocationSetting(found[0]));
+        assertEquals("Mountain View, US", mIndex.getLocationSetting(found[1]));
+        assertEquals(5375480, mIndex.getId(found[1]));
+        assertEquals(37.38605, mIndex.getLatitude(found[1]), 1e-5);
+        assertEquals(-122.08385, mIndex.getLongitude(found[1]), 1e-5);
+
+        found = mIndex.findPrefix("sao  p", 10);
+        assertEquals(1, found.length);
+        assertEquals("S\u00e3o Paulo", mIndex.getName(found[0]));
+        assertEquals("BR", mIndex.getCountry(found[0]));
+
+        assertEquals(1, mIndex.findPrefix("mount", 1).length);
+        assertEquals(0, mIndex.findPrefix("mountains", 10).length);
+        assertEquals(0, mIndex.findPrefix("", 10).length);
+        assertEquals(0, mIndex.findPrefix("zz", 10).length);
+    }
+
+    public void testAccepts() {
+        assertTrue(mIndex.accepts("Paris"));
+        assertTrue(mIndex.accepts("paris, fr"));
+        assertTrue(mIndex.accepts("Mountain View, CA, US"));
+        assertFalse(mIndex.accepts("Paris, DE"));
+        assertFalse("Error: a prefix was taken for a city", mIndex.accepts("Mountain"));
+        assertFalse(mIndex.accepts("Montain View"));
+        // Postal codes and coordinates aren't in the index
+        assertTrue(mIndex.accepts("94043"));
+        assertTrue(mIndex.accepts("37.38,-122.08"));
+    }
+
+    public void testWrapRejectsOtherData() {
+        assertNull(CityIndex.wrap(ByteBuffer.allocate(8)));
+        assertNull(CityIndex.wrap(ByteBuffer.allocate(64)));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.ChangeEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Every write to the weather table lands in the change log as one entry per day, after the
+    sequence number a follower last saw.  The log keeps the latest entry of a day and a bounded
+    number of entries, a reset stands in for what it dropped.
+ */
+public class TestChangeFeed extends AndroidTestCase {
+
+    private static final String OTHER_LOCATION = "changed-elsewhere";
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int CHANGED_DAY = 3;
+
+    private long mLocationRowId;
+    private ContentValues[] mForecast;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        // The provider normalizes the dates of the values in place
+        mForecast = TestProvider.createBulkInsertWeatherValues(mLocationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, mForecast);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testWritesAreLogged() {
+        long sequence = getLatestSequence();
+        assertTrue("Error: the forecast wasn't logged", sequence > 0);
+        long date = mForecast[CHANGED_DAY].getAsLong(WeatherEntry.COLUMN_DATE);
+
+        ContentValues changed = new ContentValues();
+        changed.put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        assertEquals(1, mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, changed,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(mLocationRowId), Long.toString(date)}));
+
+        Cursor cursor = queryChanges(ChangeEntry.buildChangesSince(sequence));
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEntry(cursor, ChangeEntry.OP_UPDATE, date);
+        long updateSequence = cursor.getLong(cursor.getColumnIndex(ChangeEntry._ID));
+        assertTrue(updateSequence > sequence);
+        assertEquals(updateSequence, getLatestSequence());
+        cursor.close();
+
+        // The delete replaces the entry of the update, a follower only sees where the day ended
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(date)});
+        cursor = queryChanges(ChangeEntry.buildChangesSince(sequence));
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEntry(cursor, ChangeEntry.OP_DELETE, date);
+        assertTrue(cursor.getLong(cursor.getColumnIndex(ChangeEntry._ID)) > updateSequence);
+        cursor.close();
+    }
+
+    // A sync that brings the same forecast changes no row, and logs nothing
+    public void testUnchangedSyncLogsNothing() {
+        long sequence = getLatestSequence();
+        assertEquals(0, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                mForecast));
+        assertEquals(sequence, getLatestSequence());
+    }
+
+    public void testChangesOfOneLocation() {
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, OTHER_LOCATION);
+        long otherLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, otherLocation));
+        long sequence = getLatestSequence();
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(otherLocationRowId));
+
+        Cursor cursor = queryChanges(
+                ChangeEntry.buildChangesSince(TestUtilities.TEST_LOCATION, sequence));
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+        cursor = queryChanges(ChangeEntry.buildChangesSince(OTHER_LOCATION, sequence));
+        assertEquals(TestProvider.BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        long previous = sequence;
+        while (cursor.moveToNext()) {
+            assertEquals(ChangeEntry.OP_INSERT,
+                    cursor.getInt(cursor.getColumnIndex(ChangeEntry.COLUMN_OP)));
+            long entrySequence = cursor.getLong(cursor.getColumnIndex(ChangeEntry._ID));
+            assertTrue("Error: the entries aren't in sequence", entrySequence > previous);
+            previous = entrySequence;
+        }
+        cursor.close();
+    }
+
+    // Renaming a location changes every day read with it
+    public void testLocationUpdateResets() {
+        long sequence = getLatestSequence();
+        ContentValues renamed = new ContentValues();
+        renamed.put(LocationEntry.COLUMN_CITY_NAME, "Santa's Village");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, renamed,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TestUtilities.TEST_LOCATION});
+
+        Cursor cursor = queryChanges(
+                ChangeEntry.buildChangesSince(TestUtilities.TEST_LOCATION, sequence));
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(ChangeEntry.OP_RESET,
+                cursor.getInt(cursor.getColumnIndex(ChangeEntry.COLUMN_OP)));
+        cursor.close();
+    }
+
+    public void testRetentionIsBounded() {
+        int batches = ChangeEntry.MAX_ENTRIES / TestProvider.BULK_INSERT_RECORDS_TO_INSERT + 2;
+        for (int batch = 1; batch <= batches; batch++) {
+            ContentValues[] days = TestProvider.createBulkInsertWeatherValues(mLocationRowId);
+            for (ContentValues day : days) {
+                day.put(WeatherEntry.COLUMN_DATE, day.getAsLong(WeatherEntry.COLUMN_DATE)
+                        + batch * TestProvider.BULK_INSERT_RECORDS_TO_INSERT * DAY_IN_MILLIS);
+            }
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+        }
+        long latest = getLatestSequence();
+
+        // A follower from the start fell behind what the log keeps
+        Cursor cursor = queryChanges(ChangeEntry.buildChangesSince(0));
+        assertEquals(ChangeEntry.MAX_ENTRIES + 1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(ChangeEntry.OP_RESET,
+                cursor.getInt(cursor.getColumnIndex(ChangeEntry.COLUMN_OP)));
+        cursor.close();
+
+        // A recent one didn't, and sees no reset
+        cursor = queryChanges(ChangeEntry.buildChangesSince(latest - 5));
+        assertEquals(5, cursor.getCount());
+        while (cursor.moveToNext()) {
+            assertEquals(ChangeEntry.OP_INSERT,
+                    cursor.getInt(cursor.getColumnIndex(ChangeEntry.COLUMN_OP)));
+        }
+        cursor.close();
+    }
+
+    private static void assertEntry(Cursor cursor, int op, long date) {
+        assertEquals(op, cursor.getInt(cursor.getColumnIndex(ChangeEntry.COLUMN_OP)));
+        assertEquals(date, cursor.getLong(cursor.getColumnIndex(ChangeEntry.COLUMN_DATE)));
+        assertEquals(TestUtilities.TEST_LOCATION, cursor.getString(
+                cursor.getColumnIndex(ChangeEntry.COLUMN_LOCATION_SETTING)));
+    }
+
+    private long getLatestSequence() {
+        Cursor cursor = queryChanges(ChangeEntry.buildLatestUri());
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(cursor.getColumnIndex(ChangeEntry._ID));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Cursor queryChanges(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        return cursor;
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -20,6 +20,8 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
+import com.example.android.sunshine.app.core.GeoGrid;
+
 import java.util.HashSet;
 
 public class TestDb extends AndroidTestCase {
@@ -55,6 +57,11 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.HourlyEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.CurrentEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.HistoryEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.StatsEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.ChangeEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -91,6 +98,9 @@ public class TestDb extends AndroidTestCase {
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LAT);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LONG);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_GRID_CELL);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_CANONICAL_ID);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_CITY_ID);
 
         int columnNameIndex = c.getColumnIndex("name");
         do {
@@ -177,6 +187,130 @@ public class TestDb extends AndroidTestCase {
     }
 
 
+    /*
+        The hourly range query by (location, time) must be served by the index of the unique
+        constraint, not by a scan of every location's rows.
+     */
+    public void testHourlyRangeUsesIndex() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN SELECT * FROM " +
+                WeatherContract.HourlyEntry.TABLE_NAME + " WHERE " +
+                WeatherContract.HourlyEntry.COLUMN_LOC_KEY + " = ? AND " +
+                WeatherContract.HourlyEntry.COLUMN_TIME + " >= ? AND " +
+                WeatherContract.HourlyEntry.COLUMN_TIME + " < ?",
+                new String[]{"1", "0", "1000"});
+        StringBuilder details = new StringBuilder();
+        while (plan.moveToNext()) {
+            details.append(plan.getString(plan.getColumnIndex("detail"))).append('\n');
+        }
+        plan.close();
+        dbHelper.close();
+
+        assertTrue("Error: the hourly range query doesn't use an index: " + details,
+                details.toString().contains("INDEX"));
+    }
+
+    /*
+        A version 6 database, the last one before the location grid, upgrades in place: its
+        locations get their cells and the columns added later, the lost humidity of its history
+        becomes null and the summaries are computed from its days.  The schema is the one version
+        6 created, not the current one.
+     */
+    public void testUpgradeFromVersion6() {
+        SQLiteDatabase oldDb = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+        oldDb.execSQL("CREATE TABLE location (_id INTEGER PRIMARY KEY, " +
+                "location_setting TEXT UNIQUE NOT NULL, city_name TEXT NOT NULL, " +
+                "coord_lat REAL NOT NULL, coord_long REAL NOT NULL);");
+        oldDb.execSQL("CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "location_id INTEGER NOT NULL, date INTEGER NOT NULL, " +
+                "short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL, " +
+                "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+                "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+                "UNIQUE (date, location_id) ON CONFLICT REPLACE);");
+        oldDb.execSQL("CREATE TABLE hourly (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "location_id INTEGER NOT NULL, time INTEGER NOT NULL, " +
+                "short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL, " +
+                "temp REAL NOT NULL, humidity REAL NOT NULL, pressure REAL NOT NULL, " +
+                "wind REAL NOT NULL, degrees REAL NOT NULL, " +
+                "UNIQUE (location_id, time) ON CONFLICT REPLACE);");
+        oldDb.execSQL("CREATE TABLE history (_id INTEGER PRIMARY KEY, " +
+                "location_id INTEGER NOT NULL, period INTEGER NOT NULL, " +
+                "start INTEGER NOT NULL, min REAL NOT NULL, max REAL NOT NULL, " +
+                "mean REAL NOT NULL, humidity REAL NOT NULL, days INTEGER NOT NULL, " +
+                "UNIQUE (location_id, period, start) ON CONFLICT REPLACE);");
+        oldDb.execSQL("CREATE TABLE stats (_id INTEGER PRIMARY KEY, " +
+                "location_id INTEGER NOT NULL, month INTEGER NOT NULL, " +
+                "days INTEGER NOT NULL, min REAL NOT NULL, max REAL NOT NULL, " +
+                "warmest_date INTEGER NOT NULL, mean REAL NOT NULL, humidity REAL NOT NULL, " +
+                "UNIQUE (location_id, month) ON CONFLICT REPLACE);");
+        oldDb.execSQL("CREATE TABLE change_log (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "location_id INTEGER, date INTEGER, op INTEGER NOT NULL);");
+
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        long locationRowId = oldDb.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                locationValues);
+        assertTrue(locationRowId != -1);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE * 1000);
+        assertTrue(oldDb.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                weatherValues) != -1);
+        ContentValues historyValues = new ContentValues();
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_LOC_KEY, locationRowId);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_PERIOD,
+                WeatherContract.HistoryEntry.PERIOD_DAY);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_START,
+                TestUtilities.TEST_DATE * 1000 - 24 * 60 * 60 * 1000L);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_MIN_TEMP, 60);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_MAX_TEMP, 70);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_MEAN_TEMP, 65);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_MEAN_HUMIDITY, 0);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_DAYS, 1);
+        assertTrue(oldDb.insert(WeatherContract.HistoryEntry.TABLE_NAME, null,
+                historyValues) != -1);
+        oldDb.setVersion(6);
+        oldDb.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_GRID_CELL,
+                        WeatherContract.LocationEntry.COLUMN_CANONICAL_ID,
+                        WeatherContract.LocationEntry.COLUMN_CITY_ID},
+                null, null, null, null, null);
+        assertTrue("Error: the location was lost in the upgrade", cursor.moveToFirst());
+        assertEquals(GeoGrid.cellOf(
+                        locationValues.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LAT),
+                        locationValues.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LONG)),
+                cursor.getInt(0));
+        assertTrue(cursor.isNull(1));
+        assertTrue(cursor.isNull(2));
+        cursor.close();
+
+        cursor = db.query(WeatherContract.HistoryEntry.TABLE_NAME,
+                new String[]{WeatherContract.HistoryEntry.COLUMN_MEAN_HUMIDITY},
+                null, null, null, null, null);
+        assertTrue("Error: the history was lost in the upgrade", cursor.moveToFirst());
+        assertTrue("Error: a lost humidity should be null", cursor.isNull(0));
+        cursor.close();
+
+        cursor = db.query(WeatherContract.StatsEntry.TABLE_NAME,
+                new String[]{WeatherContract.StatsEntry.COLUMN_DAYS},
+                WeatherContract.StatsEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(locationRowId)}, null, null, null);
+        int days = 0;
+        while (cursor.moveToNext()) {
+            days += cursor.getInt(0);
+        }
+        cursor.close();
+        assertEquals("Error: the summaries should count the forecast day and the archived day",
+                2, days);
+        dbHelper.close();
+    }
+
     /*
         Students: This is a helper method for the testWeatherTable quiz. You can move your
         code from testLocationTable to here so that you can call this code from both
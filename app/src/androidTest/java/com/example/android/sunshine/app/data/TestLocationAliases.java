@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.ChangeEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    An alias reads, and is notified of, the rows stored under its place's first setting, and
+    goes back to being a place of its own when that one is deleted.
+ */
+public class TestLocationAliases extends AndroidTestCase {
+
+    private static final String ALIAS = "North Pole, US";
+
+    private long mLocationRowId;
+    private long mAliasRowId;
+    private long mSequence;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        ContentValues alias = TestUtilities.createNorthPoleLocationValues();
+        alias.put(LocationEntry.COLUMN_LOCATION_SETTING, ALIAS);
+        alias.put(LocationEntry.COLUMN_CANONICAL_ID, mLocationRowId);
+        mAliasRowId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, alias));
+        mSequence = getLatestSequence();
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(mLocationRowId));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private long getLatestSequence() {
+        Cursor cursor = mContext.getContentResolver().query(
+                ChangeEntry.buildLatestUri(), null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(cursor.getColumnIndex(ChangeEntry._ID));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testAliasReadsThePlace() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(ALIAS), null, null, null, null);
+        assertEquals(TestProvider.BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: the alias row didn't come with the forecast", ALIAS,
+                cursor.getString(cursor.getColumnIndex(LocationEntry.COLUMN_LOCATION_SETTING)));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                ChangeEntry.buildChangesSince(ALIAS, mSequence), null, null, null, null);
+        assertEquals(TestProvider.BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testAliasIsNotified() {
+        TestUtilities.TestContentObserver tco = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(ALIAS), true, tco);
+        ContentValues changed = new ContentValues();
+        changed.put(WeatherEntry.COLUMN_MAX_TEMP, 42);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, changed,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(mLocationRowId)});
+        tco.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(tco);
+    }
+
+    public void testDeletingThePlaceReleasesAliases() {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(mLocationRowId)});
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_CANONICAL_ID}, LocationEntry._ID + " = ?",
+                new String[]{Long.toString(mAliasRowId)}, null);
+        assertTrue(cursor.moveToFirst());
+        assertTrue("Error: the alias still points to a deleted location", cursor.isNull(0));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(ALIAS), null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.core.GeoGrid;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+/*
+    The provider keeps the grid cell of a location with its coordinates, and the nearest
+    locations come closest first, within the distance, across the antimeridian too.
+ */
+public class TestNearestLocations extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        insertLocation("94043", "Mountain View", 37.3861, -122.0839);
+        insertLocation("95014", "Cupertino", 37.3230, -122.0322);
+        insertLocation("94102", "San Francisco", 37.7793, -122.4193);
+        insertLocation("10001", "New York", 40.7506, -73.9972);
+        insertLocation("suva", "Suva", -18.1416, 178.4419);
+        insertLocation("apia", "Apia", -13.8333, -171.7667);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private void insertLocation(String setting, String city, double latitude, double longitude) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, setting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, city);
+        values.put(LocationEntry.COLUMN_COORD_LAT, latitude);
+        values.put(LocationEntry.COLUMN_COORD_LONG, longitude);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+    }
+
+    public void testNearest() {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(37.39, -122.08, 40, 10),
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING, LocationEntry.COLUMN_DISTANCE},
+                null, null, null);
+        assertNotNull(cursor);
+        assertEquals("Error: San Francisco is farther than 40 km", 2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("94043", cursor.getString(0));
+        assertTrue(cursor.getDouble(1) < 1);
+        assertTrue(cursor.moveToNext());
+        assertEquals("95014", cursor.getString(0));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(37.39, -122.08, 100, 1), null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Mountain View",
+                cursor.getString(cursor.getColumnIndex(LocationEntry.COLUMN_CITY_NAME)));
+        cursor.close();
+    }
+
+    public void testNearestAcrossAntimeridian() {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(-16, 179.9, 1200, 10),
+                new String[]{LocationEntry.COLUMN_CITY_NAME}, null, null, null);
+        assertEquals(2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Suva", cursor.getString(0));
+        assertTrue(cursor.moveToNext());
+        assertEquals("Apia", cursor.getString(0));
+        cursor.close();
+    }
+
+    public void testCellFollowsCoordinates() {
+        ContentValues moved = new ContentValues();
+        moved.put(LocationEntry.COLUMN_COORD_LAT, 51.5074);
+        moved.put(LocationEntry.COLUMN_COORD_LONG, -0.1278);
+        assertEquals(1, mContext.getContentResolver().update(LocationEntry.CONTENT_URI, moved,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{"10001"}));
+        assertEquals(GeoGrid.cellOf(51.5074, -0.1278), getCell("10001"));
+
+        // One coordinate alone moves the location too
+        ContentValues north = new ContentValues();
+        north.put(LocationEntry.COLUMN_COORD_LAT, 55.9533);
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, north,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{"10001"});
+        assertEquals(GeoGrid.cellOf(55.9533, -0.1278), getCell("10001"));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestUri(40.75, -74, 50, 10), null, null, null, null);
+        assertEquals("Error: the location was found where it used to be", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    private int getCell(String setting) {
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_GRID_CELL},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{setting}, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
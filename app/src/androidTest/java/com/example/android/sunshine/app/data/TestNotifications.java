@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Counts the reloads a sync causes in the two pane MainActivity.  Its list and detail loaders
+    observe the URIs they queried, with descendants, like Cursor.setNotificationUri does; the
+    observers here stand in for them, plus the loaders of a second location and of another day.
+ */
+public class TestNotifications extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestNotifications.class.getSimpleName();
+
+    private static final String LOCATION_SETTING = "notified";
+    private static final String OTHER_LOCATION_SETTING = "not-notified";
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int FORECAST_DAYS = 14;
+    private static final int CHANGED_DAY = 3;
+    private static final int SELECTED_DAY = 5;
+    // Time for notifications that shouldn't come to arrive anyway
+    private static final long SETTLE_MILLIS = 500;
+
+    private final List<CountingObserver> mObservers = new ArrayList<CountingObserver>();
+
+    private long mLocationId;
+    private long mOtherLocationId;
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mLocationId = insertLocation(LOCATION_SETTING);
+        mOtherLocationId = insertLocation(OTHER_LOCATION_SETTING);
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.bulkInsert(WeatherEntry.CONTENT_URI, createForecast(mLocationId, 0, 0));
+        resolver.bulkInsert(WeatherEntry.CONTENT_URI, createForecast(mOtherLocationId, 0, 0));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (CountingObserver observer : mObservers) {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.mHT.quit();
+        }
+        deleteAll();
+        super.tearDown();
+    }
+
+    // A sync that changes one day reloads the list and that day only
+    public void testSyncReloadsChangedDay() {
+        CountingObserver list = observe(
+                WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, mToday));
+        CountingObserver changedDetail = observe(WeatherEntry.buildWeatherLocationWithDate(
+                LOCATION_SETTING, getDay(CHANGED_DAY)));
+        CountingObserver selectedDetail = observe(WeatherEntry.buildWeatherLocationWithDate(
+                LOCATION_SETTING, getDay(SELECTED_DAY)));
+        CountingObserver otherList = observe(
+                WeatherEntry.buildWeatherLocationWithStartDate(OTHER_LOCATION_SETTING, mToday));
+        CountingObserver stats = observe(StatsEntry.buildStatsLocation(LOCATION_SETTING));
+        CountingObserver otherStats = observe(
+                StatsEntry.buildStatsLocation(OTHER_LOCATION_SETTING));
+
+        // What every write used to do: each loader of the activity reloads
+        mContext.getContentResolver().notifyChange(WeatherEntry.CONTENT_URI, null);
+        waitFor(list, changedDetail, selectedDetail, otherList);
+        int broadReloads = getTotal();
+        resetCounts();
+
+        int changed = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createForecast(mLocationId, CHANGED_DAY, 1));
+        assertEquals("Error: only the changed day should have been written", 1, changed);
+        waitFor(list, changedDetail, stats);
+        SystemClock.sleep(SETTLE_MILLIS);
+
+        Log.i(LOG_TAG, "reloads_per_sync_broad=" + broadReloads
+                + " reloads_per_sync_precise=" + getTotal());
+        assertEquals("Error: the detail of an unchanged day reloaded",
+                0, selectedDetail.getCount());
+        assertEquals("Error: the list of another location reloaded", 0, otherList.getCount());
+        assertEquals("Error: the stats of another location reloaded", 0, otherStats.getCount());
+        assertTrue(getTotal() < broadReloads);
+    }
+
+    // Past the cap, the location is notified once instead of each of its days
+    public void testManyChangedDaysNotifyLocation() {
+        CountingObserver list = observe(
+                WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, mToday));
+        CountingObserver selectedDetail = observe(WeatherEntry.buildWeatherLocationWithDate(
+                LOCATION_SETTING, getDay(SELECTED_DAY)));
+        CountingObserver otherList = observe(
+                WeatherEntry.buildWeatherLocationWithStartDate(OTHER_LOCATION_SETTING, mToday));
+
+        int days = ChangeNotifier.MAX_DATES_PER_LOCATION + 1;
+        ContentValues[] forecast = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            forecast[i] = createDay(mLocationId, i, 1);
+        }
+        assertEquals(days, mContext.getContentResolver().bulkInsert(
+                WeatherEntry.CONTENT_URI, forecast));
+        waitFor(list, selectedDetail);
+        SystemClock.sleep(SETTLE_MILLIS);
+
+        assertEquals("Error: the list should reload once", 1, list.getCount());
+        assertEquals("Error: the list of another location reloaded", 0, otherList.getCount());
+    }
+
+    // Deleting a day notifies that day, not the whole table
+    public void testDeleteNotifiesDeletedDay() {
+        CountingObserver changedDetail = observe(WeatherEntry.buildWeatherLocationWithDate(
+                LOCATION_SETTING, getDay(CHANGED_DAY)));
+        CountingObserver selectedDetail = observe(WeatherEntry.buildWeatherLocationWithDate(
+                LOCATION_SETTING, getDay(SELECTED_DAY)));
+        CountingObserver otherList = observe(
+                WeatherEntry.buildWeatherLocationWithStartDate(OTHER_LOCATION_SETTING, mToday));
+
+        int deleted = mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(mLocationId), Long.toString(getDay(CHANGED_DAY))});
+        assertEquals(1, deleted);
+        waitFor(changedDetail);
+        SystemClock.sleep(SETTLE_MILLIS);
+
+        assertEquals(0, selectedDetail.getCount());
+        assertEquals(0, otherList.getCount());
+    }
+
+    private CountingObserver observe(Uri uri) {
+        HandlerThread ht = new HandlerThread("CountingObserverThread");
+        ht.start();
+        CountingObserver observer = new CountingObserver(ht);
+        // The descendants flag matches what Cursor.setNotificationUri registers with
+        mContext.getContentResolver().registerContentObserver(uri, true, observer);
+        mObservers.add(observer);
+        return observer;
+    }
+
+    private void waitFor(final CountingObserver... observers) {
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                for (CountingObserver observer : observers) {
+                    if (observer.getCount() == 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }.run();
+    }
+
+    private int getTotal() {
+        int total = 0;
+        for (CountingObserver observer : mObservers) {
+            total += observer.getCount();
+        }
+        return total;
+    }
+
+    private void resetCounts() {
+        SystemClock.sleep(SETTLE_MILLIS);
+        for (CountingObserver observer : mObservers) {
+            observer.reset();
+        }
+    }
+
+    private long getDay(int day) {
+        return mToday + day * DAY_IN_MILLIS;
+    }
+
+    // The forecast a sync returns, with the given day warmer by delta
+    private ContentValues[] createForecast(long locationId, int changedDay, double delta) {
+        ContentValues[] forecast = new ContentValues[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            forecast[i] = createDay(locationId, i, i == changedDay ? delta : 0);
+        }
+        return forecast;
+    }
+
+    private ContentValues createDay(long locationId, int day, double delta) {
+        ContentValues weather = new ContentValues();
+        weather.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        weather.put(WeatherEntry.COLUMN_DATE, getDay(day));
+        weather.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        weather.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        weather.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        weather.put(WeatherEntry.COLUMN_MAX_TEMP, 75.0 + delta);
+        weather.put(WeatherEntry.COLUMN_MIN_TEMP, 65.0);
+        weather.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        weather.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        weather.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        return weather;
+    }
+
+    private long insertLocation(String locationSetting) {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        location.put(LocationEntry.COLUMN_CITY_NAME, locationSetting);
+        location.put(LocationEntry.COLUMN_COORD_LAT, 1.0);
+        location.put(LocationEntry.COLUMN_COORD_LONG, 1.0);
+        return ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+    }
+
+    private void deleteAll() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    static class CountingObserver extends ContentObserver {
+        final HandlerThread mHT;
+        private int mCount;
+
+        CountingObserver(HandlerThread ht) {
+            super(new Handler(ht.getLooper()));
+            mHT = ht;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public synchronized void onChange(boolean selfChange, Uri uri) {
+            mCount++;
+        }
+
+        synchronized int getCount() {
+            return mCount;
+        }
+
+        synchronized void reset() {
+            mCount = 0;
+        }
+    }
+}
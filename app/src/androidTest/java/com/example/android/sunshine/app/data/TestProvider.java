@@ -27,7 +27,11 @@ import android.os.Build;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.CurrentEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /*
@@ -56,6 +60,21 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                HourlyEntry.CONTENT_URI,
+                null,
+                null
+        );
+        mContext.getContentResolver().delete(
+                CurrentEntry.CONTENT_URI,
+                null,
+                null
+        );
+        mContext.getContentResolver().delete(
+                HistoryEntry.CONTENT_URI,
+                null,
+                null
+        );
         mContext.getContentResolver().delete(
                 LocationEntry.CONTENT_URI,
                 null,
@@ -422,7 +441,7 @@ public class TestProvider extends AndroidTestCase {
     }
 
 
-    static private final int BULK_INSERT_RECORDS_TO_INSERT = 10;
+    static final int BULK_INSERT_RECORDS_TO_INSERT = 10;
     static ContentValues[] createBulkInsertWeatherValues(long locationRowId) {
         long currentTestDate = TestUtilities.TEST_DATE;
         long millisecondsInADay = 1000*60*60*24;
@@ -512,4 +531,611 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Re-inserting a forecast the provider already holds should not rewrite any rows, while a
+    // single modified day should be reported as the only change.
+    public void testBulkInsertSkipsUnchangedRows() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals("Error: unchanged rows were rewritten by bulkInsert", 0, insertCount);
+
+        ContentValues[] modifiedValues = createBulkInsertWeatherValues(locationRowId);
+        modifiedValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                modifiedValues);
+        assertEquals("Error: bulkInsert did not report the single modified row", 1, insertCount);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+    }
+
+    // A WeatherBatch goes through the same change detection as a bulk insert of ContentValues
+    public void testWeatherBatchInsert() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+        int insertCount = createWeatherBatch(locationRowId, weatherValues)
+                .insert(mContext.getContentResolver());
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        // The same days as ContentValues change nothing
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                weatherValues);
+        assertEquals("Error: the batch and the ContentValues rows differ", 0, insertCount);
+
+        weatherValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99.0);
+        insertCount = createWeatherBatch(locationRowId, weatherValues)
+                .insert(mContext.getContentResolver());
+        assertEquals("Error: the batch did not report the single modified row", 1, insertCount);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP, WeatherEntry.COLUMN_SHORT_DESC},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        assertTrue(cursor.moveToPosition(3));
+        assertEquals(99.0, cursor.getDouble(0));
+        assertEquals("Asteroids", cursor.getString(1));
+        cursor.close();
+    }
+
+    static WeatherBatch createWeatherBatch(long locationRowId, ContentValues[] weatherValues) {
+        WeatherBatch batch = new WeatherBatch(locationRowId, weatherValues.length);
+        for (ContentValues values : weatherValues) {
+            batch.add(values.getAsLong(WeatherEntry.COLUMN_DATE),
+                    values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                    values.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                    values.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                    values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                    values.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+        }
+        return batch;
+    }
+
+    static final int HOURLY_RECORDS_PER_DAY = 8;
+    static final long THREE_HOURS_IN_MILLIS = 3 * 60 * 60 * 1000;
+
+    static ContentValues[] createBulkInsertHourlyValues(long locationRowId, long startTime,
+                                                        int count) {
+        ContentValues[] returnContentValues = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues hourlyValues = new ContentValues();
+            hourlyValues.put(HourlyEntry.COLUMN_LOC_KEY, locationRowId);
+            hourlyValues.put(HourlyEntry.COLUMN_TIME, startTime + i * THREE_HOURS_IN_MILLIS);
+            hourlyValues.put(HourlyEntry.COLUMN_TEMP, 10 + 0.5 * i);
+            hourlyValues.put(HourlyEntry.COLUMN_HUMIDITY, 50.0);
+            hourlyValues.put(HourlyEntry.COLUMN_PRESSURE, 1013.2);
+            hourlyValues.put(HourlyEntry.COLUMN_WIND_SPEED, 4.5);
+            hourlyValues.put(HourlyEntry.COLUMN_DEGREES, 270.0);
+            hourlyValues.put(HourlyEntry.COLUMN_SHORT_DESC, "Clouds");
+            hourlyValues.put(HourlyEntry.COLUMN_WEATHER_ID, 803);
+            returnContentValues[i] = hourlyValues;
+        }
+        return returnContentValues;
+    }
+
+    // Five days of 3 hour entries go in, a range query returns the entries of one day, in order.
+    public void testHourlyRangeQuery() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        long startTime = TestUtilities.TEST_DATE * 1000;
+        ContentValues[] hourlyValues =
+                createBulkInsertHourlyValues(locationRowId, startTime, 5 * HOURLY_RECORDS_PER_DAY);
+
+        TestUtilities.TestContentObserver hourlyObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(HourlyEntry.CONTENT_URI, true,
+                hourlyObserver);
+        int insertCount = mContext.getContentResolver().bulkInsert(HourlyEntry.CONTENT_URI,
+                hourlyValues);
+        hourlyObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(hourlyObserver);
+        assertEquals(hourlyValues.length, insertCount);
+
+        // The second day
+        long dayStart = startTime + HOURLY_RECORDS_PER_DAY * THREE_HOURS_IN_MILLIS;
+        long dayEnd = dayStart + HOURLY_RECORDS_PER_DAY * THREE_HOURS_IN_MILLIS;
+        Cursor cursor = mContext.getContentResolver().query(
+                HourlyEntry.buildHourlyLocationWithRange(TestUtilities.TEST_LOCATION,
+                        dayStart, dayEnd),
+                null, null, null, null);
+        assertEquals("Error: wrong number of entries in the range",
+                HOURLY_RECORDS_PER_DAY, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < HOURLY_RECORDS_PER_DAY; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testHourlyRangeQuery. Error validating entry " + i,
+                    cursor, hourlyValues[HOURLY_RECORDS_PER_DAY + i]);
+        }
+        cursor.close();
+
+        // Hourly rows stay out of the daily table
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    static ContentValues createCurrentValues(long locationRowId, long time, double temperature) {
+        ContentValues currentValues = new ContentValues();
+        currentValues.put(CurrentEntry.COLUMN_LOC_KEY, locationRowId);
+        currentValues.put(CurrentEntry.COLUMN_TIME, time);
+        currentValues.put(CurrentEntry.COLUMN_TEMP, temperature);
+        currentValues.put(CurrentEntry.COLUMN_HUMIDITY, 60.0);
+        currentValues.put(CurrentEntry.COLUMN_PRESSURE, 1009.0);
+        currentValues.put(CurrentEntry.COLUMN_WIND_SPEED, 3.1);
+        currentValues.put(CurrentEntry.COLUMN_DEGREES, 180.0);
+        currentValues.put(CurrentEntry.COLUMN_SHORT_DESC, "Clear");
+        currentValues.put(CurrentEntry.COLUMN_WEATHER_ID, 800);
+        return currentValues;
+    }
+
+    // A place keeps only its latest observation, and observations stay out of the hourly
+    // forecast.  Deleting the place deletes its observation.
+    public void testCurrentWeather() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        long time = TestUtilities.TEST_DATE * 1000;
+
+        TestUtilities.TestContentObserver currentObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(CurrentEntry.CONTENT_URI, true,
+                currentObserver);
+        int insertCount = mContext.getContentResolver().bulkInsert(CurrentEntry.CONTENT_URI,
+                new ContentValues[]{createCurrentValues(locationRowId, time, 12.5)});
+        currentObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(currentObserver);
+        assertEquals(1, insertCount);
+
+        ContentValues latest = createCurrentValues(locationRowId, time + THREE_HOURS_IN_MILLIS,
+                14.0);
+        mContext.getContentResolver().bulkInsert(CurrentEntry.CONTENT_URI,
+                new ContentValues[]{latest});
+        Cursor cursor = mContext.getContentResolver().query(
+                CurrentEntry.buildCurrentLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals("Error: a place should have one observation", 1, cursor.getCount());
+        cursor.moveToFirst();
+        TestUtilities.validateCurrentRecord("testCurrentWeather. Error validating the latest "
+                + "observation", cursor, latest);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(HourlyEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        cursor = mContext.getContentResolver().query(CurrentEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    // Walking the keyset pages of the forecast and of the history returns every row once, in
+    // order, each page holding at most the limit.
+    public void testPagedQueries() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        long[] dates = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            dates[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, dates.length);
+
+        int seen = 0;
+        long after = Long.MIN_VALUE;
+        while (true) {
+            cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationPage(TestUtilities.TEST_LOCATION, after, 3),
+                    new String[]{WeatherEntry.COLUMN_DATE}, null, null, null);
+            assertTrue("Error: page larger than its limit", cursor.getCount() <= 3);
+            if (cursor.getCount() == 0) {
+                cursor.close();
+                break;
+            }
+            while (cursor.moveToNext()) {
+                assertEquals("Error: wrong day at position " + seen, dates[seen++],
+                        cursor.getLong(0));
+            }
+            cursor.moveToLast();
+            after = cursor.getLong(0);
+            cursor.close();
+        }
+        assertEquals("Error: the pages didn't cover every day", dates.length, seen);
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long firstDay = 1412899200000L;
+        for (int i = 0; i < 25; i++) {
+            db.insert(HistoryEntry.TABLE_NAME, null,
+                    createHistoryDayValues(locationRowId, firstDay + i * DAY_IN_MILLIS, i));
+        }
+        dbHelper.close();
+
+        // The first page of a range, then the one after it
+        Uri range = HistoryEntry.buildHistoryLocationWithRange(TestUtilities.TEST_LOCATION,
+                firstDay + DAY_IN_MILLIS, firstDay + 20 * DAY_IN_MILLIS);
+        cursor = mContext.getContentResolver().query(WeatherContract.buildFirstPageUri(range, 10),
+                null, null, null, HistoryEntry.COLUMN_START + " DESC");
+        assertEquals(10, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: the first page should ignore the sort order", firstDay + DAY_IN_MILLIS,
+                cursor.getLong(cursor.getColumnIndex(HistoryEntry.COLUMN_START)));
+        cursor.moveToLast();
+        long lastStart = cursor.getLong(cursor.getColumnIndex(HistoryEntry.COLUMN_START));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.buildPageUri(range, lastStart, 10), null, null, null, null);
+        assertEquals("Error: the last page should stop at the end of the range",
+                9, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(lastStart + DAY_IN_MILLIS,
+                cursor.getLong(cursor.getColumnIndex(HistoryEntry.COLUMN_START)));
+        cursor.close();
+    }
+
+    // Deleting through the archive URI moves past days to the history instead of dropping them.
+    public void testArchiveWeather() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        long cutoff = weatherValues[4].getAsLong(WeatherEntry.COLUMN_DATE);
+        int archived = mContext.getContentResolver().delete(WeatherEntry.buildArchiveUri(),
+                WeatherEntry.COLUMN_DATE + " <= ?", new String[]{Long.toString(cutoff)});
+        assertEquals("Error: wrong number of days archived", 5, archived);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 5, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                HistoryEntry.buildHistoryLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals("Error: archived days missing from the history", 5, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < 5; i++, cursor.moveToNext()) {
+            ContentValues expected = new ContentValues();
+            expected.put(HistoryEntry.COLUMN_PERIOD, HistoryEntry.PERIOD_DAY);
+            expected.put(HistoryEntry.COLUMN_START, WeatherContract.normalizeDate(
+                    weatherValues[i].getAsLong(WeatherEntry.COLUMN_DATE)));
+            expected.put(HistoryEntry.COLUMN_MIN_TEMP, weatherValues[i].getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
+            expected.put(HistoryEntry.COLUMN_MAX_TEMP, weatherValues[i].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP));
+            expected.put(HistoryEntry.COLUMN_DAYS, 1);
+            TestUtilities.validateCurrentRecord("testArchiveWeather. Error validating day " + i,
+                    cursor, expected);
+        }
+        cursor.close();
+    }
+
+    // Old days are folded into weeks, old weeks into months, keeping min, max and weighted means.
+    public void testCompactHistory() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        long now = WeatherStats.getMonthStart(1419033600000L) + 10 * DAY_IN_MILLIS;
+        // Two full years of days, the most recent one ending today
+        int days = 2 * 365;
+        long firstDay = (now / DAY_IN_MILLIS - (days - 1)) * DAY_IN_MILLIS;
+        db.beginTransaction();
+        for (int i = 0; i < days; i++) {
+            db.insert(HistoryEntry.TABLE_NAME, null,
+                    createHistoryDayValues(locationRowId, firstDay + i * DAY_IN_MILLIS, i % 10));
+        }
+        db.setTransactionSuccessful();
+        db.endTransaction();
+
+        int removed = mContext.getContentResolver().delete(
+                HistoryEntry.buildCompactionUri(now), null, null);
+        assertTrue("Error: nothing was downsampled", removed > 0);
+
+        long weekCutoff = WeatherProvider.getWeekStart(now - HistoryEntry.DAYS_RETENTION);
+        long monthCutoff = WeatherStats.getMonthStart(now - HistoryEntry.WEEKS_RETENTION);
+        Cursor cursor = mContext.getContentResolver().query(
+                HistoryEntry.buildHistoryLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        int totalDays = 0;
+        long previousStart = -1;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        while (cursor.moveToNext()) {
+            int period = cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_PERIOD));
+            long start = cursor.getLong(cursor.getColumnIndex(HistoryEntry.COLUMN_START));
+            assertTrue("Error: history rows overlap or are out of order", start > previousStart);
+            previousStart = start;
+            if (start < monthCutoff) {
+                assertEquals("Error: old weeks were not folded into months",
+                        HistoryEntry.PERIOD_MONTH, period);
+                assertEquals(start, WeatherStats.getMonthStart(start));
+            } else if (start < weekCutoff) {
+                assertEquals("Error: old days were not folded into weeks",
+                        HistoryEntry.PERIOD_WEEK, period);
+                assertEquals(start, WeatherProvider.getWeekStart(start));
+            } else {
+                assertEquals(HistoryEntry.PERIOD_DAY, period);
+            }
+            totalDays += cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_DAYS));
+            min = Math.min(min, cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_MIN_TEMP)));
+            max = Math.max(max, cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_MAX_TEMP)));
+        }
+        assertTrue("Error: the history should be much smaller than the days it covers",
+                cursor.getCount() < days / 3);
+        cursor.close();
+        assertEquals("Error: days were lost while downsampling", days, totalDays);
+        assertEquals(0.0, min);
+        assertEquals(19.0, max);
+
+        // Every week of a steady 0..9 cycle has a mean within the range of its days
+        cursor = mContext.getContentResolver().query(HistoryEntry.CONTENT_URI, null,
+                HistoryEntry.COLUMN_PERIOD + " = ?",
+                new String[]{Integer.toString(HistoryEntry.PERIOD_WEEK)}, null);
+        assertTrue(cursor.getCount() > 0);
+        while (cursor.moveToNext()) {
+            double mean = cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_MEAN_TEMP));
+            assertTrue("Error: weekly mean out of range: " + mean, mean >= 5.0 && mean <= 14.0);
+        }
+        cursor.close();
+
+        // Compacting again changes nothing
+        assertEquals(0, mContext.getContentResolver().delete(
+                HistoryEntry.buildCompactionUri(now), null, null));
+        dbHelper.close();
+    }
+
+    public void testWeekAndMonthStart() {
+        // Monday December 15th, 2014 and December 1st, 2014, midnight UTC
+        long saturday = 1419033600000L;
+        assertEquals(1418601600000L, WeatherProvider.getWeekStart(saturday));
+        assertEquals(1417392000000L, WeatherStats.getMonthStart(saturday));
+    }
+
+    // A day whose min is 'value' and whose max is 'value' + 10
+    static ContentValues createHistoryDayValues(long locationRowId, long day, double value) {
+        ContentValues values = new ContentValues();
+        values.put(HistoryEntry.COLUMN_LOC_KEY, locationRowId);
+        values.put(HistoryEntry.COLUMN_PERIOD, HistoryEntry.PERIOD_DAY);
+        values.put(HistoryEntry.COLUMN_START, day);
+        values.put(HistoryEntry.COLUMN_MIN_TEMP, value);
+        values.put(HistoryEntry.COLUMN_MAX_TEMP, value + 10);
+        values.put(HistoryEntry.COLUMN_MEAN_TEMP, value + 5);
+        values.put(HistoryEntry.COLUMN_MEAN_HUMIDITY, 50 + value);
+        values.put(HistoryEntry.COLUMN_DAYS, 1);
+        return values;
+    }
+
+    // Range statistics over history and forecast days match a scan of the same days, for ranges
+    // made of whole months, partial months, or both, and follow later inserts.
+    public void testStatsRange() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // 80 days of history from October 10th, 2014, then a 14 day forecast
+        long firstDay = 1412899200000L;
+        int historyDays = 80;
+        int forecastDays = 14;
+        double[][] days = new double[historyDays + forecastDays][];
+        db.beginTransaction();
+        for (int i = 0; i < historyDays; i++) {
+            long day = firstDay + i * DAY_IN_MILLIS;
+            double value = (i * 7) % 23;
+            db.insert(HistoryEntry.TABLE_NAME, null,
+                    createHistoryDayValues(locationRowId, day, value));
+            days[i] = new double[]{day, value, value + 10, value + 5, 50 + value};
+        }
+        // The history was written directly, summarize it as an upgrade would
+        WeatherStats.rebuild(db);
+        db.setTransactionSuccessful();
+        db.endTransaction();
+        dbHelper.close();
+
+        ContentValues[] forecast = new ContentValues[forecastDays];
+        for (int i = 0; i < forecastDays; i++) {
+            long day = WeatherContract.normalizeDate(firstDay + (historyDays + i) * DAY_IN_MILLIS);
+            forecast[i] = createStatsWeatherValues(locationRowId, day, 3 * i, 60 + i);
+            days[historyDays + i] = new double[]{day, 3 * i, 3 * i + 10, 3 * i + 5, 60 + i};
+        }
+
+        TestUtilities.TestContentObserver statsObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(StatsEntry.CONTENT_URI, true,
+                statsObserver);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, forecast);
+        statsObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(statsObserver);
+
+        long lastDay = firstDay + (historyDays + forecastDays) * DAY_IN_MILLIS;
+        long november = 1414800000000L;
+        long december = 1417392000000L;
+        long[][] ranges = {
+                {0, Long.MAX_VALUE},
+                {firstDay, lastDay},
+                {november, december},
+                {firstDay + 5 * DAY_IN_MILLIS, december + 20 * DAY_IN_MILLIS},
+                {november + 3 * DAY_IN_MILLIS, november + 9 * DAY_IN_MILLIS},
+                {december + 15 * DAY_IN_MILLIS, lastDay + 30 * DAY_IN_MILLIS},
+        };
+        for (long[] range : ranges) {
+            assertStats(days, range[0], range[1]);
+        }
+
+        // Nothing in the range, no row
+        Cursor cursor = mContext.getContentResolver().query(StatsEntry.buildStatsLocationWithRange(
+                TestUtilities.TEST_LOCATION, lastDay, lastDay + 365 * DAY_IN_MILLIS),
+                null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+
+        // A hotter forecast for a day already summarized is picked up
+        long hotDay = (long) days[historyDays + 2][0];
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, new ContentValues[]{
+                createStatsWeatherValues(locationRowId, hotDay, 40, 70)});
+        days[historyDays + 2] = new double[]{hotDay, 40, 50, 45, 70};
+        for (long[] range : ranges) {
+            assertStats(days, range[0], range[1]);
+        }
+
+        // Deleting that day, and a day of the history, refreshes the months they were in
+        assertEquals(1, mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(hotDay)}));
+        days[historyDays + 2] = null;
+        long pastDay = (long) days[30][0];
+        assertEquals(1, mContext.getContentResolver().delete(HistoryEntry.CONTENT_URI,
+                HistoryEntry.COLUMN_START + " = ?", new String[]{Long.toString(pastDay)}));
+        days[30] = null;
+        for (long[] range : ranges) {
+            assertStats(days, range[0], range[1]);
+        }
+    }
+
+    // Days archived before the history kept the humidity have none.  They count for the
+    // temperatures but not for the mean humidity, also once downsampled.
+    public void testStatsWithoutHumidity() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // November 2014: 10 days without a humidity, then 10 days of 50% humidity
+        long november = 1414800000000L;
+        db.beginTransaction();
+        for (int i = 0; i < 20; i++) {
+            ContentValues values = createHistoryDayValues(locationRowId,
+                    november + i * DAY_IN_MILLIS, 0);
+            if (i < 10) {
+                values.putNull(HistoryEntry.COLUMN_MEAN_HUMIDITY);
+            }
+            db.insert(HistoryEntry.TABLE_NAME, null, values);
+        }
+        WeatherStats.rebuild(db);
+        db.setTransactionSuccessful();
+        db.endTransaction();
+        dbHelper.close();
+
+        assertHumidity(november, november + 30 * DAY_IN_MILLIS, 20, 50.0);
+        // A partial month, read from its days
+        assertHumidity(november, november + 15 * DAY_IN_MILLIS, 15, 50.0);
+        assertHumidity(november, november + 10 * DAY_IN_MILLIS, 10, null);
+
+        // Downsampled to weeks, then months, a period keeps the humidity of the days that had
+        // one, or none
+        mContext.getContentResolver().delete(HistoryEntry.buildCompactionUri(
+                november + 500 * DAY_IN_MILLIS), null, null);
+        Cursor cursor = mContext.getContentResolver().query(HistoryEntry.CONTENT_URI,
+                new String[]{HistoryEntry.COLUMN_MEAN_HUMIDITY}, null, null, null);
+        int humid = 0;
+        while (cursor.moveToNext()) {
+            if (!cursor.isNull(0)) {
+                assertEquals("Error: days without a humidity should not lower the mean",
+                        50.0, cursor.getDouble(0), 1e-9);
+                humid++;
+            }
+        }
+        cursor.close();
+        assertEquals(1, humid);
+        // The week of November 1st starts, and now counts, in October
+        long october = 1412121600000L;
+        assertHumidity(october, november + 30 * DAY_IN_MILLIS, 20, 50.0);
+    }
+
+    private void assertHumidity(long start, long end, int days, Double humidity) {
+        Cursor cursor = mContext.getContentResolver().query(StatsEntry.buildStatsLocationWithRange(
+                TestUtilities.TEST_LOCATION, start, end), null, null, null, null);
+        assertTrue("Error: no stats", cursor.moveToFirst());
+        assertEquals(days, cursor.getInt(cursor.getColumnIndex(StatsEntry.COLUMN_DAYS)));
+        int column = cursor.getColumnIndex(StatsEntry.COLUMN_MEAN_HUMIDITY);
+        if (humidity == null) {
+            assertTrue("Error: days without a humidity should have no mean humidity",
+                    cursor.isNull(column));
+        } else {
+            assertEquals("Error: days without a humidity should not lower the mean",
+                    humidity, cursor.getDouble(column), 1e-9);
+        }
+        cursor.close();
+    }
+
+    // Compares the stats URI with the brute force statistics of the days in [start, end)
+    private void assertStats(double[][] days, long start, long end) {
+        int count = 0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        long warmest = 0;
+        double meanSum = 0;
+        double humiditySum = 0;
+        for (double[] day : days) {
+            // Deleted
+            if (day == null || day[0] < start || day[0] >= end) {
+                continue;
+            }
+            count++;
+            min = Math.min(min, day[1]);
+            if (day[2] > max) {
+                max = day[2];
+                warmest = (long) day[0];
+            }
+            meanSum += day[3];
+            humiditySum += day[4];
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(StatsEntry.buildStatsLocationWithRange(
+                TestUtilities.TEST_LOCATION, start, end), null, null, null, null);
+        String range = " for [" + start + ", " + end + ")";
+        assertTrue("Error: no stats" + range, cursor.moveToFirst());
+        assertEquals("Error: wrong day count" + range, count,
+                cursor.getInt(cursor.getColumnIndex(StatsEntry.COLUMN_DAYS)));
+        assertEquals("Error: wrong min" + range, min,
+                cursor.getDouble(cursor.getColumnIndex(StatsEntry.COLUMN_MIN_TEMP)));
+        assertEquals("Error: wrong max" + range, max,
+                cursor.getDouble(cursor.getColumnIndex(StatsEntry.COLUMN_MAX_TEMP)));
+        assertEquals("Error: wrong warmest date" + range, warmest,
+                cursor.getLong(cursor.getColumnIndex(StatsEntry.COLUMN_WARMEST_DATE)));
+        assertEquals("Error: wrong mean" + range, meanSum / count,
+                cursor.getDouble(cursor.getColumnIndex(StatsEntry.COLUMN_MEAN_TEMP)), 1e-9);
+        assertEquals("Error: wrong humidity" + range, humiditySum / count,
+                cursor.getDouble(cursor.getColumnIndex(StatsEntry.COLUMN_MEAN_HUMIDITY)), 1e-9);
+        cursor.close();
+    }
+
+    static ContentValues createStatsWeatherValues(long locationRowId, long day, double min,
+                                                  double humidity) {
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, day);
+        weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, humidity);
+        weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, min + 10);
+        weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, min);
+        weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        return weatherValues;
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.Metrics;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+
+/*
+    The metrics come back through call(), which debug builds answer; tests run against one.
+ */
+public class TestProviderMetrics extends AndroidTestCase {
+
+    private ContentProviderClient mClient;
+    private ProviderMetrics mMetrics;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mClient = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mMetrics = ((WeatherProvider) mClient.getLocalContentProvider()).getMetrics();
+        call(Metrics.METHOD_RESET_METRICS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mMetrics.setSlowThresholdNanos(50 * 1000000L);
+        call(Metrics.METHOD_RESET_METRICS);
+        mClient.release();
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testMetricsPerMatch() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+        for (int i = 0; i < 3; i++) {
+            query(WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        }
+
+        Bundle metrics = call(Metrics.METHOD_GET_METRICS);
+        Bundle insert = metrics.getBundle(ProviderMetrics.OP_INSERT + "/location");
+        assertEquals(1, insert.getInt(Metrics.KEY_COUNT));
+        Bundle bulkInsert = metrics.getBundle(ProviderMetrics.OP_BULK_INSERT + "/weather");
+        assertEquals(TestProvider.BULK_INSERT_RECORDS_TO_INSERT,
+                bulkInsert.getLong(Metrics.KEY_ROWS));
+
+        Bundle query = metrics.getBundle(ProviderMetrics.OP_QUERY + "/weather_with_location");
+        assertEquals(3, query.getInt(Metrics.KEY_COUNT));
+        assertEquals(3 * TestProvider.BULK_INSERT_RECORDS_TO_INSERT,
+                query.getLong(Metrics.KEY_ROWS));
+        long[] histogram = query.getLongArray(Metrics.KEY_HISTOGRAM);
+        assertEquals(ProviderMetrics.BUCKET_BOUNDS_MILLIS.length + 1, histogram.length);
+        long counted = 0;
+        for (long bucket : histogram) {
+            counted += bucket;
+        }
+        assertEquals("Error: every query should land in a bucket", 3, counted);
+
+        // The test runs in the app's process, the calls are its own
+        Bundle callers = metrics.getBundle(Metrics.KEY_CALLERS);
+        assertTrue(callers.getInt(mContext.getPackageName()) >= 5);
+    }
+
+    public void testSlowQueryLog() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+        // Every operation is slow from now on
+        mMetrics.setSlowThresholdNanos(0);
+        query(WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE));
+
+        ArrayList<Bundle> slowQueries = call(Metrics.METHOD_GET_SLOW_QUERIES)
+                .getParcelableArrayList(Metrics.KEY_SLOW_QUERIES);
+        assertEquals(1, slowQueries.size());
+        Bundle slowQuery = slowQueries.get(0);
+        assertEquals(ProviderMetrics.OP_QUERY, slowQuery.getString(Metrics.KEY_OPERATION));
+        assertEquals(TestProvider.BULK_INSERT_RECORDS_TO_INSERT,
+                slowQuery.getInt(Metrics.KEY_ROWS));
+        String sql = slowQuery.getString(Metrics.KEY_SQL);
+        assertNotNull("Error: the SQL of the query wasn't captured", sql);
+        assertTrue(sql.contains(WeatherEntry.TABLE_NAME));
+        String plan = slowQuery.getString(Metrics.KEY_PLAN);
+        assertNotNull(plan);
+        assertTrue("Error: the plan of the query is empty", plan.length() > 0);
+    }
+
+    private void query(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        cursor.close();
+    }
+
+    private Bundle call(String method) {
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI, method, null, null);
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.Metrics;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    The cache answers repeated queries of a day and of a list, and forgets exactly what a write
+    changed.  Its stats come back through call(), which debug builds answer; tests run against
+    one.
+ */
+public class TestResultCache extends AndroidTestCase {
+
+    private static final String OTHER_LOCATION = "cached-elsewhere";
+    private static final int CHANGED_DAY = 2;
+    private static final int UNCHANGED_DAY = 6;
+
+    private ContentValues[] mForecast;
+    private ContentValues[] mOtherForecast;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, OTHER_LOCATION);
+        long otherLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, otherLocation));
+        // The provider normalizes the dates of the values in place
+        mForecast = TestProvider.createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, mForecast);
+        mOtherForecast = TestProvider.createBulkInsertWeatherValues(otherLocationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, mOtherForecast);
+        call(Metrics.METHOD_RESET_METRICS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testRepeatedQueriesHit() {
+        Uri day = buildDayUri(TestUtilities.TEST_LOCATION, mForecast, CHANGED_DAY);
+        for (int i = 0; i < 3; i++) {
+            TestUtilities.validateCursor("testRepeatedQueriesHit, query " + i,
+                    query(day), mForecast[CHANGED_DAY]);
+        }
+        Uri list = buildListUri(TestUtilities.TEST_LOCATION, mForecast);
+        assertEquals(TestProvider.BULK_INSERT_RECORDS_TO_INSERT, count(list));
+        assertEquals(TestProvider.BULK_INSERT_RECORDS_TO_INSERT, count(list));
+
+        Bundle stats = call(Metrics.METHOD_GET_CACHE_STATS);
+        assertEquals(3, stats.getLong(Metrics.KEY_HITS));
+        assertEquals(2, stats.getLong(Metrics.KEY_MISSES));
+        assertEquals(2, stats.getInt(Metrics.KEY_ENTRIES));
+    }
+
+    // A write drops the day it changed and the lists that hold it, nothing else
+    public void testWriteInvalidatesChangedDays() {
+        Uri changedDay = buildDayUri(TestUtilities.TEST_LOCATION, mForecast, CHANGED_DAY);
+        Uri unchangedDay = buildDayUri(TestUtilities.TEST_LOCATION, mForecast, UNCHANGED_DAY);
+        Uri list = buildListUri(TestUtilities.TEST_LOCATION, mForecast);
+        Uri otherList = buildListUri(OTHER_LOCATION, mOtherForecast);
+        Uri[] uris = {changedDay, unchangedDay, list, otherList};
+        for (Uri uri : uris) {
+            count(uri);
+        }
+
+        ContentValues changed = new ContentValues(mForecast[CHANGED_DAY]);
+        changed.put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        assertEquals(1, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{changed}));
+        call(Metrics.METHOD_RESET_METRICS);
+        for (Uri uri : uris) {
+            count(uri);
+        }
+
+        Bundle stats = call(Metrics.METHOD_GET_CACHE_STATS);
+        assertEquals("Error: only the changed day and its list should go to the database",
+                2, stats.getLong(Metrics.KEY_MISSES));
+        assertEquals(2, stats.getLong(Metrics.KEY_HITS));
+        TestUtilities.validateCursor("testWriteInvalidatesChangedDays", query(changedDay),
+                changed);
+    }
+
+    // A sync that brings the same forecast changes no row, and keeps every entry
+    public void testUnchangedSyncKeepsEntries() {
+        Uri day = buildDayUri(TestUtilities.TEST_LOCATION, mForecast, CHANGED_DAY);
+        Uri list = buildListUri(TestUtilities.TEST_LOCATION, mForecast);
+        count(day);
+        count(list);
+
+        assertEquals(0, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                mForecast));
+        count(day);
+        count(list);
+
+        Bundle stats = call(Metrics.METHOD_GET_CACHE_STATS);
+        assertEquals(2, stats.getLong(Metrics.KEY_HITS));
+        assertEquals(0, stats.getLong(Metrics.KEY_INVALIDATIONS));
+    }
+
+    // Cached rows hold the columns of their location, renaming one drops them
+    public void testLocationUpdateInvalidates() {
+        Uri day = buildDayUri(TestUtilities.TEST_LOCATION, mForecast, CHANGED_DAY);
+        count(day);
+
+        ContentValues renamed = new ContentValues();
+        renamed.put(LocationEntry.COLUMN_CITY_NAME, "Santa's Village");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, renamed,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{TestUtilities.TEST_LOCATION});
+
+        Cursor cursor = query(day);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Santa's Village",
+                cursor.getString(cursor.getColumnIndex(LocationEntry.COLUMN_CITY_NAME)));
+        cursor.close();
+        assertEquals(2, call(Metrics.METHOD_GET_CACHE_STATS).getLong(Metrics.KEY_MISSES));
+    }
+
+    public void testCacheIsBounded() {
+        Uri day = buildDayUri(TestUtilities.TEST_LOCATION, mForecast, CHANGED_DAY);
+        int queries = ResultCache.MAX_ENTRIES + 5;
+        // Each projection is a key of its own
+        for (int i = 0; i < queries; i++) {
+            Cursor cursor = mContext.getContentResolver().query(day,
+                    new String[]{WeatherEntry.COLUMN_MAX_TEMP + " + " + i}, null, null, null);
+            assertNotNull(cursor);
+            cursor.close();
+        }
+
+        Bundle stats = call(Metrics.METHOD_GET_CACHE_STATS);
+        assertEquals(ResultCache.MAX_ENTRIES, stats.getInt(Metrics.KEY_ENTRIES));
+        assertEquals(5, stats.getLong(Metrics.KEY_EVICTIONS));
+    }
+
+    private static Uri buildDayUri(String locationSetting, ContentValues[] forecast, int day) {
+        return WeatherEntry.buildWeatherLocationWithDate(locationSetting,
+                forecast[day].getAsLong(WeatherEntry.COLUMN_DATE));
+    }
+
+    private static Uri buildListUri(String locationSetting, ContentValues[] forecast) {
+        return WeatherEntry.buildWeatherLocationWithStartDate(locationSetting,
+                forecast[0].getAsLong(WeatherEntry.COLUMN_DATE));
+    }
+
+    private Cursor query(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        return cursor;
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = query(uri);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Bundle call(String method) {
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI, method, null, null);
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
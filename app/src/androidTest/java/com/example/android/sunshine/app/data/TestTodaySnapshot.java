@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+/*
+    The snapshot reads back what was written, only for its location, and a snapshot that can't
+    be trusted reads as null so the readers go to the provider.
+ */
+public class TestTodaySnapshot extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(mContext.getCacheDir(), "test-" + TodaySnapshot.FILE_NAME);
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testWriteAndRead() {
+        TodaySnapshot.Writer writer = new TodaySnapshot.Writer(TestUtilities.TEST_LOCATION, 42);
+        for (int i = 0; i < TodaySnapshot.MAX_DAYS; i++) {
+            writer.add(TestUtilities.TEST_DATE + i * DAY_IN_MILLIS, 800 + i, "D\u00eda " + i,
+                    20.5 + i, 10.25 - i);
+        }
+        assertTrue(writer.writeTo(mFile));
+        assertFalse("Error: the temporary file was left behind",
+                new File(mFile.getPath() + ".tmp").exists());
+
+        TodaySnapshot snapshot = TodaySnapshot.read(mFile, TestUtilities.TEST_LOCATION);
+        assertNotNull(snapshot);
+        assertEquals(42, snapshot.getPublishedAt());
+        assertEquals(TodaySnapshot.MAX_DAYS, snapshot.getDayCount());
+        int day = snapshot.findDay(TestUtilities.TEST_DATE + 3 * DAY_IN_MILLIS);
+        assertEquals(3, day);
+        assertEquals(803, snapshot.getWeatherId(day));
+        assertEquals("D\u00eda 3", snapshot.getDescription(day));
+        assertEquals(23.5, snapshot.getHigh(day));
+        assertEquals(7.25, snapshot.getLow(day));
+        assertEquals(0, snapshot.findFirstDayFrom(0));
+        assertEquals(1, snapshot.findFirstDayFrom(TestUtilities.TEST_DATE + 1));
+        assertEquals(-1, snapshot.findDay(TestUtilities.TEST_DATE + 1));
+
+        assertNull("Error: the snapshot of another location was read",
+                TodaySnapshot.read(mFile, "elsewhere"));
+    }
+
+    // A snapshot that can't hold the forecast isn't written, and the outdated one goes away
+    public void testTooLongRemovesSnapshot() {
+        TodaySnapshot.Writer writer = new TodaySnapshot.Writer(TestUtilities.TEST_LOCATION, 1);
+        writer.add(TestUtilities.TEST_DATE, 800, "Clear", 20, 10);
+        assertTrue(writer.writeTo(mFile));
+
+        StringBuilder description = new StringBuilder();
+        while (description.length() <= TodaySnapshot.DESCRIPTION_BYTES) {
+            description.append("Cloudy ");
+        }
+        writer = new TodaySnapshot.Writer(TestUtilities.TEST_LOCATION, 2);
+        writer.add(TestUtilities.TEST_DATE, 803, description.toString(), 20, 10);
+        assertFalse(writer.writeTo(mFile));
+        assertFalse(mFile.exists());
+        assertNull(TodaySnapshot.read(mFile, TestUtilities.TEST_LOCATION));
+    }
+
+    public void testTruncatedFileIsIgnored() throws Exception {
+        FileOutputStream out = new FileOutputStream(mFile);
+        out.write(new byte[TodaySnapshot.FILE_SIZE / 2]);
+        out.close();
+        assertNull(TodaySnapshot.read(mFile, TestUtilities.TEST_LOCATION));
+    }
+
+    // A string length past its slot, or negative, reads as no snapshot instead of throwing
+    public void testCorruptLengthIsIgnored() throws Exception {
+        int[] offsets = {TodaySnapshot.OFFSET_LOCATION,
+                TodaySnapshot.HEADER_SIZE + TodaySnapshot.DAY_SIZE
+                        + TodaySnapshot.OFFSET_DESCRIPTION};
+        for (int offset : offsets) {
+            for (short length : new short[]{-1, Short.MAX_VALUE}) {
+                TodaySnapshot.Writer writer =
+                        new TodaySnapshot.Writer(TestUtilities.TEST_LOCATION, 1);
+                writer.add(TestUtilities.TEST_DATE, 800, "Clear", 20, 10);
+                writer.add(TestUtilities.TEST_DATE + DAY_IN_MILLIS, 803, "Clouds", 18, 9);
+                assertTrue(writer.writeTo(mFile));
+
+                RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+                try {
+                    file.seek(offset);
+                    file.writeShort(length);
+                } finally {
+                    file.close();
+                }
+                assertNull("Error: a length of " + length + " at " + offset + " was read",
+                        TodaySnapshot.read(mFile, TestUtilities.TEST_LOCATION));
+            }
+        }
+    }
+
+    // What the sync publishes is what the provider holds from today on
+    public void testPublishFromProvider() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] days = TestProvider.createBulkInsertWeatherValues(locationRowId);
+        for (int i = 0; i < days.length; i++) {
+            // Yesterday first, it isn't part of the snapshot
+            days[i].put(WeatherEntry.COLUMN_DATE, today + (i - 1) * DAY_IN_MILLIS);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+
+        File published = TodaySnapshot.getFile(mContext);
+        try {
+            assertTrue(TodaySnapshot.publish(mContext, TestUtilities.TEST_LOCATION));
+            TodaySnapshot snapshot = TodaySnapshot.read(mContext, TestUtilities.TEST_LOCATION);
+            assertNotNull(snapshot);
+            assertEquals(days.length - 1, snapshot.getDayCount());
+            assertEquals(0, snapshot.findDay(today));
+            assertEquals(days[1].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    snapshot.getHigh(0));
+            assertEquals(days[1].getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    snapshot.getDescription(0));
+        } finally {
+            published.delete();
+        }
+    }
+}
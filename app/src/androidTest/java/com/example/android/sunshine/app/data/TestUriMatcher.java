@@ -36,6 +36,20 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    private static final Uri TEST_LOCATION_NEAREST = WeatherContract.LocationEntry.buildNearestUri(64.7488, -147.353, 50, 1);
+    // content://com.example.android.sunshine.app/hourly"
+    private static final Uri TEST_HOURLY_DIR = WeatherContract.HourlyEntry.CONTENT_URI;
+    private static final Uri TEST_HOURLY_WITH_LOCATION_DIR = WeatherContract.HourlyEntry.buildHourlyLocationWithRange(LOCATION_QUERY, TEST_DATE, TEST_DATE + 1);
+    // content://com.example.android.sunshine.app/current"
+    private static final Uri TEST_CURRENT_DIR = WeatherContract.CurrentEntry.CONTENT_URI;
+    private static final Uri TEST_CURRENT_WITH_LOCATION_DIR = WeatherContract.CurrentEntry.buildCurrentLocation(LOCATION_QUERY);
+    // content://com.example.android.sunshine.app/stats/London%2C%20UK?start=...&end=..."
+    private static final Uri TEST_STATS_WITH_LOCATION = WeatherContract.StatsEntry.buildStatsLocationWithRange(LOCATION_QUERY, TEST_DATE, TEST_DATE + 1);
+    // content://com.example.android.sunshine.app/changes/42?location=London%2C%20UK"
+    private static final Uri TEST_CHANGES = WeatherContract.ChangeEntry.buildLatestUri();
+    private static final Uri TEST_CHANGES_SINCE = WeatherContract.ChangeEntry.buildChangesSince(LOCATION_QUERY, 42);
+    // content://com.example.android.sunshine.app/debug/sync_trace"
+    private static final Uri TEST_SYNC_TRACE = WeatherContract.SyncTraceEntry.CONTENT_URI;
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +67,23 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION NEAREST URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_NEAREST), WeatherProvider.LOCATION_NEAREST);
+        assertEquals("Error: The HOURLY URI was matched incorrectly.",
+                testMatcher.match(TEST_HOURLY_DIR), WeatherProvider.HOURLY);
+        assertEquals("Error: The HOURLY WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_HOURLY_WITH_LOCATION_DIR), WeatherProvider.HOURLY_WITH_LOCATION);
+        assertEquals("Error: The CURRENT URI was matched incorrectly.",
+                testMatcher.match(TEST_CURRENT_DIR), WeatherProvider.CURRENT);
+        assertEquals("Error: The CURRENT WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_CURRENT_WITH_LOCATION_DIR), WeatherProvider.CURRENT_WITH_LOCATION);
+        assertEquals("Error: The STATS WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_STATS_WITH_LOCATION), WeatherProvider.STATS_WITH_LOCATION);
+        assertEquals("Error: The CHANGES URI was matched incorrectly.",
+                testMatcher.match(TEST_CHANGES), WeatherProvider.CHANGES);
+        assertEquals("Error: The CHANGES SINCE URI was matched incorrectly.",
+                testMatcher.match(TEST_CHANGES_SINCE), WeatherProvider.CHANGES_SINCE);
+        assertEquals("Error: The SYNC TRACE URI was matched incorrectly.",
+                testMatcher.match(TEST_SYNC_TRACE), WeatherProvider.SYNC_TRACE);
     }
 }
@@ -17,6 +17,7 @@ package com.example.android.sunshine.app.data;
 
 import android.net.Uri;
 import android.test.AndroidTestCase;
+import android.text.format.Time;
 
 /*
     Students: This is NOT a complete test for the WeatherContract --- just for the functions
@@ -42,4 +43,39 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    // Location URIs are built as strings, they must equal the ones Uri.Builder makes
+    public void testBuildWeatherLocationWithDate() {
+        String[] locations = {TEST_WEATHER_LOCATION, "94043", "Z\u00fcrich, CH", "a+b&c=d?e#f"};
+        for (String location : locations) {
+            Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(location,
+                    TEST_WEATHER_DATE);
+            Uri expected = WeatherContract.WeatherEntry.CONTENT_URI.buildUpon()
+                    .appendPath(location)
+                    .appendPath(Long.toString(WeatherContract.normalizeDate(TEST_WEATHER_DATE)))
+                    .build();
+            assertEquals(expected, uri);
+            assertEquals(expected.getPathSegments(), uri.getPathSegments());
+            assertEquals(location, WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+            assertEquals(WeatherContract.normalizeDate(TEST_WEATHER_DATE),
+                    WeatherContract.WeatherEntry.getDateFromUri(uri));
+            assertEquals(WeatherContract.WeatherEntry.CONTENT_URI.buildUpon()
+                            .appendPath(location).build(),
+                    WeatherContract.WeatherEntry.buildWeatherLocation(location));
+        }
+    }
+
+    // normalizeDate works on zone offsets, it must land on the day starts Time gives
+    public void testNormalizeDate() {
+        long start = System.currentTimeMillis() - 400 * 24 * 3600 * 1000L;
+        Time time = new Time();
+        // Two years hour by hour, across the daylight saving time changes of the zone
+        for (long millis = start; millis < start + 800 * 24 * 3600 * 1000L;
+             millis += 3600 * 1000L + 7) {
+            time.set(millis);
+            long expected = time.setJulianDay(Time.getJulianDay(millis, time.gmtoff));
+            assertEquals("Error: wrong start of the day of " + millis, expected,
+                    WeatherContract.normalizeDate(millis));
+        }
+    }
 }
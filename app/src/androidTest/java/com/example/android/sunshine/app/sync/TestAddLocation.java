@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Settings the server resolves to the same city become aliases of the first one: the sync
+    stores their forecast under one location, and records their syncs under one setting.
+ */
+public class TestAddLocation extends AndroidTestCase {
+
+    private static final String ZIP = "94043";
+    private static final String CITY = "Mountain View, US";
+    private static final String OTHER = "Sunnyvale, US";
+    private static final long MOUNTAIN_VIEW_ID = 5375480;
+
+    private SunshineSyncAdapter mAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mAdapter = new SunshineSyncAdapter(mContext, false);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testSettingsOfOnePlaceShareALocation() {
+        long locationId = mAdapter.addLocation(ZIP, MOUNTAIN_VIEW_ID, "Mountain View",
+                37.3861, -122.0839);
+        // The server's coordinates of a city vary in their last digits
+        long aliasId = mAdapter.addLocation(CITY, MOUNTAIN_VIEW_ID, "Mountain View",
+                37.3860, -122.0838);
+        assertEquals("Error: a second location was made for the same place",
+                locationId, aliasId);
+        assertEquals(locationId, mAdapter.addLocation(CITY, MOUNTAIN_VIEW_ID, "Mountain View",
+                37.3860, -122.0838));
+
+        long otherId = mAdapter.addLocation(OTHER, 5400075, "Sunnyvale", 37.3688, -122.0363);
+        assertTrue(otherId != locationId);
+
+        assertEquals(ZIP, Utility.getCanonicalLocation(mContext, CITY));
+        assertEquals(ZIP, Utility.getCanonicalLocation(mContext, ZIP));
+        assertEquals(OTHER, Utility.getCanonicalLocation(mContext, OTHER));
+        assertEquals("unknown", Utility.getCanonicalLocation(mContext, "unknown"));
+
+        // Both settings are kept, the alias for the location screen and the widgets
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(3, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testCityIdStored() {
+        // A location synced before the city id was kept
+        long locationId = mAdapter.addLocation(ZIP, 0, "Mountain View", 37.3861, -122.0839);
+        assertEquals(0, getCityId(locationId));
+
+        assertEquals(locationId, mAdapter.addLocation(ZIP, MOUNTAIN_VIEW_ID, "Mountain View",
+                37.3861, -122.0839));
+        assertEquals("Error: the city id should be filled in by the next sync",
+                MOUNTAIN_VIEW_ID, getCityId(locationId));
+
+        long otherId = mAdapter.addLocation(OTHER, 5400075, "Sunnyvale", 37.3688, -122.0363);
+        assertEquals(5400075, getCityId(otherId));
+    }
+
+    // 0 when the location has no city id
+    private long getCityId(long locationId) {
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry.COLUMN_CITY_ID}, LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)}, null);
+        assertTrue(cursor.moveToFirst());
+        long cityId = cursor.getLong(0);
+        cursor.close();
+        return cityId;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SyncResult;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+import com.example.android.sunshine.app.utils.LocalHttpServer.Response;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Random;
+
+/*
+    Runs the ForecastFetcher against a local server that injects faults.
+ */
+public class TestForecastFetcher extends AndroidTestCase {
+
+    private static final String FORECAST_JSON = "{\"cod\":\"200\",\"list\":[]}";
+
+    private LocalHttpServer mServer;
+    private ForecastFetcher mFetcher;
+    private int mResponses;
+
+    // Parses the body like the sync adapter would, and counts the responses that got through
+    private final ForecastFetcher.ResponseHandler mHandler = new ForecastFetcher.ResponseHandler() {
+        @Override
+        public void onResponse(InputStream body) throws IOException, JSONException {
+            new JSONObject(ForecastHttpClient.readString(body));
+            mResponses++;
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        CircuitBreaker.resetAll();
+        // Short delays so the test doesn't take forever
+        mFetcher = new ForecastFetcher(new ForecastHttpClient(),
+                new RetryPolicy(3, 10, 50, new Random(42)));
+        mResponses = 0;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mServer != null) {
+            mServer.shutdown();
+        }
+        CircuitBreaker.resetAll();
+        super.tearDown();
+    }
+
+    public void testRetryThenSucceed() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                switch (request) {
+                    case 0:
+                        return Response.status(503, "");
+                    case 1:
+                        return Response.status(429, "");
+                    default:
+                        return Response.ok(FORECAST_JSON);
+                }
+            }
+        });
+        SyncResult syncResult = new SyncResult();
+        mFetcher.fetch(mServer.getUrl("/forecast"), mHandler, syncResult);
+
+        assertEquals("Error: the response didn't get through", 1, mResponses);
+        assertEquals("Error: wrong number of requests", 3, mServer.getRequestCount());
+        assertEquals("Error: both failures should be counted", 2,
+                syncResult.stats.numIoExceptions);
+        assertEquals("Error: a successful fetch should not delay the next sync", 0,
+                syncResult.delayUntil);
+    }
+
+    public void testGiveUpAfterMaxAttempts() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.status(500, "");
+            }
+        });
+        SyncResult syncResult = new SyncResult();
+        long before = System.currentTimeMillis() / 1000;
+        try {
+            mFetcher.fetch(mServer.getUrl("/forecast"), mHandler, syncResult);
+            fail("Error: the fetch should have failed");
+        } catch (ForecastFetcher.ServerException e) {
+            // Expected
+        }
+        assertEquals("Error: wrong number of attempts", 3, mServer.getRequestCount());
+        assertEquals("Error: every failure should be counted", 3,
+                syncResult.stats.numIoExceptions);
+        assertTrue("Error: the sync framework should be asked to back off",
+                syncResult.delayUntil > before);
+    }
+
+    public void testCircuitOpens() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.status(503, "");
+            }
+        });
+        URL url = mServer.getUrl("/forecast");
+        // One fetch is enough to reach the threshold
+        try {
+            mFetcher.fetch(url, mHandler, new SyncResult());
+            fail("Error: the fetch should have failed");
+        } catch (ForecastFetcher.ServerException e) {
+            // Expected
+        }
+        assertEquals(CircuitBreaker.FAILURE_THRESHOLD, mServer.getRequestCount());
+
+        SyncResult syncResult = new SyncResult();
+        long before = System.currentTimeMillis();
+        try {
+            mFetcher.fetch(url, mHandler, syncResult);
+            fail("Error: the circuit should be open");
+        } catch (ForecastFetcher.CircuitOpenException e) {
+            // Expected
+        }
+        assertEquals("Error: an open circuit should not hit the server",
+                CircuitBreaker.FAILURE_THRESHOLD, mServer.getRequestCount());
+        assertTrue("Error: the sync should wait for the circuit to close",
+                syncResult.delayUntil >= (before + CircuitBreaker.OPEN_DURATION) / 1000 - 1);
+    }
+
+    public void testCancellationNotAFailure() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.ok(FORECAST_JSON);
+            }
+        });
+        URL url = mServer.getUrl("/forecast");
+        // What the sync adapter's thread sees when the sync is cancelled mid-response
+        ForecastFetcher.ResponseHandler cancelled = new ForecastFetcher.ResponseHandler() {
+            @Override
+            public void onResponse(InputStream body) throws IOException {
+                throw new InterruptedIOException("Cancelled");
+            }
+        };
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            SyncResult syncResult = new SyncResult();
+            try {
+                mFetcher.fetch(url, cancelled, syncResult);
+                fail("Error: the cancellation should reach the caller");
+            } catch (InterruptedIOException e) {
+                // Expected
+            }
+            assertEquals("Error: a cancelled sync shouldn't be retried", i + 1,
+                    mServer.getRequestCount());
+            assertEquals(0, syncResult.stats.numIoExceptions);
+        }
+        assertTrue("Error: cancelled syncs shouldn't open the circuit",
+                CircuitBreaker.forHost(url.getHost()).allowRequest(System.currentTimeMillis()));
+    }
+
+    public void testHalfOpenCircuit() {
+        CircuitBreaker breaker = CircuitBreaker.forHost("example.com");
+        long now = 1000;
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            assertTrue(breaker.allowRequest(now));
+            breaker.recordFailure(now);
+        }
+        assertFalse("Error: the circuit should be open", breaker.allowRequest(now));
+
+        now += CircuitBreaker.OPEN_DURATION;
+        assertTrue("Error: a trial request should go out", breaker.allowRequest(now));
+        assertFalse("Error: only one trial request at a time", breaker.allowRequest(now));
+        breaker.recordFailure(now);
+        assertEquals("Error: a failed trial should double the open duration",
+                2 * CircuitBreaker.OPEN_DURATION, breaker.getRetryAfter(now));
+
+        now += 2 * CircuitBreaker.OPEN_DURATION;
+        assertTrue(breaker.allowRequest(now));
+        breaker.recordSuccess();
+        assertTrue("Error: a successful trial should close the circuit",
+                breaker.allowRequest(now));
+        assertEquals(0, breaker.getRetryAfter(now));
+    }
+
+    public void testClientErrorNotRetried() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.status(401, "{\"cod\":401}");
+            }
+        });
+        SyncResult syncResult = new SyncResult();
+        try {
+            mFetcher.fetch(mServer.getUrl("/forecast"), mHandler, syncResult);
+            fail("Error: the fetch should have failed");
+        } catch (ForecastFetcher.ClientException e) {
+            // Expected
+        }
+        assertEquals("Error: a rejected request should not be retried", 1,
+                mServer.getRequestCount());
+        assertEquals(1, syncResult.stats.numIoExceptions);
+    }
+
+    public void testParseErrorNotRetried() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.ok("<html>Not the JSON you're looking for</html>");
+            }
+        });
+        SyncResult syncResult = new SyncResult();
+        try {
+            mFetcher.fetch(mServer.getUrl("/forecast"), mHandler, syncResult);
+            fail("Error: the fetch should have failed");
+        } catch (JSONException e) {
+            // Expected
+        }
+        assertEquals("Error: a bad payload should not be retried", 1, mServer.getRequestCount());
+        assertEquals(1, syncResult.stats.numParseExceptions);
+        assertEquals(0, syncResult.stats.numIoExceptions);
+    }
+
+    public void testBackoffBounds() {
+        RetryPolicy policy = new RetryPolicy(5, 1000, 4000, new Random(42));
+        assertEquals(1000, policy.getMaxBackoff(1));
+        assertEquals(2000, policy.getMaxBackoff(2));
+        assertEquals(4000, policy.getMaxBackoff(3));
+        assertEquals("Error: the backoff should be capped", 4000, policy.getMaxBackoff(10));
+        for (int attempts = 1; attempts < 10; attempts++) {
+            long backoff = policy.getBackoff(attempts);
+            assertTrue("Error: jitter out of bounds",
+                    backoff >= 0 && backoff <= policy.getMaxBackoff(attempts));
+        }
+        assertTrue(policy.shouldRetry(4));
+        assertFalse(policy.shouldRetry(5));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+import com.example.android.sunshine.app.utils.LocalHttpServer.Response;
+import com.example.android.sunshine.app.utils.OwmFixtures;
+
+import java.net.SocketTimeoutException;
+
+public class TestForecastHttpClient extends AndroidTestCase {
+
+    private static final String FORECAST_JSON = OwmFixtures.forecastJson("Mountain View", 14);
+
+    private LocalHttpServer mServer;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mServer != null) {
+            mServer.shutdown();
+        }
+        super.tearDown();
+    }
+
+    public void testGzip() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.ok(FORECAST_JSON);
+            }
+        });
+        ForecastHttpClient client = new ForecastHttpClient();
+        ForecastHttpClient.Response response = client.get(mServer.getUrl("/forecast"));
+        try {
+            assertEquals(200, response.getStatus());
+            assertEquals("Error: the body was not decompressed", FORECAST_JSON,
+                    ForecastHttpClient.readString(response.getBody()));
+        } finally {
+            response.close();
+        }
+        assertEquals("Error: wrong number of bytes received", mServer.getBytesSent(),
+                client.getBytesReceived());
+        assertTrue("Error: the response was not compressed",
+                client.getBytesReceived() < FORECAST_JSON.length() / 2);
+    }
+
+    public void testConnectionReuse() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                // Alternate between errors and forecasts, errors have bodies to drain too
+                return request % 2 == 0 ? Response.ok(FORECAST_JSON)
+                        : Response.status(404, "{\"cod\":\"404\",\"message\":\"city not found\"}");
+            }
+        });
+        ForecastHttpClient client = new ForecastHttpClient();
+        for (int i = 0; i < 6; i++) {
+            ForecastHttpClient.Response response = client.get(mServer.getUrl("/forecast?q=" + i));
+            // Only read the first forecast, close() has to drain the others
+            if (i == 0) {
+                ForecastHttpClient.readString(response.getBody());
+            }
+            response.close();
+        }
+        assertEquals(6, mServer.getRequestCount());
+        assertEquals("Error: connections were not reused", 1, mServer.getConnectionCount());
+    }
+
+    public void testReadTimeout() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.ok(FORECAST_JSON).delay(1000);
+            }
+        });
+        ForecastHttpClient client = new ForecastHttpClient(1000, 100);
+        try {
+            client.get(mServer.getUrl("/forecast")).close();
+            fail("Error: the request should have timed out");
+        } catch (SocketTimeoutException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SyncResult;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.core.BinaryForecast;
+import com.example.android.sunshine.app.core.ForecastHandler;
+import com.example.android.sunshine.app.core.ForecastJsonParser;
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+import com.example.android.sunshine.app.utils.LocalHttpServer.Response;
+import com.example.android.sunshine.app.utils.OwmFixtures;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Fetches the same forecast from a local server as OpenWeatherMap's JSON and as the proxy's
+    binary encoding, through the ForecastSources.
+ */
+public class TestForecastSource extends AndroidTestCase {
+
+    private static final String LOCATION = "94043";
+    private static final int DAYS = 14;
+
+    private LocalHttpServer mServer;
+    private ForecastFetcher mFetcher;
+    private String mJson;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        CircuitBreaker.resetAll();
+        mFetcher = new ForecastFetcher(new ForecastHttpClient(),
+                new RetryPolicy(3, 10, 50, new Random(42)));
+        mJson = OwmFixtures.forecastJson("Mountain View", DAYS);
+        BinaryForecast.Writer writer = new BinaryForecast.Writer();
+        ForecastJsonParser.parse(mJson, writer);
+        final byte[] binary = writer.toByteArray();
+
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                Uri uri = Uri.parse(path);
+                if (!LOCATION.equals(uri.getQueryParameter("q"))
+                        || !Integer.toString(DAYS).equals(uri.getQueryParameter("cnt"))) {
+                    return Response.status(HttpURLConnection.HTTP_BAD_REQUEST, "");
+                }
+                if (uri.getPath().endsWith("/binary")) {
+                    return Response.ok(binary);
+                }
+                if (uri.getPath().endsWith("/unknown")) {
+                    return Response.ok(BinaryForecast.error(HttpURLConnection.HTTP_NOT_FOUND));
+                }
+                return Response.ok(mJson);
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        CircuitBreaker.resetAll();
+        super.tearDown();
+    }
+
+    // The days the source decoded from the response of its URL, as the sync adapter gets them
+    private List<String> fetchDays(final ForecastSource source, URL url) throws Exception {
+        final List<String> days = new ArrayList<String>();
+        final ForecastHandler handler = new ForecastHandler() {
+            @Override
+            public void onCity(long cityId, String cityName, double latitude,
+                               double longitude, int dayCount) {
+                assertEquals("Mountain View", cityName);
+                assertEquals(DAYS, dayCount);
+            }
+
+            @Override
+            public void onDay(int index, int weatherId, String description, double low,
+                              double high, int humidity, double pressure, double windSpeed,
+                              double windDirection) {
+                // The measurements are compared in TestBinaryForecast, the binary encoding
+                // rounds them
+                days.add(weatherId + " " + description + " " + humidity);
+            }
+        };
+        mFetcher.fetch(url, new ForecastFetcher.ResponseHandler() {
+            @Override
+            public void onResponse(InputStream body) throws IOException, JSONException {
+                assertEquals(HttpURLConnection.HTTP_OK,
+                        source.parse(ForecastHttpClient.readBytes(body), handler));
+            }
+        }, new SyncResult());
+        return days;
+    }
+
+    public void testSameDays() throws Exception {
+        BinaryForecastSource binarySource =
+                new BinaryForecastSource(mServer.getUrl("/forecast/binary").toString());
+        // OpenWeatherMap's URL isn't local, the JSON comes from the server all the same
+        String jsonUrl = new OwmForecastSource().getForecastUrl(LOCATION, 0, DAYS).getQuery();
+        List<String> jsonDays = fetchDays(new OwmForecastSource(),
+                mServer.getUrl("/forecast/json?" + jsonUrl));
+        long jsonBytes = mServer.getBytesSent();
+        List<String> binaryDays = fetchDays(binarySource,
+                binarySource.getForecastUrl(LOCATION, 0, DAYS));
+        long binaryBytes = mServer.getBytesSent() - jsonBytes;
+
+        assertEquals(DAYS, jsonDays.size());
+        assertEquals(jsonDays, binaryDays);
+        assertTrue("Error: the binary forecast should take fewer bytes than the JSON, even "
+                + "gzipped: " + binaryBytes + " vs " + jsonBytes, binaryBytes < jsonBytes);
+    }
+
+    // Places whose city is known are asked for by id, the others by their setting
+    public void testCityIdQuery() throws Exception {
+        Uri byId = Uri.parse(
+                new OwmForecastSource().getForecastUrl(LOCATION, 5375480, DAYS).toString());
+        assertEquals("5375480", byId.getQueryParameter("id"));
+        assertNull(byId.getQueryParameter("q"));
+
+        Uri bySetting = Uri.parse(
+                new OwmForecastSource().getForecastUrl(LOCATION, 0, DAYS).toString());
+        assertEquals(LOCATION, bySetting.getQueryParameter("q"));
+        assertNull(bySetting.getQueryParameter("id"));
+    }
+
+    public void testUnknownLocation() throws Exception {
+        final ForecastSource source =
+                new BinaryForecastSource(mServer.getUrl("/forecast/unknown").toString());
+        final int[] status = new int[1];
+        mFetcher.fetch(source.getForecastUrl(LOCATION, 0, DAYS),
+                new ForecastFetcher.ResponseHandler() {
+                    @Override
+                    public void onResponse(InputStream body) throws IOException, JSONException {
+                        status[0] = source.parse(ForecastHttpClient.readBytes(body), null);
+                    }
+                }, new SyncResult());
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, status[0]);
+    }
+}
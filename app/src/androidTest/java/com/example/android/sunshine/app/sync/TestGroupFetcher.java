@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SyncResult;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.core.GroupJsonParser;
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+import com.example.android.sunshine.app.utils.LocalHttpServer.Response;
+import com.example.android.sunshine.app.utils.OwmFixtures;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Runs the GroupFetcher against a local server that answers group requests and counts them.
+ */
+public class TestGroupFetcher extends AndroidTestCase {
+
+    private LocalHttpServer mServer;
+    private ForecastFetcher mFetcher;
+    // The ids of every request, in order
+    private final List<long[]> mRequests = new ArrayList<long[]>();
+    // The cities the handler heard about, and when they were measured
+    private final List<Long> mCityIds = new ArrayList<Long>();
+    private final List<Long> mTimes = new ArrayList<Long>();
+
+    private final GroupJsonParser.Handler mHandler = new GroupJsonParser.Handler() {
+        @Override
+        public void onCity(long cityId, long time, int weatherId, String description,
+                           double temperature, double humidity, double pressure,
+                           double windSpeed, double windDirection) {
+            mCityIds.add(cityId);
+            mTimes.add(time);
+        }
+    };
+
+    // Answers with the weather of the ids asked for
+    private final LocalHttpServer.Responder mGroupResponder = new LocalHttpServer.Responder() {
+        @Override
+        public Response respond(String path, int request) {
+            return Response.ok(OwmFixtures.groupJson(recordIds(path)));
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        CircuitBreaker.resetAll();
+        // Short delays so the test doesn't take forever
+        mFetcher = new ForecastFetcher(new ForecastHttpClient(),
+                new RetryPolicy(3, 10, 50, new Random(42)));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mServer != null) {
+            mServer.shutdown();
+        }
+        CircuitBreaker.resetAll();
+        super.tearDown();
+    }
+
+    private synchronized long[] recordIds(String path) {
+        String[] idStrings = Uri.parse(path).getQueryParameter("id").split(",");
+        long[] ids = new long[idStrings.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Long.parseLong(idStrings[i]);
+        }
+        mRequests.add(ids);
+        return ids;
+    }
+
+    private GroupFetcher newGroupFetcher(int batchSize) throws Exception {
+        return new GroupFetcher(mFetcher, mServer.getUrl("/group").toString(), batchSize);
+    }
+
+    private static long[] cityIds(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = 5375480 + i * 17;
+        }
+        return ids;
+    }
+
+    public void testOneRequestPerBatch() throws Exception {
+        mServer = new LocalHttpServer(mGroupResponder);
+        long[] ids = cityIds(45);
+        int batches = newGroupFetcher(GroupFetcher.MAX_BATCH_SIZE)
+                .fetch(ids, mHandler, new SyncResult(), null);
+
+        assertEquals(3, batches);
+        assertEquals("Error: 45 cities should take 3 requests, not one each", 3,
+                mServer.getRequestCount());
+        assertEquals(GroupFetcher.MAX_BATCH_SIZE, mRequests.get(0).length);
+        assertEquals(GroupFetcher.MAX_BATCH_SIZE, mRequests.get(1).length);
+        assertEquals(5, mRequests.get(2).length);
+
+        // Every city once, in order, with its own weather
+        assertEquals(ids.length, mCityIds.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], (long) mCityIds.get(i));
+            assertEquals("Error: the weather of city " + ids[i] + " went to another one",
+                    OwmFixtures.groupTime(ids[i]), (long) mTimes.get(i));
+        }
+    }
+
+    public void testBatchSize() throws Exception {
+        mServer = new LocalHttpServer(mGroupResponder);
+        newGroupFetcher(7).fetch(cityIds(15), mHandler, new SyncResult(), null);
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(15, mCityIds.size());
+
+        try {
+            newGroupFetcher(GroupFetcher.MAX_BATCH_SIZE + 1);
+            fail("Error: the server takes no more than " + GroupFetcher.MAX_BATCH_SIZE + " ids");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testNoCitiesNoRequest() throws Exception {
+        mServer = new LocalHttpServer(mGroupResponder);
+        assertEquals(0, newGroupFetcher(GroupFetcher.MAX_BATCH_SIZE)
+                .fetch(new long[0], mHandler, new SyncResult(), null));
+        assertEquals(0, mServer.getRequestCount());
+    }
+
+    public void testFailedBatchRetried() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                long[] ids = recordIds(path);
+                // The second batch fails once, inside the payload
+                if (request == 1) {
+                    return Response.ok("{\"cod\":\"500\",\"message\":\"Internal error\"}");
+                }
+                return Response.ok(OwmFixtures.groupJson(ids));
+            }
+        });
+        SyncResult syncResult = new SyncResult();
+        newGroupFetcher(10).fetch(cityIds(25), mHandler, syncResult, null);
+
+        assertEquals("Error: only the failed batch should be asked for again", 4,
+                mServer.getRequestCount());
+        assertEquals(1, syncResult.stats.numIoExceptions);
+        assertEquals("Error: the failed batch should not reach the handler twice", 25,
+                mCityIds.size());
+    }
+
+    public void testRejectedBatchNotRetried() throws Exception {
+        mServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                recordIds(path);
+                return Response.status(401, "{\"cod\":401,\"message\":\"Invalid API key\"}");
+            }
+        });
+        try {
+            newGroupFetcher(10).fetch(cityIds(25), mHandler, new SyncResult(), null);
+            fail("Error: the fetch should have failed");
+        } catch (ForecastFetcher.ClientException e) {
+            // Expected
+        }
+        assertEquals("Error: the batches after a rejected one should not be sent", 1,
+                mServer.getRequestCount());
+        assertEquals(0, mCityIds.size());
+    }
+}
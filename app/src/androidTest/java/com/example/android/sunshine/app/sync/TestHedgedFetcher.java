@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SyncResult;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.core.BinaryForecast;
+import com.example.android.sunshine.app.core.ForecastJsonParser;
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+import com.example.android.sunshine.app.utils.LocalHttpServer.Response;
+import com.example.android.sunshine.app.utils.OwmFixtures;
+
+import java.net.HttpURLConnection;
+
+/*
+    Fetches a forecast from two local servers, the primary slowed down or failing on demand, and
+    checks when the secondary is asked and which response wins.
+ */
+public class TestHedgedFetcher extends AndroidTestCase {
+
+    private static final String LOCATION = "94043";
+    private static final int DAYS = 14;
+    private static final long SLOW_MILLIS = 3000;
+
+    private LocalHttpServer mPrimaryServer;
+    private LocalHttpServer mSecondaryServer;
+    private ForecastSource mPrimary;
+    private ForecastSource mSecondary;
+    private volatile long mPrimaryDelay;
+    private volatile int mPrimaryStatus = HttpURLConnection.HTTP_OK;
+    private volatile long mSecondaryDelay;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        CircuitBreaker.resetAll();
+        BinaryForecast.Writer writer = new BinaryForecast.Writer();
+        ForecastJsonParser.parse(OwmFixtures.forecastJson("Mountain View", DAYS), writer);
+        final byte[] binary = writer.toByteArray();
+
+        mPrimaryServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                if (mPrimaryStatus != HttpURLConnection.HTTP_OK) {
+                    return Response.status(mPrimaryStatus, "");
+                }
+                return Response.ok(binary).delay(mPrimaryDelay);
+            }
+        });
+        mSecondaryServer = new LocalHttpServer(new LocalHttpServer.Responder() {
+            @Override
+            public Response respond(String path, int request) {
+                return Response.ok(binary).delay(mSecondaryDelay);
+            }
+        });
+        mPrimary = new BinaryForecastSource(mPrimaryServer.getUrl("/forecast").toString());
+        mSecondary = new BinaryForecastSource(mSecondaryServer.getUrl("/forecast").toString());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrimaryServer.shutdown();
+        mSecondaryServer.shutdown();
+        CircuitBreaker.resetAll();
+        super.tearDown();
+    }
+
+    // Enough fast requests for the hedge delay to be a percentile of them
+    private void warmUp(HedgedFetcher fetcher) throws Exception {
+        for (int i = 0; i < HedgedFetcher.MIN_SAMPLES; i++) {
+            assertSame(mPrimary, fetcher.fetch(LOCATION, 0, DAYS, new SyncResult()).getSource());
+        }
+    }
+
+    public void testFastPrimaryNotHedged() throws Exception {
+        HedgedFetcher fetcher = new HedgedFetcher(new ForecastHttpClient(), mPrimary, mSecondary);
+        assertEquals(HedgedFetcher.INITIAL_HEDGE_DELAY, fetcher.getHedgeDelay());
+        warmUp(fetcher);
+
+        HedgedFetcher.Result result = fetcher.fetch(LOCATION, 0, DAYS, new SyncResult());
+        assertSame(mPrimary, result.getSource());
+        assertFalse(result.isHedged());
+        // The days come decoded, the caller doesn't parse the body again
+        assertEquals(HttpURLConnection.HTTP_OK, result.getErrorCode());
+        assertEquals(DAYS, result.getForecast().size());
+        assertEquals(0, mSecondaryServer.getRequestCount());
+        assertTrue("Error: the hedge delay should follow the primary's latencies, not stay at "
+                + "the initial one", fetcher.getHedgeDelay() < HedgedFetcher.INITIAL_HEDGE_DELAY);
+    }
+
+    public void testSlowPrimaryHedged() throws Exception {
+        HedgedFetcher fetcher = new HedgedFetcher(new ForecastHttpClient(), mPrimary, mSecondary);
+        warmUp(fetcher);
+
+        mPrimaryDelay = SLOW_MILLIS;
+        long start = System.currentTimeMillis();
+        HedgedFetcher.Result result = fetcher.fetch(LOCATION, 0, DAYS, new SyncResult());
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertSame(mSecondary, result.getSource());
+        assertTrue(result.isHedged());
+        assertTrue(result.getBody().length > 0);
+        assertEquals(1, mSecondaryServer.getRequestCount());
+        assertTrue("Error: the secondary should answer long before the slow primary, took "
+                + elapsed + "ms", elapsed < SLOW_MILLIS / 2);
+        // Cancelling the primary isn't a failure of its host
+        assertTrue(CircuitBreaker.forHost(mPrimary.getForecastUrl(LOCATION, 0, DAYS).getHost())
+                .allowRequest(System.currentTimeMillis()));
+    }
+
+    public void testFailedPrimaryHandsOver() throws Exception {
+        HedgedFetcher fetcher = new HedgedFetcher(new ForecastHttpClient(), mPrimary, mSecondary);
+        mPrimaryStatus = HttpURLConnection.HTTP_UNAVAILABLE;
+        SyncResult syncResult = new SyncResult();
+
+        long start = System.currentTimeMillis();
+        HedgedFetcher.Result result = fetcher.fetch(LOCATION, 0, DAYS, syncResult);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertSame(mSecondary, result.getSource());
+        assertEquals(1, syncResult.stats.numIoExceptions);
+        assertTrue("Error: a failed primary shouldn't wait for the hedge delay, took "
+                + elapsed + "ms", elapsed < HedgedFetcher.INITIAL_HEDGE_DELAY);
+    }
+
+    public void testBothFail() throws Exception {
+        HedgedFetcher fetcher = new HedgedFetcher(new ForecastHttpClient(), mPrimary, mPrimary);
+        mPrimaryStatus = HttpURLConnection.HTTP_UNAVAILABLE;
+        SyncResult syncResult = new SyncResult();
+        long start = System.currentTimeMillis();
+        try {
+            fetcher.fetch(LOCATION, 0, DAYS, syncResult);
+            fail("Error: the fetch should fail when both backends do");
+        } catch (ForecastFetcher.ServerException e) {
+            // Expected
+        }
+        assertEquals(2, syncResult.stats.numIoExceptions);
+        // The sync framework backs off for at least a deadline
+        assertTrue("Error: a failed fetch should delay the next sync",
+                syncResult.delayUntil * 1000 >= start + HedgedFetcher.DEFAULT_DEADLINE - 1000);
+    }
+
+    public void testDeadline() throws Exception {
+        long deadline = 500;
+        HedgedFetcher fetcher = new HedgedFetcher(new ForecastHttpClient(), mPrimary, mSecondary,
+                HedgedFetcher.DEFAULT_HEDGE_PERCENTILE, deadline);
+        mPrimaryDelay = SLOW_MILLIS;
+        mSecondaryDelay = SLOW_MILLIS;
+
+        SyncResult syncResult = new SyncResult();
+        long start = System.currentTimeMillis();
+        try {
+            fetcher.fetch(LOCATION, 0, DAYS, syncResult);
+            fail("Error: the fetch should give up at the deadline");
+        } catch (HedgedFetcher.DeadlineException e) {
+            // Expected
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("Error: the fetch took " + elapsed + "ms past a " + deadline + "ms deadline",
+                elapsed < SLOW_MILLIS / 2);
+        assertTrue("Error: a fetch past its deadline should delay the next sync",
+                syncResult.delayUntil > 0);
+    }
+}
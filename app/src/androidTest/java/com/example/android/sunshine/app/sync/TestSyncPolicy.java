@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Random;
+
+/*
+    Simulates a week of forecast changes for a single location and replays it against two
+    strategies: the old fixed 3 hour polling, and GCM tickles with the long safety poll.  The
+    harness counts the network requests each strategy makes and how long the stored forecast
+    stays behind the server.
+ */
+public class TestSyncPolicy extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncPolicy.class.getSimpleName();
+
+    private static final String TEST_PREFS = "test_sync_policy";
+    private static final String TEST_LOCATION = "99705";
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+    private static final long SIMULATED_DURATION = 7 * 24 * HOUR_IN_MILLIS;
+    // On average the upstream forecast changes every 6 hours
+    private static final long MEAN_CHANGE_INTERVAL = 6 * HOUR_IN_MILLIS;
+
+    private SharedPreferences mPrefs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(TEST_PREFS, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    public void testPushIgnoresStaleTickles() {
+        SyncPolicy policy = new SyncPolicy(mPrefs);
+        policy.setPushEnabled(true);
+
+        assertTrue("Error: first tickle should trigger a sync", policy.onPush(TEST_LOCATION, 1000));
+        policy.recordSync(TEST_LOCATION, 2000);
+        assertFalse("Error: a tickle older than the last sync should not trigger a sync",
+                policy.onPush(TEST_LOCATION, 1500));
+        assertEquals("Error: the last change time moved backwards",
+                1000, policy.getLastChange(TEST_LOCATION));
+    }
+
+    public void testPeriodicSyncDue() {
+        SyncPolicy policy = new SyncPolicy(mPrefs);
+        long now = 10 * 24 * HOUR_IN_MILLIS;
+
+        assertTrue("Error: polling must always sync without push",
+                policy.isSyncDue(TEST_LOCATION, now));
+
+        policy.setPushEnabled(true);
+        assertTrue("Error: a location that was never synced should be due",
+                policy.isSyncDue(TEST_LOCATION, now));
+
+        policy.recordSync(TEST_LOCATION, now - HOUR_IN_MILLIS);
+        assertFalse("Error: a location synced an hour ago should not be due",
+                policy.isSyncDue(TEST_LOCATION, now));
+
+        policy.recordChange(TEST_LOCATION, now - HOUR_IN_MILLIS / 2);
+        assertTrue("Error: a missed tickle should make the location due",
+                policy.isSyncDue(TEST_LOCATION, now));
+
+        policy.recordSync(TEST_LOCATION, now - SyncPolicy.SAFETY_SYNC_INTERVAL * 1000L);
+        assertTrue("Error: a location older than the safety interval should be due",
+                policy.isSyncDue(TEST_LOCATION, now));
+    }
+
+    public void testSimulatedTraffic() {
+        long[] changes = generateChanges(new Random(42));
+
+        SimulationResult poll = simulate(changes, false, SunshineSyncAdapter.SYNC_INTERVAL);
+        mPrefs.edit().clear().commit();
+        SimulationResult push = simulate(changes, true, SyncPolicy.SAFETY_SYNC_INTERVAL);
+
+        Log.i(LOG_TAG, "Upstream changes: " + changes.length);
+        Log.i(LOG_TAG, "Polling: " + poll);
+        Log.i(LOG_TAG, "Push:    " + push);
+        Log.i(LOG_TAG, "Network requests saved: " + (poll.requests - push.requests));
+
+        assertTrue("Error: push should make fewer requests than polling",
+                push.requests < poll.requests);
+        assertTrue("Error: push should not leave the forecast more stale than polling",
+                push.staleMillis <= poll.staleMillis);
+    }
+
+    private long[] generateChanges(Random random) {
+        long[] buffer = new long[(int) (SIMULATED_DURATION / HOUR_IN_MILLIS)];
+        int count = 0;
+        long time = 0;
+        while (count < buffer.length) {
+            // exponentially distributed gaps between changes
+            time += (long) (-Math.log(1 - random.nextDouble()) * MEAN_CHANGE_INTERVAL);
+            if (time >= SIMULATED_DURATION) {
+                break;
+            }
+            buffer[count++] = time;
+        }
+        long[] changes = new long[count];
+        System.arraycopy(buffer, 0, changes, 0, count);
+        return changes;
+    }
+
+    /*
+        Replays the upstream changes minute by minute.  Tickles are delivered instantly and
+        trigger a manual sync; periodic syncs fire every interval and consult the policy.
+     */
+    private SimulationResult simulate(long[] changes, boolean pushEnabled, int intervalSeconds) {
+        SyncPolicy policy = new SyncPolicy(mPrefs);
+        policy.setPushEnabled(pushEnabled);
+
+        SimulationResult result = new SimulationResult();
+        long step = 60 * 1000;
+        long interval = intervalSeconds * 1000L;
+        long nextPeriodic = 0;
+        long syncedVersion = -1;
+        long upstreamVersion = -1;
+        int nextChange = 0;
+
+        for (long now = 0; now < SIMULATED_DURATION; now += step) {
+            while (nextChange < changes.length && changes[nextChange] <= now) {
+                upstreamVersion = changes[nextChange++];
+                if (pushEnabled && policy.onPush(TEST_LOCATION, upstreamVersion)) {
+                    result.requests++;
+                    syncedVersion = upstreamVersion;
+                    policy.recordSync(TEST_LOCATION, now);
+                }
+            }
+            if (now >= nextPeriodic) {
+                nextPeriodic = now + interval;
+                if (policy.isSyncDue(TEST_LOCATION, now)) {
+                    result.requests++;
+                    syncedVersion = upstreamVersion;
+                    policy.recordSync(TEST_LOCATION, now);
+                }
+            }
+            if (syncedVersion != upstreamVersion) {
+                result.staleMillis += step;
+            }
+        }
+        return result;
+    }
+
+    static class SimulationResult {
+        int requests;
+        long staleMillis;
+
+        @Override
+        public String toString() {
+            return requests + " requests, stale for " + (staleMillis / 60000) + " minutes";
+        }
+    }
+}
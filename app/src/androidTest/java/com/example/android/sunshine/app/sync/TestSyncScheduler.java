@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Replays recorded usage traces against the adaptive SyncScheduler and compares it with the
+    fixed 3 hour periodic sync.
+
+    A trace is a list of events, one per line:
+        F,<hour>            the app came to the foreground
+        V,<hour>,<rate>     from this hour on, this fraction of the forecast changes per sync
+        C,<hour>,<hour>     the device is charging between these hours of every day
+ */
+public class TestSyncScheduler extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncScheduler.class.getSimpleName();
+
+    private static final String TEST_PREFS = "test_sync_scheduler";
+    private static final long MINUTE_IN_MILLIS = 1000 * 60;
+    private static final long HOUR_IN_MILLIS = 60 * MINUTE_IN_MILLIS;
+    private static final int TRACE_HOURS = 7 * 24;
+    private static final int FORECAST_DAYS = 14;
+
+    // Opens the app once, then leaves it alone for the rest of the week on a stable forecast.
+    private static final String[] IDLE_TRACE = {
+            "V,0,0.2",
+            "F,1",
+            "C,0,6",
+    };
+
+    // Checks the forecast three times a day during a stormy week.
+    private static final String[] ACTIVE_TRACE = buildActiveTrace();
+
+    private SharedPreferences mPrefs;
+
+    private static String[] buildActiveTrace() {
+        String[] trace = new String[2 + 3 * 7];
+        trace[0] = "V,0,0.9";
+        trace[1] = "C,0,6";
+        for (int day = 0; day < 7; day++) {
+            trace[2 + day * 3] = "F," + (day * 24 + 7);
+            trace[3 + day * 3] = "F," + (day * 24 + 12);
+            trace[4 + day * 3] = "F," + (day * 24 + 19);
+        }
+        return trace;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(TEST_PREFS, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    public void testIntervalBounds() {
+        SyncScheduler scheduler = new SyncScheduler(mPrefs);
+        long now = 10 * 24 * HOUR_IN_MILLIS;
+
+        assertEquals("Error: a user who never opened the app should get the longest interval",
+                SyncScheduler.MAX_SYNC_INTERVAL, scheduler.getSyncInterval(now));
+
+        scheduler.recordForeground(now);
+        for (int i = 0; i < 20; i++) {
+            scheduler.recordSync(now, FORECAST_DAYS, FORECAST_DAYS);
+        }
+        int volatileInterval = scheduler.getSyncInterval(now);
+        assertTrue("Error: interval below the lower bound",
+                volatileInterval >= SyncScheduler.MIN_SYNC_INTERVAL);
+        assertTrue("Error: a volatile forecast should sync more often than every 3 hours",
+                volatileInterval < SunshineSyncAdapter.SYNC_INTERVAL);
+
+        for (int i = 0; i < 20; i++) {
+            scheduler.recordSync(now, 0, FORECAST_DAYS);
+        }
+        assertTrue("Error: a stable forecast should sync less often than a volatile one",
+                scheduler.getSyncInterval(now) > volatileInterval);
+        assertTrue("Error: interval above the upper bound",
+                scheduler.getSyncInterval(now) <= SyncScheduler.MAX_SYNC_INTERVAL);
+    }
+
+    public void testDeferral() {
+        SyncScheduler scheduler = new SyncScheduler(mPrefs);
+        long now = 10 * 24 * HOUR_IN_MILLIS;
+        scheduler.recordSync(now - HOUR_IN_MILLIS, 1, FORECAST_DAYS);
+
+        assertTrue("Error: an idle user on a metered network should wait",
+                scheduler.shouldDefer(now, true, false));
+        assertFalse("Error: never defer on an unmetered network",
+                scheduler.shouldDefer(now, false, false));
+        assertFalse("Error: never defer while charging",
+                scheduler.shouldDefer(now, true, true));
+        assertFalse("Error: never defer past the maximum age",
+                scheduler.shouldDefer(now + SyncScheduler.MAX_DEFERRED_AGE, true, false));
+
+        scheduler.recordForeground(now);
+        assertFalse("Error: an active user should not wait",
+                scheduler.shouldDefer(now, true, false));
+    }
+
+    public void testScheduledInterval() {
+        SyncScheduler scheduler = new SyncScheduler(mPrefs);
+        assertTrue(scheduler.updateScheduledInterval(SyncScheduler.MAX_SYNC_INTERVAL));
+        assertFalse("Error: the same interval shouldn't reschedule the sync",
+                scheduler.updateScheduledInterval(SyncScheduler.MAX_SYNC_INTERVAL));
+
+        // A new sync account has no periodic sync, whatever the preferences remember
+        scheduler.clearScheduledInterval();
+        assertTrue("Error: a forgotten interval should reschedule the sync",
+                scheduler.updateScheduledInterval(SyncScheduler.MAX_SYNC_INTERVAL));
+    }
+
+    public void testReplayIdleTrace() {
+        ReplayResult fixed = replay(IDLE_TRACE, false);
+        mPrefs.edit().clear().commit();
+        ReplayResult adaptive = replay(IDLE_TRACE, true);
+        Log.i(LOG_TAG, "Idle trace, fixed:    " + fixed);
+        Log.i(LOG_TAG, "Idle trace, adaptive: " + adaptive);
+
+        assertTrue("Error: the adaptive scheduler should sync less for an idle user",
+                adaptive.syncs * 2 < fixed.syncs);
+    }
+
+    public void testReplayActiveTrace() {
+        ReplayResult fixed = replay(ACTIVE_TRACE, false);
+        mPrefs.edit().clear().commit();
+        ReplayResult adaptive = replay(ACTIVE_TRACE, true);
+        Log.i(LOG_TAG, "Active trace, fixed:    " + fixed);
+        Log.i(LOG_TAG, "Active trace, adaptive: " + adaptive);
+
+        assertTrue("Error: an active user saw a forecast older than the fixed interval allows",
+                adaptive.maxAgeSeenMillis <= SunshineSyncAdapter.SYNC_INTERVAL * 1000L);
+    }
+
+    /*
+        Replays a trace minute by minute.  With the fixed schedule, syncs fire every
+        SYNC_INTERVAL.  With the adaptive one, the scheduler picks the next interval after every
+        sync, may defer syncs outside charging hours (the device is always on a metered network
+        here), and foreground events can trigger an immediate sync.
+     */
+    private ReplayResult replay(String[] trace, boolean adaptive) {
+        SyncScheduler scheduler = new SyncScheduler(mPrefs);
+        ReplayResult result = new ReplayResult();
+
+        float changeRate = 0;
+        int chargeFrom = -1;
+        int chargeTo = -1;
+        long lastSync = -1;
+        long nextSync = 0;
+
+        for (long now = 0; now < TRACE_HOURS * HOUR_IN_MILLIS; now += MINUTE_IN_MILLIS) {
+            boolean foreground = false;
+            for (String line : trace) {
+                String[] event = line.split(",");
+                if (Integer.parseInt(event[1]) * HOUR_IN_MILLIS != now) {
+                    continue;
+                }
+                if ("V".equals(event[0])) {
+                    changeRate = Float.parseFloat(event[2]);
+                } else if ("C".equals(event[0])) {
+                    chargeFrom = Integer.parseInt(event[1]);
+                    chargeTo = Integer.parseInt(event[2]);
+                } else if ("F".equals(event[0])) {
+                    foreground = true;
+                }
+            }
+            int hourOfDay = (int) ((now / HOUR_IN_MILLIS) % 24);
+            boolean charging = hourOfDay >= chargeFrom && hourOfDay < chargeTo;
+
+            boolean syncNow = false;
+            if (foreground && adaptive && scheduler.recordForeground(now)) {
+                syncNow = true;
+            }
+            if (now >= nextSync) {
+                if (adaptive && lastSync >= 0 && scheduler.shouldDefer(now, true, charging)) {
+                    result.deferred++;
+                    nextSync = now + scheduler.getSyncInterval(now) * 1000L;
+                } else {
+                    syncNow = true;
+                }
+            }
+            if (syncNow) {
+                result.syncs++;
+                lastSync = now;
+                scheduler.recordSync(now, Math.round(changeRate * FORECAST_DAYS), FORECAST_DAYS);
+                nextSync = now + (adaptive ? scheduler.getSyncInterval(now) * 1000L
+                        : SunshineSyncAdapter.SYNC_INTERVAL * 1000L);
+            }
+            if (foreground && lastSync >= 0) {
+                result.maxAgeSeenMillis = Math.max(result.maxAgeSeenMillis, now - lastSync);
+            }
+        }
+        return result;
+    }
+
+    static class ReplayResult {
+        int syncs;
+        int deferred;
+        long maxAgeSeenMillis;
+
+        @Override
+        public String toString() {
+            return syncs + " syncs, " + deferred + " deferred, oldest forecast seen "
+                    + (maxAgeSeenMillis / MINUTE_IN_MILLIS) + " minutes";
+        }
+    }
+}
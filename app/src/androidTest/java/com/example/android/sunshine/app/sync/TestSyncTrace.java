@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.SyncTraceEntry;
+
+import java.util.List;
+
+public class TestSyncTrace extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SyncTrace.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SyncTrace.clear();
+        super.tearDown();
+    }
+
+    public void testStagesOfOneSync() {
+        SyncTrace trace = SyncTrace.begin("94043");
+        long start = SyncTrace.now();
+        trace.record(SyncTrace.STAGE_DOWNLOAD, start, 2048, 0);
+        trace.record(SyncTrace.STAGE_BULK_INSERT, SyncTrace.now(), 0, 14);
+        trace.finish(2048, 0);
+
+        List<SyncTrace.Stage> stages = SyncTrace.getStages();
+        assertEquals(3, stages.size());
+        assertEquals(SyncTrace.STAGE_DOWNLOAD, stages.get(0).name);
+        assertEquals(2048, stages.get(0).bytes);
+        assertEquals(14, stages.get(1).rows);
+        assertEquals(SyncTrace.STAGE_SYNC, stages.get(2).name);
+        for (SyncTrace.Stage stage : stages) {
+            assertEquals(trace.getSyncId(), stage.syncId);
+            assertEquals("94043", stage.locationSetting);
+            assertTrue(stage.durationNanos >= 0);
+        }
+        // The whole sync lasts at least as long as its stages
+        assertTrue(stages.get(2).durationNanos >= stages.get(0).durationNanos);
+    }
+
+    // The buffer keeps the most recent stages, oldest first
+    public void testRingBufferWraps() {
+        SyncTrace trace = SyncTrace.begin("94043");
+        int recorded = SyncTrace.CAPACITY + 10;
+        for (int i = 0; i < recorded; i++) {
+            trace.record(SyncTrace.STAGE_PARSE, SyncTrace.now(), 0, i);
+        }
+        List<SyncTrace.Stage> stages = SyncTrace.getStages();
+        assertEquals(SyncTrace.CAPACITY, stages.size());
+        assertEquals(10, stages.get(0).rows);
+        assertEquals(recorded - 1, stages.get(stages.size() - 1).rows);
+    }
+
+    // Tests run against the debug build, where the provider exports the trace
+    public void testDebugUri() {
+        SyncTrace trace = SyncTrace.begin("94043");
+        trace.record(SyncTrace.STAGE_CONNECT, SyncTrace.now(), 0, 0);
+        trace.record(SyncTrace.STAGE_DOWNLOAD, SyncTrace.now(), 512, 0);
+
+        Cursor cursor = mContext.getContentResolver().query(SyncTraceEntry.CONTENT_URI,
+                null, null, null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToLast());
+            assertEquals(SyncTrace.STAGE_DOWNLOAD,
+                    cursor.getString(cursor.getColumnIndex(SyncTraceEntry.COLUMN_STAGE)));
+            assertEquals(512, cursor.getLong(cursor.getColumnIndex(SyncTraceEntry.COLUMN_BYTES)));
+            assertEquals(trace.getSyncId(),
+                    cursor.getInt(cursor.getColumnIndex(SyncTraceEntry.COLUMN_SYNC_ID)));
+        } finally {
+            cursor.close();
+        }
+    }
+}
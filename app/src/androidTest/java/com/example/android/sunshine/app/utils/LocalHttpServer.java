@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A tiny HTTP/1.1 server on the loopback interface, standing in for the weather API in tests.
+ * Every request is answered by the {@link Responder}, which can also inject faults: error
+ * statuses or latency.  Connections are kept alive between requests, and responses are gzipped
+ * for clients that ask for it.
+ */
+public class LocalHttpServer {
+
+    public interface Responder {
+        /**
+         * @param path    The path and query of the request.
+         * @param request Zero based index of the request since the server started.
+         */
+        Response respond(String path, int request);
+    }
+
+    public static class Response {
+        int mStatus = 200;
+        byte[] mBody = new byte[0];
+        long mDelayMillis;
+
+        public static Response ok(String body) {
+            return status(200, body);
+        }
+
+        public static Response ok(byte[] body) {
+            Response response = new Response();
+            response.mBody = body;
+            return response;
+        }
+
+        public static Response status(int status, String body) {
+            Response response = new Response();
+            response.mStatus = status;
+            try {
+                response.mBody = body.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+            return response;
+        }
+
+        /**
+         * Waits before answering.
+         */
+        public Response delay(long millis) {
+            mDelayMillis = millis;
+            return this;
+        }
+    }
+
+    private final Responder mResponder;
+    private final ServerSocket mServerSocket;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final AtomicLong mBytesSent = new AtomicLong();
+    private volatile boolean mGzipEnabled = true;
+
+    public LocalHttpServer(Responder responder) throws IOException {
+        mResponder = responder;
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+    }
+
+    public URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", mServerSocket.getLocalPort(), path);
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /**
+     * @return the number of body bytes sent, after compression.
+     */
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    /**
+     * Whether to compress the responses of clients that accept gzip.  On by default.
+     */
+    public void setGzipEnabled(boolean enabled) {
+        mGzipEnabled = enabled;
+    }
+
+    public void shutdown() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // Nothing to do
+        }
+        mExecutor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mConnectionCount.incrementAndGet();
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException e) {
+                // The server was shut down
+                return;
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(body);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = reader.readLine()) != null) {
+                if (requestLine.length() == 0) {
+                    continue;
+                }
+                // GET requests only, the only header we care about is Accept-Encoding
+                boolean gzip = false;
+                String header;
+                while ((header = reader.readLine()) != null && header.length() > 0) {
+                    String lowerCase = header.toLowerCase(Locale.US);
+                    if (lowerCase.startsWith("accept-encoding:") && lowerCase.contains("gzip")) {
+                        gzip = true;
+                    }
+                }
+                String path = requestLine.split(" ")[1];
+                Response response = mResponder.respond(path, mRequestCount.getAndIncrement());
+                if (response.mDelayMillis > 0) {
+                    Thread.sleep(response.mDelayMillis);
+                }
+                byte[] body = response.mBody;
+                if (gzip && mGzipEnabled && body.length > 0) {
+                    body = gzip(body);
+                }
+                String head = "HTTP/1.1 " + response.mStatus + " Status\r\n"
+                        + "Content-Type: application/json; charset=utf-8\r\n"
+                        + (body != response.mBody ? "Content-Encoding: gzip\r\n" : "")
+                        + "Content-Length: " + body.length + "\r\n"
+                        + "\r\n";
+                out.write(head.getBytes("ISO-8859-1"));
+                out.write(body);
+                out.flush();
+                mBytesSent.addAndGet(body.length);
+            }
+        } catch (IOException e) {
+            // The client went away
+        } catch (InterruptedException e) {
+            // The server was shut down
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Builds OpenWeatherMap daily forecast payloads, shaped like the real thing.
+ */
+public class OwmFixtures {
+
+    private static final String[] DESCRIPTIONS = {"Clear", "Clouds", "Rain", "Snow", "Drizzle"};
+    private static final int[] WEATHER_IDS = {800, 803, 500, 600, 300};
+
+    /**
+     * @param city The name of the city, also used to seed the forecast.
+     * @param days The number of days in the forecast.
+     */
+    public static String forecastJson(String city, int days) {
+        Random random = new Random(city.hashCode());
+        StringBuilder json = new StringBuilder(512 * days);
+        json.append(String.format(Locale.US,
+                "{\"city\":{\"id\":%d,\"name\":\"%s\",\"coord\":{\"lon\":%.4f,\"lat\":%.4f},"
+                        + "\"country\":\"US\",\"population\":0},\"cod\":\"200\",\"message\":0.0123,"
+                        + "\"cnt\":%d,\"list\":[",
+                Math.abs(city.hashCode()), city, random.nextDouble() * 360 - 180,
+                random.nextDouble() * 180 - 90, days));
+        long dt = 1400000000L;
+        for (int i = 0; i < days; i++) {
+            int kind = random.nextInt(DESCRIPTIONS.length);
+            double min = random.nextDouble() * 20;
+            double max = min + random.nextDouble() * 10;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,\"night\":%.2f,"
+                            + "\"eve\":%.2f,\"morn\":%.2f},\"pressure\":%.2f,\"humidity\":%d,"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"%s\",\"description\":\"%s\","
+                            + "\"icon\":\"01d\"}],\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                    dt + i * 86400L, (min + max) / 2, min, max, min + 1, max - 1, min + 2,
+                    990 + random.nextDouble() * 40, random.nextInt(100), WEATHER_IDS[kind],
+                    DESCRIPTIONS[kind], DESCRIPTIONS[kind].toLowerCase(Locale.US),
+                    random.nextDouble() * 15, random.nextInt(360), random.nextInt(100)));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Builds the response to a group request, the current weather of each city.  The weather is
+     * seeded by the city id, and measured at {@link #groupTime} of it.
+     */
+    public static String groupJson(long[] cityIds) {
+        StringBuilder json = new StringBuilder(400 * cityIds.length + 32);
+        json.append("{\"cnt\":").append(cityIds.length).append(",\"list\":[");
+        for (int i = 0; i < cityIds.length; i++) {
+            Random random = new Random(cityIds[i]);
+            int kind = random.nextInt(DESCRIPTIONS.length);
+            double temp = random.nextDouble() * 30;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US,
+                    "{\"coord\":{\"lon\":%.4f,\"lat\":%.4f},\"sys\":{\"country\":\"US\"},"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"%s\",\"description\":\"%s\","
+                            + "\"icon\":\"01d\"}],\"main\":{\"temp\":%.2f,\"pressure\":%.2f,"
+                            + "\"humidity\":%d,\"temp_min\":%.2f,\"temp_max\":%.2f},"
+                            + "\"wind\":{\"speed\":%.2f,\"deg\":%d},\"clouds\":{\"all\":%d},"
+                            + "\"dt\":%d,\"id\":%d,\"name\":\"City %d\"}",
+                    random.nextDouble() * 360 - 180, random.nextDouble() * 180 - 90,
+                    WEATHER_IDS[kind], DESCRIPTIONS[kind],
+                    DESCRIPTIONS[kind].toLowerCase(Locale.US),
+                    temp, 990 + random.nextDouble() * 40, random.nextInt(100), temp - 1, temp + 1,
+                    random.nextDouble() * 15, random.nextInt(360), random.nextInt(100),
+                    groupTime(cityIds[i]) / 1000, cityIds[i], cityIds[i]));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * @return when the weather of the city in {@link #groupJson} was measured, in milliseconds.
+     */
+    public static long groupTime(long cityId) {
+        return (1400000000L + cityId % 86400) * 1000;
+    }
+}
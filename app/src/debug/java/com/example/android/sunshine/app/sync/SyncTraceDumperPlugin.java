@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import com.facebook.stetho.dumpapp.DumpException;
+import com.facebook.stetho.dumpapp.DumperContext;
+import com.facebook.stetho.dumpapp.DumperPlugin;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prints the {@link SyncTrace} ring buffer, one stage per line:
+ * <pre>
+ *   ./dumpapp synctrace        # the recorded stages, oldest first
+ *   ./dumpapp synctrace clear  # forgets them
+ * </pre>
+ */
+public class SyncTraceDumperPlugin implements DumperPlugin {
+
+    @Override
+    public String getName() {
+        return "synctrace";
+    }
+
+    @Override
+    public void dump(DumperContext dumpContext) throws DumpException {
+        PrintStream out = dumpContext.getStdout();
+        List<String> args = dumpContext.getArgsAsList();
+        if (!args.isEmpty() && "clear".equals(args.get(0))) {
+            SyncTrace.clear();
+            out.println("Cleared");
+            return;
+        }
+        out.println("sync\tlocation\tstage\tstart\tduration_us\tbytes\trows");
+        for (SyncTrace.Stage stage : SyncTrace.getStages()) {
+            out.println(String.format(Locale.US, "%d\t%s\t%s\t%d\t%d\t%d\t%d", stage.syncId,
+                    stage.locationSetting, stage.name, stage.startMillis,
+                    stage.durationNanos / 1000, stage.bytes, stage.rows));
+        }
+    }
+}
@@ -21,7 +21,6 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.CardView;
@@ -55,6 +54,8 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private String mForecast;
     private Uri mUri;
     private boolean mTransitionAnimation;
+    // The units and art the details were last shown with
+    private String mDisplayPreferences;
 
     private static final int DETAIL_LOADER = 0;
 
@@ -157,6 +158,20 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         super.onActivityCreated(savedInstanceState);
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        // Units and art are only how the day is shown, show the rows already loaded again
+        String displayPreferences = Utility.getDisplayPreferences(getActivity());
+        if (mDisplayPreferences != null && !mDisplayPreferences.equals(displayPreferences)) {
+            Loader<Cursor> loader = getLoaderManager().getLoader(DETAIL_LOADER);
+            if (loader instanceof SharedQueryLoader) {
+                ((SharedQueryLoader) loader).redeliver();
+            }
+        }
+        mDisplayPreferences = displayPreferences;
+    }
+
     void onLocationChanged( String newLocation ) {
         // replace the uri, since the location has changed
         Uri uri = mUri;
@@ -171,16 +186,9 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         if ( null != mUri ) {
-            // Now create and return a CursorLoader that will take care of
-            // creating a Cursor for the data being displayed.
-            return new CursorLoader(
-                    getActivity(),
-                    mUri,
-                    DETAIL_COLUMNS,
-                    null,
-                    null,
-                    null
-            );
+            // Now create and return a Loader that will take care of creating a Cursor for the
+            // data being displayed.  Every screen showing this day shares its query.
+            return new SharedQueryLoader(getActivity(), mUri, DETAIL_COLUMNS);
         }
         ViewParent vp = getView().getParent();
         if ( vp instanceof CardView ) {
@@ -70,7 +70,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
+            if (!moveCursorToPosition(adapterPosition)) {
+                // Still loading
+                return;
+            }
             int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
             mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
             mICM.onClick(this);
@@ -121,7 +124,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
+        if (!moveCursorToPosition(position)) {
+            bindPlaceholder(forecastAdapterViewHolder);
+            return;
+        }
         int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
         int defaultImage;
         boolean useLongToday;
@@ -182,6 +188,33 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
 
+    /*
+        Shows an empty row for a day of a page that isn't loaded yet.  The loader brings the page
+        in as the list settles on it.
+     */
+    private void bindPlaceholder(ForecastAdapterViewHolder forecastAdapterViewHolder) {
+        Glide.clear(forecastAdapterViewHolder.mIconView);
+        forecastAdapterViewHolder.mIconView.setImageDrawable(null);
+        forecastAdapterViewHolder.mDateView.setText(null);
+        forecastAdapterViewHolder.mDescriptionView.setText(null);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(null);
+        forecastAdapterViewHolder.mHighTempView.setText(null);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(null);
+        forecastAdapterViewHolder.mLowTempView.setText(null);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(null);
+    }
+
+    /**
+     * Moves the cursor to a position of the list.  With a paged cursor, returns false if the
+     * page holding that position isn't loaded.
+     */
+    boolean moveCursorToPosition(int position) {
+        if (mCursor instanceof PagedCursorLoader.PageWindow) {
+            return ((PagedCursorLoader.PageWindow) mCursor).moveToAbsolutePosition(position);
+        }
+        return mCursor.moveToPosition(position);
+    }
+
     public void onRestoreInstanceState(Bundle savedInstanceState) {
         mICM.onRestoreInstanceState(savedInstanceState);
     }
@@ -206,6 +239,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     @Override
     public int getItemCount() {
         if ( null == mCursor ) return 0;
+        if (mCursor instanceof PagedCursorLoader.PageWindow) {
+            return ((PagedCursorLoader.PageWindow) mCursor).getKnownCount();
+        }
         return mCursor.getCount();
     }
 
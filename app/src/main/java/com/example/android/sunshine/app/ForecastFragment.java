@@ -28,7 +28,6 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -59,10 +58,18 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // Whether the next load should scroll to the selection, later pages leave the list alone
+    private boolean mScrollToSelection = true;
+    // The units and art the list was last shown with
+    private String mDisplayPreferences;
 
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
+    // The list holds at most FORECAST_MAX_PAGES pages of FORECAST_PAGE_SIZE days, however many
+    // days are stored.  A full forecast fits in the first page.
+    private static final int FORECAST_PAGE_SIZE = 20;
+    private static final int FORECAST_MAX_PAGES = 3;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
     private static final String[] FORECAST_COLUMNS = {
@@ -117,6 +124,18 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         setHasOptionsMenu(true);
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        // Units and art are only how the days are shown, bind the rows already loaded again
+        String displayPreferences = Utility.getDisplayPreferences(getActivity());
+        if (mDisplayPreferences != null && !mDisplayPreferences.equals(displayPreferences)
+                && mForecastAdapter != null) {
+            mForecastAdapter.notifyDataSetChanged();
+        }
+        mDisplayPreferences = displayPreferences;
+    }
+
     @Override
     public void onResume() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
@@ -219,6 +238,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             }
         }
 
+        // Bring in the pages the list scrolls to
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                requestVisiblePages();
+            }
+        });
+
         final AppBarLayout appbarView = (AppBarLayout)rootView.findViewById(R.id.appbar);
         if (null != appbarView) {
             ViewCompat.setElevation(appbarView, 0);
@@ -263,8 +290,19 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         super.onActivityCreated(savedInstanceState);
     }
 
+    private void requestVisiblePages() {
+        Loader<Cursor> loader = getLoaderManager().getLoader(FORECAST_LOADER);
+        if (loader instanceof PagedCursorLoader) {
+            LinearLayoutManager layoutManager =
+                    (LinearLayoutManager) mRecyclerView.getLayoutManager();
+            ((PagedCursorLoader) loader).requestPositions(
+                    layoutManager.findFirstVisibleItemPosition(),
+                    layoutManager.findLastVisibleItemPosition());
+        }
+    }
+
     // since we read the location when we create the loader, all we need to do is restart things
-    void onLocationChanged() {
+    public void onLocationChanged() {
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
     }
 
@@ -274,8 +312,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // http://developer.android.com/guide/components/intents-common.html#Maps
         if (null != mForecastAdapter) {
             Cursor c = mForecastAdapter.getCursor();
-            if (null != c) {
-                c.moveToPosition(0);
+            // Every row holds the coordinates of the location, any loaded one will do
+            if (null != c && c.moveToFirst()) {
                 String posLat = c.getString(COL_COORD_LAT);
                 String posLong = c.getString(COL_COORD_LONG);
                 Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
@@ -309,28 +347,30 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // To only show current and future dates, filter the query to return weather only for
         // dates after or including today.
 
-        // Sort order:  Ascending, by date.
-        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-
+        // The pages come in ascending order of date.
+        mScrollToSelection = true;
         String locationSetting = Utility.getPreferredLocation(getActivity());
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
+        return new PagedCursorLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
-                null,
-                null,
-                sortOrder);
+                COL_WEATHER_DATE,
+                FORECAST_PAGE_SIZE,
+                FORECAST_MAX_PAGES);
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         mForecastAdapter.swapCursor(data);
         updateEmptyView();
+        // The list may have moved on while the pages loaded
+        requestVisiblePages();
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
-        } else {
+        } else if (mScrollToSelection) {
+            mScrollToSelection = false;
             mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
                 @Override
                 public boolean onPreDraw() {
@@ -342,10 +382,12 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
                             Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
+                            int count = mForecastAdapter.getItemCount();
                             int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
                             for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
+                                if ( !mForecastAdapter.moveCursorToPosition(i) ) {
+                                    continue;
+                                }
                                 if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
                                     position = i;
                                     break;
@@ -18,18 +18,45 @@ package com.example.android.sunshine.app;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.TypedArray;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.EditTextPreference;
+import android.support.annotation.WorkerThread;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.core.CityIndex;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 
 public class LocationEditTextPreference extends EditTextPreference {
+    private static final String LOG_TAG = LocationEditTextPreference.class.getSimpleName();
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
+    // Built by the cityIndex task of the cityindex module, uncompressed so it can be mapped
+    static final String CITY_INDEX_ASSET = "cities.idx";
+    private static final int MAX_SUGGESTIONS = 5;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    // Set once the index is mapped, read by the main thread without waiting for it
+    private static volatile CityIndex sCityIndex;
+    private static boolean sCityIndexOpened;
+
     private int mMinLength;
+    private LinearLayout mSuggestions;
 
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -42,13 +69,113 @@ public class LocationEditTextPreference extends EditTextPreference {
         } finally {
             a.recycle();
         }
+        // Mapped by the time the dialog opens, most likely
+        loadCityIndex(context.getApplicationContext(), null);
+    }
+
+
+    /**
+     * @return the index of the cities, mapped on first use, or null if the app has none, in
+     * which case a location is only checked for its length.  Opening the asset is disk I/O, the
+     * main thread gets the index from {@link #loadCityIndex}.
+     */
+    @WorkerThread
+    static synchronized CityIndex getCityIndex(Context context) {
+        if (!sCityIndexOpened) {
+            sCityIndexOpened = true;
+            try {
+                AssetFileDescriptor asset = context.getAssets().openFd(CITY_INDEX_ASSET);
+                FileInputStream in = new FileInputStream(asset.getFileDescriptor());
+                try {
+                    // The mapping outlives the stream
+                    sCityIndex = CityIndex.wrap(in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                            asset.getStartOffset(), asset.getLength()));
+                } finally {
+                    in.close();
+                    asset.close();
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "No city index: " + e.getMessage());
+            }
+        }
+        return sCityIndex;
+    }
+
+    /**
+     * Maps the index on a background thread, then runs onLoaded, if any, on the main thread.
+     */
+    private static void loadCityIndex(final Context context, final Runnable onLoaded) {
+        StartupScheduler.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                getCityIndex(context);
+                if (onLoaded != null) {
+                    sMainHandler.post(onLoaded);
+                }
+            }
+        });
+    }
+
+    // Cities whose name starts with what was typed go below the text, a tap picks one
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, EditText editText) {
+        super.onAddEditTextToDialogView(dialogView, editText);
+        mSuggestions = null;
+        // The rows stay hidden if the app has no index
+        if (!(editText.getParent() instanceof ViewGroup)) {
+            return;
+        }
+        mSuggestions = new LinearLayout(getContext());
+        mSuggestions.setOrientation(LinearLayout.VERTICAL);
+        LayoutInflater inflater = LayoutInflater.from(getContext());
+        for (int i = 0; i < MAX_SUGGESTIONS; i++) {
+            TextView row = (TextView) inflater.inflate(
+                    android.R.layout.simple_list_item_1, mSuggestions, false);
+            row.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    CharSequence location = ((TextView) v).getText();
+                    EditText et = getEditText();
+                    et.setText(location);
+                    et.setSelection(location.length());
+                }
+            });
+            row.setVisibility(View.GONE);
+            mSuggestions.addView(row);
+        }
+        ((ViewGroup) editText.getParent()).addView(mSuggestions, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
     }
 
+    private void showSuggestions(CityIndex cities, String location) {
+        int[] found = cities.findPrefix(location, MAX_SUGGESTIONS);
+        for (int i = 0; i < MAX_SUGGESTIONS; i++) {
+            TextView row = (TextView) mSuggestions.getChildAt(i);
+            if (i < found.length) {
+                row.setText(cities.getLocationSetting(found[i]));
+                row.setVisibility(View.VISIBLE);
+            } else {
+                row.setVisibility(View.GONE);
+            }
+        }
+    }
 
     @Override
     protected void showDialog(Bundle state) {
         super.showDialog(state);
 
+        if (sCityIndex == null) {
+            // Check the text again once the index is there, if the dialog still is
+            loadCityIndex(getContext().getApplicationContext(), new Runnable() {
+                @Override
+                public void run() {
+                    if (getDialog() != null && getDialog().isShowing()) {
+                        checkLocation(getEditText().getText());
+                    }
+                }
+            });
+        }
+
         EditText et = getEditText();
         et.addTextChangedListener(new TextWatcher() {
 
@@ -65,20 +192,30 @@ public class LocationEditTextPreference extends EditTextPreference {
 
             @Override
             public void afterTextChanged(Editable s) {
-                Dialog d = getDialog();
-                if (d instanceof AlertDialog) {
-                    AlertDialog dialog = (AlertDialog) d;
-                    Button positiveButton = dialog.getButton(AlertDialog.BUTTON_POSITIVE);
-                    // Check if the EditText is empty
-                    if (s.length() < mMinLength) {
-                        // Disable OK button
-                        positiveButton.setEnabled(false);
-                    } else {
-                        // Re-enable the button.
-                        positiveButton.setEnabled(true);
-                    }
-                }
+                checkLocation(s);
             }
         });
     }
+
+    private void checkLocation(Editable s) {
+        Dialog d = getDialog();
+        if (d instanceof AlertDialog) {
+            AlertDialog dialog = (AlertDialog) d;
+            Button positiveButton = dialog.getButton(AlertDialog.BUTTON_POSITIVE);
+            // Until it's mapped, the location is only checked for its length
+            CityIndex cities = sCityIndex;
+            if (cities != null && mSuggestions != null) {
+                showSuggestions(cities, s.toString());
+            }
+            // Check if the EditText is too short, or names no city we know of
+            if (s.length() < mMinLength
+                    || (cities != null && !cities.accepts(s.toString()))) {
+                // Disable OK button
+                positiveButton.setEnabled(false);
+            } else {
+                // Re-enable the button.
+                positiveButton.setEnabled(true);
+            }
+        }
+    }
 }
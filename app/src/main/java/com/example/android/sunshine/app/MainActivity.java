@@ -15,6 +15,7 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.IntentSender;
 import android.content.SharedPreferences;
@@ -53,6 +54,8 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     private GoogleApiClient mGoogleApiClient;
     private boolean mResolvingError = false;
+    private boolean mStarted;
+    private boolean mFirstFrameDrawn;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -97,8 +100,52 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        // The account lookup goes to the AccountManager, it doesn't hold up the first frame
+        final Context context = getApplicationContext();
+        StartupScheduler.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                SunshineSyncAdapter.initializeSyncAdapter(context);
+            }
+        });
 
+        // Built now, connected once the first frame is drawn
+        mGoogleApiClient = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .build();
+        StartupScheduler.runAfterFirstDraw(this, new Runnable() {
+            @Override
+            public void run() {
+                onFirstFrameDrawn();
+            }
+        });
+    }
+
+    /**
+     * Starts what the first frame doesn't need.
+     */
+    private void onFirstFrameDrawn() {
+        mFirstFrameDrawn = true;
+        if (isFinishing()) {
+            return;
+        }
+        if (mStarted && !mResolvingError) {
+            mGoogleApiClient.connect();
+        }
+        // The Play Services check may show a dialog, it waits for the main thread to be idle
+        StartupScheduler.runWhenIdle(new Runnable() {
+            @Override
+            public void run() {
+                if (!isFinishing()) {
+                    registerForGcmIfNeeded();
+                }
+            }
+        });
+    }
+
+    private void registerForGcmIfNeeded() {
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
         // our fake server. Because weather alerts are not a core feature of the app, this should
@@ -115,23 +162,28 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                 startService(intent);
             }
         }
-        mGoogleApiClient = new GoogleApiClient.Builder(this)
-                .addApi(Wearable.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
     }
 
     @Override
     protected void onStart() {
         super.onStart();
-        if (!mResolvingError) {
+        mStarted = true;
+        final Context context = getApplicationContext();
+        StartupScheduler.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                SunshineSyncAdapter.onAppForeground(context);
+            }
+        });
+        // The first start connects once its frame is drawn
+        if (mFirstFrameDrawn && !mResolvingError) {
             mGoogleApiClient.connect();
         }
     }
 
     @Override
     protected void onStop() {
+        mStarted = false;
         if (!mResolvingError && (mGoogleApiClient != null) && (mGoogleApiClient.isConnected())) {
             mGoogleApiClient.disconnect();
         }
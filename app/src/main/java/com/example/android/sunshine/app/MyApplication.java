@@ -1,17 +1,46 @@
 package com.example.android.sunshine.app;
 
 import android.app.Application;
+import android.database.Cursor;
 
-import com.facebook.stetho.Stetho;
+import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
- * stetho inspect
+ * Starts what the first screen doesn't wait for off the main thread: the debug tools, and the
+ * database, opened and warmed up while the activity inflates.
  */
 
 public class MyApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
-        Stetho.initializeWithDefaults(this);
+        StartupScheduler.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                warmUpDatabase();
+            }
+        });
+        StartupScheduler.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                DebugTools.initialize(MyApplication.this);
+            }
+        });
+    }
+
+    /**
+     * Opens the database, upgrading it if it needs to, and reads the row of the preferred
+     * location, the first one the forecast query reads.
+     */
+    private void warmUpDatabase() {
+        Cursor cursor = getContentResolver().query(WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{Utility.getPreferredLocation(this)}, null);
+        if (cursor != null) {
+            // The query only runs once the cursor is read
+            cursor.getCount();
+            cursor.close();
+        }
     }
 }
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MergeCursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.RowSnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads a keyset paged location URI a few pages at a time, around the position the list shows.
+ * Only the pages of the current {@link PageWindow} are held in memory, plus the key each page
+ * starts after, so scrolling back to a page that was dropped seeks straight to it.
+ *
+ * Works like a {@link android.support.v4.content.CursorLoader}: the window is reloaded when the
+ * data changes, and the list asks for other pages with {@link #requestPositions(int, int)} as
+ * it scrolls.  A burst of changes, like a sync's, reloads the window at most once every
+ * {@link SharedQueries#DEBOUNCE_MILLIS}, and a window that came out the same as the one shown
+ * isn't delivered.
+ */
+public class PagedCursorLoader extends AsyncTaskLoader<Cursor> {
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+
+    private final Uri mUri;
+    private final String[] mProjection;
+    private final int mKeyColumn;
+    private final int mPageSize;
+    private final int mMaxPages;
+
+    // mPageKeys.get(i) is the key page i starts after, the first page has none.  Only touched
+    // while loading, under its own lock.
+    private final List<Long> mPageKeys = new ArrayList<Long>();
+    private boolean mReachedEnd;
+    // The number of rows, once the end was reached
+    private int mEndCount;
+    private volatile boolean mKeysStale;
+
+    // The position the next load centers its window on
+    private volatile int mTargetPosition;
+    private PageWindow mWindow;
+
+    /**
+     * @param uri A weather/, hourly/ or history/ location URI that isn't paged.
+     * @param keyColumn The index, in the projection, of the key of the URI.
+     * @param maxPages The most pages held at once.
+     */
+    public PagedCursorLoader(Context context, Uri uri, String[] projection, int keyColumn,
+                             int pageSize, int maxPages) {
+        super(context);
+        mUri = uri;
+        mProjection = projection;
+        mKeyColumn = keyColumn;
+        mPageSize = pageSize;
+        mMaxPages = maxPages;
+        setUpdateThrottle(SharedQueries.DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Loads the pages around the visible positions if the current window doesn't hold them, or
+     * the next page when the list nears the end of what has been loaded.
+     */
+    public void requestPositions(int firstVisible, int lastVisible) {
+        PageWindow window = mWindow;
+        if (window == null || firstVisible < 0) {
+            return;
+        }
+        int target;
+        if (!window.containsPosition(firstVisible) || !window.containsPosition(lastVisible)) {
+            target = (firstVisible + lastVisible) / 2;
+        } else if (!window.hasReachedEnd()
+                && lastVisible >= window.getKnownCount() - mPageSize / 2) {
+            target = lastVisible + mPageSize / 2;
+        } else {
+            return;
+        }
+        // Every scroll event lands here, only start a load for a page not already asked for
+        if (target / mPageSize != mTargetPosition / mPageSize) {
+            setTargetPosition(target);
+            forceLoad();
+        }
+    }
+
+    void setTargetPosition(int position) {
+        mTargetPosition = position;
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        synchronized (mPageKeys) {
+            if (mKeysStale) {
+                mKeysStale = false;
+                mPageKeys.clear();
+                mReachedEnd = false;
+            }
+            if (mPageKeys.isEmpty()) {
+                mPageKeys.add(null);
+            }
+
+            int targetPage = mTargetPosition / mPageSize;
+            int firstPage = Math.max(0, targetPage - mMaxPages / 2);
+            // Find out where the first page starts, skipping over the pages before it
+            while (mPageKeys.size() <= firstPage && !mReachedEnd) {
+                skipPage();
+            }
+            firstPage = Math.min(firstPage, mPageKeys.size() - 1);
+
+            Cursor[] pages = new Cursor[mMaxPages];
+            int count = 0;
+            int rows = 0;
+            try {
+                for (int page = firstPage; page < firstPage + mMaxPages; page++) {
+                    if (page >= mPageKeys.size()) {
+                        break;
+                    }
+                    Cursor cursor = getContext().getContentResolver().query(
+                            getPageUri(page), mProjection, null, null, null);
+                    if (cursor == null) {
+                        break;
+                    }
+                    pages[count++] = cursor;
+                    // Fill the window of each page now, not on the main thread
+                    int pageRows = cursor.getCount();
+                    rows += pageRows;
+                    if (pageRows < mPageSize) {
+                        markEnd(page, pageRows);
+                        break;
+                    }
+                    cursor.moveToLast();
+                    addPageKey(page + 1, cursor.getLong(mKeyColumn));
+                }
+            } catch (RuntimeException e) {
+                for (int i = 0; i < count; i++) {
+                    pages[i].close();
+                }
+                throw e;
+            }
+
+            Cursor[] loaded = new Cursor[count];
+            System.arraycopy(pages, 0, loaded, 0, count);
+            int offset = firstPage * mPageSize;
+            // Every page before the last one with a known key is full
+            int knownCount = mReachedEnd ? mEndCount
+                    : Math.max(offset + rows, (mPageKeys.size() - 1) * mPageSize);
+            PageWindow window = new PageWindow(loaded, offset, knownCount, mReachedEnd);
+            // Read here so the UI thread can tell an unchanged window without touching a page
+            window.mRows = RowSnapshot.of(window);
+            window.moveToPosition(-1);
+            window.registerContentObserver(mObserver);
+            return window;
+        }
+    }
+
+    private Uri getPageUri(int page) {
+        Long after = mPageKeys.get(page);
+        return after == null ? WeatherContract.buildFirstPageUri(mUri, mPageSize)
+                : WeatherContract.buildPageUri(mUri, after, mPageSize);
+    }
+
+    // Reads only the keys of the next unknown page, to learn where the one after it starts
+    private void skipPage() {
+        int page = mPageKeys.size() - 1;
+        Cursor cursor = getContext().getContentResolver().query(getPageUri(page),
+                new String[]{mProjection[mKeyColumn]}, null, null, null);
+        if (cursor == null) {
+            markEnd(page, 0);
+            return;
+        }
+        try {
+            if (cursor.getCount() < mPageSize) {
+                markEnd(page, cursor.getCount());
+                return;
+            }
+            cursor.moveToLast();
+            addPageKey(page + 1, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void addPageKey(int page, long key) {
+        if (page == mPageKeys.size()) {
+            mPageKeys.add(key);
+        }
+    }
+
+    // Records that the page is the last one, and forgets the keys of pages past it
+    private void markEnd(int page, int pageRows) {
+        mReachedEnd = true;
+        mEndCount = page * mPageSize + pageRows;
+        while (mPageKeys.size() > page + 1) {
+            mPageKeys.remove(mPageKeys.size() - 1);
+        }
+    }
+
+    @Override
+    public void onContentChanged() {
+        // Rows may have come or gone anywhere, the pages have to be found again
+        mKeysStale = true;
+        super.onContentChanged();
+    }
+
+    /* Runs on the UI thread */
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (isReset()) {
+            // An async query came in while the loader is stopped
+            if (cursor != null) {
+                cursor.close();
+            }
+            return;
+        }
+        PageWindow window = (PageWindow) cursor;
+        if (window != null && window.isSameAs(mWindow)) {
+            // Only a notification, the rows shown are still right
+            window.close();
+            return;
+        }
+        Cursor oldWindow = mWindow;
+        mWindow = window;
+
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+
+        if (oldWindow != null && oldWindow != cursor && !oldWindow.isClosed()) {
+            oldWindow.close();
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mWindow != null) {
+            deliverResult(mWindow);
+        }
+        if (takeContentChanged() || mWindow == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    public void onCanceled(Cursor cursor) {
+        if (cursor != null && !cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mWindow != null && !mWindow.isClosed()) {
+            mWindow.close();
+        }
+        mWindow = null;
+    }
+
+    /**
+     * The pages a {@link PagedCursorLoader} holds, one after the other.  Its own positions start
+     * at the first row of its first page; the positions of the whole result are translated with
+     * {@link #moveToAbsolutePosition(int)}.
+     */
+    public static class PageWindow extends MergeCursor {
+        private final int mOffset;
+        private final int mKnownCount;
+        private final boolean mReachedEnd;
+        private RowSnapshot mRows;
+
+        PageWindow(Cursor[] pages, int offset, int knownCount, boolean reachedEnd) {
+            super(pages);
+            mOffset = offset;
+            mKnownCount = knownCount;
+            mReachedEnd = reachedEnd;
+        }
+
+        /**
+         * @return the position, in the whole result, of the first row of the window.
+         */
+        public int getWindowOffset() {
+            return mOffset;
+        }
+
+        /**
+         * @return the number of rows known so far, the exact count once the end was reached.
+         */
+        public int getKnownCount() {
+            return mKnownCount;
+        }
+
+        public boolean hasReachedEnd() {
+            return mReachedEnd;
+        }
+
+        boolean isSameAs(PageWindow other) {
+            return other != null && other != this && !other.isClosed()
+                    && mOffset == other.mOffset && mKnownCount == other.mKnownCount
+                    && mReachedEnd == other.mReachedEnd
+                    && mRows != null && mRows.hasSameRows(other.mRows);
+        }
+
+        public boolean containsPosition(int position) {
+            return position >= mOffset && position < mOffset + getCount();
+        }
+
+        /**
+         * @return false, without moving, if the row at this position of the whole result isn't
+         * in the window.
+         */
+        public boolean moveToAbsolutePosition(int position) {
+            return containsPosition(position) && moveToPosition(position - mOffset);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.data.RowSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queries the screens observe, one per URI and projection however many screens show it.  A
+ * query is run when its first subscriber comes and again when its URI is notified, and each
+ * subscriber gets a cursor of its own over the rows, see {@link RowSnapshot}.
+ *
+ * A sync notifies the same URI many times in a row.  The query waits until the notifications
+ * stop for DEBOUNCE_MILLIS, or MAX_DELAY_MILLIS at most, and runs once; when the rows came out
+ * the same as before, nobody hears about it.
+ *
+ * Subscribing and unsubscribing happen on the main thread, where results are delivered too.
+ * The queries run on a thread of their own.
+ */
+public class SharedQueries {
+
+    static final long DEBOUNCE_MILLIS = 100;
+    static final long MAX_DELAY_MILLIS = 500;
+
+    /**
+     * Receives the results of a query on the main thread.  Each cursor is the listener's own to
+     * close; it is null if the provider returned none.
+     */
+    public interface Listener {
+        void onQueryResult(Cursor cursor);
+    }
+
+    /**
+     * A listener's hold on a query, see {@link #subscribe}.
+     */
+    public class Subscription {
+        private final SharedQuery mQuery;
+        private final Listener mListener;
+
+        Subscription(SharedQuery query, Listener listener) {
+            mQuery = query;
+            mListener = listener;
+        }
+
+        /**
+         * Hands the listener a new cursor over the last result, without querying again.  Used to
+         * show the same rows another way, after a display setting changed.
+         *
+         * @return false if there is no result yet.
+         */
+        public boolean redeliver() {
+            if (mQuery.mResult == null) {
+                return false;
+            }
+            mListener.onQueryResult(mQuery.mResult.newCursor());
+            return true;
+        }
+
+        public void unsubscribe() {
+            mQuery.removeListener(mListener);
+        }
+    }
+
+    private static SharedQueries sInstance;
+
+    private final ContentResolver mResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Handler mQueryHandler;
+    // Only touched on the main thread
+    private final Map<String, SharedQuery> mQueries = new HashMap<String, SharedQuery>();
+
+    // Counted on the query thread
+    private volatile int mLoads;
+    private volatile int mSkippedLoads;
+
+    public static synchronized SharedQueries getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SharedQueries(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SharedQueries(Context context) {
+        mResolver = context.getContentResolver();
+        HandlerThread thread =
+                new HandlerThread("SharedQueries", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mQueryHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Starts delivering the results of the query to the listener, the last one right away if
+     * there is one.  Main thread only.
+     */
+    public Subscription subscribe(Uri uri, String[] projection, Listener listener) {
+        String key = buildKey(uri, projection);
+        SharedQuery query = mQueries.get(key);
+        if (query == null) {
+            query = new SharedQuery(key, uri, projection);
+            mQueries.put(key, query);
+        }
+        query.addListener(listener);
+        return new Subscription(query, listener);
+    }
+
+    /**
+     * @return the number of queries with subscribers.
+     */
+    public int getQueryCount() {
+        return mQueries.size();
+    }
+
+    /**
+     * @return the number of times a query went to the provider.
+     */
+    public int getLoadCount() {
+        return mLoads;
+    }
+
+    /**
+     * @return the number of those that came back with the rows already delivered.
+     */
+    public int getSkippedLoadCount() {
+        return mSkippedLoads;
+    }
+
+    private static String buildKey(Uri uri, String[] projection) {
+        return uri.toString() + '\u0000'
+                + (projection != null ? TextUtils.join(",", projection) : "*");
+    }
+
+    private class SharedQuery {
+        private final String mKey;
+        private final Uri mUri;
+        private final String[] mProjection;
+        private final List<Listener> mListeners = new ArrayList<Listener>();
+        // The rows last delivered, on the main thread
+        private RowSnapshot mResult;
+        // The rows last loaded, on the query thread
+        private RowSnapshot mLoaded;
+        private boolean mHaveLoaded;
+        // When the first notification not yet loaded came, 0 if there is none
+        private long mFirstChange;
+        private volatile boolean mClosed;
+
+        private final ContentObserver mObserver = new ContentObserver(mQueryHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                onContentChanged();
+            }
+        };
+
+        private final Runnable mLoad = new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        };
+
+        SharedQuery(String key, Uri uri, String[] projection) {
+            mKey = key;
+            mUri = uri;
+            mProjection = projection;
+        }
+
+        void addListener(Listener listener) {
+            mListeners.add(listener);
+            if (mListeners.size() == 1) {
+                // Like Cursor.setNotificationUri(), the descendants of the URI count
+                mResolver.registerContentObserver(mUri, true, mObserver);
+                mQueryHandler.post(mLoad);
+            } else if (mResult != null) {
+                listener.onQueryResult(mResult.newCursor());
+            }
+        }
+
+        void removeListener(Listener listener) {
+            if (!mListeners.remove(listener) || !mListeners.isEmpty()) {
+                return;
+            }
+            mClosed = true;
+            mResolver.unregisterContentObserver(mObserver);
+            mQueryHandler.removeCallbacks(mLoad);
+            mQueries.remove(mKey);
+        }
+
+        /* Runs on the query thread */
+        private void onContentChanged() {
+            long now = SystemClock.uptimeMillis();
+            if (mFirstChange == 0) {
+                mFirstChange = now;
+            }
+            // Every notification pushes the load back, up to the longest delay
+            long delay = Math.min(DEBOUNCE_MILLIS, mFirstChange + MAX_DELAY_MILLIS - now);
+            mQueryHandler.removeCallbacks(mLoad);
+            mQueryHandler.postDelayed(mLoad, Math.max(0, delay));
+        }
+
+        /* Runs on the query thread */
+        private void load() {
+            mFirstChange = 0;
+            if (mClosed) {
+                return;
+            }
+            RowSnapshot rows = null;
+            Cursor cursor = mResolver.query(mUri, mProjection, null, null, null);
+            if (cursor != null) {
+                try {
+                    rows = RowSnapshot.of(cursor);
+                } finally {
+                    cursor.close();
+                }
+            }
+            mLoads++;
+            if (mHaveLoaded && (rows == null ? mLoaded == null : rows.hasSameRows(mLoaded))) {
+                mSkippedLoads++;
+                return;
+            }
+            mHaveLoaded = true;
+            mLoaded = rows;
+            final RowSnapshot result = rows;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(result);
+                }
+            });
+        }
+
+        private void deliver(RowSnapshot result) {
+            if (mClosed) {
+                return;
+            }
+            mResult = result;
+            // A listener may unsubscribe while hearing about the result
+            for (Listener listener : new ArrayList<Listener>(mListeners)) {
+                listener.onQueryResult(result != null ? result.newCursor() : null);
+            }
+        }
+    }
+}
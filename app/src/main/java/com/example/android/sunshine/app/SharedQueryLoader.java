@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.Loader;
+
+/**
+ * Loads a query through {@link SharedQueries}, like a CursorLoader that shares its query and
+ * observer with every other loader of the same URI and projection.  Changes to the data keep
+ * coming while the loader is stopped, the last result is delivered once it starts again.
+ */
+public class SharedQueryLoader extends Loader<Cursor> implements SharedQueries.Listener {
+
+    private final Uri mUri;
+    private final String[] mProjection;
+    private SharedQueries.Subscription mSubscription;
+    private Cursor mCursor;
+
+    public SharedQueryLoader(Context context, Uri uri, String[] projection) {
+        super(context);
+        mUri = uri;
+        mProjection = projection;
+    }
+
+    /**
+     * Delivers the rows last loaded again, in a new cursor, without querying.  For showing them
+     * another way, e.g. in other units.
+     */
+    public void redeliver() {
+        if (mSubscription != null) {
+            mSubscription.redeliver();
+        }
+    }
+
+    @Override
+    public void onQueryResult(Cursor cursor) {
+        deliverResult(cursor);
+    }
+
+    /* Runs on the UI thread */
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (isReset()) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            return;
+        }
+        Cursor oldCursor = mCursor;
+        mCursor = cursor;
+
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+
+        if (oldCursor != null && oldCursor != cursor && !oldCursor.isClosed()) {
+            oldCursor.close();
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mSubscription == null) {
+            // Hands over the last result right away if another loader already has one
+            mSubscription = SharedQueries.getInstance(getContext())
+                    .subscribe(mUri, mProjection, this);
+        } else if (mCursor != null) {
+            deliverResult(mCursor);
+        }
+    }
+
+    @Override
+    protected void onForceLoad() {
+        // The shared query reloads on its own when its URI is notified
+        redeliver();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        if (mSubscription != null) {
+            mSubscription.unsubscribe();
+            mSubscription = null;
+        }
+        if (mCursor != null && !mCursor.isClosed()) {
+            mCursor.close();
+        }
+        mCursor = null;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps work that the first frame doesn't need away from it: after the first draw of an
+ * activity, when the main thread is idle, or on a background thread of low priority.
+ */
+public class StartupScheduler {
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // One thread, the tasks run in the order they were scheduled in
+    private static final Executor sBackgroundExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "StartupScheduler");
+                }
+            });
+
+    private StartupScheduler() {
+    }
+
+    /**
+     * Runs the task on the main thread once the first frame of the activity is drawn.  Call it
+     * before that frame, from onCreate().
+     */
+    public static void runAfterFirstDraw(Activity activity, final Runnable task) {
+        final View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // The frame is drawn right after this, the task runs behind it
+                        sMainHandler.post(task);
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Runs the task on the main thread the next time it has nothing else to do.  Call it from the
+     * main thread.
+     */
+    public static void runWhenIdle(final Runnable task) {
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                task.run();
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Runs the task on the scheduler's background thread, after the ones scheduled before it.
+     */
+    public static void runInBackground(Runnable task) {
+        sBackgroundExecutor.execute(task);
+    }
+}
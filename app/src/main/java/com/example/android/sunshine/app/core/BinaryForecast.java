@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact binary encoding of the daily forecast, the one the forecast proxy serves in place of
+ * the OpenWeatherMap JSON.  A message is decoded straight to a {@link ForecastHandler}, with no
+ * text to scan and no objects per day.
+ * <p>
+ * The numbers are big-endian, strings are a 16 bit length followed by that many bytes of UTF-8:
+ * <pre>
+ *   magic         4  "SNF1"
+ *   length        4  the number of bytes after this field
+ *   status        2  200, or the error code of the forecast, in which case nothing follows
+ *   city id       8
+ *   city name     string
+ *   latitude      4  millionths of a degree
+ *   longitude     4  millionths of a degree
+ *   descriptions  1  the number of distinct descriptions, then each one as a string
+ *   day count     1
+ *   days          14 bytes each:
+ *     weather id       2
+ *     description      1  index of the description above
+ *     low, high        2 + 2  tenths of a degree, signed
+ *     humidity         1  percent
+ *     pressure         2  tenths of a hectopascal
+ *     wind speed       2  tenths of a meter per second
+ *     wind direction   2  degrees
+ * </pre>
+ * The measurements carry a tenth of their unit, more than the app shows of any of them.
+ */
+public class BinaryForecast {
+
+    private static final int MAGIC = 0x534e4631;
+    // Magic and length
+    private static final int HEADER_SIZE = 8;
+    private static final int DAY_SIZE = 14;
+    private static final int MAX_COUNT = 255;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BinaryForecast() {
+    }
+
+    /**
+     * @param message A whole message, its length prefix included.
+     * @return HttpURLConnection.HTTP_OK once the forecast went to the handler, or the error code
+     * of the message, in which case the handler hears nothing.
+     * @throws IOException if the message is not a forecast, or is cut short.
+     */
+    public static int decode(byte[] message, ForecastHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a binary forecast");
+            }
+            int length = buffer.getInt();
+            if (length != message.length - HEADER_SIZE) {
+                throw new EOFException("Forecast of " + length + " bytes in a message of "
+                        + message.length);
+            }
+            int status = buffer.getShort() & 0xffff;
+            if (status != HttpURLConnection.HTTP_OK) {
+                return status;
+            }
+
+            long cityId = buffer.getLong();
+            String cityName = getString(buffer);
+            double latitude = buffer.getInt() / 1e6;
+            double longitude = buffer.getInt() / 1e6;
+
+            // Every day of a kind shares its description
+            String[] descriptions = new String[buffer.get() & 0xff];
+            for (int i = 0; i < descriptions.length; i++) {
+                descriptions[i] = getString(buffer);
+            }
+
+            int dayCount = buffer.get() & 0xff;
+            if (buffer.remaining() != dayCount * DAY_SIZE) {
+                throw new EOFException(dayCount + " days in " + buffer.remaining() + " bytes");
+            }
+            handler.onCity(cityId, cityName, latitude, longitude, dayCount);
+            for (int i = 0; i < dayCount; i++) {
+                int weatherId = buffer.getShort() & 0xffff;
+                int description = buffer.get() & 0xff;
+                if (description >= descriptions.length) {
+                    throw new IOException("No description " + description);
+                }
+                handler.onDay(i,
+                        weatherId,
+                        descriptions[description],
+                        buffer.getShort() / 10.0,
+                        buffer.getShort() / 10.0,
+                        buffer.get() & 0xff,
+                        (buffer.getShort() & 0xffff) / 10.0,
+                        (buffer.getShort() & 0xffff) / 10.0,
+                        buffer.getShort() & 0xffff);
+            }
+            return HttpURLConnection.HTTP_OK;
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Forecast cut short");
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String string = new String(buffer.array(), buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    /**
+     * @return the message of a forecast that could not be served, e.g. 404 for an unknown city.
+     */
+    public static byte[] error(int status) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 2);
+        buffer.putInt(MAGIC).putInt(2).putShort((short) status);
+        return buffer.array();
+    }
+
+    /**
+     * Encodes a forecast handed over the way a parser hands it to the app, so the JSON of
+     * OpenWeatherMap is transcoded by parsing it into a Writer.
+     */
+    public static class Writer implements ForecastHandler {
+        private final List<String> mDescriptions = new ArrayList<String>();
+        private final ByteArrayOutputStream mDays = new ByteArrayOutputStream(16 * DAY_SIZE);
+        private final DataOutputStream mDaysOut = new DataOutputStream(mDays);
+        private long mCityId;
+        private String mCityName;
+        private double mLatitude;
+        private double mLongitude;
+        private int mDayCount;
+
+        @Override
+        public void onCity(long cityId, String cityName, double latitude, double longitude,
+                           int dayCount) {
+            mCityId = cityId;
+            mCityName = cityName;
+            mLatitude = latitude;
+            mLongitude = longitude;
+        }
+
+        @Override
+        public void onDay(int index, int weatherId, String description, double low,
+                          double high, int humidity, double pressure, double windSpeed,
+                          double windDirection) {
+            int descriptionIndex = mDescriptions.indexOf(description);
+            if (descriptionIndex == -1) {
+                descriptionIndex = mDescriptions.size();
+                mDescriptions.add(description);
+            }
+            if (descriptionIndex >= MAX_COUNT || mDayCount >= MAX_COUNT) {
+                throw new IllegalStateException(
+                        "More than " + MAX_COUNT + " days or descriptions");
+            }
+            try {
+                mDaysOut.writeShort(weatherId);
+                mDaysOut.writeByte(descriptionIndex);
+                mDaysOut.writeShort((int) Math.round(low * 10));
+                mDaysOut.writeShort((int) Math.round(high * 10));
+                mDaysOut.writeByte(humidity);
+                mDaysOut.writeShort((int) Math.round(pressure * 10));
+                mDaysOut.writeShort((int) Math.round(windSpeed * 10));
+                mDaysOut.writeShort((int) Math.round(windDirection));
+            } catch (IOException e) {
+                // Not from a ByteArrayOutputStream
+                throw new AssertionError(e);
+            }
+            mDayCount++;
+        }
+
+        /**
+         * @return the message of the forecast, its length prefix included.
+         */
+        public byte[] toByteArray() {
+            if (mCityName == null) {
+                throw new IllegalStateException("No city");
+            }
+            try {
+                ByteArrayOutputStream body = new ByteArrayOutputStream(64 + mDays.size());
+                DataOutputStream out = new DataOutputStream(body);
+                out.writeShort(HttpURLConnection.HTTP_OK);
+                out.writeLong(mCityId);
+                writeString(out, mCityName);
+                out.writeInt((int) Math.round(mLatitude * 1e6));
+                out.writeInt((int) Math.round(mLongitude * 1e6));
+                out.writeByte(mDescriptions.size());
+                for (String description : mDescriptions) {
+                    writeString(out, description);
+                }
+                out.writeByte(mDayCount);
+                mDays.writeTo(out);
+
+                ByteBuffer message = ByteBuffer.allocate(HEADER_SIZE + body.size());
+                message.putInt(MAGIC).putInt(body.size()).put(body.toByteArray());
+                return message.array();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String string) throws IOException {
+            byte[] utf8 = string.getBytes(UTF_8);
+            out.writeShort(utf8.length);
+            out.write(utf8);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The cities OpenWeatherMap knows, sorted by their search key, for completing and checking a
+ * location setting as it is typed.  The index reads a buffer in place, normally the mapped
+ * asset, so a search touches the few pages its binary search lands on and nothing is parsed
+ * up front.
+ *
+ * The search key of a name is the name without accents, in lower case, with anything but
+ * letters and digits as single spaces: "Sao Paulo", with or without its accent, and
+ * "sao  paulo" share "sao paulo".
+ *
+ * Layout, big endian:
+ * <pre>
+ *   header  magic (4), version (4), city count (4), pool offset (4)
+ *   city    key offset (4), name offset (4), id (4), latitude (4), longitude (4),
+ *           key length (1), name length (1), country code (2)
+ *   pool    the UTF-8 keys and names the cities point to, each stored once
+ * </pre>
+ * Cities are sorted by the unsigned bytes of their key, coordinates are in 1e-5 degrees.
+ */
+public class CityIndex {
+
+    private static final int MAGIC = 0x43545931;
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int HEADER_SIZE = 16;
+    private static final int CITY_SIZE = 24;
+    // Lengths are stored in a byte
+    private static final int MAX_STRING_BYTES = 255;
+    private static final double COORD_SCALE = 1e5;
+
+    private static final int OFFSET_COUNT = 8;
+    private static final int OFFSET_POOL = 12;
+    private static final int OFFSET_NAME = 4;
+    private static final int OFFSET_ID = 8;
+    private static final int OFFSET_LATITUDE = 12;
+    private static final int OFFSET_LONGITUDE = 16;
+    private static final int OFFSET_KEY_LENGTH = 20;
+    private static final int OFFSET_NAME_LENGTH = 21;
+    private static final int OFFSET_COUNTRY = 22;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mPool;
+
+    private CityIndex(ByteBuffer buffer, int count, int pool) {
+        mBuffer = buffer;
+        mCount = count;
+        mPool = pool;
+    }
+
+    /**
+     * @return the index in the buffer, or null if the buffer doesn't hold one.
+     */
+    public static CityIndex wrap(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION) {
+            return null;
+        }
+        int count = buffer.getInt(OFFSET_COUNT);
+        int pool = buffer.getInt(OFFSET_POOL);
+        if (count < 0 || pool != HEADER_SIZE + (long) count * CITY_SIZE
+                || pool > buffer.capacity()) {
+            return null;
+        }
+        return new CityIndex(buffer, count, pool);
+    }
+
+    /**
+     * @return the search key of a name or query, see the class comment.
+     */
+    public static String normalize(String s) {
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (space && key.length() > 0) {
+                    key.append(' ');
+                }
+                space = false;
+                key.append(Character.toLowerCase(c));
+            } else {
+                space = true;
+            }
+        }
+        return key.toString();
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @param limit The most cities to return.
+     * @return the cities whose key starts with the key of the query, in the order of their keys.
+     * An empty query matches nothing.
+     */
+    public int[] findPrefix(String query, int limit) {
+        byte[] prefix = normalize(query).getBytes(UTF_8);
+        if (prefix.length == 0 || limit <= 0) {
+            return new int[0];
+        }
+        int[] found = new int[Math.min(limit, 16)];
+        int count = 0;
+        for (int city = lowerBound(prefix); city < mCount && count < limit; city++) {
+            if (compareKey(city, prefix, true) != 0) {
+                break;
+            }
+            if (count == found.length) {
+                found = Arrays.copyOf(found, Math.min(limit, count * 2));
+            }
+            found[count++] = city;
+        }
+        return count == found.length ? found : Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @param country The ISO 3166 code, or null for any country.
+     * @return true if a city has the name, accents and case aside, in the country.
+     */
+    public boolean contains(String name, String country) {
+        byte[] key = normalize(name).getBytes(UTF_8);
+        if (key.length == 0) {
+            return false;
+        }
+        for (int city = lowerBound(key); city < mCount; city++) {
+            if (compareKey(city, key, false) != 0) {
+                return false;
+            }
+            if (country == null || country.equalsIgnoreCase(getCountry(city))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks a location setting as typed: "Mountain View", "Mountain View, US", or anything
+     * between the name and the country, "Mountain View, CA, US", must name a city of the index.
+     * A setting with a digit in it, a postal code or coordinates, is something the index can't
+     * judge and passes.
+     */
+    public boolean accepts(String setting) {
+        for (int i = 0; i < setting.length(); i++) {
+            if (Character.isDigit(setting.charAt(i))) {
+                return true;
+            }
+        }
+        int comma = setting.indexOf(',');
+        if (comma == -1) {
+            return contains(setting, null);
+        }
+        String country = setting.substring(setting.lastIndexOf(',') + 1).trim();
+        return contains(setting.substring(0, comma), country.length() == 2 ? country : null);
+    }
+
+    public String getName(int city) {
+        int base = HEADER_SIZE + city * CITY_SIZE;
+        return getString(mBuffer.getInt(base + OFFSET_NAME),
+                mBuffer.get(base + OFFSET_NAME_LENGTH) & 0xff);
+    }
+
+    /**
+     * @return the ISO 3166 code, empty if the city has none.
+     */
+    public String getCountry(int city) {
+        int base = HEADER_SIZE + city * CITY_SIZE + OFFSET_COUNTRY;
+        char first = (char) (mBuffer.get(base) & 0xff);
+        char second = (char) (mBuffer.get(base + 1) & 0xff);
+        return first == 0 ? "" : new String(new char[]{first, second});
+    }
+
+    /**
+     * @return the city as a location setting, e.g. "Mountain View, US".
+     */
+    public String getLocationSetting(int city) {
+        String country = getCountry(city);
+        return country.length() == 0 ? getName(city) : getName(city) + ", " + country;
+    }
+
+    /**
+     * @return the OpenWeatherMap city id.
+     */
+    public int getId(int city) {
+        return mBuffer.getInt(HEADER_SIZE + city * CITY_SIZE + OFFSET_ID);
+    }
+
+    public double getLatitude(int city) {
+        return mBuffer.getInt(HEADER_SIZE + city * CITY_SIZE + OFFSET_LATITUDE) / COORD_SCALE;
+    }
+
+    public double getLongitude(int city) {
+        return mBuffer.getInt(HEADER_SIZE + city * CITY_SIZE + OFFSET_LONGITUDE) / COORD_SCALE;
+    }
+
+    // The first city whose key isn't below the prefix
+    private int lowerBound(byte[] prefix) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareKey(middle, prefix, false) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the key of the city with the bytes without copying the key out of the buffer.
+     *
+     * @param prefixOnly true to compare the first bytes of the key only, 0 meaning the key
+     *                   starts with the bytes.
+     */
+    private int compareKey(int city, byte[] bytes, boolean prefixOnly) {
+        int base = HEADER_SIZE + city * CITY_SIZE;
+        int offset = mPool + mBuffer.getInt(base);
+        int length = mBuffer.get(base + OFFSET_KEY_LENGTH) & 0xff;
+        int common = Math.min(length, bytes.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (mBuffer.get(offset + i) & 0xff) - (bytes[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        if (prefixOnly && length >= bytes.length) {
+            return 0;
+        }
+        return length - bytes.length;
+    }
+
+    private String getString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(mPool + offset);
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Builds an index from a list of cities, see CityIndexTool in the cityindex module for the
+     * one the app ships.
+     */
+    public static class Writer {
+
+        private final List<City> mCities = new ArrayList<City>();
+
+        /**
+         * @param country The ISO 3166 code, or null.
+         * @return false if the city was left out: its name has no letter or digit, or its key or
+         * name doesn't fit the index.
+         */
+        public boolean add(int id, String name, String country, double latitude,
+                           double longitude) {
+            City city = new City();
+            city.key = normalize(name).getBytes(UTF_8);
+            city.name = name.getBytes(UTF_8);
+            if (city.key.length == 0 || city.key.length > MAX_STRING_BYTES
+                    || city.name.length > MAX_STRING_BYTES) {
+                return false;
+            }
+            city.id = id;
+            city.country = country != null && country.length() == 2
+                    ? country.toUpperCase(Locale.US) : null;
+            city.latitude = (int) Math.round(latitude * COORD_SCALE);
+            city.longitude = (int) Math.round(longitude * COORD_SCALE);
+            mCities.add(city);
+            return true;
+        }
+
+        public int size() {
+            return mCities.size();
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(toByteArray());
+        }
+
+        public byte[] toByteArray() {
+            Collections.sort(mCities, new Comparator<City>() {
+                @Override
+                public int compare(City lhs, City rhs) {
+                    int order = compareBytes(lhs.key, rhs.key);
+                    return order != 0 ? order : compareBytes(lhs.name, rhs.name);
+                }
+            });
+
+            // Names repeat, and most keys are a name in lower case
+            PoolBuilder pool = new PoolBuilder();
+            int[] keyOffsets = new int[mCities.size()];
+            int[] nameOffsets = new int[mCities.size()];
+            for (int i = 0; i < mCities.size(); i++) {
+                keyOffsets[i] = pool.add(mCities.get(i).key);
+                nameOffsets[i] = pool.add(mCities.get(i).name);
+            }
+
+            int poolOffset = HEADER_SIZE + mCities.size() * CITY_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate(poolOffset + pool.size());
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(mCities.size()).putInt(poolOffset);
+            for (int i = 0; i < mCities.size(); i++) {
+                City city = mCities.get(i);
+                buffer.putInt(keyOffsets[i])
+                        .putInt(nameOffsets[i])
+                        .putInt(city.id)
+                        .putInt(city.latitude)
+                        .putInt(city.longitude)
+                        .put((byte) city.key.length)
+                        .put((byte) city.name.length);
+                if (city.country != null) {
+                    buffer.put((byte) city.country.charAt(0)).put((byte) city.country.charAt(1));
+                } else {
+                    buffer.putShort((short) 0);
+                }
+            }
+            pool.writeTo(buffer);
+            return buffer.array();
+        }
+
+        private static int compareBytes(byte[] lhs, byte[] rhs) {
+            int common = Math.min(lhs.length, rhs.length);
+            for (int i = 0; i < common; i++) {
+                int difference = (lhs[i] & 0xff) - (rhs[i] & 0xff);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return lhs.length - rhs.length;
+        }
+
+        private static class City {
+            byte[] key;
+            byte[] name;
+            int id;
+            String country;
+            int latitude;
+            int longitude;
+        }
+
+        private static class PoolBuilder {
+            private final Map<String, Integer> mOffsets = new HashMap<String, Integer>();
+            private final List<byte[]> mStrings = new ArrayList<byte[]>();
+            private int mSize;
+
+            int add(byte[] string) {
+                String value = new String(string, UTF_8);
+                Integer offset = mOffsets.get(value);
+                if (offset == null) {
+                    offset = mSize;
+                    mOffsets.put(value, offset);
+                    mStrings.add(string);
+                    mSize += string.length;
+                }
+                return offset;
+            }
+
+            int size() {
+                return mSize;
+            }
+
+            void writeTo(ByteBuffer buffer) {
+                for (byte[] string : mStrings) {
+                    buffer.put(string);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Builds and reads the paths of content URIs as strings, the way Uri.Builder.appendPath() and
+ * Uri.getPathSegments() do, without the Builder and its Part objects.  A URI parsed from a string
+ * built here equals the one the Builder makes.
+ */
+public class ContentPaths {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    // The characters Uri.encode() leaves alone besides letters and digits
+    private static final String ALLOWED = "_-!.~'()*";
+
+    private ContentPaths() {
+    }
+
+    /**
+     * @return the URI string with the segment appended, encoded.
+     */
+    public static String appendSegment(String uri, String segment) {
+        StringBuilder builder = new StringBuilder(uri.length() + segment.length() + 8);
+        builder.append(uri).append('/');
+        encode(segment, builder);
+        return builder.toString();
+    }
+
+    /**
+     * @return the URI string with both segments appended, the second a number.
+     */
+    public static String appendSegments(String uri, String segment, long number) {
+        StringBuilder builder = new StringBuilder(uri.length() + segment.length() + 24);
+        builder.append(uri).append('/');
+        encode(segment, builder);
+        builder.append('/').append(number);
+        return builder.toString();
+    }
+
+    /**
+     * Encodes a path segment the way Uri.encode() does: UTF-8, every character but letters,
+     * digits and "_-!.~'()*" escaped.
+     */
+    public static String encode(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            if (!isAllowed(segment.charAt(i))) {
+                StringBuilder builder = new StringBuilder(segment.length() + 16);
+                encode(segment, builder);
+                return builder.toString();
+            }
+        }
+        return segment;
+    }
+
+    private static void encode(String segment, StringBuilder builder) {
+        int length = segment.length();
+        int i = 0;
+        while (i < length) {
+            char c = segment.charAt(i);
+            if (isAllowed(c)) {
+                builder.append(c);
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < length && !isAllowed(segment.charAt(end))) {
+                end++;
+            }
+            for (byte b : segment.substring(i, end).getBytes(UTF_8)) {
+                builder.append('%')
+                        .append(HEX_DIGITS[(b & 0xf0) >> 4])
+                        .append(HEX_DIGITS[b & 0xf]);
+            }
+            i = end;
+        }
+    }
+
+    private static boolean isAllowed(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || ALLOWED.indexOf(c) != -1;
+    }
+
+    /**
+     * @param encodedPath The encoded path of a URI, e.g. "/weather/94043/1419033600000".
+     * @return the decoded segment at the index, the way Uri.getPathSegments() counts them
+     * (empty segments don't count), or null if the path is shorter.
+     */
+    public static String getSegment(String encodedPath, int index) {
+        if (encodedPath == null) {
+            return null;
+        }
+        int start = 0;
+        int length = encodedPath.length();
+        int found = 0;
+        while (start < length) {
+            int end = encodedPath.indexOf('/', start);
+            if (end == -1) {
+                end = length;
+            }
+            if (start < end) {
+                if (found == index) {
+                    return decode(encodedPath, start, end);
+                }
+                found++;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * @return the segment at the index parsed as a number, see {@link #getSegment}.
+     * @throws NumberFormatException if there is no such segment, or it isn't a number.
+     */
+    public static long getLongSegment(String encodedPath, int index) {
+        String segment = getSegment(encodedPath, index);
+        if (segment == null) {
+            throw new NumberFormatException("No segment " + index + " in " + encodedPath);
+        }
+        return Long.parseLong(segment);
+    }
+
+    private static String decode(String s, int start, int end) {
+        int escape = s.indexOf('%', start);
+        if (escape == -1 || escape >= end) {
+            return s.substring(start, end);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(end - start);
+        int i = start;
+        while (i < end) {
+            int high;
+            int low;
+            if (s.charAt(i) == '%' && i + 2 < end
+                    && (high = Character.digit(s.charAt(i + 1), 16)) != -1
+                    && (low = Character.digit(s.charAt(i + 2), 16)) != -1) {
+                bytes.write((high << 4) | low);
+                i += 3;
+                continue;
+            }
+            // Up to the next escape, a malformed one is kept as it is
+            int next = s.indexOf('%', i + 1);
+            if (next == -1 || next > end) {
+                next = end;
+            }
+            byte[] utf8 = s.substring(i, next).getBytes(UTF_8);
+            bytes.write(utf8, 0, utf8.length);
+            i = next;
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import java.util.TimeZone;
+
+/**
+ * Day arithmetic on millisecond timestamps, with plain offsets instead of an android Time or a
+ * Calendar per call.
+ */
+public class DayMath {
+
+    public static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private DayMath() {
+    }
+
+    /**
+     * @return the start of the day of 'millis' in the time zone, the value
+     * {@code Time.setJulianDay(Time.getJulianDay(millis, gmtoff))} gives.
+     */
+    public static long normalizeDate(long millis, TimeZone zone) {
+        int offset = zone.getOffset(millis);
+        long localMidnight = floorDiv(millis + offset, DAY_IN_MILLIS) * DAY_IN_MILLIS;
+        long midnight = localMidnight - offset;
+        // The offset at midnight is another one when daylight saving time changed that day
+        int midnightOffset = zone.getOffset(midnight);
+        if (midnightOffset != offset) {
+            midnight = localMidnight - midnightOffset;
+        }
+        return midnight;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            quotient--;
+        }
+        return quotient;
+    }
+}
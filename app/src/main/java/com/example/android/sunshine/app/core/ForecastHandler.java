@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+/**
+ * Receives a daily forecast as it is decoded: the city first, then every day in order.  The
+ * parsers of the forecast formats all hand it over this way, so what becomes of the days is the
+ * same whatever format they came in.
+ */
+public interface ForecastHandler {
+    /**
+     * @param cityId   The id of the city on OpenWeatherMap, 0 if the response has none.
+     * @param dayCount The number of days that follow.
+     */
+    void onCity(long cityId, String cityName, double latitude, double longitude, int dayCount);
+
+    /**
+     * @param index The day of the forecast, 0 is the current day of the city.
+     */
+    void onDay(int index, int weatherId, String description, double low, double high,
+               int humidity, double pressure, double windSpeed, double windDirection);
+}
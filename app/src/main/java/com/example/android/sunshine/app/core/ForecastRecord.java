@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a decoded forecast in memory and hands it to another {@link ForecastHandler} later.  A
+ * response is decoded once, while it is fetched, and what becomes of its days waits until the
+ * fetch is over.
+ */
+public class ForecastRecord implements ForecastHandler {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private boolean mHasCity;
+    private long mCityId;
+    private String mCityName;
+    private double mLatitude;
+    private double mLongitude;
+    private int mDayCount;
+
+    private int mSize;
+    private int[] mIndexes = new int[INITIAL_CAPACITY];
+    private int[] mWeatherIds = new int[INITIAL_CAPACITY];
+    private String[] mDescriptions = new String[INITIAL_CAPACITY];
+    private double[] mLows = new double[INITIAL_CAPACITY];
+    private double[] mHighs = new double[INITIAL_CAPACITY];
+    private int[] mHumidities = new int[INITIAL_CAPACITY];
+    private double[] mPressures = new double[INITIAL_CAPACITY];
+    private double[] mWindSpeeds = new double[INITIAL_CAPACITY];
+    private double[] mWindDirections = new double[INITIAL_CAPACITY];
+
+    @Override
+    public void onCity(long cityId, String cityName, double latitude, double longitude,
+                       int dayCount) {
+        mHasCity = true;
+        mCityId = cityId;
+        mCityName = cityName;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mDayCount = dayCount;
+    }
+
+    @Override
+    public void onDay(int index, int weatherId, String description, double low, double high,
+                      int humidity, double pressure, double windSpeed, double windDirection) {
+        if (mSize == mIndexes.length) {
+            grow();
+        }
+        mIndexes[mSize] = index;
+        mWeatherIds[mSize] = weatherId;
+        mDescriptions[mSize] = description;
+        mLows[mSize] = low;
+        mHighs[mSize] = high;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mWindDirections[mSize] = windDirection;
+        mSize++;
+    }
+
+    /**
+     * Forgets the forecast recorded so far, to record another one.
+     */
+    public void clear() {
+        mHasCity = false;
+        mSize = 0;
+    }
+
+    /**
+     * @return the number of days recorded.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Hands the city and the days to the handler, as the parser handed them over.  Nothing if
+     * the forecast had no city, an error response.
+     */
+    public void replay(ForecastHandler handler) {
+        if (!mHasCity) {
+            return;
+        }
+        handler.onCity(mCityId, mCityName, mLatitude, mLongitude, mDayCount);
+        for (int i = 0; i < mSize; i++) {
+            handler.onDay(mIndexes[i], mWeatherIds[i], mDescriptions[i], mLows[i], mHighs[i],
+                    mHumidities[i], mPressures[i], mWindSpeeds[i], mWindDirections[i]);
+        }
+    }
+
+    private void grow() {
+        int capacity = mIndexes.length * 2;
+        mIndexes = Arrays.copyOf(mIndexes, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mDescriptions = Arrays.copyOf(mDescriptions, capacity);
+        mLows = Arrays.copyOf(mLows, capacity);
+        mHighs = Arrays.copyOf(mHighs, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mWindDirections = Arrays.copyOf(mWindDirections, capacity);
+    }
+}
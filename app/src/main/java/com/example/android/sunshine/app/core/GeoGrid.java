@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+/**
+ * A grid of half degree cells over the globe, numbered row by row from the south pole and the
+ * antimeridian, so the cells of a row within a range of longitudes are a range of numbers.
+ * Finding what lies near a point becomes a few range scans of an index on the cell, one per row
+ * the search distance reaches, and the exact distances are computed for those candidates only.
+ */
+public class GeoGrid {
+
+    public static final double CELL_DEGREES = 0.5;
+    public static final int ROWS = (int) (180 / CELL_DEGREES);
+    public static final int COLUMNS = (int) (360 / CELL_DEGREES);
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    private GeoGrid() {
+    }
+
+    /**
+     * @return the cell of the point, between 0 and ROWS * COLUMNS - 1.
+     */
+    public static int cellOf(double latitude, double longitude) {
+        return row(latitude) * COLUMNS + column(longitude);
+    }
+
+    private static int row(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / CELL_DEGREES);
+        return Math.max(0, Math.min(ROWS - 1, row));
+    }
+
+    private static int column(double longitude) {
+        // Longitudes past the antimeridian wrap around
+        double wrapped = ((longitude + 180) % 360 + 360) % 360;
+        return Math.min(COLUMNS - 1, (int) Math.floor(wrapped / CELL_DEGREES));
+    }
+
+    /**
+     * @return the great circle distance between the points, in kilometers.
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2,
+                                    double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinHalfPhi = Math.sin((phi2 - phi1) / 2);
+        double sinHalfLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinHalfPhi * sinHalfPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinHalfLambda * sinHalfLambda;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * @return the ranges of cells holding every point within the distance of the point, as pairs
+     * of first and last cell, both included.  They hold points farther away too.
+     */
+    public static int[] cellRanges(double latitude, double longitude, double distanceKm) {
+        double latitudeSpan = distanceKm / KM_PER_DEGREE;
+        double south = latitude - latitudeSpan;
+        double north = latitude + latitudeSpan;
+        int firstRow = row(south);
+        int lastRow = row(north);
+
+        // A degree of longitude is shortest at the latitude of the box farthest from the equator
+        int firstColumn = 0;
+        int lastColumn = COLUMNS - 1;
+        double widest = Math.max(Math.abs(south), Math.abs(north));
+        if (widest < 90) {
+            double longitudeSpan = latitudeSpan / Math.cos(Math.toRadians(widest));
+            if (longitudeSpan < 180 - CELL_DEGREES) {
+                firstColumn = column(longitude - longitudeSpan);
+                lastColumn = column(longitude + longitudeSpan);
+            }
+        }
+
+        boolean wraps = firstColumn > lastColumn;
+        int[] ranges = new int[(lastRow - firstRow + 1) * (wraps ? 4 : 2)];
+        int i = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            int rowStart = row * COLUMNS;
+            if (wraps) {
+                ranges[i++] = rowStart;
+                ranges[i++] = rowStart + lastColumn;
+                ranges[i++] = rowStart + firstColumn;
+                ranges[i++] = rowStart + COLUMNS - 1;
+            } else {
+                ranges[i++] = rowStart + firstColumn;
+                ranges[i++] = rowStart + lastColumn;
+            }
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Maps the OpenWeatherMap group response, the current weather of several cities asked for by
+ * id, to one call of the {@link Handler} per city.  The cities come in one pass over the
+ * response, it is up to the handler to tell them apart by their id.
+ */
+public class GroupJsonParser {
+
+    // The cities are the elements of the "list" array
+    private static final String OWM_LIST = "list";
+    private static final String OWM_CITY_ID = "id";
+    private static final String OWM_TIME = "dt";
+
+    // Measurements are children of the "main" object, the wind of the "wind" object
+    private static final String OWM_MAIN = "main";
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WIND = "wind";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * Receives the weather of every city of the response, in the order of the response.
+     */
+    public interface Handler {
+        /**
+         * @param cityId The id of the city on OpenWeatherMap.
+         * @param time   When the weather was measured, in milliseconds.
+         */
+        void onCity(long cityId, long time, int weatherId, String description,
+                    double temperature, double humidity, double pressure, double windSpeed,
+                    double windDirection);
+    }
+
+    private GroupJsonParser() {
+    }
+
+    /**
+     * @return HttpURLConnection.HTTP_OK once the cities went to the handler, or the error code
+     * of the response, in which case the handler hears nothing.
+     */
+    public static int parse(String groupJsonStr, Handler handler) throws JSONException {
+        JSONObject groupJson = new JSONObject(groupJsonStr);
+
+        // A group response has no code unless it's an error
+        if (groupJson.has(OWM_MESSAGE_CODE)) {
+            int errorCode = groupJson.getInt(OWM_MESSAGE_CODE);
+            if (errorCode != HttpURLConnection.HTTP_OK) {
+                return errorCode;
+            }
+        }
+
+        JSONArray cityArray = groupJson.getJSONArray(OWM_LIST);
+        for (int i = 0; i < cityArray.length(); i++) {
+            JSONObject cityWeather = cityArray.getJSONObject(i);
+            JSONObject mainObject = cityWeather.getJSONObject(OWM_MAIN);
+            JSONObject windObject = cityWeather.getJSONObject(OWM_WIND);
+            JSONObject weatherObject = cityWeather.getJSONArray(OWM_WEATHER).getJSONObject(0);
+
+            handler.onCity(cityWeather.getLong(OWM_CITY_ID),
+                    // OWM times are in seconds
+                    cityWeather.getLong(OWM_TIME) * 1000,
+                    weatherObject.getInt(OWM_WEATHER_ID),
+                    weatherObject.getString(OWM_DESCRIPTION),
+                    mainObject.getDouble(OWM_TEMPERATURE),
+                    mainObject.getDouble(OWM_HUMIDITY),
+                    mainObject.getDouble(OWM_PRESSURE),
+                    windObject.getDouble(OWM_WINDSPEED),
+                    // Calm days come without a direction
+                    windObject.optDouble(OWM_WIND_DIRECTION, 0));
+        }
+        return HttpURLConnection.HTTP_OK;
+    }
+}
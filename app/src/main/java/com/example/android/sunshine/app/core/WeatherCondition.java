@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+/**
+ * The conditions Sunshine has artwork for, and the OpenWeatherMap condition ids each one covers.
+ * The app maps a condition to its icon, art and art pack URL; this class only knows the ids, so
+ * it runs, and is benchmarked, off the device.
+ */
+public enum WeatherCondition {
+    STORM("storm"),
+    LIGHT_RAIN("light_rain"),
+    RAIN("rain"),
+    SNOW("snow"),
+    FOG("fog"),
+    CLEAR("clear"),
+    LIGHT_CLOUDS("light_clouds"),
+    CLOUDS("clouds");
+
+    // Ids are between 200 and 804, a table over that range replaces a chain of comparisons
+    private static final int FIRST_ID = 200;
+    private static final int LAST_ID = 804;
+    private static final WeatherCondition[] sById = new WeatherCondition[LAST_ID - FIRST_ID + 1];
+
+    static {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        // Later ranges don't overwrite earlier ones: 761 is fog, not storm
+        fill(200, 232, STORM);
+        fill(300, 321, LIGHT_RAIN);
+        fill(500, 504, RAIN);
+        fill(511, 511, SNOW);
+        fill(520, 531, RAIN);
+        fill(600, 622, SNOW);
+        fill(701, 761, FOG);
+        fill(781, 781, STORM);
+        fill(800, 800, CLEAR);
+        fill(801, 801, LIGHT_CLOUDS);
+        fill(802, 804, CLOUDS);
+    }
+
+    private final String mArtName;
+
+    WeatherCondition(String artName) {
+        mArtName = artName;
+    }
+
+    private static void fill(int first, int last, WeatherCondition condition) {
+        for (int id = first; id <= last; id++) {
+            if (sById[id - FIRST_ID] == null) {
+                sById[id - FIRST_ID] = condition;
+            }
+        }
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the condition of the id, or null if Sunshine has no artwork for it.
+     */
+    public static WeatherCondition forWeatherId(int weatherId) {
+        if (weatherId < FIRST_ID || weatherId > LAST_ID) {
+            return null;
+        }
+        return sById[weatherId - FIRST_ID];
+    }
+
+    /**
+     * @return the name of the condition in the art pack URLs, e.g. "light_rain".
+     */
+    public String getArtName() {
+        return mArtName;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.ChangeEntry;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Appends the days a write to the weather table changed to the change log, in the transaction
+ * of the write, so an entry is visible exactly when its change is.
+ *
+ * The log is compacted as it is written: a day's new entry replaces its older one, and past
+ * {@link ChangeEntry#MAX_ENTRIES} the oldest entries give way to a single reset at the newest
+ * sequence number they had.  A consumer that is still behind that reset reloads everything, the
+ * others never see it.
+ */
+class ChangeLog {
+
+    //DELETE FROM change_log WHERE location_id = ? AND date = ?
+    private static final String sDeleteDayStatement =
+            "DELETE FROM " + ChangeEntry.TABLE_NAME + " WHERE " +
+                    ChangeEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    ChangeEntry.COLUMN_DATE + " = ?";
+
+    //INSERT INTO change_log (location_id, date, op) VALUES (?, ?, ?)
+    private static final String sInsertEntryStatement =
+            "INSERT INTO " + ChangeEntry.TABLE_NAME + " (" +
+                    ChangeEntry.COLUMN_LOC_KEY + ", " +
+                    ChangeEntry.COLUMN_DATE + ", " +
+                    ChangeEntry.COLUMN_OP + ") VALUES (?, ?, ?)";
+
+    private ChangeLog() {
+    }
+
+    /**
+     * Logs the changes collected for a write, each day with the operation.  Must run in the
+     * transaction of the write, before it is committed.
+     */
+    static void append(SQLiteDatabase db, ChangeNotifier changes, int op) {
+        int dates = changes.getDateCount();
+        // More days than the log keeps would only push each other out, a reset says the same
+        if (changes.isChangedAll() || dates > ChangeEntry.MAX_ENTRIES) {
+            appendReset(db);
+            return;
+        }
+        if (dates == 0) {
+            return;
+        }
+        SQLiteStatement deleteDay = db.compileStatement(sDeleteDayStatement);
+        SQLiteStatement insertEntry = db.compileStatement(sInsertEntryStatement);
+        try {
+            for (Map.Entry<Long, Set<Long>> entry : changes.getDatesByLocation().entrySet()) {
+                long locationId = entry.getKey();
+                for (long date : entry.getValue()) {
+                    deleteDay.bindLong(1, locationId);
+                    deleteDay.bindLong(2, date);
+                    deleteDay.execute();
+                    insertEntry.bindLong(1, locationId);
+                    insertEntry.bindLong(2, date);
+                    insertEntry.bindLong(3, op);
+                    insertEntry.executeInsert();
+                }
+            }
+        } finally {
+            deleteDay.close();
+            insertEntry.close();
+        }
+        trim(db);
+    }
+
+    /**
+     * Logs that anything may have changed.  The entries before the reset can't tell a consumer
+     * more than the reset does, they are dropped.
+     */
+    static void appendReset(SQLiteDatabase db) {
+        SQLiteStatement insertEntry = db.compileStatement(sInsertEntryStatement);
+        long sequence;
+        try {
+            insertEntry.bindNull(1);
+            insertEntry.bindNull(2);
+            insertEntry.bindLong(3, ChangeEntry.OP_RESET);
+            sequence = insertEntry.executeInsert();
+        } finally {
+            insertEntry.close();
+        }
+        db.delete(ChangeEntry.TABLE_NAME, ChangeEntry._ID + " < ?",
+                new String[]{Long.toString(sequence)});
+    }
+
+    /**
+     * @return the sequence number of the latest entry, 0 if nothing was ever logged.
+     */
+    static long getLatestSequence(SQLiteDatabase db) {
+        Cursor cursor = db.query(ChangeEntry.TABLE_NAME,
+                new String[]{"MAX(" + ChangeEntry._ID + ")"}, null, null, null, null, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Drops the entries past MAX_ENTRIES, replacing them with a reset at the sequence number of
+        the newest one dropped.  The ids below the newest entry are free to take, AUTOINCREMENT
+        only keeps new entries above every id it handed out.
+     */
+    private static void trim(SQLiteDatabase db) {
+        Cursor cursor = db.query(ChangeEntry.TABLE_NAME,
+                new String[]{ChangeEntry._ID, ChangeEntry.COLUMN_OP}, null, null, null, null,
+                ChangeEntry._ID + " DESC", ChangeEntry.MAX_ENTRIES + ", 1");
+        long cutoff;
+        try {
+            // Nothing to drop, or only the reset of the last trim
+            if (!cursor.moveToFirst() || cursor.getInt(1) == ChangeEntry.OP_RESET) {
+                return;
+            }
+            cutoff = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+        String[] args = new String[]{Long.toString(cutoff)};
+        db.delete(ChangeEntry.TABLE_NAME, ChangeEntry._ID + " <= ?", args);
+        db.execSQL("INSERT INTO " + ChangeEntry.TABLE_NAME + " (" +
+                ChangeEntry._ID + ", " + ChangeEntry.COLUMN_OP + ") VALUES (?, " +
+                ChangeEntry.OP_RESET + ")", args);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.ChangeEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Collects the days a write to the weather table changed, and notifies the URIs of exactly
+ * those days once the write is committed.
+ *
+ * A notification reaches the observers of its URI, the observers of its ancestors that watch
+ * descendants, and every observer below it.  So weather/&lt;location&gt;/&lt;date&gt; reloads the
+ * list of that location and the details of that day, while weather/&lt;location&gt; would also
+ * reload the details of every other day.  Past a few days per location, one notification of
+ * the location is cheaper than one per day.
+ *
+ * The results cached of the changed days are dropped before anything is notified, so the
+ * observers reload from the database.  Followers of the change log are notified last, once for
+ * the whole write.
+ */
+class ChangeNotifier {
+
+    // More changed days than this for a location and its URI is notified instead
+    static final int MAX_DATES_PER_LOCATION = 16;
+
+    private final Map<Long, Set<Long>> mDatesByLocation = new HashMap<Long, Set<Long>>();
+    private final ResultCache mResultCache;
+    private boolean mChangedAll;
+
+    ChangeNotifier() {
+        this(null);
+    }
+
+    /**
+     * @param resultCache The cache to invalidate before notifying, null if the changes can't be
+     *                    in it.
+     */
+    ChangeNotifier(ResultCache resultCache) {
+        mResultCache = resultCache;
+    }
+
+    void add(long locationId, long date) {
+        Set<Long> dates = mDatesByLocation.get(locationId);
+        if (dates == null) {
+            dates = new TreeSet<Long>();
+            mDatesByLocation.put(locationId, dates);
+        }
+        dates.add(date);
+    }
+
+    /**
+     * Adds the days of the weather rows matching the selection.  Must run before they are
+     * deleted or modified.
+     */
+    void addMatching(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(true, WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_LOC_KEY, WeatherEntry.COLUMN_DATE},
+                selection, selectionArgs, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                add(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * For changes that can't be pinned down, like an update moving rows to other days.
+     */
+    void addAll() {
+        mChangedAll = true;
+    }
+
+    boolean isChangedAll() {
+        return mChangedAll;
+    }
+
+    Map<Long, Set<Long>> getDatesByLocation() {
+        return mDatesByLocation;
+    }
+
+    int getDateCount() {
+        int count = 0;
+        for (Set<Long> dates : mDatesByLocation.values()) {
+            count += dates.size();
+        }
+        return count;
+    }
+
+    /**
+     * Notifies the weather URIs of the changed days, and the stats URIs of their locations if
+     * the summaries changed with them.
+     */
+    void notifyChanges(ContentResolver resolver, SQLiteDatabase db, boolean statsChanged) {
+        if (mChangedAll) {
+            if (mResultCache != null) {
+                mResultCache.invalidateAll();
+            }
+            resolver.notifyChange(WeatherEntry.CONTENT_URI, null);
+            if (statsChanged) {
+                resolver.notifyChange(StatsEntry.CONTENT_URI, null);
+            }
+            resolver.notifyChange(ChangeEntry.CONTENT_URI, null);
+            return;
+        }
+        if (mDatesByLocation.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Long, Set<Long>> entry : mDatesByLocation.entrySet()) {
+            List<String> locationSettings = getLocationSettings(db, entry.getKey());
+            if (locationSettings.isEmpty()) {
+                // The location went away with its rows, only the broad observers care
+                if (mResultCache != null) {
+                    mResultCache.invalidateAll();
+                }
+                resolver.notifyChange(WeatherEntry.CONTENT_URI, null);
+                continue;
+            }
+            Set<Long> dates = entry.getValue();
+            // The place's rows are read through every setting naming it
+            for (String locationSetting : locationSettings) {
+                if (mResultCache != null) {
+                    mResultCache.invalidate(locationSetting, dates);
+                }
+                if (dates.size() > MAX_DATES_PER_LOCATION) {
+                    resolver.notifyChange(WeatherEntry.buildWeatherLocation(locationSetting),
+                            null);
+                } else {
+                    for (long date : dates) {
+                        resolver.notifyChange(WeatherEntry.buildWeatherLocationWithDate(
+                                locationSetting, date), null);
+                    }
+                }
+                if (statsChanged) {
+                    resolver.notifyChange(StatsEntry.buildStatsLocation(locationSetting), null);
+                }
+            }
+        }
+        resolver.notifyChange(ChangeEntry.CONTENT_URI, null);
+    }
+
+    /**
+     * Notifies the location URIs, under contentUri, of the locations that changed, for the
+     * tables whose observers watch whole locations.
+     */
+    void notifyLocations(ContentResolver resolver, SQLiteDatabase db, Uri contentUri) {
+        if (mChangedAll) {
+            resolver.notifyChange(contentUri, null);
+            return;
+        }
+        for (long locationId : mDatesByLocation.keySet()) {
+            notifyLocation(resolver, db, contentUri, locationId);
+        }
+    }
+
+    /**
+     * @return the settings of the location and of its aliases, none if it's gone.
+     */
+    private static List<String> getLocationSettings(SQLiteDatabase db, long locationId) {
+        String id = Long.toString(locationId);
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING},
+                LocationEntry._ID + " = ? OR " + LocationEntry.COLUMN_CANONICAL_ID + " = ?",
+                new String[]{id, id}, null, null, null);
+        try {
+            List<String> locationSettings = new ArrayList<String>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                locationSettings.add(cursor.getString(0));
+            }
+            return locationSettings;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Notifies the URIs under contentUri of the location's settings, after a write to the
+     * hourly or history table of the location.
+     */
+    static void notifyLocation(ContentResolver resolver, SQLiteDatabase db, Uri contentUri,
+                               long locationId) {
+        List<String> locationSettings = getLocationSettings(db, locationId);
+        if (locationSettings.isEmpty()) {
+            resolver.notifyChange(contentUri, null);
+        }
+        for (String locationSetting : locationSettings) {
+            resolver.notifyChange(contentUri.buildUpon().appendPath(locationSetting).build(),
+                    null);
+        }
+    }
+}
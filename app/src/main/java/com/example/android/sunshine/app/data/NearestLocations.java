@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.core.GeoGrid;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the grid cell of every location, see {@link GeoGrid}, and finds the locations nearest
+ * to a point with it: the index on the cell narrows them down to the cells within the distance,
+ * only those are measured.
+ */
+class NearestLocations {
+
+    private static final String[] NEAREST_COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG,
+            LocationEntry.COLUMN_GRID_CELL,
+            LocationEntry.COLUMN_CANONICAL_ID
+    };
+    private static final int INDEX_LOCATION_ID = 0;
+    private static final int INDEX_LOCATION_SETTING = 1;
+    private static final int INDEX_CITY_NAME = 2;
+    private static final int INDEX_COORD_LAT = 3;
+    private static final int INDEX_COORD_LONG = 4;
+    private static final int INDEX_GRID_CELL = 5;
+    private static final int INDEX_CANONICAL_ID = 6;
+
+    // The upgrade to version 7 rebuilds the cells, only the columns of that version are read
+    private static final String[] CELL_COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG,
+            LocationEntry.COLUMN_GRID_CELL
+    };
+    private static final int INDEX_CELL_LOCATION_ID = 0;
+    private static final int INDEX_CELL_COORD_LAT = 1;
+    private static final int INDEX_CELL_COORD_LONG = 2;
+    private static final int INDEX_CELL_GRID_CELL = 3;
+
+    //UPDATE location SET grid_cell = ? WHERE _id = ?
+    private static final String sUpdateCellStatement =
+            "UPDATE " + LocationEntry.TABLE_NAME + " SET " + LocationEntry.COLUMN_GRID_CELL +
+                    " = ? WHERE " + LocationEntry._ID + " = ?";
+
+    private NearestLocations() {
+    }
+
+    /**
+     * Sets the cell of the location the values write, if they have both its coordinates.
+     *
+     * @return false if they have one coordinate only, the cell can't be known before the write.
+     */
+    static boolean putCell(ContentValues values) {
+        Double latitude = values.getAsDouble(LocationEntry.COLUMN_COORD_LAT);
+        Double longitude = values.getAsDouble(LocationEntry.COLUMN_COORD_LONG);
+        if (latitude != null && longitude != null) {
+            values.put(LocationEntry.COLUMN_GRID_CELL, GeoGrid.cellOf(latitude, longitude));
+            return true;
+        }
+        return latitude == null && longitude == null;
+    }
+
+    /**
+     * Sets the cell of every location whose cell isn't the one of its coordinates.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, CELL_COLUMNS,
+                null, null, null, null, null);
+        SQLiteStatement update = null;
+        try {
+            while (cursor.moveToNext()) {
+                int cell = GeoGrid.cellOf(cursor.getDouble(INDEX_CELL_COORD_LAT),
+                        cursor.getDouble(INDEX_CELL_COORD_LONG));
+                if (!cursor.isNull(INDEX_CELL_GRID_CELL)
+                        && cursor.getInt(INDEX_CELL_GRID_CELL) == cell) {
+                    continue;
+                }
+                if (update == null) {
+                    update = db.compileStatement(sUpdateCellStatement);
+                }
+                update.bindLong(1, cell);
+                update.bindLong(2, cursor.getLong(INDEX_CELL_LOCATION_ID));
+                update.execute();
+            }
+        } finally {
+            cursor.close();
+            if (update != null) {
+                update.close();
+            }
+        }
+    }
+
+    /**
+     * @param uri A URI built by {@link LocationEntry#buildNearestUri}.
+     * @param projection The columns of the location table and COLUMN_DISTANCE, null for all.
+     */
+    static Cursor query(SQLiteDatabase db, Uri uri, String[] projection) {
+        final double latitude;
+        final double longitude;
+        double maxDistance;
+        int limit;
+        try {
+            latitude = LocationEntry.getLatitudeFromUri(uri);
+            longitude = LocationEntry.getLongitudeFromUri(uri);
+            maxDistance = LocationEntry.getMaxDistanceFromUri(uri);
+            limit = LocationEntry.getNearestLimitFromUri(uri);
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("Bad nearest location uri: " + uri, e);
+        }
+
+        // (grid_cell BETWEEN ? AND ?) OR (grid_cell BETWEEN ? AND ?) ...
+        int[] ranges = GeoGrid.cellRanges(latitude, longitude, maxDistance);
+        StringBuilder selection = new StringBuilder();
+        String[] selectionArgs = new String[ranges.length];
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (i > 0) {
+                selection.append(" OR ");
+            }
+            selection.append('(').append(LocationEntry.COLUMN_GRID_CELL)
+                    .append(" BETWEEN ? AND ?)");
+            selectionArgs[i] = Integer.toString(ranges[i]);
+            selectionArgs[i + 1] = Integer.toString(ranges[i + 1]);
+        }
+
+        List<Object[]> nearest = new ArrayList<Object[]>();
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, NEAREST_COLUMNS, selection.toString(),
+                selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                double distance = GeoGrid.distanceKm(latitude, longitude,
+                        cursor.getDouble(INDEX_COORD_LAT), cursor.getDouble(INDEX_COORD_LONG));
+                if (distance > maxDistance) {
+                    continue;
+                }
+                nearest.add(new Object[]{
+                        cursor.getLong(INDEX_LOCATION_ID),
+                        cursor.getString(INDEX_LOCATION_SETTING),
+                        cursor.getString(INDEX_CITY_NAME),
+                        cursor.getDouble(INDEX_COORD_LAT),
+                        cursor.getDouble(INDEX_COORD_LONG),
+                        cursor.getInt(INDEX_GRID_CELL),
+                        cursor.isNull(INDEX_CANONICAL_ID)
+                                ? null : cursor.getLong(INDEX_CANONICAL_ID),
+                        distance});
+            }
+        } finally {
+            cursor.close();
+        }
+        Collections.sort(nearest, new Comparator<Object[]>() {
+            @Override
+            public int compare(Object[] lhs, Object[] rhs) {
+                return Double.compare((Double) lhs[NEAREST_COLUMNS.length],
+                        (Double) rhs[NEAREST_COLUMNS.length]);
+            }
+        });
+
+        if (projection == null) {
+            projection = new String[NEAREST_COLUMNS.length + 1];
+            System.arraycopy(NEAREST_COLUMNS, 0, projection, 0, NEAREST_COLUMNS.length);
+            projection[NEAREST_COLUMNS.length] = LocationEntry.COLUMN_DISTANCE;
+        }
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = getColumnIndex(projection[i]);
+        }
+        int count = Math.min(limit, nearest.size());
+        MatrixCursor result = new MatrixCursor(projection, count);
+        for (int i = 0; i < count; i++) {
+            Object[] row = nearest.get(i);
+            Object[] values = new Object[columns.length];
+            for (int j = 0; j < columns.length; j++) {
+                values[j] = row[columns[j]];
+            }
+            result.addRow(values);
+        }
+        return result;
+    }
+
+    private static int getColumnIndex(String column) {
+        if (LocationEntry.COLUMN_DISTANCE.equals(column)) {
+            return NEAREST_COLUMNS.length;
+        }
+        for (int i = 0; i < NEAREST_COLUMNS.length; i++) {
+            if (NEAREST_COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column of the nearest locations: " + column);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherContract.Metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latency histograms, row counts and callers of the provider's operations, per operation and
+ * URI match, plus a log of the slowest ones with their selection and query plan.
+ *
+ * Recording is a clock read and a map update under a lock.  Only slow operations pay for more,
+ * the EXPLAIN QUERY PLAN of their SQL.  Debug builds only: release builds hand the metrics out to
+ * nobody, so they don't record them, nor capture the SQL of their queries.
+ */
+class ProviderMetrics {
+
+    static final String OP_QUERY = "query";
+    static final String OP_INSERT = "insert";
+    static final String OP_BULK_INSERT = "bulk_insert";
+    static final String OP_UPDATE = "update";
+    static final String OP_DELETE = "delete";
+
+    // Upper bounds of the histogram buckets, the last bucket holds everything slower
+    static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512};
+
+    // Whether the provider records its operations at all
+    static final boolean ENABLED = BuildConfig.DEBUG;
+
+    private static final long DEFAULT_SLOW_NANOS = 50 * 1000000L;
+    private static final int MAX_SLOW_QUERIES = 32;
+
+    // The SQL of the last query each thread ran through the helper's database
+    private static final ThreadLocal<String> sLastSql = new ThreadLocal<String>();
+
+    /**
+     * Remembers the SQL of every query, so the plan of a slow one can be asked for.  Queries
+     * built by a SQLiteQueryBuilder never show their SQL otherwise.
+     */
+    private static final SQLiteDatabase.CursorFactory SQL_CAPTURING_FACTORY =
+            new SQLiteDatabase.CursorFactory() {
+                private static final String PREFIX = "SQLiteQuery: ";
+
+                @Override
+                @SuppressWarnings("deprecation")
+                public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery,
+                                        String editTable, SQLiteQuery query) {
+                    String sql = query.toString();
+                    sLastSql.set(sql.startsWith(PREFIX) ? sql.substring(PREFIX.length()) : sql);
+                    // The constructor without the database needs API 11
+                    return new SQLiteCursor(db, masterQuery, editTable, query);
+                }
+            };
+
+    /**
+     * The factory of the helper's database: the SQL capturing one where metrics are recorded,
+     * the default one (null) elsewhere.
+     */
+    static final SQLiteDatabase.CursorFactory CURSOR_FACTORY =
+            ENABLED ? SQL_CAPTURING_FACTORY : null;
+
+    private final Map<String, Metric> mMetrics = new TreeMap<String, Metric>();
+    private final Map<Integer, Integer> mCallsByUid = new HashMap<Integer, Integer>();
+    private final LinkedList<Bundle> mSlowQueries = new LinkedList<Bundle>();
+    private volatile long mSlowNanos = DEFAULT_SLOW_NANOS;
+
+    static void clearLastSql() {
+        sLastSql.set(null);
+    }
+
+    static String getLastSql() {
+        return sLastSql.get();
+    }
+
+    void setSlowThresholdNanos(long nanos) {
+        mSlowNanos = nanos;
+    }
+
+    boolean isSlow(long nanos) {
+        return nanos >= mSlowNanos;
+    }
+
+    synchronized void record(String operation, String match, int callingUid, long nanos,
+                             int rows) {
+        String key = operation + "/" + match;
+        Metric metric = mMetrics.get(key);
+        if (metric == null) {
+            metric = new Metric();
+            mMetrics.put(key, metric);
+        }
+        metric.add(nanos, rows);
+        Integer calls = mCallsByUid.get(callingUid);
+        mCallsByUid.put(callingUid, calls == null ? 1 : calls + 1);
+    }
+
+    /**
+     * Adds an operation to the slow log, dropping the oldest past its size.
+     *
+     * @param plan The EXPLAIN QUERY PLAN of the SQL, or null for writes.
+     */
+    synchronized void addSlowQuery(String operation, String uri, String selection,
+                                   String[] selectionArgs, String sql, String plan,
+                                   long nanos, int rows, int callingUid) {
+        Bundle slowQuery = new Bundle();
+        slowQuery.putString(Metrics.KEY_OPERATION, operation);
+        slowQuery.putString(Metrics.KEY_URI, uri);
+        slowQuery.putString(Metrics.KEY_SELECTION, selection);
+        slowQuery.putStringArray(Metrics.KEY_SELECTION_ARGS, selectionArgs);
+        slowQuery.putString(Metrics.KEY_SQL, sql);
+        slowQuery.putString(Metrics.KEY_PLAN, plan);
+        slowQuery.putLong(Metrics.KEY_DURATION_MICROS, nanos / 1000);
+        slowQuery.putInt(Metrics.KEY_ROWS, rows);
+        slowQuery.putInt(Metrics.KEY_CALLER_UID, callingUid);
+        slowQuery.putLong(Metrics.KEY_TIME, System.currentTimeMillis());
+        mSlowQueries.addLast(slowQuery);
+        if (mSlowQueries.size() > MAX_SLOW_QUERIES) {
+            mSlowQueries.removeFirst();
+        }
+    }
+
+    /**
+     * @return a Bundle per operation and match under its "operation/match" key, the bucket
+     * bounds, and the number of calls per calling package.
+     */
+    synchronized Bundle getMetrics(PackageManager packageManager) {
+        Bundle metrics = new Bundle();
+        for (Map.Entry<String, Metric> entry : mMetrics.entrySet()) {
+            metrics.putBundle(entry.getKey(), entry.getValue().toBundle());
+        }
+        metrics.putLongArray(Metrics.KEY_BUCKET_BOUNDS_MILLIS, BUCKET_BOUNDS_MILLIS);
+        Bundle callers = new Bundle();
+        for (Map.Entry<Integer, Integer> entry : mCallsByUid.entrySet()) {
+            String name = packageManager.getNameForUid(entry.getKey());
+            callers.putInt(name != null ? name : Integer.toString(entry.getKey()),
+                    entry.getValue());
+        }
+        metrics.putBundle(Metrics.KEY_CALLERS, callers);
+        return metrics;
+    }
+
+    /**
+     * @return the slow log, oldest first.
+     */
+    synchronized Bundle getSlowQueries() {
+        Bundle slowQueries = new Bundle();
+        slowQueries.putParcelableArrayList(Metrics.KEY_SLOW_QUERIES,
+                new ArrayList<Bundle>(mSlowQueries));
+        return slowQueries;
+    }
+
+    synchronized void reset() {
+        mMetrics.clear();
+        mCallsByUid.clear();
+        mSlowQueries.clear();
+    }
+
+    /**
+     * @return the plan SQLite picks for the SQL, one step per line.  Parameters are left unbound,
+     * the plan doesn't depend on their values.
+     */
+    static String explain(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detail = cursor.getColumnIndex("detail");
+            StringBuilder plan = new StringBuilder();
+            while (cursor.moveToNext()) {
+                if (plan.length() > 0) {
+                    plan.append('\n');
+                }
+                plan.append(cursor.getString(detail));
+            }
+            return plan.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static class Metric {
+        private int mCount;
+        private long mRows;
+        private long mTotalNanos;
+        private long mMaxNanos;
+        private final long[] mHistogram = new long[BUCKET_BOUNDS_MILLIS.length + 1];
+
+        void add(long nanos, int rows) {
+            mCount++;
+            mRows += rows;
+            mTotalNanos += nanos;
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+            long millis = nanos / 1000000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MILLIS.length && millis >= BUCKET_BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            mHistogram[bucket]++;
+        }
+
+        Bundle toBundle() {
+            Bundle bundle = new Bundle();
+            bundle.putInt(Metrics.KEY_COUNT, mCount);
+            bundle.putLong(Metrics.KEY_ROWS, mRows);
+            bundle.putLong(Metrics.KEY_TOTAL_MICROS, mTotalNanos / 1000);
+            bundle.putLong(Metrics.KEY_MAX_MICROS, mMaxNanos / 1000);
+            bundle.putLongArray(Metrics.KEY_HISTOGRAM, mHistogram.clone());
+            return bundle;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.Metrics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The results of the few queries every screen, widget and notification asks for over and over:
+ * today's row and the forecast from a start date.  A result is held as an immutable snapshot of
+ * its rows, see {@link RowSnapshot}, and every hit gets a cursor of its own over them.
+ *
+ * An entry remembers the location and the days it was read from.  Writes invalidate the
+ * entries of the days they changed, see {@link ChangeNotifier}, before their observers are
+ * notified, so a reload never sees the old rows.  A query that ran while a write went through
+ * isn't kept, its rows may be from before the write.
+ */
+class ResultCache {
+
+    // Entries kept, least recently used go first.  A location has a list and a few days open.
+    static final int MAX_ENTRIES = 32;
+    // Bigger results aren't kept, the cache is for the screenfuls the app shows
+    static final int MAX_ROWS = 64;
+
+    private final LinkedHashMap<String, CachedResult> mEntries =
+            new LinkedHashMap<String, CachedResult>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                    if (size() > MAX_ENTRIES) {
+                        mEvictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    // Changes with every invalidation, a result read across one isn't stored
+    private long mGeneration;
+
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+    private long mInvalidations;
+    private long mHitNanos;
+    private long mMaxHitNanos;
+    private long mMissNanos;
+    private long mMaxMissNanos;
+
+    /**
+     * @return the key of a query: its match, the arguments it takes from the URI, its projection
+     * and sort order.  Two URIs that query the same rows get the same key.
+     */
+    static String buildKey(int match, String locationSetting, long date, String[] projection,
+                           String sortOrder) {
+        StringBuilder key = new StringBuilder(64)
+                .append(match).append('\u0000')
+                .append(locationSetting).append('\u0000')
+                .append(date).append('\u0000');
+        if (projection != null) {
+            for (String column : projection) {
+                key.append(column).append(',');
+            }
+        } else {
+            key.append('*');
+        }
+        return key.append('\u0000').append(sortOrder).toString();
+    }
+
+    /**
+     * @return a new cursor over the stored result of the key, or null if there isn't one.
+     */
+    synchronized Cursor get(String key) {
+        CachedResult entry = mEntries.get(key);
+        return entry != null ? entry.mRows.newCursor() : null;
+    }
+
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Reads and closes the cursor, and stores its rows unless something was invalidated since
+     * generation was read.
+     *
+     * @param firstDate The first day the result was read from.
+     * @param lastDate  The last day, Long.MAX_VALUE for a list that runs to the end.
+     * @return a cursor over the rows of the result, or the cursor itself if it is too big to keep.
+     */
+    Cursor put(String key, String locationSetting, long firstDate, long lastDate,
+               long generation, Cursor cursor) {
+        if (cursor.getCount() > MAX_ROWS) {
+            return cursor;
+        }
+        CachedResult entry;
+        try {
+            entry = new CachedResult(locationSetting, firstDate, lastDate, RowSnapshot.of(cursor));
+        } finally {
+            cursor.close();
+        }
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mEntries.put(key, entry);
+            }
+        }
+        return entry.mRows.newCursor();
+    }
+
+    /**
+     * Drops the entries of the location that read any of the days.
+     */
+    synchronized void invalidate(String locationSetting, Set<Long> dates) {
+        mGeneration++;
+        Iterator<CachedResult> entries = mEntries.values().iterator();
+        while (entries.hasNext()) {
+            CachedResult entry = entries.next();
+            if (entry.mLocationSetting.equals(locationSetting) && entry.covers(dates)) {
+                entries.remove();
+                mInvalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drops every entry of the location.
+     */
+    synchronized void invalidateLocation(String locationSetting) {
+        mGeneration++;
+        Iterator<CachedResult> entries = mEntries.values().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().mLocationSetting.equals(locationSetting)) {
+                entries.remove();
+                mInvalidations++;
+            }
+        }
+    }
+
+    /**
+     * For writes that can't be pinned down to locations and days.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mInvalidations += mEntries.size();
+        mEntries.clear();
+    }
+
+    synchronized void recordLatency(boolean hit, long nanos) {
+        if (hit) {
+            mHits++;
+            mHitNanos += nanos;
+            mMaxHitNanos = Math.max(mMaxHitNanos, nanos);
+        } else {
+            mMisses++;
+            mMissNanos += nanos;
+            mMaxMissNanos = Math.max(mMaxMissNanos, nanos);
+        }
+    }
+
+    /**
+     * @return the hits and misses since the last reset, their latencies, and what went out of
+     * the cache, see {@link Metrics}.
+     */
+    synchronized Bundle getStats() {
+        Bundle stats = new Bundle();
+        stats.putLong(Metrics.KEY_HITS, mHits);
+        stats.putLong(Metrics.KEY_MISSES, mMisses);
+        stats.putLong(Metrics.KEY_HIT_TOTAL_MICROS, mHitNanos / 1000);
+        stats.putLong(Metrics.KEY_HIT_MAX_MICROS, mMaxHitNanos / 1000);
+        stats.putLong(Metrics.KEY_MISS_TOTAL_MICROS, mMissNanos / 1000);
+        stats.putLong(Metrics.KEY_MISS_MAX_MICROS, mMaxMissNanos / 1000);
+        stats.putLong(Metrics.KEY_EVICTIONS, mEvictions);
+        stats.putLong(Metrics.KEY_INVALIDATIONS, mInvalidations);
+        stats.putInt(Metrics.KEY_ENTRIES, mEntries.size());
+        return stats;
+    }
+
+    synchronized void resetStats() {
+        mHits = 0;
+        mMisses = 0;
+        mHitNanos = 0;
+        mMaxHitNanos = 0;
+        mMissNanos = 0;
+        mMaxMissNanos = 0;
+        mEvictions = 0;
+        mInvalidations = 0;
+    }
+
+    private static class CachedResult {
+        final String mLocationSetting;
+        final long mFirstDate;
+        final long mLastDate;
+        final RowSnapshot mRows;
+
+        CachedResult(String locationSetting, long firstDate, long lastDate, RowSnapshot rows) {
+            mLocationSetting = locationSetting;
+            mFirstDate = firstDate;
+            mLastDate = lastDate;
+            mRows = rows;
+        }
+
+        boolean covers(Set<Long> dates) {
+            for (long date : dates) {
+                if (date >= mFirstDate && date <= mLastDate) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.os.Build;
+
+import java.util.Arrays;
+
+/**
+ * The rows of a query result, read once and never changed.  Any number of cursors can be
+ * opened over them, each with its own position; closing one leaves the rows alone.
+ */
+public class RowSnapshot {
+
+    private final String[] mColumns;
+    private final Object[][] mRows;
+
+    private RowSnapshot(String[] columns, Object[][] rows) {
+        mColumns = columns;
+        mRows = rows;
+    }
+
+    /**
+     * Reads every row of the cursor, from the first one on.  The cursor is left after its last
+     * row and isn't closed.
+     */
+    public static RowSnapshot of(Cursor cursor) {
+        String[] columns = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        int row = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            Object[] values = new Object[columns.length];
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                readTyped(cursor, values);
+            } else {
+                // Without Cursor.getType(), SQLite hands out every value as text
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = cursor.getString(i);
+                }
+            }
+            rows[row++] = values;
+        }
+        return new RowSnapshot(columns, rows);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readTyped(Cursor cursor, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    values[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    values[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    values[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    values[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    values[i] = null;
+            }
+        }
+    }
+
+    public int getCount() {
+        return mRows.length;
+    }
+
+    /**
+     * @return true if the other snapshot holds the same columns and values, in the same order.
+     */
+    public boolean hasSameRows(RowSnapshot other) {
+        return other != null && Arrays.equals(mColumns, other.mColumns)
+                && Arrays.deepEquals(mRows, other.mRows);
+    }
+
+    /**
+     * @return a new cursor over the rows, before the first one.
+     */
+    public Cursor newCursor() {
+        return new SnapshotCursor(mColumns, mRows);
+    }
+
+    private static class SnapshotCursor extends AbstractCursor {
+        private final String[] mColumns;
+        private final Object[][] mRows;
+
+        SnapshotCursor(String[] columns, Object[][] rows) {
+            mColumns = columns;
+            mRows = rows;
+        }
+
+        private Object get(int column) {
+            if (column < 0 || column >= mColumns.length) {
+                throw new IndexOutOfBoundsException("Requested column: " + column
+                        + ", # of columns: " + mColumns.length);
+            }
+            if (mPos < 0 || mPos >= mRows.length) {
+                throw new IndexOutOfBoundsException("Position " + mPos + " of " + mRows.length);
+            }
+            return mRows[mPos][column];
+        }
+
+        @Override
+        public int getCount() {
+            return mRows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumns;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            return value != null ? value.toString() : null;
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return 0;
+            }
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            try {
+                return Long.parseLong(value.toString());
+            } catch (NumberFormatException e) {
+                // Text of a real, as older releases read it
+                return (long) Double.parseDouble(value.toString());
+            }
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return 0;
+            }
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return (byte[]) get(column);
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return FIELD_TYPE_NULL;
+            } else if (value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            } else if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if (value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * The forecast from today of the preferred location, in a small file of fixed layout that the
+ * sync publishes after every write of the forecast.  The Today widget, Muzei and the
+ * notification read one day of it; mapping the file costs them a system call, where the
+ * provider would have to be started and the database opened, often in a fresh process.
+ *
+ * The file is written whole to a temporary file and renamed over the old one, so a reader maps
+ * either snapshot, never half of one.  A snapshot of another location, a missing file or one
+ * that doesn't parse reads as null, and the reader asks the provider as before.
+ *
+ * Layout, big endian:
+ * <pre>
+ *   header  magic (4), version (4), published at (8), day count (4),
+ *           location setting: length (2) and UTF-8 bytes (LOCATION_BYTES)
+ *   day     date (8), weather id (4), high (8), low (8),
+ *           description: length (2) and UTF-8 bytes (DESCRIPTION_BYTES)
+ * </pre>
+ * followed by MAX_DAYS day slots, the ones past the day count zeroed.
+ */
+public class TodaySnapshot {
+
+    private static final String LOG_TAG = TodaySnapshot.class.getSimpleName();
+
+    public static final String FILE_NAME = "today.snapshot";
+    // A sync brings 14 days
+    public static final int MAX_DAYS = 14;
+
+    private static final int MAGIC = 0x53554e31;
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final int LOCATION_BYTES = 122;
+    static final int DESCRIPTION_BYTES = 34;
+
+    static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 2 + LOCATION_BYTES;
+    static final int DAY_SIZE = 8 + 4 + 8 + 8 + 2 + DESCRIPTION_BYTES;
+    static final int FILE_SIZE = HEADER_SIZE + MAX_DAYS * DAY_SIZE;
+
+    private static final int OFFSET_PUBLISHED = 8;
+    private static final int OFFSET_DAY_COUNT = 16;
+    static final int OFFSET_LOCATION = 20;
+    private static final int OFFSET_WEATHER_ID = 8;
+    private static final int OFFSET_HIGH = 12;
+    private static final int OFFSET_LOW = 20;
+    static final int OFFSET_DESCRIPTION = 28;
+
+    private static final String[] SNAPSHOT_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+
+    private final ByteBuffer mBuffer;
+    private final int mDayCount;
+
+    private TodaySnapshot(ByteBuffer buffer, int dayCount) {
+        mBuffer = buffer;
+        mDayCount = dayCount;
+    }
+
+    public static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Writes the snapshot of the location from what the provider holds from today on.  Only
+     * the sync writes the forecast, so it calls this once the forecast is written.
+     *
+     * @return true if the snapshot was written, false if it was removed instead.
+     */
+    public static boolean publish(Context context, String locationSetting) {
+        Writer writer = new Writer(locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()),
+                SNAPSHOT_COLUMNS, null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return writer.writeTo(getFile(context));
+        }
+        try {
+            while (cursor.moveToNext() && writer.getDayCount() < MAX_DAYS) {
+                writer.add(cursor.getLong(INDEX_DATE), cursor.getInt(INDEX_WEATHER_ID),
+                        cursor.getString(INDEX_SHORT_DESC), cursor.getDouble(INDEX_MAX_TEMP),
+                        cursor.getDouble(INDEX_MIN_TEMP));
+            }
+        } finally {
+            cursor.close();
+        }
+        return writer.writeTo(getFile(context));
+    }
+
+    /**
+     * @return the snapshot of the location, or null if there is none for it.
+     */
+    public static TodaySnapshot read(Context context, String locationSetting) {
+        return read(getFile(context), locationSetting);
+    }
+
+    static TodaySnapshot read(File file, String locationSetting) {
+        if (!file.exists()) {
+            return null;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            if (channel.size() != FILE_SIZE) {
+                return null;
+            }
+            // The mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_SIZE);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            int dayCount = buffer.getInt(OFFSET_DAY_COUNT);
+            if (dayCount < 0 || dayCount > MAX_DAYS
+                    || !fitsSlot(buffer, OFFSET_LOCATION, LOCATION_BYTES)
+                    || !locationSetting.equals(getString(buffer, OFFSET_LOCATION))) {
+                return null;
+            }
+            // A length past its slot is a corrupt file, checked once here so the getters can
+            // trust every string
+            for (int day = 0; day < dayCount; day++) {
+                if (!fitsSlot(buffer, HEADER_SIZE + day * DAY_SIZE + OFFSET_DESCRIPTION,
+                        DESCRIPTION_BYTES)) {
+                    return null;
+                }
+            }
+            return new TodaySnapshot(buffer, dayCount);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error reading " + file, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing was written
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the time the sync published the snapshot at, in milliseconds.
+     */
+    public long getPublishedAt() {
+        return mBuffer.getLong(OFFSET_PUBLISHED);
+    }
+
+    public int getDayCount() {
+        return mDayCount;
+    }
+
+    /**
+     * @return the index of the day with this date, normalized, or -1 if there is none.
+     */
+    public int findDay(long date) {
+        for (int i = 0; i < mDayCount; i++) {
+            if (getDate(i) == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first day on or after this date, normalized, or -1 if there is
+     * none, the day a query of the forecast from that date returns first.
+     */
+    public int findFirstDayFrom(long date) {
+        for (int i = 0; i < mDayCount; i++) {
+            if (getDate(i) >= date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getDate(int day) {
+        return mBuffer.getLong(dayOffset(day));
+    }
+
+    public int getWeatherId(int day) {
+        return mBuffer.getInt(dayOffset(day) + OFFSET_WEATHER_ID);
+    }
+
+    public double getHigh(int day) {
+        return mBuffer.getDouble(dayOffset(day) + OFFSET_HIGH);
+    }
+
+    public double getLow(int day) {
+        return mBuffer.getDouble(dayOffset(day) + OFFSET_LOW);
+    }
+
+    public String getDescription(int day) {
+        return getString(mBuffer, dayOffset(day) + OFFSET_DESCRIPTION);
+    }
+
+    private int dayOffset(int day) {
+        if (day < 0 || day >= mDayCount) {
+            throw new IndexOutOfBoundsException("Day " + day + " of " + mDayCount);
+        }
+        return HEADER_SIZE + day * DAY_SIZE;
+    }
+
+    private static boolean fitsSlot(ByteBuffer buffer, int offset, int maxBytes) {
+        int length = buffer.getShort(offset);
+        return length >= 0 && length <= maxBytes;
+    }
+
+    private static String getString(ByteBuffer buffer, int offset) {
+        int length = buffer.getShort(offset);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Lays out a snapshot in memory, then replaces the file with it.
+     */
+    public static class Writer {
+
+        private final ByteBuffer mBuffer = ByteBuffer.allocate(FILE_SIZE);
+        private int mDayCount;
+        // A location or description too long for its slot, the snapshot can't be written
+        private boolean mFits;
+
+        public Writer(String locationSetting, long publishedAt) {
+            mBuffer.putInt(0, MAGIC);
+            mBuffer.putInt(4, VERSION);
+            mBuffer.putLong(OFFSET_PUBLISHED, publishedAt);
+            mFits = putString(OFFSET_LOCATION, locationSetting, LOCATION_BYTES);
+        }
+
+        /**
+         * Adds a day after the ones added so far, which must come before it.
+         */
+        public void add(long date, int weatherId, String description, double high, double low) {
+            if (mDayCount == MAX_DAYS) {
+                throw new IllegalStateException("A snapshot holds " + MAX_DAYS + " days");
+            }
+            int offset = HEADER_SIZE + mDayCount * DAY_SIZE;
+            mBuffer.putLong(offset, date);
+            mBuffer.putInt(offset + OFFSET_WEATHER_ID, weatherId);
+            mBuffer.putDouble(offset + OFFSET_HIGH, high);
+            mBuffer.putDouble(offset + OFFSET_LOW, low);
+            mFits &= putString(offset + OFFSET_DESCRIPTION, description, DESCRIPTION_BYTES);
+            mDayCount++;
+        }
+
+        public int getDayCount() {
+            return mDayCount;
+        }
+
+        /**
+         * Replaces the file with the snapshot, or removes it if the snapshot can't be written,
+         * so readers never find an outdated one.
+         *
+         * @return true if the snapshot was written.
+         */
+        public boolean writeTo(File file) {
+            mBuffer.putInt(OFFSET_DAY_COUNT, mDayCount);
+            if (!mFits) {
+                file.delete();
+                return false;
+            }
+            File temporary = new File(file.getPath() + ".tmp");
+            FileOutputStream out = null;
+            try {
+                out = new FileOutputStream(temporary);
+                FileChannel channel = out.getChannel();
+                mBuffer.rewind();
+                while (mBuffer.hasRemaining()) {
+                    channel.write(mBuffer);
+                }
+                // On disk before the rename makes it the snapshot
+                out.getFD().sync();
+                out.close();
+                out = null;
+                if (temporary.renameTo(file)) {
+                    return true;
+                }
+                Log.w(LOG_TAG, "Error renaming " + temporary + " to " + file);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Error writing " + temporary, e);
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // The temporary file is removed below
+                    }
+                }
+            }
+            temporary.delete();
+            file.delete();
+            return false;
+        }
+
+        private boolean putString(int offset, String value, int maxBytes) {
+            byte[] bytes = value.getBytes(UTF_8);
+            if (bytes.length > maxBytes) {
+                return false;
+            }
+            mBuffer.putShort(offset, (short) bytes.length);
+            for (int i = 0; i < bytes.length; i++) {
+                mBuffer.put(offset + 2 + i, bytes[i]);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The days of a forecast for one location, held in one primitive array per column instead of a
+ * ContentValues per day.  The sync adapter fills it while parsing and the provider binds it
+ * straight into its statements, so a sync doesn't box every value into a map only to unbox it
+ * again.
+ *
+ * Short descriptions come from a handful of words, they are interned so every batch shares the
+ * same strings.
+ */
+public class WeatherBatch {
+
+    // OWM only has a few dozen descriptions, this leaves room for other sources
+    private static final int MAX_INTERNED = 256;
+    private static final Map<String, String> sDescriptions = new HashMap<String, String>();
+
+    private final long mLocationId;
+    private int mSize;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private String[] mDescriptions;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    public WeatherBatch(long locationId, int capacity) {
+        mLocationId = locationId;
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mDescriptions = new String[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    /**
+     * Adds a day, growing the arrays if the batch is full.
+     */
+    public void add(long date, int weatherId, String description, double minTemp,
+                    double maxTemp, double humidity, double pressure, double windSpeed,
+                    double degrees) {
+        if (mSize == mDates.length) {
+            grow();
+        }
+        mDates[mSize] = date;
+        mWeatherIds[mSize] = weatherId;
+        mDescriptions[mSize] = intern(description);
+        mMinTemps[mSize] = minTemp;
+        mMaxTemps[mSize] = maxTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getLocationId() {
+        return mLocationId;
+    }
+
+    public long getDate(int i) {
+        return mDates[i];
+    }
+
+    void setDate(int i, long date) {
+        mDates[i] = date;
+    }
+
+    /**
+     * Binds day i in the order of the weather columns the provider compares: location, date,
+     * weather id, description, min, max, humidity, pressure, wind speed and direction.
+     */
+    void bind(SQLiteStatement statement, int i) {
+        statement.bindLong(1, mLocationId);
+        statement.bindLong(2, mDates[i]);
+        statement.bindLong(3, mWeatherIds[i]);
+        statement.bindString(4, mDescriptions[i]);
+        statement.bindDouble(5, mMinTemps[i]);
+        statement.bindDouble(6, mMaxTemps[i]);
+        statement.bindDouble(7, mHumidities[i]);
+        statement.bindDouble(8, mPressures[i]);
+        statement.bindDouble(9, mWindSpeeds[i]);
+        statement.bindDouble(10, mDegrees[i]);
+    }
+
+    /**
+     * The rows for {@link ContentResolver#bulkInsert}, when the provider runs in another process.
+     */
+    public ContentValues[] toContentValues() {
+        ContentValues[] values = new ContentValues[mSize];
+        for (int i = 0; i < mSize; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, mDates[i]);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, mHumidities[i]);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, mPressures[i]);
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[i]);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, mDegrees[i]);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[i]);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[i]);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, mDescriptions[i]);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[i]);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    /**
+     * Inserts the batch, handing it to the provider directly when it runs in this process.
+     *
+     * @return the number of days that were added or changed.
+     */
+    public int insert(ContentResolver resolver) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            ContentProviderClient client =
+                    resolver.acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+            if (client != null) {
+                try {
+                    ContentProvider provider = getLocalProvider(client);
+                    if (provider instanceof WeatherProvider) {
+                        return ((WeatherProvider) provider).bulkInsertWeather(this);
+                    }
+                } finally {
+                    client.release();
+                }
+            }
+        }
+        return resolver.bulkInsert(WeatherEntry.CONTENT_URI, toContentValues());
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static ContentProvider getLocalProvider(ContentProviderClient client) {
+        return client.getLocalContentProvider();
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, mDates.length * 2);
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mDescriptions = Arrays.copyOf(mDescriptions, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    static String intern(String description) {
+        synchronized (sDescriptions) {
+            String interned = sDescriptions.get(description);
+            if (interned != null) {
+                return interned;
+            }
+            if (sDescriptions.size() < MAX_INTERNED) {
+                sDescriptions.put(description, description);
+            }
+            return description;
+        }
+    }
+}
@@ -19,7 +19,11 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import com.example.android.sunshine.app.core.ContentPaths;
+import com.example.android.sunshine.app.core.DayMath;
+
+import java.util.TimeZone;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +47,59 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_HOURLY = "hourly";
+    public static final String PATH_CURRENT = "current";
+    public static final String PATH_HISTORY = "history";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_CHANGES = "changes";
+    public static final String PATH_DEBUG = "debug";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        // normalize the start date to the beginning of the (local) day
+        return DayMath.normalizeDate(startDate, TimeZone.getDefault());
+    }
+
+    // Query parameters of keyset paged URIs.  A page holds at most 'limit' rows whose key (the
+    // date of a day, the time of an hourly entry, the start of a history period) comes strictly
+    // after 'after', in ascending order of the key.  The last key of a page is the 'after' of the
+    // next one, so every page is a seek on the index, however deep it is.
+    public static final String PARAM_AFTER = "after";
+    public static final String PARAM_LIMIT = "limit";
+
+    /**
+     * @return the page of a weather/, hourly/ or history/ location URI that starts after the
+     * given key.  The URI must not be paged already.
+     */
+    public static Uri buildPageUri(Uri uri, long after, int limit) {
+        return uri.buildUpon()
+                .appendQueryParameter(PARAM_AFTER, Long.toString(after))
+                .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+    }
+
+    /**
+     * @return the first page of a location URI, the rows the URI would return without paging.
+     */
+    public static Uri buildFirstPageUri(Uri uri, int limit) {
+        return uri.buildUpon()
+                .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+    }
+
+    public static boolean isPagedUri(Uri uri) {
+        return uri.getQueryParameter(PARAM_LIMIT) != null;
+    }
+
+    public static long getAfterFromUri(Uri uri) {
+        String afterString = uri.getQueryParameter(PARAM_AFTER);
+        if (null != afterString && afterString.length() > 0)
+            return Long.parseLong(afterString);
+        else
+            return Long.MIN_VALUE;
+    }
+
+    public static int getLimitFromUri(Uri uri) {
+        return Integer.parseInt(uri.getQueryParameter(PARAM_LIMIT));
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -81,9 +129,67 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // The id of the city on openweathermap, e.g. 5375480 for Mountain View.  Null until a
+        // sync of the location returns it; locations that have one are refreshed together, by
+        // id, rather than one query each.
+        public static final String COLUMN_CITY_ID = "city_id";
+
+        // The _id of the location whose rows this one shares, when both settings name the same
+        // place, e.g. "94043" and "Mountain View, US".  Null for the first setting of a place:
+        // its forecast, hourly, history and stats rows are stored under its own _id, and found
+        // through any of its settings.
+        public static final String COLUMN_CANONICAL_ID = "canonical_id";
+        // The coordinates the server returns for two settings this close are one place
+        public static final double SAME_PLACE_DISTANCE_KM = 1;
+
+        // The cell of the coordinates in a GeoGrid, set by the provider whenever they are, for
+        // the nearest locations to be found without reading them all.
+        public static final String COLUMN_GRID_CELL = "grid_cell";
+
+        // The nearest locations to a point, closest first, with their distance.  Searched
+        // within 'max_km' of the point, the closest 'limit' ones.
+        public static final String PATH_NEAREST = "nearest";
+        public static final String PARAM_LATITUDE = "lat";
+        public static final String PARAM_LONGITUDE = "lon";
+        public static final String PARAM_MAX_DISTANCE = "max_km";
+        // Only in the rows of the nearest locations: the distance from the point in kilometers
+        public static final String COLUMN_DISTANCE = "distance";
+
+        public static final double DEFAULT_MAX_DISTANCE_KM = 50;
+        public static final int DEFAULT_NEAREST_LIMIT = 10;
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        public static Uri buildNearestUri(double latitude, double longitude, double maxDistanceKm,
+                                          int limit) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAREST)
+                    .appendQueryParameter(PARAM_LATITUDE, Double.toString(latitude))
+                    .appendQueryParameter(PARAM_LONGITUDE, Double.toString(longitude))
+                    .appendQueryParameter(PARAM_MAX_DISTANCE, Double.toString(maxDistanceKm))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        public static double getLatitudeFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_LATITUDE));
+        }
+
+        public static double getLongitudeFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_LONGITUDE));
+        }
+
+        public static double getMaxDistanceFromUri(Uri uri) {
+            String distanceString = uri.getQueryParameter(PARAM_MAX_DISTANCE);
+            if (null != distanceString && distanceString.length() > 0)
+                return Double.parseDouble(distanceString);
+            else
+                return DEFAULT_MAX_DISTANCE_KM;
+        }
+
+        public static int getNearestLimitFromUri(Uri uri) {
+            return isPagedUri(uri) ? getLimitFromUri(uri) : DEFAULT_NEAREST_LIMIT;
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -91,6 +197,8 @@ public class WeatherContract {
 
         public static final Uri CONTENT_URI =
                 BASE_CONTENT_URI.buildUpon().appendPath(PATH_WEATHER).build();
+        // The location URIs are built on it as strings, see ContentPaths
+        private static final String CONTENT_URI_STRING = CONTENT_URI.toString();
 
         public static final String CONTENT_TYPE =
                 ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_WEATHER;
@@ -126,15 +234,30 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameter of the archive URI
+        public static final String PARAM_ARCHIVE = "archive";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
+        /**
+         * @return a URI that moves the weather rows it deletes to the history instead of
+         * dropping them.
+         */
+        public static Uri buildArchiveUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(PARAM_ARCHIVE, "1").build();
+        }
+
+        public static boolean isArchiveUri(Uri uri) {
+            return uri.getQueryParameter(PARAM_ARCHIVE) != null;
+        }
+
         /*
             Student: This is the buildWeatherLocation function you filled in.
          */
         public static Uri buildWeatherLocation(String locationSetting) {
-            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+            return Uri.parse(ContentPaths.appendSegment(CONTENT_URI_STRING, locationSetting));
         }
 
         public static Uri buildWeatherLocationWithStartDate(
@@ -144,17 +267,26 @@ public class WeatherContract {
                     .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
         }
 
+        /**
+         * @return the page of the forecast of a location that holds up to 'limit' days after
+         * 'afterDate', by ascending date.
+         */
+        public static Uri buildWeatherLocationPage(String locationSetting, long afterDate,
+                                                   int limit) {
+            return buildPageUri(buildWeatherLocation(locationSetting), afterDate, limit);
+        }
+
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
-            return CONTENT_URI.buildUpon().appendPath(locationSetting)
-                    .appendPath(Long.toString(normalizeDate(date))).build();
+            return Uri.parse(ContentPaths.appendSegments(CONTENT_URI_STRING, locationSetting,
+                    normalizeDate(date)));
         }
 
         public static String getLocationSettingFromUri(Uri uri) {
-            return uri.getPathSegments().get(1);
+            return ContentPaths.getSegment(uri.getEncodedPath(), 1);
         }
 
         public static long getDateFromUri(Uri uri) {
-            return Long.parseLong(uri.getPathSegments().get(2));
+            return ContentPaths.getLongSegment(uri.getEncodedPath(), 2);
         }
 
         public static long getStartDateFromUri(Uri uri) {
@@ -165,4 +297,455 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /* Inner class that defines the table contents of the hourly table, the 3 hour forecast */
+    public static final class HourlyEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HOURLY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HOURLY;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HOURLY;
+
+        public static final String TABLE_NAME = "hourly";
+
+        // How long hourly rows are kept once they are in the past, in milliseconds
+        public static final long RETENTION = 1000 * 60 * 60 * 24;
+
+        // Query parameters bounding the time range, start inclusive and end exclusive
+        public static final String PARAM_START_TIME = "start";
+        public static final String PARAM_END_TIME = "end";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Time of the forecast, stored as long in milliseconds since the epoch.  Not normalized.
+        public static final String COLUMN_TIME = "time";
+        // Weather id as returned by API, to identify the icon to be used
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+        // Short description of the weather, as provided by API.
+        public static final String COLUMN_SHORT_DESC = "short_desc";
+        // Temperature at that time (stored as a float)
+        public static final String COLUMN_TEMP = "temp";
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_WIND_SPEED = "wind";
+        public static final String COLUMN_DEGREES = "degrees";
+
+        public static Uri buildHourlyUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id);
+        }
+
+        public static Uri buildHourlyLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        /**
+         * @return the URI of the hourly forecast of a location between two times, start
+         * inclusive and end exclusive.
+         */
+        public static Uri buildHourlyLocationWithRange(
+                String locationSetting, long startTime, long endTime) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_START_TIME, Long.toString(startTime))
+                    .appendQueryParameter(PARAM_END_TIME, Long.toString(endTime)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartTimeFromUri(Uri uri) {
+            String timeString = uri.getQueryParameter(PARAM_START_TIME);
+            if (null != timeString && timeString.length() > 0)
+                return Long.parseLong(timeString);
+            else
+                return 0;
+        }
+
+        public static long getEndTimeFromUri(Uri uri) {
+            String timeString = uri.getQueryParameter(PARAM_END_TIME);
+            if (null != timeString && timeString.length() > 0)
+                return Long.parseLong(timeString);
+            else
+                return Long.MAX_VALUE;
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the current table, the latest observed
+        weather of each saved place.  Observations are not forecasts, so they are kept out of the
+        hourly table.
+     */
+    public static final class CurrentEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_CURRENT).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CURRENT;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CURRENT;
+
+        public static final String TABLE_NAME = "current";
+
+        // Column with the foreign key into the location table.  One row per location, a newer
+        // observation replaces the older one.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Time of the measurement, stored as long in milliseconds since the epoch
+        public static final String COLUMN_TIME = "time";
+        // Weather id as returned by API, to identify the icon to be used
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+        // Short description of the weather, as provided by API.
+        public static final String COLUMN_SHORT_DESC = "short_desc";
+        // Temperature at that time (stored as a float)
+        public static final String COLUMN_TEMP = "temp";
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_WIND_SPEED = "wind";
+        public static final String COLUMN_DEGREES = "degrees";
+
+        public static Uri buildCurrentLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+    }
+
+    /*
+        Inner class that defines the table contents of the history table.  Past days are archived
+        here, then downsampled into weeks and months as they get older, so the history of a
+        location stays small and never slows down the forecast in the weather table.
+     */
+    public static final class HistoryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HISTORY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        public static final String TABLE_NAME = "history";
+
+        // Granularities of the history rows
+        public static final int PERIOD_DAY = 0;
+        public static final int PERIOD_WEEK = 1;
+        public static final int PERIOD_MONTH = 2;
+
+        // Days are folded into weeks after this long, weeks into months after a year
+        public static final long DAYS_RETENTION = 8 * 7 * 24 * 60 * 60 * 1000L;
+        public static final long WEEKS_RETENTION = 365 * 24 * 60 * 60 * 1000L;
+
+        // Query parameters bounding the time range, start inclusive and end exclusive
+        public static final String PARAM_START_TIME = "start";
+        public static final String PARAM_END_TIME = "end";
+        // Query parameter of the compaction URI
+        public static final String PARAM_COMPACT = "compact";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // One of the PERIOD constants
+        public static final String COLUMN_PERIOD = "period";
+        // Start of the period, stored as long in milliseconds since the epoch.  Days and weeks
+        // start at midnight UTC, weeks on Mondays, months on the first.
+        public static final String COLUMN_START = "start";
+        // Lowest and highest temperature, and mean of the daily means, over the period
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        public static final String COLUMN_MEAN_TEMP = "mean";
+        // Mean humidity over the days of the period that have one.  Null if none does: days
+        // archived before the history kept the humidity don't.
+        public static final String COLUMN_MEAN_HUMIDITY = "humidity";
+        // Number of days folded into the row, to weigh the means when downsampling again
+        public static final String COLUMN_DAYS = "days";
+
+        public static Uri buildHistoryLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildHistoryLocationWithRange(
+                String locationSetting, long startTime, long endTime) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_START_TIME, Long.toString(startTime))
+                    .appendQueryParameter(PARAM_END_TIME, Long.toString(endTime)).build();
+        }
+
+        /**
+         * @return a URI that downsamples the history when deleted, as of the given time.
+         */
+        public static Uri buildCompactionUri(long now) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_COMPACT, Long.toString(now)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartTimeFromUri(Uri uri) {
+            String timeString = uri.getQueryParameter(PARAM_START_TIME);
+            if (null != timeString && timeString.length() > 0)
+                return Long.parseLong(timeString);
+            else
+                return 0;
+        }
+
+        public static long getEndTimeFromUri(Uri uri) {
+            String timeString = uri.getQueryParameter(PARAM_END_TIME);
+            if (null != timeString && timeString.length() > 0)
+                return Long.parseLong(timeString);
+            else
+                return Long.MAX_VALUE;
+        }
+
+        /**
+         * @return the time of the compaction URI, or 0 if the URI isn't one.
+         */
+        public static long getCompactionTimeFromUri(Uri uri) {
+            String timeString = uri.getQueryParameter(PARAM_COMPACT);
+            if (null != timeString && timeString.length() > 0)
+                return Long.parseLong(timeString);
+            else
+                return 0;
+        }
+    }
+
+    /*
+        Inner class that defines the statistics of a location over a range of days: the forecast
+        and the history together.  The stats table holds them per location and month, kept up to
+        date as weather is inserted, so a range is answered from a few summary rows plus the days
+        of the partial months at its ends.
+     */
+    public static final class StatsEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_STATS).build();
+
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        public static final String TABLE_NAME = "stats";
+
+        // Query parameters bounding the range, start inclusive and end exclusive
+        public static final String PARAM_START_TIME = "start";
+        public static final String PARAM_END_TIME = "end";
+
+        // Columns of the stats table only.  The location, and the start of the month (UTC).
+        public static final String COLUMN_LOC_KEY = "location_id";
+        public static final String COLUMN_MONTH = "month";
+        // Number of days of the month with a humidity, the weight of its mean humidity
+        public static final String COLUMN_HUMIDITY_DAYS = "humidity_days";
+
+        // Columns of both the stats table and the range queries
+        // Number of days with data in the range
+        public static final String COLUMN_DAYS = "days";
+        // Lowest and highest temperature of the range
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        // Date of the highest temperature.  Days that were downsampled in the history only know
+        // the start of their week or month.
+        public static final String COLUMN_WARMEST_DATE = "warmest_date";
+        // Means of the daily mean temperature and of the humidity, over the days with data.  The
+        // humidity is null if none of them has one.
+        public static final String COLUMN_MEAN_TEMP = "mean";
+        public static final String COLUMN_MEAN_HUMIDITY = "humidity";
+
+        /**
+         * @return the URI notified when the statistics of a location change.
+         */
+        public static Uri buildStatsLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        /**
+         * @return the URI of the statistics of a location between two dates, start inclusive and
+         * end exclusive.  The query returns a single row, or none if there is no data.
+         */
+        public static Uri buildStatsLocationWithRange(
+                String locationSetting, long startDate, long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_START_TIME, Long.toString(startDate))
+                    .appendQueryParameter(PARAM_END_TIME, Long.toString(endDate)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_START_TIME);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_END_TIME);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return Long.MAX_VALUE;
+        }
+    }
+
+    /*
+        Inner class that defines the change log of the weather table: an entry per day of a
+        location that was inserted, updated or deleted, numbered in the order of the writes.  A
+        consumer keeps the sequence number of the last entry it applied and asks for the entries
+        after it, then reloads only those days.
+
+        Only the latest entry of a day is kept, and only the newest MAX_ENTRIES entries.  When
+        older ones are dropped, or a write can't be pinned down to days, an OP_RESET entry takes
+        their place: a consumer that reads one reloads everything.
+     */
+    public static final class ChangeEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_CHANGES).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CHANGES;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CHANGES;
+
+        public static final String TABLE_NAME = "change_log";
+
+        // Entries past this many are dropped, the oldest first
+        public static final int MAX_ENTRIES = 1024;
+
+        // Query parameter restricting the entries to a location, its resets included
+        public static final String PARAM_LOCATION = "location";
+
+        // The _ID of an entry is its sequence number, it only grows.
+        // The location and the day, null for OP_RESET
+        public static final String COLUMN_LOC_KEY = "location_id";
+        public static final String COLUMN_DATE = "date";
+        // One of the OP_ values
+        public static final String COLUMN_OP = "op";
+        // Of the queries only, the location setting of the entry's location
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        // Everything may have changed, reload it all
+        public static final int OP_RESET = 0;
+        // The day was written, as a new row or replacing the one it had
+        public static final int OP_INSERT = 1;
+        public static final int OP_UPDATE = 2;
+        // The day is gone, deleted or moved to the history
+        public static final int OP_DELETE = 3;
+
+        /**
+         * @return the URI of the latest sequence number, a single row with its _ID, 0 if
+         * nothing was ever logged.  Read it before loading everything, then follow the entries
+         * after it.
+         */
+        public static Uri buildLatestUri() {
+            return CONTENT_URI;
+        }
+
+        /**
+         * @return the URI of the entries after the sequence number, by ascending sequence.
+         */
+        public static Uri buildChangesSince(long sequence) {
+            return ContentUris.withAppendedId(CONTENT_URI, sequence);
+        }
+
+        /**
+         * @return the URI of the entries of a location after the sequence number, along with
+         * the resets, which concern every location.
+         */
+        public static Uri buildChangesSince(String locationSetting, long sequence) {
+            return buildChangesSince(sequence).buildUpon()
+                    .appendQueryParameter(PARAM_LOCATION, locationSetting).build();
+        }
+
+        public static long getSequenceFromUri(Uri uri) {
+            return ContentUris.parseId(uri);
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getQueryParameter(PARAM_LOCATION);
+        }
+    }
+
+    /*
+        Inner class that defines the stages of recent syncs, as recorded by SyncTrace.  Nothing is
+        stored, the query reads the trace's ring buffer.  Only debug builds answer it.
+     */
+    public static final class SyncTraceEntry {
+
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_DEBUG).appendPath("sync_trace").build();
+
+        public static final String CONTENT_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_DEBUG + "/sync_trace";
+
+        // The stages of one sync share its id
+        public static final String COLUMN_SYNC_ID = "sync_id";
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+        public static final String COLUMN_STAGE = "stage";
+        // Wall clock time the stage started at, in milliseconds
+        public static final String COLUMN_START = "start";
+        public static final String COLUMN_DURATION_MICROS = "duration_us";
+        public static final String COLUMN_BYTES = "bytes";
+        public static final String COLUMN_ROWS = "rows";
+    }
+
+    /*
+        The provider's metrics, read through ContentResolver.call() on CONTENT_URI of any entry.
+        Only debug builds answer the calls.
+     */
+    public static final class Metrics {
+
+        // Returns a Bundle per operation and URI match, under "operation/match", along with the
+        // bucket bounds and the calls per caller
+        public static final String METHOD_GET_METRICS = "get_metrics";
+        // Returns the slow log under KEY_SLOW_QUERIES, oldest first
+        public static final String METHOD_GET_SLOW_QUERIES = "get_slow_queries";
+        public static final String METHOD_RESET_METRICS = "reset_metrics";
+        // Returns the hits, misses and latencies of the result cache since the last reset
+        public static final String METHOD_GET_CACHE_STATS = "get_cache_stats";
+        // Empties the result cache, so the next queries go to the database
+        public static final String METHOD_CLEAR_CACHE = "clear_cache";
+
+        // Keys of an operation's Bundle
+        public static final String KEY_COUNT = "count";
+        public static final String KEY_ROWS = "rows";
+        public static final String KEY_TOTAL_MICROS = "total_us";
+        public static final String KEY_MAX_MICROS = "max_us";
+        // Operations per latency bucket, the last bucket is open ended
+        public static final String KEY_HISTOGRAM = "histogram";
+
+        public static final String KEY_BUCKET_BOUNDS_MILLIS = "bucket_bounds_ms";
+        // Calls per calling package
+        public static final String KEY_CALLERS = "callers";
+
+        public static final String KEY_SLOW_QUERIES = "slow_queries";
+        // Keys of a slow query's Bundle, along with KEY_ROWS
+        public static final String KEY_OPERATION = "operation";
+        public static final String KEY_URI = "uri";
+        public static final String KEY_SELECTION = "selection";
+        public static final String KEY_SELECTION_ARGS = "selection_args";
+        // The SQL of a query and its EXPLAIN QUERY PLAN, null for writes
+        public static final String KEY_SQL = "sql";
+        public static final String KEY_PLAN = "plan";
+        public static final String KEY_DURATION_MICROS = "duration_us";
+        public static final String KEY_CALLER_UID = "caller_uid";
+        public static final String KEY_TIME = "time";
+
+        // Keys of the result cache's Bundle
+        public static final String KEY_HITS = "hits";
+        public static final String KEY_MISSES = "misses";
+        public static final String KEY_HIT_TOTAL_MICROS = "hit_total_us";
+        public static final String KEY_HIT_MAX_MICROS = "hit_max_us";
+        public static final String KEY_MISS_TOTAL_MICROS = "miss_total_us";
+        public static final String KEY_MISS_MAX_MICROS = "miss_max_us";
+        // Entries pushed out by newer ones, and entries dropped by writes
+        public static final String KEY_EVICTIONS = "evictions";
+        public static final String KEY_INVALIDATIONS = "invalidations";
+        public static final String KEY_ENTRIES = "entries";
+    }
 }
@@ -19,7 +19,12 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.data.WeatherContract.ChangeEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.CurrentEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -28,12 +33,15 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 11;
+    // The first version holding data that is not a cache, the history
+    private static final int HISTORY_VERSION = 4;
 
     static final String DATABASE_NAME = "weather.db";
 
     public WeatherDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // In debug builds the factory lets the provider explain its slow queries
+        super(context, DATABASE_NAME, ProviderMetrics.CURSOR_FACTORY, DATABASE_VERSION);
     }
 
     @Override
@@ -45,7 +53,10 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_GRID_CELL + " INTEGER, " +
+                LocationEntry.COLUMN_CANONICAL_ID + " INTEGER, " +
+                LocationEntry.COLUMN_CITY_ID + " INTEGER " +
                 " );";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
@@ -79,20 +90,206 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
+        // The 3 hour forecast lives in its own table so the daily queries never scan it.
+        final String SQL_CREATE_HOURLY_TABLE = "CREATE TABLE " + HourlyEntry.TABLE_NAME + " (" +
+                HourlyEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+
+                HourlyEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_TIME + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                HourlyEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+                HourlyEntry.COLUMN_TEMP + " REAL NOT NULL, " +
+                HourlyEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                HourlyEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                HourlyEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                HourlyEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+
+                " FOREIGN KEY (" + HourlyEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // One entry per time per location.  The location comes first so the index
+                // behind this constraint also serves the range queries by (location, time).
+                " UNIQUE (" + HourlyEntry.COLUMN_LOC_KEY + ", " +
+                HourlyEntry.COLUMN_TIME + ") ON CONFLICT REPLACE);";
+
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        createLocationGridIndex(sqLiteDatabase);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_HOURLY_TABLE);
+        createCurrentTable(sqLiteDatabase);
+        createHistoryTable(sqLiteDatabase);
+        createStatsTable(sqLiteDatabase);
+        createChangeLogTable(sqLiteDatabase);
+    }
+
+    // The nearest locations to a point are a few ranges of grid cells
+    private static void createLocationGridIndex(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE INDEX " + LocationEntry.TABLE_NAME + "_grid ON " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_GRID_CELL + ");");
+    }
+
+    // The current weather holds one observation per location, the latest one replaces it
+    private static void createCurrentTable(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE TABLE " + CurrentEntry.TABLE_NAME + " (" +
+                CurrentEntry._ID + " INTEGER PRIMARY KEY," +
+
+                CurrentEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                CurrentEntry.COLUMN_TIME + " INTEGER NOT NULL, " +
+                CurrentEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                CurrentEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+                CurrentEntry.COLUMN_TEMP + " REAL NOT NULL, " +
+                CurrentEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                CurrentEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                CurrentEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                CurrentEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+
+                " FOREIGN KEY (" + CurrentEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                " UNIQUE (" + CurrentEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);");
+    }
+
+    // The history holds one row per location and period.  The unique constraint keeps the
+    // rows of a location together, ordered by granularity and time, so a location's history
+    // is read as one contiguous range of the index.
+    private static void createHistoryTable(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE TABLE " + HistoryEntry.TABLE_NAME + " (" +
+                HistoryEntry._ID + " INTEGER PRIMARY KEY," +
+
+                HistoryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_PERIOD + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_START + " INTEGER NOT NULL, " +
+
+                HistoryEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_MEAN_TEMP + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_MEAN_HUMIDITY + " REAL, " +
+                HistoryEntry.COLUMN_DAYS + " INTEGER NOT NULL, " +
+
+                " FOREIGN KEY (" + HistoryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                " UNIQUE (" + HistoryEntry.COLUMN_LOC_KEY + ", " +
+                HistoryEntry.COLUMN_PERIOD + ", " +
+                HistoryEntry.COLUMN_START + ") ON CONFLICT REPLACE);");
+    }
+
+    // One summary per location and month, kept up to date by WeatherProvider
+    private static void createStatsTable(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE TABLE " + StatsEntry.TABLE_NAME + " (" +
+                StatsEntry._ID + " INTEGER PRIMARY KEY," +
+
+                StatsEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_MONTH + " INTEGER NOT NULL, " +
+
+                StatsEntry.COLUMN_DAYS + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                StatsEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                StatsEntry.COLUMN_WARMEST_DATE + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_MEAN_TEMP + " REAL NOT NULL, " +
+                StatsEntry.COLUMN_MEAN_HUMIDITY + " REAL, " +
+                StatsEntry.COLUMN_HUMIDITY_DAYS + " INTEGER NOT NULL, " +
+
+                " FOREIGN KEY (" + StatsEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                " UNIQUE (" + StatsEntry.COLUMN_LOC_KEY + ", " +
+                StatsEntry.COLUMN_MONTH + ") ON CONFLICT REPLACE);");
+    }
+
+    // The entries of the weather table's changes, numbered by the AUTOINCREMENT id.  Entries are
+    // replaced per day, so they are looked up by (location, day).
+    private static void createChangeLogTable(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE TABLE " + ChangeEntry.TABLE_NAME + " (" +
+                ChangeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+
+                ChangeEntry.COLUMN_LOC_KEY + " INTEGER, " +
+                ChangeEntry.COLUMN_DATE + " INTEGER, " +
+                ChangeEntry.COLUMN_OP + " INTEGER NOT NULL);");
+        sqLiteDatabase.execSQL("CREATE INDEX " + ChangeEntry.TABLE_NAME + "_day ON " +
+                ChangeEntry.TABLE_NAME + " (" + ChangeEntry.COLUMN_LOC_KEY + ", " +
+                ChangeEntry.COLUMN_DATE + ");");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
+        // Before HISTORY_VERSION the database was only a cache for online data, so those
+        // versions are dropped and created again, the next sync downloads it all.  From then on
+        // it holds the history, which can't be downloaded again: every later version migrates
+        // in place, one step per version below.
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < HISTORY_VERSION) {
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HourlyEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + CurrentEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HistoryEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + StatsEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ChangeEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        if (oldVersion < 5) {
+            // The humidity of past days is lost, it stays null for them.  The summaries are
+            // created in version 10.
+            sqLiteDatabase.execSQL("ALTER TABLE " + HistoryEntry.TABLE_NAME + " ADD COLUMN " +
+                    HistoryEntry.COLUMN_MEAN_HUMIDITY + " REAL");
+        }
+        if (oldVersion < 6) {
+            // Followers start from an empty log, the latest sequence number is 0 for them
+            createChangeLogTable(sqLiteDatabase);
+        }
+        if (oldVersion < 7) {
+            sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                    LocationEntry.COLUMN_GRID_CELL + " INTEGER");
+            createLocationGridIndex(sqLiteDatabase);
+            NearestLocations.rebuild(sqLiteDatabase);
+        }
+        if (oldVersion < 8) {
+            // Every location is a place of its own until a sync finds it is another's alias
+            sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                    LocationEntry.COLUMN_CANONICAL_ID + " INTEGER");
+        }
+        if (oldVersion < 9) {
+            // The next sync of each location fills in its city id
+            sqLiteDatabase.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                    LocationEntry.COLUMN_CITY_ID + " INTEGER");
+        }
+        if (oldVersion < 10) {
+            // Versions 5 to 9 stored a lost humidity as 0, which counted as a dry day.  A day's
+            // mean humidity is never 0, so those become null, in a copy of the table as SQLite
+            // can't drop a NOT NULL constraint.
+            String oldHistory = HistoryEntry.TABLE_NAME + "_v9";
+            sqLiteDatabase.execSQL("ALTER TABLE " + HistoryEntry.TABLE_NAME + " RENAME TO " +
+                    oldHistory);
+            createHistoryTable(sqLiteDatabase);
+            String keptColumns = HistoryEntry._ID + ", " +
+                    HistoryEntry.COLUMN_LOC_KEY + ", " +
+                    HistoryEntry.COLUMN_PERIOD + ", " +
+                    HistoryEntry.COLUMN_START + ", " +
+                    HistoryEntry.COLUMN_MIN_TEMP + ", " +
+                    HistoryEntry.COLUMN_MAX_TEMP + ", " +
+                    HistoryEntry.COLUMN_MEAN_TEMP + ", " +
+                    HistoryEntry.COLUMN_DAYS;
+            sqLiteDatabase.execSQL("INSERT INTO " + HistoryEntry.TABLE_NAME + " (" +
+                    keptColumns + ", " + HistoryEntry.COLUMN_MEAN_HUMIDITY + ") SELECT " +
+                    keptColumns + ", NULLIF(" + HistoryEntry.COLUMN_MEAN_HUMIDITY + ", 0) FROM " +
+                    oldHistory);
+            sqLiteDatabase.execSQL("DROP TABLE " + oldHistory);
+
+            // The summaries now weigh the humidity by the days that have one.  They are derived
+            // data, computed again from the days.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + StatsEntry.TABLE_NAME);
+            createStatsTable(sqLiteDatabase);
+            WeatherStats.rebuild(sqLiteDatabase);
+        }
+        if (oldVersion < 11) {
+            // Earlier versions stored the current weather of the saved places in the hourly table.
+            // Those rows are in the past, the hourly cleanup drops them within a day.
+            createCurrentTable(sqLiteDatabase);
+        }
     }
 }
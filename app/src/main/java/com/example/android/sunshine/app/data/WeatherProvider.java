@@ -20,35 +20,124 @@ import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.sync.SyncTrace;
+
+import java.util.HashMap;
+
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private final ProviderMetrics mMetrics = new ProviderMetrics();
+    private final ResultCache mResultCache = new ResultCache();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int LOCATION_NEAREST = 301;
+    static final int HOURLY = 400;
+    static final int HOURLY_WITH_LOCATION = 401;
+    static final int CURRENT = 450;
+    static final int CURRENT_WITH_LOCATION = 451;
+    static final int HISTORY = 500;
+    static final int HISTORY_WITH_LOCATION = 501;
+    static final int STATS_WITH_LOCATION = 600;
+    static final int CHANGES = 700;
+    static final int CHANGES_SINCE = 701;
+    static final int SYNC_TRACE = 900;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sHourlyByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sCurrentByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sHistoryByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sChangesQueryBuilder;
+
+    //IFNULL(location.canonical_id, location._id)
+    //The rows of a location are stored under the _id of the first setting of its place, an
+    //alias finds them through its canonical_id
+    private static final String sCanonicalLocationId =
+            "IFNULL(" + WeatherContract.LocationEntry.TABLE_NAME + "." +
+                    WeatherContract.LocationEntry.COLUMN_CANONICAL_ID + ", " +
+                    WeatherContract.LocationEntry.TABLE_NAME + "." +
+                    WeatherContract.LocationEntry._ID + ")";
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
         
         //This is an inner join which looks like
-        //weather INNER JOIN location ON weather.location_id = location._id
+        //weather INNER JOIN location
+        //ON weather.location_id = IFNULL(location.canonical_id, location._id)
         sWeatherByLocationSettingQueryBuilder.setTables(
                 WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
                         WeatherContract.LocationEntry.TABLE_NAME +
                         " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                        " = " + sCanonicalLocationId);
+
+        //hourly INNER JOIN location ON hourly.location_id = IFNULL(...)
+        sHourlyByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sHourlyByLocationSettingQueryBuilder.setTables(
+                WeatherContract.HourlyEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.HourlyEntry.TABLE_NAME +
+                        "." + WeatherContract.HourlyEntry.COLUMN_LOC_KEY +
+                        " = " + sCanonicalLocationId);
+
+        //current INNER JOIN location ON current.location_id = IFNULL(...)
+        sCurrentByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sCurrentByLocationSettingQueryBuilder.setTables(
+                WeatherContract.CurrentEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.CurrentEntry.TABLE_NAME +
+                        "." + WeatherContract.CurrentEntry.COLUMN_LOC_KEY +
+                        " = " + sCanonicalLocationId);
+
+        //history INNER JOIN location ON history.location_id = IFNULL(...)
+        sHistoryByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sHistoryByLocationSettingQueryBuilder.setTables(
+                WeatherContract.HistoryEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.HistoryEntry.TABLE_NAME +
+                        "." + WeatherContract.HistoryEntry.COLUMN_LOC_KEY +
+                        " = " + sCanonicalLocationId);
+
+        //change_log LEFT JOIN location ON change_log.location_id = location._id
+        //Resets have no location, and entries may outlive theirs
+        sChangesQueryBuilder = new SQLiteQueryBuilder();
+        sChangesQueryBuilder.setTables(
+                WeatherContract.ChangeEntry.TABLE_NAME + " LEFT JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.ChangeEntry.TABLE_NAME +
+                        "." + WeatherContract.ChangeEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
                         "." + WeatherContract.LocationEntry._ID);
+        // Both tables have an _id and a location_id, the entry's are the ones returned
+        HashMap<String, String> changesProjection = new HashMap<String, String>();
+        for (String column : new String[]{WeatherContract.ChangeEntry._ID,
+                WeatherContract.ChangeEntry.COLUMN_LOC_KEY,
+                WeatherContract.ChangeEntry.COLUMN_DATE,
+                WeatherContract.ChangeEntry.COLUMN_OP}) {
+            changesProjection.put(column,
+                    WeatherContract.ChangeEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        changesProjection.put(WeatherContract.ChangeEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.LocationEntry.TABLE_NAME + "." +
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " AS " +
+                        WeatherContract.ChangeEntry.COLUMN_LOCATION_SETTING);
+        sChangesQueryBuilder.setProjectionMap(changesProjection);
     }
 
     //location.location_setting = ?
@@ -68,6 +157,177 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //location.location_setting = ? AND time >= ? AND time < ?
+    private static final String sLocationSettingWithTimeRangeSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.HourlyEntry.COLUMN_TIME + " >= ? AND " +
+                    WeatherContract.HourlyEntry.COLUMN_TIME + " < ? ";
+
+    private static final String sHourlyDefaultSortOrder =
+            WeatherContract.HourlyEntry.COLUMN_TIME + " ASC";
+
+    //location.location_setting = ? AND start >= ? AND start < ?
+    private static final String sLocationSettingWithStartRangeSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.HistoryEntry.COLUMN_START + " >= ? AND " +
+                    WeatherContract.HistoryEntry.COLUMN_START + " < ? ";
+
+    private static final String sHistoryDefaultSortOrder =
+            WeatherContract.HistoryEntry.COLUMN_START + " ASC";
+
+    //change_log._id > ?
+    private static final String sChangesSinceSelection =
+            WeatherContract.ChangeEntry.TABLE_NAME + "." + WeatherContract.ChangeEntry._ID + " > ?";
+
+    //change_log._id > ? AND (change_log.location_id =
+    //(SELECT IFNULL(canonical_id, _id) FROM location WHERE location_setting = ?) OR op = 0)
+    private static final String sChangesSinceWithLocationSelection =
+            sChangesSinceSelection + " AND (" + WeatherContract.ChangeEntry.TABLE_NAME + "." +
+                    WeatherContract.ChangeEntry.COLUMN_LOC_KEY + " = (SELECT IFNULL(" +
+                    WeatherContract.LocationEntry.COLUMN_CANONICAL_ID + ", " +
+                    WeatherContract.LocationEntry._ID + ") FROM " +
+                    WeatherContract.LocationEntry.TABLE_NAME + " WHERE " +
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?) OR " +
+                    WeatherContract.ChangeEntry.COLUMN_OP + " = " +
+                    WeatherContract.ChangeEntry.OP_RESET + ")";
+
+    //UPDATE location SET canonical_id = NULL
+    //WHERE canonical_id NOT IN (SELECT _id FROM location)
+    private static final String sReleaseAliasesStatement =
+            "UPDATE " + WeatherContract.LocationEntry.TABLE_NAME + " SET " +
+                    WeatherContract.LocationEntry.COLUMN_CANONICAL_ID + " = NULL WHERE " +
+                    WeatherContract.LocationEntry.COLUMN_CANONICAL_ID + " NOT IN (SELECT " +
+                    WeatherContract.LocationEntry._ID + " FROM " +
+                    WeatherContract.LocationEntry.TABLE_NAME + ")";
+
+    // Row ids of locations are reused, a new location mustn't inherit the weather of a deleted one
+    private static final String sDeleteOrphanedCurrentStatement =
+            "DELETE FROM " + WeatherContract.CurrentEntry.TABLE_NAME + " WHERE " +
+                    WeatherContract.CurrentEntry.COLUMN_LOC_KEY + " NOT IN (SELECT " +
+                    WeatherContract.LocationEntry._ID + " FROM " +
+                    WeatherContract.LocationEntry.TABLE_NAME + ")";
+
+    private static final String sChangesSortOrder =
+            WeatherContract.ChangeEntry.TABLE_NAME + "." + WeatherContract.ChangeEntry._ID + " ASC";
+
+    //INSERT INTO history (...) SELECT location_id, 0, date, min, max, (min + max) / 2, humidity,
+    //1 FROM weather WHERE ...
+    private static final String sArchiveWeatherStatement =
+            "INSERT INTO " + WeatherContract.HistoryEntry.TABLE_NAME + " (" +
+                    WeatherContract.HistoryEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherContract.HistoryEntry.COLUMN_PERIOD + ", " +
+                    WeatherContract.HistoryEntry.COLUMN_START + ", " +
+                    WeatherContract.HistoryEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.HistoryEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.HistoryEntry.COLUMN_MEAN_TEMP + ", " +
+                    WeatherContract.HistoryEntry.COLUMN_MEAN_HUMIDITY + ", " +
+                    WeatherContract.HistoryEntry.COLUMN_DAYS + ") SELECT " +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherContract.HistoryEntry.PERIOD_DAY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", (" +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + " + " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ") / 2, " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", 1 FROM " +
+                    WeatherContract.WeatherEntry.TABLE_NAME + " WHERE ";
+
+    private static final long WEEK_IN_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+    // The epoch was a Thursday, the first Monday is four days later
+    private static final long FIRST_MONDAY = 4 * 24 * 60 * 60 * 1000L;
+
+    //((start - FIRST_MONDAY) / WEEK_IN_MILLIS) * WEEK_IN_MILLIS + FIRST_MONDAY
+    private static final String sWeekStartExpression =
+            "((" + WeatherContract.HistoryEntry.COLUMN_START + " - " + FIRST_MONDAY + ") / " +
+                    WEEK_IN_MILLIS + ") * " + WEEK_IN_MILLIS + " + " + FIRST_MONDAY;
+
+    private static final String sMonthStartExpression =
+            WeatherStats.monthStartExpression(WeatherContract.HistoryEntry.COLUMN_START);
+
+    //INSERT INTO history (...) SELECT location_id, <period>, <start>, MIN(min), MAX(max),
+    //SUM(mean * days) / SUM(days),
+    //SUM(humidity * days) / SUM(CASE WHEN humidity IS NULL THEN 0 ELSE days END), SUM(days)
+    //FROM history WHERE period = ? AND start < ?
+    //GROUP BY location_id, <start>
+    // Days without a humidity don't weigh on the mean humidity, which is null if none has one.
+    private static String buildDownsampleStatement(int period, String startExpression) {
+        return "INSERT INTO " + WeatherContract.HistoryEntry.TABLE_NAME + " (" +
+                WeatherContract.HistoryEntry.COLUMN_LOC_KEY + ", " +
+                WeatherContract.HistoryEntry.COLUMN_PERIOD + ", " +
+                WeatherContract.HistoryEntry.COLUMN_START + ", " +
+                WeatherContract.HistoryEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherContract.HistoryEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherContract.HistoryEntry.COLUMN_MEAN_TEMP + ", " +
+                WeatherContract.HistoryEntry.COLUMN_MEAN_HUMIDITY + ", " +
+                WeatherContract.HistoryEntry.COLUMN_DAYS + ") SELECT " +
+                WeatherContract.HistoryEntry.COLUMN_LOC_KEY + ", " +
+                period + ", " +
+                startExpression + ", " +
+                "MIN(" + WeatherContract.HistoryEntry.COLUMN_MIN_TEMP + "), " +
+                "MAX(" + WeatherContract.HistoryEntry.COLUMN_MAX_TEMP + "), " +
+                "SUM(" + WeatherContract.HistoryEntry.COLUMN_MEAN_TEMP + " * " +
+                WeatherContract.HistoryEntry.COLUMN_DAYS + ") / SUM(" +
+                WeatherContract.HistoryEntry.COLUMN_DAYS + "), " +
+                "SUM(" + WeatherContract.HistoryEntry.COLUMN_MEAN_HUMIDITY + " * " +
+                WeatherContract.HistoryEntry.COLUMN_DAYS + ") / SUM(CASE WHEN " +
+                WeatherContract.HistoryEntry.COLUMN_MEAN_HUMIDITY + " IS NULL THEN 0 ELSE " +
+                WeatherContract.HistoryEntry.COLUMN_DAYS + " END), " +
+                "SUM(" + WeatherContract.HistoryEntry.COLUMN_DAYS + ") FROM " +
+                WeatherContract.HistoryEntry.TABLE_NAME + " WHERE " +
+                sHistoryPeriodBeforeSelection + " GROUP BY " +
+                WeatherContract.HistoryEntry.COLUMN_LOC_KEY + ", " + startExpression;
+    }
+
+    //period = ? AND start < ?
+    private static final String sHistoryPeriodBeforeSelection =
+            WeatherContract.HistoryEntry.COLUMN_PERIOD + " = ? AND " +
+                    WeatherContract.HistoryEntry.COLUMN_START + " < ?";
+
+    // Columns compared when deciding whether a bulk inserted weather row changes anything.
+    // The first two identify the row, the others hold its data.
+    private static final String[] sWeatherCompareColumns = {
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    //SELECT COUNT(*) FROM weather WHERE location_id = ? AND date = ? AND weather_id = ? AND ...
+    private static final String sUnchangedWeatherQuery;
+
+    static {
+        StringBuilder query = new StringBuilder("SELECT COUNT(*) FROM ")
+                .append(WeatherContract.WeatherEntry.TABLE_NAME).append(" WHERE ");
+        for (int i = 0; i < sWeatherCompareColumns.length; i++) {
+            if (i > 0) {
+                query.append(" AND ");
+            }
+            query.append(sWeatherCompareColumns[i]).append(" = ?");
+        }
+        sUnchangedWeatherQuery = query.toString();
+    }
+
+    //INSERT INTO weather (location_id, date, weather_id, ...) VALUES (?, ?, ?, ...)
+    private static final String sInsertWeatherStatement;
+
+    static {
+        StringBuilder statement = new StringBuilder("INSERT INTO ")
+                .append(WeatherContract.WeatherEntry.TABLE_NAME).append(" (")
+                .append(TextUtils.join(", ", sWeatherCompareColumns)).append(") VALUES (");
+        for (int i = 0; i < sWeatherCompareColumns.length; i++) {
+            statement.append(i > 0 ? ", ?" : "?");
+        }
+        sInsertWeatherStatement = statement.append(")").toString();
+    }
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -83,6 +343,10 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
+        if (WeatherContract.isPagedUri(uri)) {
+            return queryPage(sWeatherByLocationSettingQueryBuilder, uri, projection, selection,
+                    selectionArgs, WeatherContract.WeatherEntry.COLUMN_DATE);
+        }
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 selection,
@@ -93,6 +357,28 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    /*
+        Queries one page of a keyset paged URI: the rows of the selection whose key comes after
+        the one of the URI, in ascending key order, up to its limit.  The sort order of the
+        caller is ignored, pages only follow each other in key order.
+     */
+    private Cursor queryPage(SQLiteQueryBuilder queryBuilder, Uri uri, String[] projection,
+                             String selection, String[] selectionArgs, String keyColumn) {
+        String[] pageArgs = new String[selectionArgs.length + 1];
+        System.arraycopy(selectionArgs, 0, pageArgs, 0, selectionArgs.length);
+        pageArgs[selectionArgs.length] = Long.toString(WeatherContract.getAfterFromUri(uri));
+
+        return queryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection + " AND " + keyColumn + " > ? ",
+                pageArgs,
+                null,
+                null,
+                keyColumn + " ASC",
+                Integer.toString(WeatherContract.getLimitFromUri(uri))
+        );
+    }
+
     private Cursor getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
@@ -108,6 +394,129 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    private Cursor getCurrentByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.CurrentEntry.getLocationSettingFromUri(uri);
+
+        return sCurrentByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingSelection,
+                new String[]{locationSetting},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    private Cursor getHourlyByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.HourlyEntry.getLocationSettingFromUri(uri);
+        long startTime = WeatherContract.HourlyEntry.getStartTimeFromUri(uri);
+        long endTime = WeatherContract.HourlyEntry.getEndTimeFromUri(uri);
+
+        String[] selectionArgs =
+                new String[]{locationSetting, Long.toString(startTime), Long.toString(endTime)};
+        if (WeatherContract.isPagedUri(uri)) {
+            return queryPage(sHourlyByLocationSettingQueryBuilder, uri, projection,
+                    sLocationSettingWithTimeRangeSelection, selectionArgs,
+                    WeatherContract.HourlyEntry.COLUMN_TIME);
+        }
+        // A range scan on the (location_id, time) index
+        return sHourlyByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingWithTimeRangeSelection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder != null ? sortOrder : sHourlyDefaultSortOrder
+        );
+    }
+
+    private Cursor getStatsByLocationSetting(Uri uri) {
+        String locationSetting = WeatherContract.StatsEntry.getLocationSettingFromUri(uri);
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+
+        Cursor location = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{"IFNULL(" + WeatherContract.LocationEntry.COLUMN_CANONICAL_ID +
+                        ", " + WeatherContract.LocationEntry._ID + ")"},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting}, null, null, null);
+        try {
+            if (!location.moveToFirst()) {
+                return new MatrixCursor(WeatherStats.STATS_COLUMNS, 0);
+            }
+            return WeatherStats.query(db, location.getLong(0),
+                    WeatherContract.StatsEntry.getStartDateFromUri(uri),
+                    WeatherContract.StatsEntry.getEndDateFromUri(uri));
+        } finally {
+            location.close();
+        }
+    }
+
+    private Cursor getHistoryByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.HistoryEntry.getLocationSettingFromUri(uri);
+        long startTime = WeatherContract.HistoryEntry.getStartTimeFromUri(uri);
+        long endTime = WeatherContract.HistoryEntry.getEndTimeFromUri(uri);
+
+        String[] selectionArgs =
+                new String[]{locationSetting, Long.toString(startTime), Long.toString(endTime)};
+        if (WeatherContract.isPagedUri(uri)) {
+            return queryPage(sHistoryByLocationSettingQueryBuilder, uri, projection,
+                    sLocationSettingWithStartRangeSelection, selectionArgs,
+                    WeatherContract.HistoryEntry.COLUMN_START);
+        }
+        return sHistoryByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingWithStartRangeSelection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder != null ? sortOrder : sHistoryDefaultSortOrder
+        );
+    }
+
+    /*
+        The entries of the change log after a sequence number, in the order they were written.
+        The caller's selection narrows them further, its sort order is ignored: entries only
+        make sense applied in sequence.
+     */
+    private Cursor getChangesSince(Uri uri, String[] projection, String selection,
+                                   String[] selectionArgs) {
+        String sequence = Long.toString(WeatherContract.ChangeEntry.getSequenceFromUri(uri));
+        String locationSetting = WeatherContract.ChangeEntry.getLocationSettingFromUri(uri);
+        String changesSelection;
+        String[] changesArgs;
+        if (locationSetting == null) {
+            changesSelection = sChangesSinceSelection;
+            changesArgs = new String[]{sequence};
+        } else {
+            changesSelection = sChangesSinceWithLocationSelection;
+            changesArgs = new String[]{sequence, locationSetting};
+        }
+        if (selection != null) {
+            changesSelection = changesSelection + " AND (" + selection + ")";
+            if (selectionArgs != null) {
+                String[] args = new String[changesArgs.length + selectionArgs.length];
+                System.arraycopy(changesArgs, 0, args, 0, changesArgs.length);
+                System.arraycopy(selectionArgs, 0, args, changesArgs.length,
+                        selectionArgs.length);
+                changesArgs = args;
+            }
+        }
+        return sChangesQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                changesSelection,
+                changesArgs,
+                null,
+                null,
+                sChangesSortOrder
+        );
+    }
+
+    private Cursor getLatestChange() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{WeatherContract.ChangeEntry._ID}, 1);
+        cursor.addRow(new Object[]{ChangeLog.getLatestSequence(mOpenHelper.getReadableDatabase())});
+        return cursor;
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,6 +539,24 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.LocationEntry.PATH_NEAREST, LOCATION_NEAREST);
+
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY, HOURLY);
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY + "/*", HOURLY_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_CURRENT, CURRENT);
+        matcher.addURI(authority, WeatherContract.PATH_CURRENT + "/*", CURRENT_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY, HISTORY);
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY + "/*", HISTORY_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_STATS + "/*", STATS_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_CHANGES, CHANGES);
+        matcher.addURI(authority, WeatherContract.PATH_CHANGES + "/#", CHANGES_SINCE);
+
+        matcher.addURI(authority, WeatherContract.PATH_DEBUG + "/sync_trace", SYNC_TRACE);
         return matcher;
     }
 
@@ -163,7 +590,25 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
+            case LOCATION_NEAREST:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case HOURLY:
+            case HOURLY_WITH_LOCATION:
+                return WeatherContract.HourlyEntry.CONTENT_TYPE;
+            case CURRENT:
+            case CURRENT_WITH_LOCATION:
+                return WeatherContract.CurrentEntry.CONTENT_TYPE;
+            case HISTORY:
+            case HISTORY_WITH_LOCATION:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
+            case STATS_WITH_LOCATION:
+                return WeatherContract.StatsEntry.CONTENT_ITEM_TYPE;
+            case CHANGES:
+                return WeatherContract.ChangeEntry.CONTENT_ITEM_TYPE;
+            case CHANGES_SINCE:
+                return WeatherContract.ChangeEntry.CONTENT_TYPE;
+            case SYNC_TRACE:
+                return WeatherContract.SyncTraceEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -172,10 +617,31 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        if (!ProviderMetrics.ENABLED) {
+            return queryUri(uri, projection, selection, selectionArgs, sortOrder);
+        }
+        long start = System.nanoTime();
+        ProviderMetrics.clearLastSql();
+        Cursor cursor = queryUri(uri, projection, selection, selectionArgs, sortOrder);
+        // A cursor only runs its query once it's asked for its count, do it here to time it
+        int rows = cursor.getCount();
+        recordOperation(ProviderMetrics.OP_QUERY, uri, selection, selectionArgs,
+                System.nanoTime() - start, rows, ProviderMetrics.getLastSql());
+        return cursor;
+    }
+
+    private Cursor queryUri(Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
+        final int match = sUriMatcher.match(uri);
+        if (isCacheable(match, uri, selection)) {
+            Cursor cursor = queryCached(match, uri, projection, sortOrder);
+            cursor.setNotificationUri(getContext().getContentResolver(), uri);
+            return cursor;
+        }
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
@@ -213,6 +679,89 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/nearest"
+            case LOCATION_NEAREST: {
+                retCursor = NearestLocations.query(mOpenHelper.getReadableDatabase(), uri,
+                        projection);
+                break;
+            }
+            // "hourly/*"
+            case HOURLY_WITH_LOCATION: {
+                retCursor = getHourlyByLocationSetting(uri, projection, sortOrder);
+                break;
+            }
+            // "hourly"
+            case HOURLY: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HourlyEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // "current/*"
+            case CURRENT_WITH_LOCATION: {
+                retCursor = getCurrentByLocationSetting(uri, projection, sortOrder);
+                break;
+            }
+            // "current"
+            case CURRENT: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.CurrentEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // "history/*"
+            case HISTORY_WITH_LOCATION: {
+                retCursor = getHistoryByLocationSetting(uri, projection, sortOrder);
+                break;
+            }
+            // "history"
+            case HISTORY: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HistoryEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // "stats/*"
+            case STATS_WITH_LOCATION: {
+                retCursor = getStatsByLocationSetting(uri);
+                break;
+            }
+            // "changes"
+            case CHANGES: {
+                retCursor = getLatestChange();
+                break;
+            }
+            // "changes/#"
+            case CHANGES_SINCE: {
+                retCursor = getChangesSince(uri, projection, selection, selectionArgs);
+                break;
+            }
+            // "debug/sync_trace"
+            case SYNC_TRACE: {
+                // The timings of syncs are for profiling, release builds don't hand them out
+                if (!BuildConfig.DEBUG) {
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+                }
+                return getSyncTrace();
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -221,11 +770,60 @@ public class WeatherProvider extends ContentProvider {
         return retCursor;
     }
 
+    /*
+        Today's row and the forecast from a date are what every screen, widget and notification
+        asks for.  Their URIs hold all of their arguments, a selection of the caller's would not
+        be part of the key.
+     */
+    private static boolean isCacheable(int match, Uri uri, String selection) {
+        if (selection != null) {
+            return false;
+        }
+        return match == WEATHER_WITH_LOCATION_AND_DATE
+                || (match == WEATHER_WITH_LOCATION && !WeatherContract.isPagedUri(uri));
+    }
+
+    private Cursor queryCached(int match, Uri uri, String[] projection, String sortOrder) {
+        long start = System.nanoTime();
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        long firstDate;
+        long lastDate;
+        if (match == WEATHER_WITH_LOCATION_AND_DATE) {
+            firstDate = WeatherContract.WeatherEntry.getDateFromUri(uri);
+            lastDate = firstDate;
+        } else {
+            long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+            firstDate = startDate == 0 ? Long.MIN_VALUE : startDate;
+            lastDate = Long.MAX_VALUE;
+        }
+        String key = ResultCache.buildKey(match, locationSetting, firstDate, projection, sortOrder);
+        Cursor cursor = mResultCache.get(key);
+        boolean hit = cursor != null;
+        if (!hit) {
+            long generation = mResultCache.getGeneration();
+            cursor = match == WEATHER_WITH_LOCATION_AND_DATE
+                    ? getWeatherByLocationSettingAndDate(uri, projection, sortOrder)
+                    : getWeatherByLocationSetting(uri, projection, sortOrder);
+            cursor = mResultCache.put(key, locationSetting, firstDate, lastDate, generation,
+                    cursor);
+        }
+        mResultCache.recordLatency(hit, System.nanoTime() - start);
+        return cursor;
+    }
+
     /*
         Student: Add the ability to insert Locations to the implementation of this function.
      */
     @Override
     public Uri insert(Uri uri, ContentValues values) {
+        long start = System.nanoTime();
+        Uri returnUri = insertUri(uri, values);
+        recordOperation(ProviderMetrics.OP_INSERT, uri, null, null, System.nanoTime() - start,
+                1, null);
+        return returnUri;
+    }
+
+    private Uri insertUri(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
@@ -233,21 +831,57 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id;
+                ChangeNotifier changes = new ChangeNotifier(mResultCache);
+                db.beginTransaction();
+                try {
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                    if (_id > 0) {
+                        long locationId =
+                                values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                        long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                        WeatherStats.refreshMonth(db, locationId, WeatherStats.getMonthStart(date));
+                        changes.add(locationId, date);
+                        ChangeLog.append(db, changes, WeatherContract.ChangeEntry.OP_INSERT);
+                        db.setTransactionSuccessful();
+                    }
+                } finally {
+                    db.endTransaction();
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
+                changes.notifyChanges(getContext().getContentResolver(), db, true);
+                return returnUri;
             }
             case LOCATION: {
+                NearestLocations.putCell(values);
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                // Row ids are reused, weather rows left behind may join the new location
+                String locationSetting = values.getAsString(
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                if (locationSetting != null) {
+                    mResultCache.invalidateLocation(locationSetting);
+                } else {
+                    mResultCache.invalidateAll();
+                }
                 break;
             }
+            case HOURLY: {
+                long _id = db.insert(WeatherContract.HourlyEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = WeatherContract.HourlyEntry.buildHourlyUri(_id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                ChangeNotifier.notifyLocation(getContext().getContentResolver(), db, uri,
+                        values.getAsLong(WeatherContract.HourlyEntry.COLUMN_LOC_KEY));
+                return returnUri;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -257,19 +891,80 @@ public class WeatherProvider extends ContentProvider {
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        int rowsDeleted = deleteUri(uri, selection, selectionArgs);
+        recordOperation(ProviderMetrics.OP_DELETE, uri, selection, selectionArgs,
+                System.nanoTime() - start, rowsDeleted, null);
+        return rowsDeleted;
+    }
+
+    private int deleteUri(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
+                ChangeNotifier changes = new ChangeNotifier(mResultCache);
+                boolean archive = WeatherContract.WeatherEntry.isArchiveUri(uri);
+                if (archive) {
+                    rowsDeleted = archiveWeather(db, selection, selectionArgs, changes);
+                } else {
+                    rowsDeleted = deleteWeather(db, selection, selectionArgs, changes);
+                }
+                if (rowsDeleted != 0) {
+                    // Only the days that went away are notified, not the whole table
+                    changes.notifyChanges(getContext().getContentResolver(), db, !archive);
+                    if (archive) {
+                        changes.notifyLocations(getContext().getContentResolver(), db,
+                                WeatherContract.HistoryEntry.CONTENT_URI);
+                    }
+                }
+                return rowsDeleted;
+            }
+            case LOCATION:
+                db.beginTransaction();
+                try {
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    // Row ids of locations are reused, don't leave summaries behind for them,
+                    // nor aliases that would take the place of a new location for theirs
+                    WeatherStats.deleteOrphans(db);
+                    db.execSQL(sReleaseAliasesStatement);
+                    db.execSQL(sDeleteOrphanedCurrentStatement);
+                    // The days of the locations are no longer found by their settings
+                    if (rowsDeleted != 0) {
+                        ChangeLog.appendReset(db);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                // Cached rows hold the columns of their location
+                if (rowsDeleted != 0) {
+                    mResultCache.invalidateAll();
+                    notifyChangeLog();
+                }
+                break;
+            case HOURLY:
                 rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                        WeatherContract.HourlyEntry.TABLE_NAME, selection, selectionArgs);
                 break;
-            case LOCATION:
+            case CURRENT:
                 rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                        WeatherContract.CurrentEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case HISTORY:
+                long compactionTime = WeatherContract.HistoryEntry.getCompactionTimeFromUri(uri);
+                if (compactionTime > 0) {
+                    rowsDeleted = compactHistory(db, compactionTime);
+                    if (rowsDeleted != 0) {
+                        notifyStatsChange();
+                    }
+                    break;
+                }
+                rowsDeleted = deleteHistory(db, selection, selectionArgs);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -281,6 +976,187 @@ public class WeatherProvider extends ContentProvider {
         return rowsDeleted;
     }
 
+    private static Cursor getSyncTrace() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                WeatherContract.SyncTraceEntry.COLUMN_SYNC_ID,
+                WeatherContract.SyncTraceEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.SyncTraceEntry.COLUMN_STAGE,
+                WeatherContract.SyncTraceEntry.COLUMN_START,
+                WeatherContract.SyncTraceEntry.COLUMN_DURATION_MICROS,
+                WeatherContract.SyncTraceEntry.COLUMN_BYTES,
+                WeatherContract.SyncTraceEntry.COLUMN_ROWS});
+        for (SyncTrace.Stage stage : SyncTrace.getStages()) {
+            cursor.addRow(new Object[]{stage.syncId, stage.locationSetting, stage.name,
+                    stage.startMillis, stage.durationNanos / 1000, stage.bytes, stage.rows});
+        }
+        return cursor;
+    }
+
+    /*
+        Deletes weather rows, collecting the days they held first.  The summaries of their months
+        are refreshed in the same transaction.
+     */
+    private int deleteWeather(SQLiteDatabase db, String selection, String[] selectionArgs,
+                              ChangeNotifier changes) {
+        int rowsDeleted;
+        db.beginTransaction();
+        try {
+            changes.addMatching(db, selection, selectionArgs);
+            rowsDeleted = db.delete(
+                    WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            if (rowsDeleted != 0) {
+                WeatherStats.refreshChanged(db, changes);
+                ChangeLog.append(db, changes, WeatherContract.ChangeEntry.OP_DELETE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return rowsDeleted;
+    }
+
+    /*
+        Deletes rows of the history table, collecting the months they counted in first.  The
+        summaries of those months are refreshed in the same transaction.
+     */
+    private int deleteHistory(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        int rowsDeleted;
+        db.beginTransaction();
+        try {
+            WeatherStats.Changes changes = new WeatherStats.Changes();
+            changes.addMatchingHistory(db, selection, selectionArgs);
+            rowsDeleted = db.delete(
+                    WeatherContract.HistoryEntry.TABLE_NAME, selection, selectionArgs);
+            if (rowsDeleted != 0) {
+                changes.apply(db);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (rowsDeleted != 0) {
+            notifyStatsChange();
+        }
+        return rowsDeleted;
+    }
+
+    private void notifyStatsChange() {
+        getContext().getContentResolver().notifyChange(
+                WeatherContract.StatsEntry.CONTENT_URI, null);
+    }
+
+    private void notifyChangeLog() {
+        getContext().getContentResolver().notifyChange(
+                WeatherContract.ChangeEntry.CONTENT_URI, null);
+    }
+
+    /*
+        Moves the weather rows matching the selection to the history, as days.  Returns the number
+        of rows moved.  An archived day keeps its values, so the summaries don't change.
+     */
+    private int archiveWeather(SQLiteDatabase db, String selection, String[] selectionArgs,
+                               ChangeNotifier changes) {
+        db.beginTransaction();
+        try {
+            changes.addMatching(db, selection, selectionArgs);
+            db.execSQL(sArchiveWeatherStatement + selection,
+                    selectionArgs != null ? selectionArgs : new String[0]);
+            int rowsDeleted = db.delete(
+                    WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            if (rowsDeleted != 0) {
+                ChangeLog.append(db, changes, WeatherContract.ChangeEntry.OP_DELETE);
+            }
+            db.setTransactionSuccessful();
+            return rowsDeleted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /*
+        Folds the days that are past DAYS_RETENTION into weeks, and the weeks that are past
+        WEEKS_RETENTION into months.  The cutoffs are aligned on whole weeks and months, so every
+        week and month is built in one go and never has to be merged with a later run.  Returns
+        the number of rows removed.
+
+        A week is counted in the month it starts in, so the summaries of the months around the
+        compacted rows are refreshed in the same transaction.
+     */
+    private int compactHistory(SQLiteDatabase db, long now) {
+        long weekCutoff = getWeekStart(now - WeatherContract.HistoryEntry.DAYS_RETENTION);
+        long monthCutoff = WeatherStats.getMonthStart(now - WeatherContract.HistoryEntry.WEEKS_RETENTION);
+        int rowsDeleted = 0;
+        db.beginTransaction();
+        try {
+            long firstDay = getFirstStartBefore(db,
+                    WeatherContract.HistoryEntry.PERIOD_DAY, weekCutoff);
+            long firstWeek = getFirstStartBefore(db,
+                    WeatherContract.HistoryEntry.PERIOD_WEEK, monthCutoff);
+            rowsDeleted += downsample(db, WeatherContract.HistoryEntry.PERIOD_DAY,
+                    WeatherContract.HistoryEntry.PERIOD_WEEK, sWeekStartExpression, weekCutoff);
+            rowsDeleted += downsample(db, WeatherContract.HistoryEntry.PERIOD_WEEK,
+                    WeatherContract.HistoryEntry.PERIOD_MONTH, sMonthStartExpression, monthCutoff);
+            if (rowsDeleted != 0) {
+                WeatherStats.refreshRange(db,
+                        Math.min(getWeekStart(firstDay), firstWeek),
+                        Math.max(weekCutoff, monthCutoff));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return rowsDeleted;
+    }
+
+    private int downsample(SQLiteDatabase db, int fromPeriod, int toPeriod,
+                           String startExpression, long cutoff) {
+        String[] args = new String[]{Integer.toString(fromPeriod), Long.toString(cutoff)};
+        db.execSQL(buildDownsampleStatement(toPeriod, startExpression), args);
+        return db.delete(WeatherContract.HistoryEntry.TABLE_NAME,
+                sHistoryPeriodBeforeSelection, args);
+    }
+
+    // The earliest start of the rows of a period before the cutoff, or the cutoff if there are none
+    private long getFirstStartBefore(SQLiteDatabase db, int period, long cutoff) {
+        Cursor cursor = db.query(WeatherContract.HistoryEntry.TABLE_NAME,
+                new String[]{"MIN(" + WeatherContract.HistoryEntry.COLUMN_START + ")"},
+                sHistoryPeriodBeforeSelection,
+                new String[]{Integer.toString(period), Long.toString(cutoff)},
+                null, null, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : cutoff;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static long getWeekStart(long time) {
+        return ((time - FIRST_MONDAY) / WEEK_IN_MILLIS) * WEEK_IN_MILLIS + FIRST_MONDAY;
+    }
+
+    /*
+        Returns true if a weather row with exactly these values is already stored.  Rows missing
+        any of the compared columns are always treated as changed.
+     */
+    private boolean isUnchangedWeather(SQLiteStatement statement, ContentValues values) {
+        statement.clearBindings();
+        for (int i = 0; i < sWeatherCompareColumns.length; i++) {
+            Object value = values.get(sWeatherCompareColumns[i]);
+            if (value == null) {
+                return false;
+            } else if (value instanceof String) {
+                statement.bindString(i + 1, (String) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                statement.bindDouble(i + 1, ((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                statement.bindLong(i + 1, ((Number) value).longValue());
+            } else {
+                return false;
+            }
+        }
+        return statement.simpleQueryForLong() > 0;
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -292,18 +1168,71 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        int rowsUpdated = updateUri(uri, values, selection, selectionArgs);
+        recordOperation(ProviderMetrics.OP_UPDATE, uri, selection, selectionArgs,
+                System.nanoTime() - start, rowsUpdated, null);
+        return rowsUpdated;
+    }
+
+    private int updateUri(
+            Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsUpdated;
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
+                ChangeNotifier changes = new ChangeNotifier(mResultCache);
+                db.beginTransaction();
+                try {
+                    if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)
+                            || values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)) {
+                        // Rows move to days that can't be known before the update
+                        changes.addAll();
+                    } else {
+                        changes.addMatching(db, selection, selectionArgs);
+                    }
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    if (rowsUpdated != 0) {
+                        WeatherStats.refreshChanged(db, changes);
+                        ChangeLog.append(db, changes, WeatherContract.ChangeEntry.OP_UPDATE);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (rowsUpdated != 0) {
+                    changes.notifyChanges(getContext().getContentResolver(), db, true);
+                }
+                return rowsUpdated;
+            }
             case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
+                db.beginTransaction();
+                try {
+                    boolean cellKnown = NearestLocations.putCell(values);
+                    rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    // Days read with their location's columns may read differently now
+                    if (rowsUpdated != 0) {
+                        if (!cellKnown) {
+                            NearestLocations.rebuild(db);
+                        }
+                        ChangeLog.appendReset(db);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (rowsUpdated != 0) {
+                    mResultCache.invalidateAll();
+                    notifyChangeLog();
+                }
+                break;
+            case HOURLY:
+                rowsUpdated = db.update(WeatherContract.HourlyEntry.TABLE_NAME, values, selection,
                         selectionArgs);
                 break;
             default:
@@ -317,31 +1246,247 @@ public class WeatherProvider extends ContentProvider {
 
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = System.nanoTime();
+        int returnCount = bulkInsertUri(uri, values);
+        recordOperation(ProviderMetrics.OP_BULK_INSERT, uri, null, null,
+                System.nanoTime() - start, returnCount, null);
+        return returnCount;
+    }
+
+    private int bulkInsertUri(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                ChangeNotifier changedDays = new ChangeNotifier(mResultCache);
+                try {
+                    // Most syncs return the same forecast for most days.  Rewriting an identical
+                    // row would only churn its _id and wake every observer, so skip those and
+                    // report the number of rows that were actually added or modified.
+                    SQLiteStatement unchangedStatement = db.compileStatement(sUnchangedWeatherQuery);
+                    WeatherStats.Changes changes = new WeatherStats.Changes();
+                    try {
+                        for (ContentValues value : values) {
+                            normalizeDate(value);
+                            if (isUnchangedWeather(unchangedStatement, value)) {
+                                continue;
+                            }
+                            long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                            if (_id != -1) {
+                                returnCount++;
+                                long locationId = value.getAsLong(
+                                        WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                                long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                                changes.add(locationId, date);
+                                changedDays.add(locationId, date);
+                            }
+                        }
+                    } finally {
+                        unchangedStatement.close();
+                    }
+                    // The months touched by the batch are summarized again before it commits, so
+                    // readers never see new days with stale summaries
+                    changes.apply(db);
+                    ChangeLog.append(db, changedDays, WeatherContract.ChangeEntry.OP_INSERT);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                // A sync that changed one day reloads the list and that day's details, not the
+                // details of every other day or location
+                changedDays.notifyChanges(getContext().getContentResolver(), db, true);
+                return returnCount;
+            case HOURLY:
+                db.beginTransaction();
+                int hourlyCount = 0;
+                ChangeNotifier changedHours = new ChangeNotifier();
                 try {
                     for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        long _id = db.insert(WeatherContract.HourlyEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
-                            returnCount++;
+                            hourlyCount++;
+                            changedHours.add(
+                                    value.getAsLong(WeatherContract.HourlyEntry.COLUMN_LOC_KEY),
+                                    value.getAsLong(WeatherContract.HourlyEntry.COLUMN_TIME));
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
+                // Only hourly observers of those locations hear about this, the daily list doesn't
+                // reload
+                changedHours.notifyLocations(getContext().getContentResolver(), db,
+                        WeatherContract.HourlyEntry.CONTENT_URI);
+                return hourlyCount;
+            case CURRENT:
+                db.beginTransaction();
+                int currentCount = 0;
+                ChangeNotifier changedPlaces = new ChangeNotifier();
+                try {
+                    for (ContentValues value : values) {
+                        long _id = db.insert(WeatherContract.CurrentEntry.TABLE_NAME, null, value);
+                        if (_id != -1) {
+                            currentCount++;
+                            changedPlaces.add(
+                                    value.getAsLong(WeatherContract.CurrentEntry.COLUMN_LOC_KEY),
+                                    value.getAsLong(WeatherContract.CurrentEntry.COLUMN_TIME));
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                changedPlaces.notifyLocations(getContext().getContentResolver(), db,
+                        WeatherContract.CurrentEntry.CONTENT_URI);
+                return currentCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Inserts the days of a batch like a bulk insert of the weather URI, binding its arrays
+     * straight into compiled statements.  Only callers in this process can reach it, see
+     * {@link WeatherBatch#insert}.
+     *
+     * @return the number of days that were added or changed.
+     */
+    public int bulkInsertWeather(WeatherBatch batch) {
+        long start = System.nanoTime();
+        int returnCount = insertWeatherBatch(batch);
+        recordOperation(ProviderMetrics.OP_BULK_INSERT, WeatherContract.WeatherEntry.CONTENT_URI,
+                null, null, System.nanoTime() - start, returnCount, null);
+        return returnCount;
+    }
+
+    private int insertWeatherBatch(WeatherBatch batch) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int returnCount = 0;
+        ChangeNotifier changedDays = new ChangeNotifier(mResultCache);
+        db.beginTransaction();
+        try {
+            SQLiteStatement unchangedStatement = db.compileStatement(sUnchangedWeatherQuery);
+            SQLiteStatement insertStatement = db.compileStatement(sInsertWeatherStatement);
+            WeatherStats.Changes changes = new WeatherStats.Changes();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.setDate(i, WeatherContract.normalizeDate(batch.getDate(i)));
+                    batch.bind(unchangedStatement, i);
+                    if (unchangedStatement.simpleQueryForLong() > 0) {
+                        continue;
+                    }
+                    batch.bind(insertStatement, i);
+                    if (insertStatement.executeInsert() != -1) {
+                        returnCount++;
+                        changes.add(batch.getLocationId(), batch.getDate(i));
+                        changedDays.add(batch.getLocationId(), batch.getDate(i));
+                    }
+                }
+            } finally {
+                unchangedStatement.close();
+                insertStatement.close();
+            }
+            changes.apply(db);
+            ChangeLog.append(db, changedDays, WeatherContract.ChangeEntry.OP_INSERT);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        changedDays.notifyChanges(getContext().getContentResolver(), db, true);
+        return returnCount;
+    }
+
+    // Release builds don't record anything, the slow log's EXPLAIN would only slow them down
+    private void recordOperation(String operation, Uri uri, String selection,
+                                 String[] selectionArgs, long nanos, int rows, String sql) {
+        if (!ProviderMetrics.ENABLED) {
+            return;
+        }
+        int callingUid = Binder.getCallingUid();
+        mMetrics.record(operation, getMatchName(sUriMatcher.match(uri)), callingUid, nanos, rows);
+        if (mMetrics.isSlow(nanos)) {
+            String plan = sql == null ? null
+                    : ProviderMetrics.explain(mOpenHelper.getReadableDatabase(), sql);
+            mMetrics.addSlowQuery(operation, uri.toString(), selection, selectionArgs, sql, plan,
+                    nanos, rows, callingUid);
+        }
+    }
+
+    static String getMatchName(int match) {
+        switch (match) {
+            case WEATHER:
+                return "weather";
+            case WEATHER_WITH_LOCATION:
+                return "weather_with_location";
+            case WEATHER_WITH_LOCATION_AND_DATE:
+                return "weather_with_location_and_date";
+            case LOCATION:
+                return "location";
+            case LOCATION_NEAREST:
+                return "location_nearest";
+            case HOURLY:
+                return "hourly";
+            case HOURLY_WITH_LOCATION:
+                return "hourly_with_location";
+            case CURRENT:
+                return "current";
+            case CURRENT_WITH_LOCATION:
+                return "current_with_location";
+            case HISTORY:
+                return "history";
+            case HISTORY_WITH_LOCATION:
+                return "history_with_location";
+            case STATS_WITH_LOCATION:
+                return "stats_with_location";
+            case CHANGES:
+                return "changes";
+            case CHANGES_SINCE:
+                return "changes_since";
+            case SYNC_TRACE:
+                return "sync_trace";
+            default:
+                return "unknown";
+        }
+    }
+
+    /**
+     * Hands out the metrics of the provider, see {@link WeatherContract.Metrics}.  Debug builds
+     * only, release builds don't know any method.
+     */
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!BuildConfig.DEBUG) {
+            return super.call(method, arg, extras);
+        }
+        if (WeatherContract.Metrics.METHOD_GET_METRICS.equals(method)) {
+            return mMetrics.getMetrics(getContext().getPackageManager());
+        } else if (WeatherContract.Metrics.METHOD_GET_SLOW_QUERIES.equals(method)) {
+            return mMetrics.getSlowQueries();
+        } else if (WeatherContract.Metrics.METHOD_RESET_METRICS.equals(method)) {
+            mMetrics.reset();
+            mResultCache.resetStats();
+            return null;
+        } else if (WeatherContract.Metrics.METHOD_GET_CACHE_STATS.equals(method)) {
+            return mResultCache.getStats();
+        } else if (WeatherContract.Metrics.METHOD_CLEAR_CACHE.equals(method)) {
+            mResultCache.invalidateAll();
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    ProviderMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    ResultCache getResultCache() {
+        return mResultCache;
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Maintains the per month summaries of the stats table, and answers range statistics from them.
+ * A month is recomputed from its days whenever one of them changes, which costs at most a month
+ * of rows and keeps min, max and the warmest date exact even when a day is replaced.
+ */
+class WeatherStats {
+
+    // Dates far enough in the future to stand for "no end"
+    private static final long END_OF_TIME = 253402300800000L;
+
+    static final String[] STATS_COLUMNS = {
+            StatsEntry.COLUMN_DAYS,
+            StatsEntry.COLUMN_MIN_TEMP,
+            StatsEntry.COLUMN_MAX_TEMP,
+            StatsEntry.COLUMN_WARMEST_DATE,
+            StatsEntry.COLUMN_MEAN_TEMP,
+            StatsEntry.COLUMN_MEAN_HUMIDITY
+    };
+
+    // The columns of a summary, or of the days of a partial month: STATS_COLUMNS and the weight
+    // of the mean humidity
+    private static final String[] SUMMARY_COLUMNS = {
+            StatsEntry.COLUMN_DAYS,
+            StatsEntry.COLUMN_MIN_TEMP,
+            StatsEntry.COLUMN_MAX_TEMP,
+            StatsEntry.COLUMN_WARMEST_DATE,
+            StatsEntry.COLUMN_MEAN_TEMP,
+            StatsEntry.COLUMN_MEAN_HUMIDITY,
+            StatsEntry.COLUMN_HUMIDITY_DAYS
+    };
+
+    private static final int COL_DAYS = 0;
+    private static final int COL_MIN = 1;
+    private static final int COL_MAX = 2;
+    private static final int COL_DATE = 3;
+    private static final int COL_MEAN = 4;
+    private static final int COL_HUMIDITY = 5;
+    private static final int COL_HUMIDITY_DAYS = 6;
+
+    // The days of a location in [?, ?), from the forecast and the history, with the columns of
+    // SUMMARY_COLUMNS.  Takes the location and the range twice.  A history row without a
+    // humidity has no humidity days; a downsampled one only knows all its days.
+    private static final String sDaysInRangeQuery =
+            "SELECT 1 AS " + StatsEntry.COLUMN_DAYS + ", " +
+                    WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherEntry.COLUMN_DATE + " AS " + StatsEntry.COLUMN_WARMEST_DATE + ", (" +
+                    WeatherEntry.COLUMN_MIN_TEMP + " + " + WeatherEntry.COLUMN_MAX_TEMP +
+                    ") / 2 AS " + StatsEntry.COLUMN_MEAN_TEMP + ", " +
+                    WeatherEntry.COLUMN_HUMIDITY + " AS " + StatsEntry.COLUMN_MEAN_HUMIDITY +
+                    ", 1 AS " + StatsEntry.COLUMN_HUMIDITY_DAYS +
+                    " FROM " + WeatherEntry.TABLE_NAME + " WHERE " +
+                    WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherEntry.COLUMN_DATE + " < ?" +
+                    " UNION ALL SELECT " +
+                    HistoryEntry.COLUMN_DAYS + ", " +
+                    HistoryEntry.COLUMN_MIN_TEMP + ", " +
+                    HistoryEntry.COLUMN_MAX_TEMP + ", " +
+                    HistoryEntry.COLUMN_START + ", " +
+                    HistoryEntry.COLUMN_MEAN_TEMP + ", " +
+                    HistoryEntry.COLUMN_MEAN_HUMIDITY + ", CASE WHEN " +
+                    HistoryEntry.COLUMN_MEAN_HUMIDITY + " IS NULL THEN 0 ELSE " +
+                    HistoryEntry.COLUMN_DAYS + " END" +
+                    " FROM " + HistoryEntry.TABLE_NAME + " WHERE " +
+                    HistoryEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    HistoryEntry.COLUMN_START + " >= ? AND " +
+                    HistoryEntry.COLUMN_START + " < ?";
+
+    //INSERT INTO stats (...) SELECT * FROM (SELECT ?, ?, SUM(days) AS days, MIN(min), MAX(max),
+    //<warmest day>, <weighted means>, SUM(humidity_days) FROM (<days in range>)) WHERE days > 0
+    // The outer select drops the empty month, HAVING without GROUP BY isn't supported everywhere.
+    private static final String sInsertMonthStatement =
+            "INSERT INTO " + StatsEntry.TABLE_NAME + " (" +
+                    StatsEntry.COLUMN_LOC_KEY + ", " +
+                    StatsEntry.COLUMN_MONTH + ", " +
+                    StatsEntry.COLUMN_DAYS + ", " +
+                    StatsEntry.COLUMN_MIN_TEMP + ", " +
+                    StatsEntry.COLUMN_MAX_TEMP + ", " +
+                    StatsEntry.COLUMN_WARMEST_DATE + ", " +
+                    StatsEntry.COLUMN_MEAN_TEMP + ", " +
+                    StatsEntry.COLUMN_MEAN_HUMIDITY + ", " +
+                    StatsEntry.COLUMN_HUMIDITY_DAYS + ") SELECT * FROM (SELECT ?, ?, " +
+                    "SUM(" + StatsEntry.COLUMN_DAYS + ") AS " + StatsEntry.COLUMN_DAYS + ", " +
+                    "MIN(" + StatsEntry.COLUMN_MIN_TEMP + "), " +
+                    "MAX(" + StatsEntry.COLUMN_MAX_TEMP + "), " +
+                    "(SELECT " + StatsEntry.COLUMN_WARMEST_DATE + " FROM (" + sDaysInRangeQuery +
+                    ") ORDER BY " + StatsEntry.COLUMN_MAX_TEMP + " DESC, " +
+                    StatsEntry.COLUMN_WARMEST_DATE + " ASC LIMIT 1), " +
+                    weightedMean(StatsEntry.COLUMN_MEAN_TEMP, StatsEntry.COLUMN_DAYS) + ", " +
+                    weightedMean(StatsEntry.COLUMN_MEAN_HUMIDITY,
+                            StatsEntry.COLUMN_HUMIDITY_DAYS) + ", " +
+                    "SUM(" + StatsEntry.COLUMN_HUMIDITY_DAYS + ")" +
+                    " FROM (" + sDaysInRangeQuery + ")) WHERE " + StatsEntry.COLUMN_DAYS + " > 0";
+
+    //location_id = ? AND month = ?
+    private static final String sLocationAndMonthSelection =
+            StatsEntry.COLUMN_LOC_KEY + " = ? AND " + StatsEntry.COLUMN_MONTH + " = ?";
+
+    //location_id = ? AND month >= ? AND month < ?
+    private static final String sLocationAndMonthRangeSelection =
+            StatsEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    StatsEntry.COLUMN_MONTH + " >= ? AND " +
+                    StatsEntry.COLUMN_MONTH + " < ?";
+
+    // SUM() skips the nulls, and the mean of no days at all is null: x / 0 is null in SQLite
+    private static String weightedMean(String column, String weight) {
+        return "SUM(" + column + " * " + weight + ") / SUM(" + weight + ")";
+    }
+
+    /**
+     * @return an SQL expression of the start of the UTC month of the given time column.
+     */
+    static String monthStartExpression(String column) {
+        return "CAST(strftime('%s', " + column +
+                " / 1000, 'unixepoch', 'start of month') AS INTEGER) * 1000";
+    }
+
+    static long getMonthStart(long time) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    static long getNextMonthStart(long time) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(getMonthStart(time));
+        calendar.add(Calendar.MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Recomputes the summary of one month of a location from its days.
+     */
+    static void refreshMonth(SQLiteDatabase db, long locationId, long month) {
+        String location = Long.toString(locationId);
+        String start = Long.toString(month);
+        String end = Long.toString(getNextMonthStart(month));
+        db.delete(StatsEntry.TABLE_NAME, sLocationAndMonthSelection,
+                new String[]{location, start});
+        db.execSQL(sInsertMonthStatement, new String[]{location, start,
+                location, start, end, location, start, end,
+                location, start, end, location, start, end});
+    }
+
+    /**
+     * Recomputes the summaries of the months of the days a write to the weather table changed,
+     * or every summary if the write couldn't tell which days.  Must run in the transaction of the
+     * write.
+     */
+    static void refreshChanged(SQLiteDatabase db, ChangeNotifier changed) {
+        if (changed.isChangedAll()) {
+            rebuild(db);
+            return;
+        }
+        Changes changes = new Changes();
+        for (Map.Entry<Long, Set<Long>> entry : changed.getDatesByLocation().entrySet()) {
+            for (long date : entry.getValue()) {
+                changes.add(entry.getKey(), date);
+            }
+        }
+        changes.apply(db);
+    }
+
+    /**
+     * Recomputes every summary.  Meant for the rare changes that can touch any day.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        refreshRange(db, 0, END_OF_TIME);
+    }
+
+    /**
+     * Recomputes the summaries of every location for the months overlapping [start, end).
+     */
+    static void refreshRange(SQLiteDatabase db, long start, long end) {
+        String from = Long.toString(getMonthStart(start));
+        String to = Long.toString(getNextMonthStart(end - 1));
+        db.delete(StatsEntry.TABLE_NAME,
+                StatsEntry.COLUMN_MONTH + " >= ? AND " + StatsEntry.COLUMN_MONTH + " < ?",
+                new String[]{from, to});
+        Cursor cursor = db.rawQuery(
+                "SELECT DISTINCT " + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                        monthStartExpression(WeatherEntry.COLUMN_DATE) +
+                        " FROM " + WeatherEntry.TABLE_NAME + " WHERE " +
+                        WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                        WeatherEntry.COLUMN_DATE + " < ?" +
+                        " UNION SELECT DISTINCT " + HistoryEntry.COLUMN_LOC_KEY + ", " +
+                        monthStartExpression(HistoryEntry.COLUMN_START) +
+                        " FROM " + HistoryEntry.TABLE_NAME + " WHERE " +
+                        HistoryEntry.COLUMN_START + " >= ? AND " +
+                        HistoryEntry.COLUMN_START + " < ?",
+                new String[]{from, to, from, to});
+        try {
+            while (cursor.moveToNext()) {
+                refreshMonth(db, cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Deletes the summaries of locations that no longer exist.
+     */
+    static void deleteOrphans(SQLiteDatabase db) {
+        db.delete(StatsEntry.TABLE_NAME, StatsEntry.COLUMN_LOC_KEY + " NOT IN (SELECT " +
+                LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME + ")", null);
+    }
+
+    /**
+     * @return a cursor holding the statistics of a location over [start, end), or no row if
+     * there is no data in the range.
+     */
+    static Cursor query(SQLiteDatabase db, long locationId, long start, long end) {
+        end = Math.min(end, END_OF_TIME);
+        String location = Long.toString(locationId);
+
+        // Whole months come from the summaries, the partial months at both ends from their days
+        long firstMonth = getMonthStart(start) == start ? start : getNextMonthStart(start);
+        long endMonth = getMonthStart(end);
+        if (firstMonth >= endMonth) {
+            firstMonth = endMonth = end;
+        }
+
+        Accumulator accumulator = new Accumulator();
+        accumulator.addAll(db.query(StatsEntry.TABLE_NAME, SUMMARY_COLUMNS,
+                sLocationAndMonthRangeSelection,
+                new String[]{location, Long.toString(firstMonth), Long.toString(endMonth)},
+                null, null, null));
+        if (start < firstMonth) {
+            accumulator.addAll(queryDays(db, location, start, firstMonth));
+        }
+        if (endMonth < end) {
+            accumulator.addAll(queryDays(db, location, endMonth, end));
+        }
+
+        MatrixCursor result = new MatrixCursor(STATS_COLUMNS, 1);
+        if (accumulator.mDays > 0) {
+            result.addRow(new Object[]{
+                    accumulator.mDays,
+                    accumulator.mMin,
+                    accumulator.mMax,
+                    accumulator.mWarmestDate,
+                    accumulator.mMeanSum / accumulator.mDays,
+                    accumulator.mHumidityDays > 0
+                            ? accumulator.mHumiditySum / accumulator.mHumidityDays : null
+            });
+        }
+        return result;
+    }
+
+    private static Cursor queryDays(SQLiteDatabase db, String location, long start, long end) {
+        String from = Long.toString(start);
+        String to = Long.toString(end);
+        return db.rawQuery(sDaysInRangeQuery,
+                new String[]{location, from, to, location, from, to});
+    }
+
+    /**
+     * Collects the (location, month) pairs touched by a batch of writes, to refresh each of
+     * them once at the end of the batch.
+     */
+    static class Changes {
+        private final Map<Long, Set<Long>> mMonthsByLocation = new HashMap<Long, Set<Long>>();
+
+        void add(long locationId, long date) {
+            Set<Long> months = mMonthsByLocation.get(locationId);
+            if (months == null) {
+                months = new HashSet<Long>();
+                mMonthsByLocation.put(locationId, months);
+            }
+            months.add(getMonthStart(date));
+        }
+
+        /**
+         * Adds the months of the history rows matching the selection.  Must run before they are
+         * deleted.  A week counts in the month it starts in, as it does in the summaries.
+         */
+        void addMatchingHistory(SQLiteDatabase db, String selection, String[] selectionArgs) {
+            Cursor cursor = db.query(true, HistoryEntry.TABLE_NAME, new String[]{
+                            HistoryEntry.COLUMN_LOC_KEY,
+                            monthStartExpression(HistoryEntry.COLUMN_START)},
+                    selection, selectionArgs, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    add(cursor.getLong(0), cursor.getLong(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        void apply(SQLiteDatabase db) {
+            for (Map.Entry<Long, Set<Long>> entry : mMonthsByLocation.entrySet()) {
+                for (long month : entry.getValue()) {
+                    refreshMonth(db, entry.getKey(), month);
+                }
+            }
+        }
+    }
+
+    private static class Accumulator {
+        int mDays;
+        double mMin = Double.MAX_VALUE;
+        double mMax = -Double.MAX_VALUE;
+        long mWarmestDate;
+        double mMeanSum;
+        double mHumiditySum;
+        int mHumidityDays;
+
+        void addAll(Cursor cursor) {
+            try {
+                while (cursor.moveToNext()) {
+                    int days = cursor.getInt(COL_DAYS);
+                    double max = cursor.getDouble(COL_MAX);
+                    long date = cursor.getLong(COL_DATE);
+                    if (max > mMax || (max == mMax && date < mWarmestDate)) {
+                        mMax = max;
+                        mWarmestDate = date;
+                    }
+                    mMin = Math.min(mMin, cursor.getDouble(COL_MIN));
+                    mMeanSum += cursor.getDouble(COL_MEAN) * days;
+                    if (!cursor.isNull(COL_HUMIDITY)) {
+                        int humidityDays = cursor.getInt(COL_HUMIDITY_DAYS);
+                        mHumiditySum += cursor.getDouble(COL_HUMIDITY) * humidityDays;
+                        mHumidityDays += humidityDays;
+                    }
+                    mDays += days;
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -29,6 +29,9 @@ import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncPolicy;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
@@ -41,6 +44,8 @@ public class MyGcmListenerService extends GcmListenerService {
     private static final String EXTRA_DATA = "data";
     private static final String EXTRA_WEATHER = "weather";
     private static final String EXTRA_LOCATION = "location";
+    private static final String EXTRA_TICKLE = "tickle";
+    private static final String EXTRA_CHANGED = "changed";
 
     public static final int NOTIFICATION_ID = 1;
 
@@ -65,6 +70,13 @@ public class MyGcmListenerService extends GcmListenerService {
                 // Process message and then post a notification of the received message.
                 try {
                     JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
+                    if (jsonObject.optBoolean(EXTRA_TICKLE)) {
+                        // The forecast of a location changed upstream.  No notification, just
+                        // a targeted sync of the location if it's the one we display.
+                        onTickle(jsonObject.getString(EXTRA_LOCATION),
+                                jsonObject.optLong(EXTRA_CHANGED, System.currentTimeMillis()));
+                        return;
+                    }
                     String weather = jsonObject.getString(EXTRA_WEATHER);
                     String location = jsonObject.getString(EXTRA_LOCATION);
                     String alert =
@@ -79,6 +91,25 @@ public class MyGcmListenerService extends GcmListenerService {
         }
     }
 
+    /**
+     * Handles a "tickle" telling us the forecast of a location changed on the server.
+     *
+     * @param locationSetting The location_setting whose forecast changed.
+     * @param changedAt       When the forecast changed upstream, in milliseconds since the epoch.
+     */
+    private void onTickle(String locationSetting, long changedAt) {
+        // Syncs are recorded per place, whichever of its settings names it
+        String place = Utility.getCanonicalLocation(this, locationSetting);
+        SyncPolicy syncPolicy = new SyncPolicy(this);
+        boolean changed = syncPolicy.onPush(place, changedAt);
+        String preferredLocation = Utility.getPreferredLocation(this);
+        if (changed && (locationSetting.equals(preferredLocation)
+                || place.equals(Utility.getCanonicalLocation(this, preferredLocation)))) {
+            Log.d(TAG, "Tickle for " + locationSetting + ", syncing");
+            SunshineSyncAdapter.syncLocation(this, preferredLocation);
+        }
+    }
+
     /**
      *  Put the message into a notification and post it.
      *  This is just one simple example of what you might choose to do with a GCM message.
@@ -24,6 +24,8 @@ import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncPolicy;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
 import com.google.android.gms.iid.InstanceID;
 
@@ -38,6 +40,7 @@ public class RegistrationIntentService extends IntentService {
     @Override
     protected void onHandleIntent(Intent intent) {
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        SyncPolicy syncPolicy = new SyncPolicy(this);
 
         try {
             // In the (unlikely) event that multiple refresh operations occur simultaneously,
@@ -53,6 +56,13 @@ public class RegistrationIntentService extends IntentService {
                     String token = instanceID.getToken(senderId,
                             GoogleCloudMessaging.INSTANCE_ID_SCOPE, null);
                     sendRegistrationToServer(token);
+
+                    // The server will tickle us when the forecast changes, so polling can fall
+                    // back to the long safety interval.
+                    if (!syncPolicy.isPushEnabled()) {
+                        syncPolicy.setPushEnabled(true);
+                        SunshineSyncAdapter.updatePeriodicSync(this);
+                    }
                 }
 
                 // You should store a boolean that indicates whether the generated token has been
@@ -66,6 +76,12 @@ public class RegistrationIntentService extends IntentService {
             // If an exception happens while fetching the new token or updating our registration data
             // on a third-party server, this ensures that we'll attempt the update at a later time.
             sharedPreferences.edit().putBoolean(MainActivity.SENT_TOKEN_TO_SERVER, false).apply();
+
+            // Without a registration we won't be tickled, so go back to regular polling.
+            if (syncPolicy.isPushEnabled()) {
+                syncPolicy.setPushEnabled(false);
+                SunshineSyncAdapter.updatePeriodicSync(this);
+            }
         }
     }
 
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+
+import com.example.android.sunshine.app.core.BinaryForecast;
+import com.example.android.sunshine.app.core.ForecastHandler;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * The daily forecast of the forecast proxy, in the {@link BinaryForecast} encoding.  The proxy
+ * takes the location setting and the number of days like OpenWeatherMap, in metric units, and
+ * holds the API key itself.  It knows places by their setting only, the city id isn't sent.
+ */
+public class BinaryForecastSource implements ForecastSource {
+
+    private static final String QUERY_PARAM = "q";
+    private static final String DAYS_PARAM = "cnt";
+
+    private final String mBaseUrl;
+
+    /**
+     * @param baseUrl The URL of the proxy's daily forecast, the query parameters are appended.
+     */
+    public BinaryForecastSource(String baseUrl) {
+        mBaseUrl = baseUrl;
+    }
+
+    @Override
+    public URL getForecastUrl(String locationSetting, long cityId, int days) throws IOException {
+        Uri builtUri = Uri.parse(mBaseUrl).buildUpon()
+                .appendQueryParameter(QUERY_PARAM, locationSetting)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(days))
+                .build();
+        return new URL(builtUri.toString());
+    }
+
+    @Override
+    public int parse(byte[] body, ForecastHandler handler) throws IOException {
+        return BinaryForecast.decode(body, handler);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-host circuit breaker.  After {@link #FAILURE_THRESHOLD} consecutive failures the circuit
+ * opens and requests to the host fail fast for {@link #OPEN_DURATION}.  After that a single
+ * trial request is let through: success closes the circuit, failure opens it again for twice as
+ * long, up to {@link #MAX_OPEN_DURATION}.
+ */
+public class CircuitBreaker {
+
+    static final int FAILURE_THRESHOLD = 3;
+    static final long OPEN_DURATION = 5 * 60 * 1000;
+    static final long MAX_OPEN_DURATION = 60 * 60 * 1000;
+
+    private static final Map<String, CircuitBreaker> sBreakers =
+            new HashMap<String, CircuitBreaker>();
+
+    private int mConsecutiveFailures;
+    private long mOpenDuration = OPEN_DURATION;
+    private long mOpenUntil;
+    private boolean mTrialInFlight;
+
+    /**
+     * @return the breaker shared by every request to the given host.
+     */
+    public static CircuitBreaker forHost(String host) {
+        synchronized (sBreakers) {
+            CircuitBreaker breaker = sBreakers.get(host);
+            if (breaker == null) {
+                breaker = new CircuitBreaker();
+                sBreakers.put(host, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    // Forgets the state of every host.  Only meant for tests.
+    static void resetAll() {
+        synchronized (sBreakers) {
+            sBreakers.clear();
+        }
+    }
+
+    /**
+     * @return true if a request to the host may go out now.
+     */
+    public synchronized boolean allowRequest(long now) {
+        if (mConsecutiveFailures < FAILURE_THRESHOLD) {
+            return true;
+        }
+        if (now < mOpenUntil || mTrialInFlight) {
+            return false;
+        }
+        // Half open: let a single trial request through
+        mTrialInFlight = true;
+        return true;
+    }
+
+    public synchronized void recordSuccess() {
+        mConsecutiveFailures = 0;
+        mOpenDuration = OPEN_DURATION;
+        mOpenUntil = 0;
+        mTrialInFlight = false;
+    }
+
+    public synchronized void recordFailure(long now) {
+        if (mTrialInFlight) {
+            // The trial failed, stay away for longer
+            mTrialInFlight = false;
+            mOpenDuration = Math.min(MAX_OPEN_DURATION, mOpenDuration * 2);
+            mOpenUntil = now + mOpenDuration;
+            return;
+        }
+        mConsecutiveFailures++;
+        if (mConsecutiveFailures == FAILURE_THRESHOLD) {
+            mOpenUntil = now + mOpenDuration;
+        }
+    }
+
+    /**
+     * A request that was called off says nothing about the host.  If it was the trial, the next
+     * request is one.
+     */
+    public synchronized void recordCancelled() {
+        mTrialInFlight = false;
+    }
+
+    /**
+     * @return how long until the circuit lets a request through again, in milliseconds.
+     */
+    public synchronized long getRetryAfter(long now) {
+        if (mConsecutiveFailures < FAILURE_THRESHOLD) {
+            return 0;
+        }
+        return Math.max(0, mOpenUntil - now);
+    }
+}
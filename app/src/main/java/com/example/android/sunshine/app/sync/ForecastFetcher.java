@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SyncResult;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+/**
+ * Fetches forecast data with bounded retries, exponential backoff with jitter, and a per-host
+ * {@link CircuitBreaker}.  Failures are reported into the {@link SyncResult} so the sync
+ * framework backs off as well.
+ */
+public class ForecastFetcher {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    /**
+     * Receives the body of a successful response, as a stream of bytes.  Throwing a
+     * {@link ServerException} from here marks the response as a server failure, which is retried
+     * like any other.
+     */
+    public interface ResponseHandler {
+        void onResponse(InputStream body) throws IOException, JSONException;
+    }
+
+    /**
+     * The server answered, but with an error that is worth retrying: a 5xx or 429 status, an
+     * empty body, or an error code inside the payload.
+     */
+    public static class ServerException extends IOException {
+        public ServerException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The server rejected the request itself.  Sending it again won't help.
+     */
+    public static class ClientException extends IOException {
+        public ClientException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The circuit of the host is open, the request was not sent.
+     */
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String host) {
+            super("Circuit open for " + host);
+        }
+    }
+
+    private final ForecastHttpClient mClient;
+    private final RetryPolicy mRetryPolicy;
+
+    public ForecastFetcher() {
+        this(new ForecastHttpClient(), new RetryPolicy());
+    }
+
+    public ForecastFetcher(ForecastHttpClient client, RetryPolicy retryPolicy) {
+        mClient = client;
+        mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * Fetches the URL and hands the body to the handler, retrying both on failure.
+     *
+     * @throws IOException   if every attempt failed, or the host's circuit is open.
+     * @throws JSONException if the handler could not parse the response.  Not retried.
+     */
+    public void fetch(URL url, ResponseHandler handler, SyncResult syncResult)
+            throws IOException, JSONException {
+        fetch(url, handler, syncResult, null);
+    }
+
+    /**
+     * Like {@link #fetch(URL, ResponseHandler, SyncResult)}, recording the time each attempt
+     * took to connect and get the response headers into the trace.
+     */
+    public void fetch(URL url, ResponseHandler handler, SyncResult syncResult, SyncTrace trace)
+            throws IOException, JSONException {
+        CircuitBreaker breaker = CircuitBreaker.forHost(url.getHost());
+        int attempts = 0;
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (!breaker.allowRequest(now)) {
+                delaySync(syncResult, now, breaker.getRetryAfter(now));
+                throw new CircuitOpenException(url.getHost());
+            }
+            try {
+                download(url, handler, trace);
+                breaker.recordSuccess();
+                return;
+            } catch (JSONException e) {
+                // The server is up, it's just not making sense.  Retrying won't help.
+                breaker.recordSuccess();
+                syncResult.stats.numParseExceptions++;
+                throw e;
+            } catch (ClientException e) {
+                breaker.recordSuccess();
+                syncResult.stats.numIoExceptions++;
+                throw e;
+            } catch (IOException e) {
+                if (isCancellation(e)) {
+                    // The sync was called off, the host did nothing wrong
+                    breaker.recordCancelled();
+                    throw e;
+                }
+                now = System.currentTimeMillis();
+                breaker.recordFailure(now);
+                syncResult.stats.numIoExceptions++;
+                attempts++;
+                if (!mRetryPolicy.shouldRetry(attempts)) {
+                    delaySync(syncResult, now, Math.max(mRetryPolicy.getMaxBackoff(attempts + 1),
+                            breaker.getRetryAfter(now)));
+                    throw e;
+                }
+                long backoff = mRetryPolicy.getBackoff(attempts);
+                Log.d(LOG_TAG, "Attempt " + attempts + " failed, retrying in " + backoff + "ms", e);
+                sleep(backoff);
+            }
+        }
+    }
+
+    // Timeouts are worth retrying, an interrupted (cancelled) sync is not.
+    private static boolean isCancellation(IOException e) {
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+    }
+
+    // Asks the sync framework not to retry before the given delay has passed.
+    static void delaySync(SyncResult syncResult, long now, long delay) {
+        // delayUntil is a wall clock time, in seconds
+        syncResult.delayUntil = Math.max(syncResult.delayUntil, (now + delay) / 1000);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // The sync was cancelled
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during backoff");
+        }
+    }
+
+    /**
+     * @return the bytes read from response bodies so far, as they came over the network.
+     */
+    public long getBytesReceived() {
+        return mClient.getBytesReceived();
+    }
+
+    private void download(URL url, ResponseHandler handler, SyncTrace trace)
+            throws IOException, JSONException {
+        long start = SyncTrace.now();
+        ForecastHttpClient.Response response = mClient.get(url);
+        if (trace != null) {
+            trace.record(SyncTrace.STAGE_CONNECT, start, 0, 0);
+        }
+        try {
+            int status = response.getStatus();
+            if (status == HttpURLConnection.HTTP_OK
+                    // OWM answers unknown locations with a 404 whose body carries the error code
+                    || status == HttpURLConnection.HTTP_NOT_FOUND) {
+                handler.onResponse(response.getBody());
+            } else if (status >= HttpURLConnection.HTTP_INTERNAL_ERROR || status == 429) {
+                throw new ServerException("HTTP " + status);
+            } else {
+                throw new ClientException("Unexpected HTTP " + status);
+            }
+        } finally {
+            response.close();
+        }
+    }
+}
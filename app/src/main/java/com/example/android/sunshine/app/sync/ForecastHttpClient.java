@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client for the forecast API.
+ * <p>
+ * Connections are pooled by {@link HttpURLConnection}, which only keeps a connection alive if its
+ * response was read to the end and closed, so {@link Response#close()} drains the body instead
+ * of disconnecting.  Responses are gzipped on the wire and bodies are handed out as byte streams,
+ * so the parser reads them without going through lines and intermediate strings.
+ */
+public class ForecastHttpClient {
+
+    static final int CONNECT_TIMEOUT = 15 * 1000;
+    static final int READ_TIMEOUT = 20 * 1000;
+
+    // Past this, draining a body costs more than opening a new connection
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+
+    public ForecastHttpClient() {
+        this(CONNECT_TIMEOUT, READ_TIMEOUT);
+    }
+
+    /**
+     * @param connectTimeout Connect timeout, in milliseconds.
+     * @param readTimeout    Read timeout, in milliseconds.
+     */
+    public ForecastHttpClient(int connectTimeout, int readTimeout) {
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    /**
+     * Sends a GET request.  The caller must close the response.
+     */
+    public Response get(URL url) throws IOException {
+        return newCall(url).execute();
+    }
+
+    /**
+     * @return a GET request that another thread can cancel, e.g. once a hedged request won.
+     */
+    public Call newCall(URL url) {
+        return new Call(url);
+    }
+
+    /**
+     * A GET request to send once.  Cancelling it disconnects whatever it is waiting for: the
+     * response, or the body of the response.
+     */
+    public class Call {
+        private final URL mUrl;
+        private HttpURLConnection mConnection;
+        private boolean mCancelled;
+
+        Call(URL url) {
+            mUrl = url;
+        }
+
+        /**
+         * Sends the request.  The caller must close the response.
+         *
+         * @throws InterruptedIOException if the call was cancelled.
+         */
+        public Response execute() throws IOException {
+            HttpURLConnection urlConnection = (HttpURLConnection) mUrl.openConnection();
+            urlConnection.setRequestMethod("GET");
+            urlConnection.setConnectTimeout(mConnectTimeout);
+            urlConnection.setReadTimeout(mReadTimeout);
+            // Asking for gzip ourselves turns off the transparent decompression of newer
+            // platforms, but works the same everywhere and lets us count the bytes actually
+            // transferred.
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+            synchronized (this) {
+                if (mCancelled) {
+                    throw new InterruptedIOException("Cancelled");
+                }
+                mConnection = urlConnection;
+            }
+            mRequestCount.incrementAndGet();
+            try {
+                return new Response(urlConnection, urlConnection.getResponseCode());
+            } catch (IOException e) {
+                urlConnection.disconnect();
+                if (isCancelled()) {
+                    throw new InterruptedIOException("Cancelled");
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Disconnects the request, its {@link #execute()} or the reading of its body fails.
+         */
+        public void cancel() {
+            HttpURLConnection connection;
+            synchronized (this) {
+                mCancelled = true;
+                connection = mConnection;
+            }
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        public synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    /**
+     * @return the number of requests sent by this client.
+     */
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return the number of body bytes received by this client, as transferred.
+     */
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    /**
+     * Reads a whole stream as UTF-8, decoding it once.
+     */
+    public static String readString(InputStream in) throws IOException {
+        return readFully(in).toString("UTF-8");
+    }
+
+    /**
+     * Reads a whole stream, for the formats that aren't text.
+     */
+    public static byte[] readBytes(InputStream in) throws IOException {
+        return readFully(in).toByteArray();
+    }
+
+    private static ByteArrayOutputStream readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out;
+    }
+
+    public class Response {
+        private final HttpURLConnection mConnection;
+        private final int mStatus;
+        private InputStream mRawStream;
+        private InputStream mBody;
+
+        Response(HttpURLConnection connection, int status) {
+            mConnection = connection;
+            mStatus = status;
+        }
+
+        public int getStatus() {
+            return mStatus;
+        }
+
+        /**
+         * @return the decompressed body, empty if there is none.
+         */
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                InputStream stream = mStatus >= HttpURLConnection.HTTP_BAD_REQUEST
+                        ? mConnection.getErrorStream() : mConnection.getInputStream();
+                if (stream == null) {
+                    stream = new ByteArrayInputStream(new byte[0]);
+                }
+                mRawStream = new CountingInputStream(stream);
+                mBody = "gzip".equalsIgnoreCase(mConnection.getContentEncoding())
+                        ? new GZIPInputStream(mRawStream, BUFFER_SIZE) : mRawStream;
+            }
+            return mBody;
+        }
+
+        /**
+         * Reads what is left of the body so the connection goes back to the pool.
+         */
+        public void close() {
+            try {
+                getBody();
+                if (drain(mBody) && drain(mRawStream)) {
+                    mRawStream.close();
+                    return;
+                }
+            } catch (IOException e) {
+                // The connection is broken, don't reuse it
+            }
+            mConnection.disconnect();
+        }
+
+        // Returns true if the stream was read to the end
+        private boolean drain(InputStream in) throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int drained = 0;
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                drained += count;
+                if (drained > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mBytesReceived.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mBytesReceived.addAndGet(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            mBytesReceived.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import com.example.android.sunshine.app.core.ForecastHandler;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Where the sync gets the daily forecast from, and how it reads the responses.  The adapter
+ * fetches the URL through its {@link ForecastFetcher}, the source decodes the body to the
+ * {@link ForecastHandler} that builds the rows.
+ */
+public interface ForecastSource {
+
+    /**
+     * @param locationSetting The location string the user chose, e.g. "94043".
+     * @param cityId          The OpenWeatherMap id of the city of the setting, or 0 until a sync
+     *                        found it.  Sources that can ask by id do, it names the place
+     *                        unambiguously and spares the server a free-text search.
+     * @param days            The number of days to ask for, today first.
+     */
+    URL getForecastUrl(String locationSetting, long cityId, int days) throws IOException;
+
+    /**
+     * @param body The whole body of the response.
+     * @return HttpURLConnection.HTTP_OK once the forecast went to the handler, or the error code
+     * of the response, in which case the handler hears nothing.
+     * @throws IOException   if the body is cut short, or in another format.
+     * @throws JSONException if the body is JSON that doesn't make sense.
+     */
+    int parse(byte[] body, ForecastHandler handler) throws IOException, JSONException;
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SyncResult;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.core.GroupJsonParser;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Fetches the current weather of many cities by their OpenWeatherMap ids, a batch of ids per
+ * group request rather than a query per city.  Each response is parsed once and split into its
+ * cities for the {@link GroupJsonParser.Handler}.  Requests go through a {@link ForecastFetcher},
+ * with its retries and circuit breaker.
+ */
+public class GroupFetcher {
+
+    // The most ids OpenWeatherMap takes in a group request
+    public static final int MAX_BATCH_SIZE = 20;
+
+    private static final String GROUP_BASE_URL = "http://api.openweathermap.org/data/2.5/group?";
+    private static final String ID_PARAM = "id";
+    private static final String UNITS_PARAM = "units";
+    private static final String APPID_PARAM = "APPID";
+
+    private final ForecastFetcher mFetcher;
+    private final String mBaseUrl;
+    private final int mBatchSize;
+
+    public GroupFetcher(ForecastFetcher fetcher) {
+        this(fetcher, GROUP_BASE_URL, MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param baseUrl   The URL of the group endpoint, the query parameters are appended to it.
+     * @param batchSize The number of ids per request, at most {@link #MAX_BATCH_SIZE}.
+     */
+    public GroupFetcher(ForecastFetcher fetcher, String baseUrl, int batchSize) {
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch size " + batchSize + " is not between 1 and "
+                    + MAX_BATCH_SIZE);
+        }
+        mFetcher = fetcher;
+        mBaseUrl = baseUrl;
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Fetches the cities a batch at a time, handing each batch's cities to the handler before
+     * the next batch is asked for.
+     *
+     * @param trace The trace to record the downloads into, or null.
+     * @return the number of batches, a request each unless the fetcher had to retry.
+     * @throws IOException   if a batch failed.  The batches before it reached the handler.
+     * @throws JSONException if a response could not be parsed.
+     */
+    public int fetch(long[] cityIds, final GroupJsonParser.Handler handler, SyncResult syncResult,
+                     final SyncTrace trace) throws IOException, JSONException {
+        int batches = 0;
+        for (int first = 0; first < cityIds.length; first += mBatchSize) {
+            int end = Math.min(first + mBatchSize, cityIds.length);
+            mFetcher.fetch(buildUrl(cityIds, first, end), new ForecastFetcher.ResponseHandler() {
+                @Override
+                public void onResponse(InputStream body) throws IOException, JSONException {
+                    long start = SyncTrace.now();
+                    long bytes = mFetcher.getBytesReceived();
+                    String groupJsonStr = ForecastHttpClient.readString(body);
+                    if (trace != null) {
+                        trace.record(SyncTrace.STAGE_GROUP_DOWNLOAD, start,
+                                mFetcher.getBytesReceived() - bytes, 0);
+                    }
+                    if (groupJsonStr.length() == 0) {
+                        throw new ForecastFetcher.ServerException("Empty response body");
+                    }
+                    int errorCode = GroupJsonParser.parse(groupJsonStr, handler);
+                    if (errorCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                            && errorCode < HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                        // An unknown id or key, asking again won't help
+                        throw new ForecastFetcher.ClientException("Error code " + errorCode);
+                    } else if (errorCode != HttpURLConnection.HTTP_OK) {
+                        throw new ForecastFetcher.ServerException("Error code " + errorCode);
+                    }
+                }
+            }, syncResult, trace);
+            batches++;
+        }
+        return batches;
+    }
+
+    private URL buildUrl(long[] cityIds, int first, int end) throws IOException {
+        StringBuilder ids = new StringBuilder((end - first) * 8);
+        for (int i = first; i < end; i++) {
+            if (i > first) {
+                ids.append(',');
+            }
+            ids.append(cityIds[i]);
+        }
+        Uri builtUri = Uri.parse(mBaseUrl).buildUpon()
+                .appendQueryParameter(ID_PARAM, ids.toString())
+                .appendQueryParameter(UNITS_PARAM, "metric")
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
+        return new URL(builtUri.toString());
+    }
+}
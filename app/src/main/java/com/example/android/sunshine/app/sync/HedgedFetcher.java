@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SyncResult;
+import android.util.Log;
+
+import com.example.android.sunshine.app.core.ForecastRecord;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the daily forecast from a primary backend, and from a secondary one as well when the
+ * primary is slower than it usually is: slower than a percentile of its recent latencies.  The
+ * first valid response wins and the other request is cancelled.  A failed request hands over to
+ * the other backend at once, and neither gets past the deadline of the fetch.
+ * <p>
+ * Unlike the {@link ForecastFetcher} nothing is retried, the second backend is the retry.  Both
+ * respect the {@link CircuitBreaker} of their host, and a fetch that gets no valid response
+ * asks the sync framework to back off like the ForecastFetcher does.
+ */
+public class HedgedFetcher {
+    private static final String LOG_TAG = HedgedFetcher.class.getSimpleName();
+
+    // The secondary is asked when the primary takes longer than 95% of its recent requests,
+    // about one request in twenty
+    public static final int DEFAULT_HEDGE_PERCENTILE = 95;
+    // The whole fetch, both requests included
+    public static final long DEFAULT_DEADLINE = 30 * 1000;
+    // Until the primary has answered enough requests to have a percentile
+    static final long INITIAL_HEDGE_DELAY = 2 * 1000;
+    static final int MIN_SAMPLES = 10;
+    // The latencies the percentile is taken over, the most recent ones
+    private static final int WINDOW = 100;
+
+    /**
+     * No valid response came before the deadline of the fetch.
+     */
+    public static class DeadlineException extends InterruptedIOException {
+        public DeadlineException(long deadline) {
+            super("No forecast within " + deadline + "ms");
+        }
+    }
+
+    /**
+     * The response that won, decoded by its source while it was checked.
+     */
+    public static class Result {
+        private final ForecastSource mSource;
+        private final byte[] mBody;
+        private final int mErrorCode;
+        private final ForecastRecord mForecast;
+        private final boolean mHedged;
+
+        Result(ForecastSource source, byte[] body, int errorCode, ForecastRecord forecast,
+               boolean hedged) {
+            mSource = source;
+            mBody = body;
+            mErrorCode = errorCode;
+            mForecast = forecast;
+            mHedged = hedged;
+        }
+
+        public ForecastSource getSource() {
+            return mSource;
+        }
+
+        public byte[] getBody() {
+            return mBody;
+        }
+
+        /**
+         * @return HttpURLConnection.HTTP_OK, or the error code inside the response, which is
+         * not a server error.
+         */
+        public int getErrorCode() {
+            return mErrorCode;
+        }
+
+        /**
+         * @return the decoded forecast, empty unless the error code is HTTP_OK.  The body
+         * needn't be decoded again.
+         */
+        public ForecastRecord getForecast() {
+            return mForecast;
+        }
+
+        /**
+         * @return true if the secondary was asked, whichever backend won.
+         */
+        public boolean isHedged() {
+            return mHedged;
+        }
+    }
+
+    private final ForecastHttpClient mClient;
+    private final ForecastSource mPrimary;
+    private final ForecastSource mSecondary;
+    private final int mHedgePercentile;
+    private final long mDeadline;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    // The primary's latencies in milliseconds, a ring of the last WINDOW ones
+    private final long[] mLatencies = new long[WINDOW];
+    private int mLatencyCount;
+
+    public HedgedFetcher(ForecastHttpClient client, ForecastSource primary,
+                         ForecastSource secondary) {
+        this(client, primary, secondary, DEFAULT_HEDGE_PERCENTILE, DEFAULT_DEADLINE);
+    }
+
+    /**
+     * @param hedgePercentile The percentile of the primary's latencies past which the
+     *                        secondary is asked as well, 0 to 100.
+     * @param deadline        The longest the whole fetch takes, in milliseconds.
+     */
+    public HedgedFetcher(ForecastHttpClient client, ForecastSource primary,
+                         ForecastSource secondary, int hedgePercentile, long deadline) {
+        if (hedgePercentile < 0 || hedgePercentile > 100) {
+            throw new IllegalArgumentException("Percentile " + hedgePercentile);
+        }
+        mClient = client;
+        mPrimary = primary;
+        mSecondary = secondary;
+        mHedgePercentile = hedgePercentile;
+        mDeadline = deadline;
+    }
+
+    /**
+     * @return how long the primary gets before the secondary is asked too, in milliseconds.
+     */
+    public synchronized long getHedgeDelay() {
+        int count = Math.min(mLatencyCount, WINDOW);
+        if (count < MIN_SAMPLES) {
+            return Math.min(INITIAL_HEDGE_DELAY, mDeadline);
+        }
+        long[] sorted = Arrays.copyOf(mLatencies, count);
+        Arrays.sort(sorted);
+        // The nearest rank
+        int rank = (int) Math.ceil(mHedgePercentile / 100.0 * count);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private synchronized void recordLatency(long millis) {
+        mLatencies[mLatencyCount % WINDOW] = millis;
+        mLatencyCount++;
+    }
+
+    /**
+     * Fetches the forecast of the location from the primary, and the secondary if the primary
+     * is slow or fails.
+     *
+     * @return the first valid response.  A 404 is one, the location is unknown.
+     * @throws DeadlineException if no valid response came in time.  Both requests are cancelled.
+     * @throws IOException       if both backends failed, the last failure.
+     * @throws JSONException     if both backends failed and the last one sent bad JSON.
+     */
+    public Result fetch(String locationSetting, long cityId, int days, SyncResult syncResult)
+            throws IOException, JSONException {
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(mDeadline);
+        long hedgeNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(getHedgeDelay());
+        BlockingQueue<Attempt> finished = new LinkedBlockingQueue<Attempt>();
+
+        Attempt primary = start(mPrimary, locationSetting, cityId, days, finished);
+        Attempt secondary = null;
+        int pending = 1;
+        Exception failure = null;
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                if (now >= deadlineNanos) {
+                    delaySync(syncResult, primary, secondary);
+                    throw new DeadlineException(mDeadline);
+                }
+                if (secondary == null && now >= hedgeNanos) {
+                    Log.d(LOG_TAG, "Primary slower than " + getHedgeDelay() + "ms, hedging");
+                    secondary = start(mSecondary, locationSetting, cityId, days, finished);
+                    pending++;
+                }
+                long waitNanos = (secondary == null ? Math.min(hedgeNanos, deadlineNanos)
+                        : deadlineNanos) - now;
+                Attempt attempt = finished.poll(waitNanos, TimeUnit.NANOSECONDS);
+                if (attempt == null) {
+                    continue;
+                }
+                pending--;
+                if (attempt.mFailure == null) {
+                    if (attempt == primary) {
+                        recordLatency(attempt.getLatency());
+                    }
+                    return new Result(attempt.mSource, attempt.mBody, attempt.mErrorCode,
+                            attempt.mForecast, secondary != null);
+                }
+
+                failure = attempt.mFailure;
+                if (failure instanceof JSONException) {
+                    syncResult.stats.numParseExceptions++;
+                } else {
+                    syncResult.stats.numIoExceptions++;
+                }
+                Log.d(LOG_TAG, "Backend failed", failure);
+                if (secondary == null) {
+                    // No point waiting for the hedge delay
+                    secondary = start(mSecondary, locationSetting, cityId, days, finished);
+                    pending++;
+                } else if (pending == 0) {
+                    delaySync(syncResult, primary, secondary);
+                    if (failure instanceof JSONException) {
+                        throw (JSONException) failure;
+                    } else if (failure instanceof IOException) {
+                        throw (IOException) failure;
+                    }
+                    throw (RuntimeException) failure;
+                }
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching");
+        } finally {
+            // The loser, or both past the deadline.  The primary's time so far is a latency it
+            // had at least, leaving it out would hide how slow it was.
+            if (primary.cancel()) {
+                recordLatency(primary.getLatency());
+            }
+            if (secondary != null) {
+                secondary.cancel();
+            }
+        }
+    }
+
+    // Neither backend gave a valid response.  The sync framework waits at least as long as a
+    // fetch may take before the next sync, longer if a circuit stays open longer.
+    private void delaySync(SyncResult syncResult, Attempt primary, Attempt secondary) {
+        long now = System.currentTimeMillis();
+        long delay = Math.max(mDeadline, primary.mBreaker.getRetryAfter(now));
+        if (secondary != null) {
+            delay = Math.max(delay, secondary.mBreaker.getRetryAfter(now));
+        }
+        ForecastFetcher.delaySync(syncResult, now, delay);
+    }
+
+    private Attempt start(ForecastSource source, String locationSetting, long cityId, int days,
+                          BlockingQueue<Attempt> finished) throws IOException {
+        URL url = source.getForecastUrl(locationSetting, cityId, days);
+        Attempt attempt = new Attempt(source, url, finished);
+        mExecutor.execute(attempt);
+        return attempt;
+    }
+
+    /**
+     * A request to one backend, which puts itself in the queue once it has a valid response or
+     * failed.  It tells the circuit breaker of its host how it went, even when nobody waits for
+     * it anymore.
+     */
+    private class Attempt implements Runnable {
+        final ForecastSource mSource;
+        private final String mHost;
+        private final CircuitBreaker mBreaker;
+        private final BlockingQueue<Attempt> mFinished;
+        private final ForecastHttpClient.Call mCall;
+        private final long mStartNanos = System.nanoTime();
+        private volatile long mEndNanos;
+        private volatile boolean mDone;
+        // Published by the queue
+        byte[] mBody;
+        int mErrorCode;
+        final ForecastRecord mForecast = new ForecastRecord();
+        Exception mFailure;
+
+        Attempt(ForecastSource source, URL url, BlockingQueue<Attempt> finished) {
+            mSource = source;
+            mHost = url.getHost();
+            mBreaker = CircuitBreaker.forHost(mHost);
+            mFinished = finished;
+            mCall = mClient.newCall(url);
+        }
+
+        @Override
+        public void run() {
+            boolean allowed = false;
+            try {
+                allowed = mBreaker.allowRequest(System.currentTimeMillis());
+                if (!allowed) {
+                    throw new ForecastFetcher.CircuitOpenException(mHost);
+                }
+                mBody = download();
+                mBreaker.recordSuccess();
+            } catch (JSONException | ForecastFetcher.ClientException e) {
+                // The server is up, it's just not making sense
+                mFailure = e;
+                mBreaker.recordSuccess();
+            } catch (IOException | RuntimeException e) {
+                mFailure = e;
+                if (!allowed) {
+                    // The circuit is open, nothing went out
+                } else if (mCall.isCancelled()) {
+                    mBreaker.recordCancelled();
+                } else {
+                    mBreaker.recordFailure(System.currentTimeMillis());
+                }
+            }
+            mEndNanos = System.nanoTime();
+            mDone = true;
+            mFinished.add(this);
+        }
+
+        private byte[] download() throws IOException, JSONException {
+            ForecastHttpClient.Response response = mCall.execute();
+            try {
+                int status = response.getStatus();
+                if (status >= HttpURLConnection.HTTP_INTERNAL_ERROR || status == 429) {
+                    throw new ForecastFetcher.ServerException("HTTP " + status);
+                } else if (status != HttpURLConnection.HTTP_OK
+                        // OWM answers unknown locations with a 404 whose body carries the code
+                        && status != HttpURLConnection.HTTP_NOT_FOUND) {
+                    throw new ForecastFetcher.ClientException("Unexpected HTTP " + status);
+                }
+                byte[] body = ForecastHttpClient.readBytes(response.getBody());
+                if (body.length == 0) {
+                    throw new ForecastFetcher.ServerException("Empty response body");
+                }
+                // Decoded once, the winner's days are kept for the caller
+                mErrorCode = mSource.parse(body, mForecast);
+                if (mErrorCode >= HttpURLConnection.HTTP_INTERNAL_ERROR || mErrorCode == 429) {
+                    throw new ForecastFetcher.ServerException("Error code " + mErrorCode);
+                }
+                return body;
+            } finally {
+                response.close();
+            }
+        }
+
+        /**
+         * @return true if the attempt was still running.
+         */
+        boolean cancel() {
+            if (mDone) {
+                return false;
+            }
+            mCall.cancel();
+            return true;
+        }
+
+        // In milliseconds, until now if the attempt is still running
+        long getLatency() {
+            long end = mDone ? mEndNanos : System.nanoTime();
+            return TimeUnit.NANOSECONDS.toMillis(end - mStartNanos);
+        }
+    }
+}
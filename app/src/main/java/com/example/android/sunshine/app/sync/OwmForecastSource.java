@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.core.ForecastHandler;
+import com.example.android.sunshine.app.core.ForecastJsonParser;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * The daily forecast of OpenWeatherMap, in JSON.
+ */
+public class OwmForecastSource implements ForecastSource {
+
+    // Possible parameters are available at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    private static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    private static final String QUERY_PARAM = "q";
+    private static final String CITY_ID_PARAM = "id";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    @Override
+    public URL getForecastUrl(String locationSetting, long cityId, int days) throws IOException {
+        Uri.Builder builder = Uri.parse(FORECAST_BASE_URL).buildUpon();
+        if (cityId != 0) {
+            builder.appendQueryParameter(CITY_ID_PARAM, Long.toString(cityId));
+        } else {
+            builder.appendQueryParameter(QUERY_PARAM, locationSetting);
+        }
+        Uri builtUri = builder
+                .appendQueryParameter(FORMAT_PARAM, "json")
+                .appendQueryParameter(UNITS_PARAM, "metric")
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(days))
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
+        return new URL(builtUri.toString());
+    }
+
+    @Override
+    public int parse(byte[] body, ForecastHandler handler) throws IOException, JSONException {
+        return ForecastJsonParser.parse(new String(body, "UTF-8"), handler);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.util.Random;
+
+/**
+ * Bounded retries with exponential backoff and "full jitter": the delay before retry n is picked
+ * uniformly between 0 and min(maxDelay, baseDelay * 2^n), so clients that failed together don't
+ * come back together.
+ */
+public class RetryPolicy {
+
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final long DEFAULT_BASE_DELAY = 1000;
+    static final long DEFAULT_MAX_DELAY = 30 * 1000;
+
+    private final int mMaxAttempts;
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+    private final Random mRandom;
+
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, new Random());
+    }
+
+    /**
+     * @param maxAttempts Total number of attempts, including the first one.
+     * @param baseDelay   Backoff unit, in milliseconds.
+     * @param maxDelay    Upper bound of a single backoff, in milliseconds.
+     * @param random      Source of the jitter.
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, Random random) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelay = baseDelay;
+        mMaxDelay = maxDelay;
+        mRandom = random;
+    }
+
+    /**
+     * @param attempts How many attempts failed so far.
+     * @return true if another attempt is allowed.
+     */
+    public boolean shouldRetry(int attempts) {
+        return attempts < mMaxAttempts;
+    }
+
+    /**
+     * @param attempts How many attempts failed so far.
+     * @return the upper bound of the backoff after that many failures, in milliseconds.
+     */
+    public long getMaxBackoff(int attempts) {
+        // Shift at most 30 bits so the multiplication can't overflow
+        int exponent = Math.min(30, Math.max(0, attempts - 1));
+        return Math.min(mMaxDelay, mBaseDelay << exponent);
+    }
+
+    /**
+     * @param attempts How many attempts failed so far.
+     * @return how long to wait before the next attempt, in milliseconds.
+     */
+    public long getBackoff(int attempts) {
+        long maxBackoff = getMaxBackoff(attempts);
+        synchronized (mRandom) {
+            return (long) (mRandom.nextDouble() * maxBackoff);
+        }
+    }
+}
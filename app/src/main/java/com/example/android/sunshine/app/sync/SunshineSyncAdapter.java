@@ -26,8 +26,11 @@ import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
+import android.support.v4.util.LongSparseArray;
+import android.text.TextUtils;
 import android.text.format.Time;
 import android.util.Log;
 
@@ -36,6 +39,11 @@ import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.core.ForecastHandler;
+import com.example.android.sunshine.app.core.ForecastRecord;
+import com.example.android.sunshine.app.core.GroupJsonParser;
+import com.example.android.sunshine.app.data.TodaySnapshot;
+import com.example.android.sunshine.app.data.WeatherBatch;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 import com.google.android.gms.common.ConnectionResult;
@@ -50,15 +58,14 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
@@ -69,6 +76,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL / 3;
+    // Sync extra naming the location_setting to sync, used by GCM tickles.
+    public static final String EXTRA_LOCATION_SETTING = "location_setting";
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
@@ -91,6 +100,15 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     private static final int INDEX_MIN_TEMP = 2;
     private static final int INDEX_SHORT_DESC = 3;
     private GoogleApiClient mGoogleApiClient;
+    private final ForecastHttpClient mHttpClient = new ForecastHttpClient();
+    private final ForecastFetcher mForecastFetcher =
+            new ForecastFetcher(mHttpClient, new RetryPolicy());
+    private final GroupFetcher mGroupFetcher = new GroupFetcher(mForecastFetcher);
+    private final ForecastSource mForecastSource = createForecastSource();
+    // Null unless the build names a second forecast backend
+    private final HedgedFetcher mHedgedFetcher = createHedgedFetcher();
+    // The timeline of the sync in progress, syncs of an adapter never overlap
+    private SyncTrace mTrace;
 
     @Override
     public void onConnected(@Nullable Bundle bundle) {
@@ -133,71 +151,87 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(TAG, "Starting sync");
 
-        String locationQuery = Utility.getPreferredLocation(getContext());
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        String locationQuery = extras.getString(EXTRA_LOCATION_SETTING);
+        if (locationQuery == null) {
+            locationQuery = Utility.getPreferredLocation(getContext());
+        }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        // Periodic syncs are only a safety net when GCM tickles us about changes.  Skip the
+        // network if nothing changed since the last sync of this place, under any of its
+        // settings.
+        boolean manualSync = extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false);
+        SyncPolicy syncPolicy = new SyncPolicy(getContext());
+        if (!manualSync && !syncPolicy.isSyncDue(
+                Utility.getCanonicalLocation(getContext(), locationQuery),
+                System.currentTimeMillis())) {
+            Log.d(TAG, "Skipping sync, " + locationQuery + " is up to date");
+            return;
+        }
+        // Idle users can wait for an unmetered network or a charger.
+        SyncScheduler syncScheduler = new SyncScheduler(getContext());
+        if (!manualSync && syncScheduler.shouldDefer(System.currentTimeMillis(),
+                Utility.isActiveNetworkMetered(getContext()), Utility.isCharging(getContext()))) {
+            Log.d(TAG, "Deferring sync until the device is unmetered or charging");
+            return;
+        }
 
-        String format = "json";
-        String units = "metric";
         int numDays = 14;
+        // Once a sync found the city of the setting it is asked for by id, not by free text
+        long cityId = getCityId(locationQuery);
 
+        mTrace = SyncTrace.begin(locationQuery);
+        long bytesBefore = mForecastFetcher.getBytesReceived();
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+            if (mHedgedFetcher != null) {
+                // The second backend stands in for the retries, under a deadline of its own
+                long start = SyncTrace.now();
+                long bytes = mForecastFetcher.getBytesReceived();
+                HedgedFetcher.Result result =
+                        mHedgedFetcher.fetch(locationQuery, cityId, numDays, syncResult);
+                // The bytes of the cancelled request count too, they went over the network
+                mTrace.record(SyncTrace.STAGE_DOWNLOAD, start,
+                        mForecastFetcher.getBytesReceived() - bytes, 0);
+                // The winner was decoded while the fetch checked it
+                getWeatherData(result.getErrorCode(), result.getForecast(), locationQuery);
+            } else {
+                URL url = mForecastSource.getForecastUrl(locationQuery, cityId, numDays);
+
+                // Fetch and decode, retrying both if the server is having a bad day.  Only that,
+                // the days are stored once the response is closed: a failure storing them
+                // mustn't download them again, nor count against the server.
+                final ForecastRecord forecast = new ForecastRecord();
+                final int[] errorCode = new int[1];
+                mForecastFetcher.fetch(url, new ForecastFetcher.ResponseHandler() {
+                    @Override
+                    public void onResponse(InputStream body) throws IOException, JSONException {
+                        long start = SyncTrace.now();
+                        long bytes = mForecastFetcher.getBytesReceived();
+                        byte[] response = ForecastHttpClient.readBytes(body);
+                        mTrace.record(SyncTrace.STAGE_DOWNLOAD, start,
+                                mForecastFetcher.getBytesReceived() - bytes, 0);
+                        if (response.length == 0) {
+                            // Stream was empty.  No point in parsing.
+                            throw new ForecastFetcher.ServerException("Empty response body");
+                        }
+                        forecast.clear();
+                        errorCode[0] = mForecastSource.parse(response, forecast);
+                        if (errorCode[0] != HttpURLConnection.HTTP_OK
+                                && errorCode[0] != HttpURLConnection.HTTP_NOT_FOUND) {
+                            // Let the fetcher retry
+                            throw new ForecastFetcher.ServerException(
+                                    "Error code " + errorCode[0]);
+                        }
+                    }
+                }, syncResult, mTrace);
+                getWeatherData(errorCode[0], forecast, locationQuery);
             }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            // The 3 hour forecast is a bonus, it doesn't change the location status
+            syncHourlyForecast(locationQuery, cityId, syncResult);
+            // So is the weather of the other places, which a GCM tickle of one place leaves be
+            if (extras.getString(EXTRA_LOCATION_SETTING) == null) {
+                syncSavedLocations(locationQuery, syncResult);
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
         } catch (IOException e) {
             Log.e(TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
@@ -205,197 +239,370 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
         } catch (JSONException e) {
             Log.e(TAG, e.getMessage(), e);
-            e.printStackTrace();
             setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(TAG, "Error closing stream", e);
-                }
+            mTrace.finish(mForecastFetcher.getBytesReceived() - bytesBefore, 0);
+        }
+    }
+
+    private void syncHourlyForecast(final String locationSetting, long cityId,
+                                    SyncResult syncResult) {
+        try {
+            // The 3 hour forecast covers the next 5 days, 40 entries
+            final String HOURLY_BASE_URL =
+                    "http://api.openweathermap.org/data/2.5/forecast?";
+            final String QUERY_PARAM = "q";
+            final String CITY_ID_PARAM = "id";
+            final String FORMAT_PARAM = "mode";
+            final String UNITS_PARAM = "units";
+            final String APPID_PARAM = "APPID";
+
+            Uri.Builder builder = Uri.parse(HOURLY_BASE_URL).buildUpon();
+            if (cityId != 0) {
+                builder.appendQueryParameter(CITY_ID_PARAM, Long.toString(cityId));
+            } else {
+                builder.appendQueryParameter(QUERY_PARAM, locationSetting);
             }
+            Uri builtUri = builder
+                    .appendQueryParameter(FORMAT_PARAM, "json")
+                    .appendQueryParameter(UNITS_PARAM, "metric")
+                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                    .build();
+
+            mForecastFetcher.fetch(new URL(builtUri.toString()),
+                    new ForecastFetcher.ResponseHandler() {
+                        @Override
+                        public void onResponse(InputStream body)
+                                throws IOException, JSONException {
+                            long start = SyncTrace.now();
+                            long bytes = mForecastFetcher.getBytesReceived();
+                            String hourlyJsonStr = ForecastHttpClient.readString(body);
+                            mTrace.record(SyncTrace.STAGE_HOURLY_DOWNLOAD, start,
+                                    mForecastFetcher.getBytesReceived() - bytes, 0);
+                            if (hourlyJsonStr.length() == 0) {
+                                throw new ForecastFetcher.ServerException("Empty response body");
+                            }
+                            getHourlyDataFromJson(hourlyJsonStr, locationSetting);
+                        }
+                    }, syncResult, mTrace);
+        } catch (IOException e) {
+            Log.e(TAG, "Error fetching the hourly forecast", e);
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage(), e);
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     * <p>
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Refreshes the current weather of the saved places other than the synced one into the
+     * current table.  The places are asked for by city id, a group request per
+     * {@link GroupFetcher#MAX_BATCH_SIZE} of them instead of a query each.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
+    private void syncSavedLocations(String locationSetting, SyncResult syncResult) {
+        final LongSparseArray<Long> locationIds = getSavedPlaces(locationSetting);
+        if (locationIds.size() == 0) {
+            return;
+        }
+        long[] cityIds = new long[locationIds.size()];
+        for (int i = 0; i < cityIds.length; i++) {
+            cityIds[i] = locationIds.keyAt(i);
+        }
+
+        final List<ContentValues> values = new ArrayList<ContentValues>(cityIds.length);
+        try {
+            mGroupFetcher.fetch(cityIds, new GroupJsonParser.Handler() {
+                @Override
+                public void onCity(long cityId, long time, int weatherId, String description,
+                                   double temperature, double humidity, double pressure,
+                                   double windSpeed, double windDirection) {
+                    Long locationId = locationIds.get(cityId);
+                    if (locationId == null) {
+                        // Not one we asked for
+                        return;
+                    }
+                    ContentValues currentValues = new ContentValues();
+                    currentValues.put(WeatherContract.CurrentEntry.COLUMN_LOC_KEY, locationId);
+                    currentValues.put(WeatherContract.CurrentEntry.COLUMN_TIME, time);
+                    currentValues.put(WeatherContract.CurrentEntry.COLUMN_TEMP, temperature);
+                    currentValues.put(WeatherContract.CurrentEntry.COLUMN_HUMIDITY, humidity);
+                    currentValues.put(WeatherContract.CurrentEntry.COLUMN_PRESSURE, pressure);
+                    currentValues.put(WeatherContract.CurrentEntry.COLUMN_WIND_SPEED, windSpeed);
+                    currentValues.put(WeatherContract.CurrentEntry.COLUMN_DEGREES, windDirection);
+                    currentValues.put(WeatherContract.CurrentEntry.COLUMN_SHORT_DESC, description);
+                    currentValues.put(WeatherContract.CurrentEntry.COLUMN_WEATHER_ID, weatherId);
+                    values.add(currentValues);
+                }
+            }, syncResult, mTrace);
+        } catch (IOException e) {
+            Log.e(TAG, "Error fetching the saved locations", e);
+        } catch (JSONException e) {
+            Log.e(TAG, e.getMessage(), e);
+        }
 
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
+        // The batches that made it are kept even if a later one failed
+        if (!values.isEmpty()) {
+            long start = SyncTrace.now();
+            int inserted = getContext().getContentResolver().bulkInsert(
+                    WeatherContract.CurrentEntry.CONTENT_URI,
+                    values.toArray(new ContentValues[values.size()]));
+            mTrace.record(SyncTrace.STAGE_GROUP_INSERT, start, 0, inserted);
+        }
+        Log.d(TAG, "Saved locations refreshed. " + values.size() + " of " + cityIds.length);
+    }
 
-        // These are the names of the JSON objects that need to be extracted.
+    /**
+     * @return the OpenWeatherMap id of the city of the setting, or 0 if no sync found it yet.
+     */
+    private long getCityId(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_CITY_ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting}, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
 
-        // Location information
+    /**
+     * @return the row ID each saved place's rows are stored under, by the id of its city, but
+     * for the place of the setting.  Places whose city id isn't known yet are left out.
+     */
+    private LongSparseArray<Long> getSavedPlaces(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_CANONICAL_ID,
+                        WeatherContract.LocationEntry.COLUMN_CITY_ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry.COLUMN_CITY_ID + " IS NOT NULL",
+                null, null);
+        LongSparseArray<Long> locationIds = new LongSparseArray<Long>();
+        long syncedId = -1;
+        try {
+            while (cursor.moveToNext()) {
+                // Aliases name their place's city, and its rows
+                long locationId = cursor.isNull(1) ? cursor.getLong(0) : cursor.getLong(1);
+                if (locationSetting.equals(cursor.getString(3))) {
+                    syncedId = locationId;
+                }
+                locationIds.put(cursor.getLong(2), locationId);
+            }
+        } finally {
+            cursor.close();
+        }
+        for (int i = locationIds.size() - 1; i >= 0; i--) {
+            if (locationIds.valueAt(i) == syncedId) {
+                locationIds.removeAt(i);
+            }
+        }
+        return locationIds;
+    }
+
+    /**
+     * Take the String representing the 3 hour forecast in JSON Format and store it in the hourly
+     * table, dropping the entries that are past the retention period.
+     */
+    private void getHourlyDataFromJson(String hourlyJsonStr, String locationSetting)
+            throws JSONException, ForecastFetcher.ServerException {
+        final String OWM_MESSAGE_CODE = "cod";
         final String OWM_CITY = "city";
+        final String OWM_CITY_ID = "id";
         final String OWM_CITY_NAME = "name";
         final String OWM_COORD = "coord";
-
-        // Location coordinate
         final String OWM_LATITUDE = "lat";
         final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
         final String OWM_LIST = "list";
-
+        final String OWM_TIME = "dt";
+        // Measurements are children of the "main" object, the wind of the "wind" object
+        final String OWM_MAIN = "main";
+        final String OWM_TEMPERATURE = "temp";
         final String OWM_PRESSURE = "pressure";
         final String OWM_HUMIDITY = "humidity";
+        final String OWM_WIND = "wind";
         final String OWM_WINDSPEED = "speed";
         final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
         final String OWM_WEATHER = "weather";
         final String OWM_DESCRIPTION = "main";
         final String OWM_WEATHER_ID = "id";
 
-        final String OWM_MESSAGE_CODE = "cod";
-
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if (forecastJson.has(OWM_MESSAGE_CODE)) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+        JSONObject hourlyJson = new JSONObject(hourlyJsonStr);
+        if (hourlyJson.has(OWM_MESSAGE_CODE)) {
+            int errorCode = hourlyJson.getInt(OWM_MESSAGE_CODE);
+            switch (errorCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    return;
+                default:
+                    throw new ForecastFetcher.ServerException("Error code " + errorCode);
             }
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
+        JSONObject cityJson = hourlyJson.getJSONObject(OWM_CITY);
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        long locationId = addLocation(locationSetting, cityJson.optLong(OWM_CITY_ID),
+                cityJson.getString(OWM_CITY_NAME), cityCoord.getDouble(OWM_LATITUDE),
+                cityCoord.getDouble(OWM_LONGITUDE));
+
+        JSONArray hourlyArray = hourlyJson.getJSONArray(OWM_LIST);
+        ContentValues[] cvArray = new ContentValues[hourlyArray.length()];
+        for (int i = 0; i < hourlyArray.length(); i++) {
+            JSONObject hourForecast = hourlyArray.getJSONObject(i);
+            JSONObject mainObject = hourForecast.getJSONObject(OWM_MAIN);
+            JSONObject windObject = hourForecast.getJSONObject(OWM_WIND);
+            JSONObject weatherObject = hourForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+
+            ContentValues hourlyValues = new ContentValues();
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_LOC_KEY, locationId);
+            // OWM times are in seconds
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_TIME,
+                    hourForecast.getLong(OWM_TIME) * 1000);
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_TEMP,
+                    mainObject.getDouble(OWM_TEMPERATURE));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_HUMIDITY,
+                    mainObject.getDouble(OWM_HUMIDITY));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_PRESSURE,
+                    mainObject.getDouble(OWM_PRESSURE));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED,
+                    windObject.getDouble(OWM_WINDSPEED));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_DEGREES,
+                    windObject.optDouble(OWM_WIND_DIRECTION, 0));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_SHORT_DESC,
+                    weatherObject.getString(OWM_DESCRIPTION));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_WEATHER_ID,
+                    weatherObject.getInt(OWM_WEATHER_ID));
+            cvArray[i] = hourlyValues;
+        }
 
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
+        ContentResolver resolver = getContext().getContentResolver();
+        if (cvArray.length > 0) {
+            long start = SyncTrace.now();
+            int inserted = resolver.bulkInsert(WeatherContract.HourlyEntry.CONTENT_URI, cvArray);
+            mTrace.record(SyncTrace.STAGE_HOURLY_INSERT, start, 0, inserted);
+        }
+        // Keep a bounded window: the past is only useful for a little while
+        resolver.delete(WeatherContract.HourlyEntry.CONTENT_URI,
+                WeatherContract.HourlyEntry.COLUMN_TIME + " < ?",
+                new String[]{Long.toString(
+                        System.currentTimeMillis() - WeatherContract.HourlyEntry.RETENTION)});
+        Log.d(TAG, "Hourly sync complete. " + cvArray.length + " Fetched");
+    }
 
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
+    // The binary forecast of the proxy when the build names one, OpenWeatherMap's JSON otherwise
+    private static ForecastSource createForecastSource() {
+        if (TextUtils.isEmpty(BuildConfig.FORECAST_PROXY_URL)) {
+            return new OwmForecastSource();
+        }
+        return new BinaryForecastSource(BuildConfig.FORECAST_PROXY_URL);
+    }
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
+    // Hedges the forecast source to the build's second backend, a binary one, if it names one
+    private HedgedFetcher createHedgedFetcher() {
+        if (TextUtils.isEmpty(BuildConfig.FORECAST_HEDGE_URL)) {
+            return null;
+        }
+        return new HedgedFetcher(mHttpClient, mForecastSource,
+                new BinaryForecastSource(BuildConfig.FORECAST_HEDGE_URL));
+    }
 
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+    /**
+     * Take the response with the complete forecast and
+     * pull out the data we need to construct the Strings needed for the wireframes.
+     * <p>
+     * The decoding itself is the {@link ForecastSource}'s, this adds the location and turns the
+     * days into rows.
+     *
+     * @param source The source the forecast came from.
+     */
+    private void getWeatherData(int errorCode, ForecastRecord forecast, String locationSetting)
+            throws IOException {
+        switch (errorCode) {
+            case HttpURLConnection.HTTP_OK:
+                break;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
+                return;
+            default:
+                // Only the hedged fetch hands over other codes, and it retries nothing: its
+                // other backend was the retry.  The sync ends with the server down.
+                throw new ForecastFetcher.ServerException("Error code " + errorCode);
+        }
 
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for (int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay + i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+        // The parse stage covers the rows built from the forecast, and the add_location stage
+        // within it
+        long start = SyncTrace.now();
+        DailyForecastHandler handler = new DailyForecastHandler(locationSetting);
+        forecast.replay(handler);
+        WeatherBatch batch = handler.mBatch;
+        Time dayTime = handler.mDayTime;
+        int julianStartDay = handler.mJulianStartDay;
+        mTrace.record(SyncTrace.STAGE_PARSE, start, 0, batch.size());
+
+        int inserted = 0;
+        // add to database
+        if (batch.size() > 0) {
+            start = SyncTrace.now();
+            inserted = batch.insert(getContext().getContentResolver());
+            mTrace.record(SyncTrace.STAGE_BULK_INSERT, start, 0, inserted);
+
+            // move old data to the history so the forecast table stays small
+            start = SyncTrace.now();
+            int archived = getContext().getContentResolver().delete(
+                    WeatherContract.WeatherEntry.buildArchiveUri(),
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                    new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
+            mTrace.record(SyncTrace.STAGE_ARCHIVE, start, 0, archived);
+            start = SyncTrace.now();
+            compactHistoryIfDue();
+            mTrace.record(SyncTrace.STAGE_COMPACT, start, 0, 0);
+
+            // Before the widgets, Muzei and the notification, which read it.  They show the
+            // preferred location, a sync of another one leaves its snapshot alone.
+            if (locationSetting.equals(Utility.getPreferredLocation(getContext()))) {
+                start = SyncTrace.now();
+                TodaySnapshot.publish(getContext(), locationSetting);
+                mTrace.record(SyncTrace.STAGE_SNAPSHOT, start, 0, 0);
             }
 
-            int inserted = 0;
-            // add to database
-            if (cVVector.size() > 0) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
-
-                syncWeatherToWearable();
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-            }
-            Log.d(TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+            start = SyncTrace.now();
+            syncWeatherToWearable();
+            mTrace.record(SyncTrace.STAGE_WEAR_PUT, start, 0, 0);
+            start = SyncTrace.now();
+            updateWidgets();
+            mTrace.record(SyncTrace.STAGE_WIDGET_BROADCAST, start, 0, 0);
+            start = SyncTrace.now();
+            updateMuzei();
+            mTrace.record(SyncTrace.STAGE_MUZEI, start, 0, 0);
+            // Fetches the notification art with Glide when a notification is due
+            start = SyncTrace.now();
+            notifyWeather();
+            mTrace.record(SyncTrace.STAGE_NOTIFY, start, 0, 0);
+        }
+        Log.d(TAG, "Sync Complete. " + batch.size() + " Fetched, " + inserted + " Changed");
+        long now = System.currentTimeMillis();
+        new SyncPolicy(getContext()).recordSync(
+                Utility.getCanonicalLocation(getContext(), locationSetting), now);
+        // Adapt the periodic sync to how much the forecast moves
+        new SyncScheduler(getContext()).recordSync(now, inserted, batch.size());
+        updatePeriodicSync(getContext());
+        setLocationStatus(getContext(), LOCATION_STATUS_OK);
+    }
 
-        } catch (JSONException e) {
-            Log.e(TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+    // Downsamples the history once a day at most
+    private void compactHistoryIfDue() {
+        Context context = getContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String lastCompactionKey = context.getString(R.string.pref_last_history_compaction);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(lastCompactionKey, 0) < DAY_IN_MILLIS) {
+            return;
         }
+        int compacted = context.getContentResolver().delete(
+                WeatherContract.HistoryEntry.buildCompactionUri(now), null, null);
+        Log.d(TAG, "History compacted, " + compacted + " rows downsampled");
+        prefs.edit().putLong(lastCompactionKey, now).commit();
     }
 
     private void updateWidgets() {
@@ -433,96 +640,109 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
                 String locationQuery = Utility.getPreferredLocation(context);
 
+                // The snapshot the sync just published holds today, the provider is only asked
+                // without it
+                TodaySnapshot snapshot = TodaySnapshot.read(context, locationQuery);
+                int today = snapshot == null ? -1 : snapshot.findDay(
+                        WeatherContract.normalizeDate(System.currentTimeMillis()));
+                if (today != -1) {
+                    showWeatherNotification(snapshot.getWeatherId(today), snapshot.getHigh(today),
+                            snapshot.getLow(today), snapshot.getDescription(today));
+                    return;
+                }
+
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
 
                 // we'll query our contentProvider, as always
                 Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
 
                 if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
-
-                    int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-                    Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
-                    String title = context.getString(R.string.app_name);
-
-                    // Define the text of the forecast.
-                    String contentText = String.format(context.getString(R.string.format_notification),
-                            desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
-
-                    // NotificationCompatBuilder is a very convenient way to build backward-compatible
-                    // notifications.  Just throw in some data.
-                    NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
-                                    .setColor(resources.getColor(R.color.primary_light))
-                                    .setSmallIcon(iconId)
-                                    .setLargeIcon(largeIcon)
-                                    .setContentTitle(title)
-                                    .setContentText(contentText);
-
-                    // Make something interesting happen when the user clicks on the notification.
-                    // In this case, opening the app is sufficient.
-                    Intent resultIntent = new Intent(context, MainActivity.class);
-
-                    // The stack builder object will contain an artificial back stack for the
-                    // started Activity.
-                    // This ensures that navigating backward from the Activity leads out of
-                    // your application to the Home screen.
-                    TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
-                    stackBuilder.addNextIntent(resultIntent);
-                    PendingIntent resultPendingIntent =
-                            stackBuilder.getPendingIntent(
-                                    0,
-                                    PendingIntent.FLAG_UPDATE_CURRENT
-                            );
-                    mBuilder.setContentIntent(resultPendingIntent);
-
-                    NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
-                    // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
-
-                    //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.commit();
+                    showWeatherNotification(cursor.getInt(INDEX_WEATHER_ID),
+                            cursor.getDouble(INDEX_MAX_TEMP), cursor.getDouble(INDEX_MIN_TEMP),
+                            cursor.getString(INDEX_SHORT_DESC));
                 }
                 cursor.close();
             }
         }
     }
 
+    private void showWeatherNotification(int weatherId, double high, double low, String desc) {
+        Context context = getContext();
+        int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
+        Resources resources = context.getResources();
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        @SuppressLint("InlinedApi")
+        int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        @SuppressLint("InlinedApi")
+        int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+
+        // Retrieve the large icon
+        Bitmap largeIcon;
+        try {
+            largeIcon = Glide.with(context)
+                    .load(artUrl)
+                    .asBitmap()
+                    .error(artResourceId)
+                    .fitCenter()
+                    .into(largeIconWidth, largeIconHeight).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(TAG, "Error retrieving large icon from " + artUrl, e);
+            largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
+        }
+        String title = context.getString(R.string.app_name);
+
+        // Define the text of the forecast.
+        String contentText = String.format(context.getString(R.string.format_notification),
+                desc,
+                Utility.formatTemperature(context, high),
+                Utility.formatTemperature(context, low));
+
+        // NotificationCompatBuilder is a very convenient way to build backward-compatible
+        // notifications.  Just throw in some data.
+        NotificationCompat.Builder mBuilder =
+                new NotificationCompat.Builder(getContext())
+                        .setColor(resources.getColor(R.color.primary_light))
+                        .setSmallIcon(iconId)
+                        .setLargeIcon(largeIcon)
+                        .setContentTitle(title)
+                        .setContentText(contentText);
+
+        // Make something interesting happen when the user clicks on the notification.
+        // In this case, opening the app is sufficient.
+        Intent resultIntent = new Intent(context, MainActivity.class);
+
+        // The stack builder object will contain an artificial back stack for the
+        // started Activity.
+        // This ensures that navigating backward from the Activity leads out of
+        // your application to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addNextIntent(resultIntent);
+        PendingIntent resultPendingIntent =
+                stackBuilder.getPendingIntent(
+                        0,
+                        PendingIntent.FLAG_UPDATE_CURRENT
+                );
+        mBuilder.setContentIntent(resultPendingIntent);
+
+        NotificationManager mNotificationManager =
+                (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
+        // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+        mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+
+        //refreshing last sync
+        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(context).edit();
+        editor.putLong(context.getString(R.string.pref_last_notification), System.currentTimeMillis());
+        editor.commit();
+    }
+
 
     /**
      * sync wearable
@@ -566,30 +786,107 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         cursor.close();
     }
 
+    /**
+     * Adds the location of the forecast and collects its days in a {@link WeatherBatch}.
+     */
+    private class DailyForecastHandler implements ForecastHandler {
+        private final String mLocationSetting;
+        private final Time mDayTime;
+        private final int mJulianStartDay;
+        private WeatherBatch mBatch;
+
+        DailyForecastHandler(String locationSetting) {
+            mLocationSetting = locationSetting;
+
+            // OWM returns daily forecasts based upon the local time of the city that is being
+            // asked for, which means that we need to know the GMT offset to translate this data
+            // properly.
+
+            // Since this data is also sent in-order and the first day is always the
+            // current day, we're going to take advantage of that to get a nice
+            // normalized UTC date for all of our weather.
+            Time dayTime = new Time();
+            dayTime.setToNow();
+
+            // we start at the day returned by local time. Otherwise this is a mess.
+            mJulianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+
+            // now we work exclusively in UTC
+            mDayTime = new Time();
+        }
+
+        @Override
+        public void onCity(long cityId, String cityName, double latitude, double longitude,
+                           int dayCount) {
+            long start = SyncTrace.now();
+            long locationId = addLocation(mLocationSetting, cityId, cityName, latitude,
+                    longitude);
+            mTrace.record(SyncTrace.STAGE_ADD_LOCATION, start, 0, 0);
+            // The days go in primitive arrays rather than a ContentValues each, the provider
+            // binds them as they are.
+            mBatch = new WeatherBatch(locationId, dayCount);
+        }
+
+        @Override
+        public void onDay(int index, int weatherId, String description, double low,
+                          double high, int humidity, double pressure, double windSpeed,
+                          double windDirection) {
+            // Cheating to convert this to UTC time, which is what we want anyhow
+            long dateTime = mDayTime.setJulianDay(mJulianStartDay + index);
+            mBatch.add(dateTime, weatherId, description, low, high, humidity, pressure,
+                    windSpeed, windDirection);
+        }
+    }
+
     /**
      * Helper method to handle insertion of a new location in the weather database.
      *
      * @param locationSetting The location string used to request updates from the server.
+     * @param cityId          The id of the city on the server, 0 if it didn't say
      * @param cityName        A human-readable city name, e.g "Mountain View"
      * @param lat             the latitude of the city
      * @param lon             the longitude of the city
-     * @return the row ID of the added location.
+     * @return the row ID the rows of the location are stored under: the location's own, or that
+     * of the first setting of the same place when the location is an alias of it.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
+    long addLocation(String locationSetting, long cityId, String cityName, double lat,
+                     double lon) {
         long locationId;
 
         // First, check if the location with this city name exists in the db
         Cursor locationCursor = getContext().getContentResolver().query(
                 WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_CANONICAL_ID,
+                        WeatherContract.LocationEntry.COLUMN_CITY_ID},
                 WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
                 new String[]{locationSetting},
                 null);
 
         if (locationCursor.moveToFirst()) {
+            int canonicalIdIndex = locationCursor.getColumnIndex(
+                    WeatherContract.LocationEntry.COLUMN_CANONICAL_ID);
             int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
+            locationId = locationCursor.isNull(canonicalIdIndex)
+                    ? locationCursor.getLong(locationIdIndex)
+                    : locationCursor.getLong(canonicalIdIndex);
+            // Locations stored before the city id was kept get it from their next sync
+            int cityIdIndex = locationCursor.getColumnIndex(
+                    WeatherContract.LocationEntry.COLUMN_CITY_ID);
+            if (cityId != 0 && locationCursor.isNull(cityIdIndex)) {
+                ContentValues cityIdValues = new ContentValues();
+                cityIdValues.put(WeatherContract.LocationEntry.COLUMN_CITY_ID, cityId);
+                getContext().getContentResolver().update(
+                        WeatherContract.LocationEntry.CONTENT_URI, cityIdValues,
+                        WeatherContract.LocationEntry._ID + " = ?",
+                        new String[]{Long.toString(locationCursor.getLong(locationIdIndex))});
+            }
         } else {
+            // Another setting may name the same place, "94043" and "Mountain View, US" come
+            // back with the same city.  The new setting is an alias of the first one, and the
+            // place's forecast is stored once.
+            Long canonicalId = findSamePlace(lat, lon);
+
             // Now that the content provider is set up, inserting rows of data is pretty simple.
             // First create a ContentValues object to hold the data you want to insert.
             ContentValues locationValues = new ContentValues();
@@ -600,6 +897,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
             locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
             locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+            if (cityId != 0) {
+                locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_ID, cityId);
+            }
+            if (canonicalId != null) {
+                locationValues.put(WeatherContract.LocationEntry.COLUMN_CANONICAL_ID, canonicalId);
+            }
 
             // Finally, insert location data into the database.
             Uri insertedUri = getContext().getContentResolver().insert(
@@ -608,7 +911,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             );
 
             // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+            locationId = canonicalId != null ? canonicalId : ContentUris.parseId(insertedUri);
         }
 
         locationCursor.close();
@@ -616,6 +919,27 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         return locationId;
     }
 
+    /**
+     * @return the row ID the rows of the place at the coordinates are stored under, or null if
+     * no location is there yet.
+     */
+    private Long findSamePlace(double lat, double lon) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.buildNearestUri(lat, lon,
+                        WeatherContract.LocationEntry.SAME_PLACE_DISTANCE_KM, 1),
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_CANONICAL_ID},
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return cursor.isNull(1) ? cursor.getLong(0) : cursor.getLong(1);
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
@@ -648,6 +972,63 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Helper method to have the sync adapter sync a single location immediately, e.g. when the
+     * server tickles us through GCM because its forecast changed.
+     *
+     * @param context         The context used to access the account service
+     * @param locationSetting The location_setting whose forecast should be refreshed
+     */
+    public static void syncLocation(Context context, String locationSetting) {
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putString(EXTRA_LOCATION_SETTING, locationSetting);
+        ContentResolver.requestSync(getSyncAccount(context),
+                context.getString(R.string.content_authority), bundle);
+    }
+
+    /**
+     * Helper method to reschedule the periodic sync if its interval should change.  While GCM
+     * tickles are available, polling falls back to the long safety interval; otherwise the
+     * {@link SyncScheduler} adapts it to forecast volatility and app usage.
+     *
+     * @param context The context used to access the account service
+     */
+    public static void updatePeriodicSync(Context context) {
+        SyncScheduler syncScheduler = new SyncScheduler(context);
+        int syncInterval;
+        int flexTime;
+        if (new SyncPolicy(context).isPushEnabled()) {
+            syncInterval = SyncPolicy.SAFETY_SYNC_INTERVAL;
+            flexTime = SyncPolicy.SAFETY_SYNC_FLEXTIME;
+        } else {
+            syncInterval = syncScheduler.getSyncInterval(System.currentTimeMillis());
+            flexTime = SyncScheduler.getSyncFlexTime(syncInterval);
+        }
+        if (syncScheduler.updateScheduledInterval(syncInterval)) {
+            Log.d(SunshineSyncAdapter.class.getSimpleName(),
+                    "Periodic sync every " + syncInterval + " seconds");
+            configurePeriodicSync(context, syncInterval, flexTime);
+        }
+    }
+
+    /**
+     * Helper method to be called whenever the app comes to the foreground.  Lets the scheduler
+     * know the user is active, and syncs right away if the forecast is too old for an active user.
+     * Reads the preferences and talks to the account and sync managers, so it doesn't belong on
+     * the main thread.
+     *
+     * @param context The context used to access the account service
+     */
+    @WorkerThread
+    public static void onAppForeground(Context context) {
+        if (new SyncScheduler(context).recordForeground(System.currentTimeMillis())) {
+            syncImmediately(context);
+        }
+        updatePeriodicSync(context);
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
@@ -689,9 +1070,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
     private static void onAccountCreated(Account newAccount, Context context) {
         /*
-         * Since we've created an account
+         * Since we've created an account, schedule its periodic sync.  The interval scheduled
+         * for an account removed before it may still be remembered, it doesn't count.
          */
-        SunshineSyncAdapter.configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        new SyncScheduler(context).clearScheduledInterval();
+        SunshineSyncAdapter.updatePeriodicSync(context);
 
         /*
          * Without calling setSyncAutomatically, our periodic sync will not be enabled.
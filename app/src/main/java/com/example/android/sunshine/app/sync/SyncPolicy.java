@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Decides when the sync adapter actually needs to go to the network.
+ * <p>
+ * When GCM is available the server "tickles" us whenever the forecast of a location changes, so
+ * the periodic sync only has to act as a long safety net.  The policy remembers, per
+ * location_setting, when the forecast last changed upstream and when we last synced it, so a
+ * periodic sync that fires right after a tickle-driven one can be skipped.
+ */
+public class SyncPolicy {
+
+    // Interval of the fallback periodic sync while push is enabled, in seconds.
+    // 60 seconds (1 minute) * 60 * 24 = 1 day
+    public static final int SAFETY_SYNC_INTERVAL = 60 * 60 * 24;
+    public static final int SAFETY_SYNC_FLEXTIME = SAFETY_SYNC_INTERVAL / 6;
+
+    private static final String PREFS_NAME = "sync_policy";
+    private static final String KEY_PUSH_ENABLED = "push_enabled";
+    private static final String KEY_LAST_CHANGE_PREFIX = "last_change:";
+    private static final String KEY_LAST_SYNC_PREFIX = "last_sync:";
+
+    private final SharedPreferences mPrefs;
+
+    public SyncPolicy(Context context) {
+        this(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+    }
+
+    SyncPolicy(SharedPreferences prefs) {
+        mPrefs = prefs;
+    }
+
+    /**
+     * @return true if this install is registered for GCM tickles and can rely on the long
+     * safety interval instead of regular polling.
+     */
+    public boolean isPushEnabled() {
+        return mPrefs.getBoolean(KEY_PUSH_ENABLED, false);
+    }
+
+    public void setPushEnabled(boolean pushEnabled) {
+        mPrefs.edit().putBoolean(KEY_PUSH_ENABLED, pushEnabled).apply();
+    }
+
+    public long getLastChange(String locationSetting) {
+        return mPrefs.getLong(KEY_LAST_CHANGE_PREFIX + locationSetting, 0);
+    }
+
+    public long getLastSync(String locationSetting) {
+        return mPrefs.getLong(KEY_LAST_SYNC_PREFIX + locationSetting, 0);
+    }
+
+    /**
+     * Records that the forecast for a location changed upstream.  Out of order tickles never move
+     * the recorded change time backwards.
+     */
+    public void recordChange(String locationSetting, long changedAt) {
+        if (changedAt > getLastChange(locationSetting)) {
+            mPrefs.edit().putLong(KEY_LAST_CHANGE_PREFIX + locationSetting, changedAt).apply();
+        }
+    }
+
+    /**
+     * Records that a location was successfully synced with the server.
+     */
+    public void recordSync(String locationSetting, long syncedAt) {
+        mPrefs.edit().putLong(KEY_LAST_SYNC_PREFIX + locationSetting, syncedAt).apply();
+    }
+
+    /**
+     * Called for every tickle received through GCM.
+     *
+     * @return true if the tickle carries a change we have not synced yet.
+     */
+    public boolean onPush(String locationSetting, long changedAt) {
+        recordChange(locationSetting, changedAt);
+        return changedAt > getLastSync(locationSetting);
+    }
+
+    /**
+     * Called for syncs that were not requested explicitly (periodic syncs).
+     *
+     * @return true if the stored forecast for the location may be out of date.
+     */
+    public boolean isSyncDue(String locationSetting, long now) {
+        if (!isPushEnabled()) {
+            // Without push, polling is our only source of truth.
+            return true;
+        }
+        long lastSync = getLastSync(locationSetting);
+        if (lastSync == 0 || getLastChange(locationSetting) > lastSync) {
+            // Never synced, or a tickle arrived that we could not act on.
+            return true;
+        }
+        long safetyWindow = (SAFETY_SYNC_INTERVAL - SAFETY_SYNC_FLEXTIME) * 1000L;
+        return now - lastSync >= safetyWindow;
+    }
+}
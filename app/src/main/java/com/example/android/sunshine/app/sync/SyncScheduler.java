@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Picks the periodic sync interval from how much the forecast changes between syncs and how
+ * recently the user opened the app.
+ * <p>
+ * A volatile forecast for an active user syncs as often as every {@link #MIN_SYNC_INTERVAL}; a
+ * stable forecast, or a user who hasn't opened the app in days, backs off to
+ * {@link #MAX_SYNC_INTERVAL}.  Periodic syncs may also be deferred while the device is on a
+ * metered network and not charging, as long as the stored forecast is not too old.
+ */
+public class SyncScheduler {
+
+    // Bounds of the adaptive interval, in seconds.
+    // 60 seconds (1 minute) * 60 = 1 hour
+    public static final int MIN_SYNC_INTERVAL = 60 * 60;
+    // 60 seconds (1 minute) * 60 * 12 = 12 hours
+    public static final int MAX_SYNC_INTERVAL = 60 * 60 * 12;
+
+    // Intervals are rounded to this step, in seconds, so the sync isn't rescheduled after
+    // every small change of the averages.
+    private static final int INTERVAL_STEP = 60 * 15;
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+    // The user counts as active if the app was in the foreground within this window...
+    static final long ACTIVE_WINDOW = 24 * HOUR_IN_MILLIS;
+    // ...and as idle once it hasn't been for this long.
+    static final long IDLE_THRESHOLD = 3 * 24 * HOUR_IN_MILLIS;
+    // A periodic sync is never deferred once the stored forecast is older than this.
+    static final long MAX_DEFERRED_AGE = MAX_SYNC_INTERVAL * 1000L * 2;
+
+    // Weight of the latest sync in the moving average of the change rate.
+    private static final float CHANGE_RATE_WEIGHT = 0.3f;
+    // Until we have seen a sync, assume most of the forecast changes, which keeps the
+    // interval close to the historical 3 hours.
+    private static final float DEFAULT_CHANGE_RATE = 0.8f;
+
+    private static final String PREFS_NAME = "sync_scheduler";
+    private static final String KEY_CHANGE_RATE = "change_rate";
+    private static final String KEY_LAST_SYNC = "last_sync";
+    private static final String KEY_LAST_FOREGROUND = "last_foreground";
+    private static final String KEY_SCHEDULED_INTERVAL = "scheduled_interval";
+
+    private final SharedPreferences mPrefs;
+
+    public SyncScheduler(Context context) {
+        this(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+    }
+
+    SyncScheduler(SharedPreferences prefs) {
+        mPrefs = prefs;
+    }
+
+    /**
+     * Records the outcome of a sync that reached the server.
+     *
+     * @param now          When the sync finished, in milliseconds since the epoch.
+     * @param rowsModified How many forecast rows were actually added or changed.
+     * @param rowsTotal    How many forecast rows the server returned.
+     */
+    public void recordSync(long now, int rowsModified, int rowsTotal) {
+        float changeRate = rowsTotal > 0 ? Math.min(1f, (float) rowsModified / rowsTotal) : 0f;
+        float average = mPrefs.getFloat(KEY_CHANGE_RATE, DEFAULT_CHANGE_RATE);
+        average += CHANGE_RATE_WEIGHT * (changeRate - average);
+        mPrefs.edit()
+                .putFloat(KEY_CHANGE_RATE, average)
+                .putLong(KEY_LAST_SYNC, now)
+                .apply();
+    }
+
+    /**
+     * Records that the app came to the foreground.
+     *
+     * @return true if the stored forecast is older than an active user should see, in which
+     * case the caller should request a sync right away.
+     */
+    public boolean recordForeground(long now) {
+        mPrefs.edit().putLong(KEY_LAST_FOREGROUND, now).apply();
+        long lastSync = mPrefs.getLong(KEY_LAST_SYNC, 0);
+        return lastSync != 0 && now - lastSync >= getSyncInterval(now) * 1000L;
+    }
+
+    public float getChangeRate() {
+        return mPrefs.getFloat(KEY_CHANGE_RATE, DEFAULT_CHANGE_RATE);
+    }
+
+    /**
+     * @return the periodic sync interval, in seconds, to use at the given time.
+     */
+    public int getSyncInterval(long now) {
+        // The more of the forecast changes between syncs, the shorter the interval
+        float changeRate = getChangeRate();
+        float interval = MAX_SYNC_INTERVAL - (MAX_SYNC_INTERVAL - MIN_SYNC_INTERVAL) * changeRate;
+
+        // ...but the less the app is used, the less it matters
+        long lastForeground = mPrefs.getLong(KEY_LAST_FOREGROUND, 0);
+        long sinceForeground = now - lastForeground;
+        if (lastForeground == 0 || sinceForeground >= IDLE_THRESHOLD) {
+            return MAX_SYNC_INTERVAL;
+        } else if (sinceForeground > ACTIVE_WINDOW) {
+            float idleFraction =
+                    (float) (sinceForeground - ACTIVE_WINDOW) / (IDLE_THRESHOLD - ACTIVE_WINDOW);
+            interval += (MAX_SYNC_INTERVAL - interval) * idleFraction;
+        }
+        int steppedInterval = Math.round(interval / INTERVAL_STEP) * INTERVAL_STEP;
+        return Math.max(MIN_SYNC_INTERVAL, Math.min(MAX_SYNC_INTERVAL, steppedInterval));
+    }
+
+    public static int getSyncFlexTime(int syncInterval) {
+        return syncInterval / 3;
+    }
+
+    /**
+     * Decides whether a periodic sync can wait for a cheaper window.
+     *
+     * @return true if the sync should be skipped for now.
+     */
+    public boolean shouldDefer(long now, boolean metered, boolean charging) {
+        if (!metered || charging) {
+            return false;
+        }
+        long lastSync = mPrefs.getLong(KEY_LAST_SYNC, 0);
+        if (lastSync == 0 || now - lastSync >= MAX_DEFERRED_AGE) {
+            return false;
+        }
+        // Only idle users wait; an active user gets the forecast regardless of the network.
+        long lastForeground = mPrefs.getLong(KEY_LAST_FOREGROUND, 0);
+        return lastForeground == 0 || now - lastForeground > ACTIVE_WINDOW;
+    }
+
+    /**
+     * Remembers the interval the periodic sync was last scheduled with.
+     *
+     * @return true if it differs from the previous one, i.e. the sync has to be rescheduled.
+     */
+    public boolean updateScheduledInterval(int syncInterval) {
+        if (mPrefs.getInt(KEY_SCHEDULED_INTERVAL, 0) == syncInterval) {
+            return false;
+        }
+        mPrefs.edit().putInt(KEY_SCHEDULED_INTERVAL, syncInterval).apply();
+        return true;
+    }
+
+    /**
+     * Forgets the interval the periodic sync was scheduled with, so the next
+     * {@link #updateScheduledInterval} reschedules it whatever the interval.  For a new sync
+     * account, which has no periodic sync of its own even if the preferences outlived the old one.
+     */
+    public void clearScheduledInterval() {
+        mPrefs.edit().remove(KEY_SCHEDULED_INTERVAL).apply();
+    }
+}
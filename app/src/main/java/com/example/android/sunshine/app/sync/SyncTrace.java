@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The timeline of a sync: how long each of its stages took, with the bytes and rows they
+ * handled.  Stages of every sync go into one ring buffer holding the most recent ones, read
+ * back through {@link com.example.android.sunshine.app.data.WeatherContract.SyncTraceEntry} or
+ * the "synctrace" Stetho dumper of debug builds.
+ *
+ * Recording a stage is a clock read and one small object, cheap enough to leave on.
+ */
+public class SyncTrace {
+
+    public static final String STAGE_CONNECT = "connect";
+    public static final String STAGE_DOWNLOAD = "download";
+    // Parsing and building the rows, add_location happens within it
+    public static final String STAGE_PARSE = "parse";
+    public static final String STAGE_ADD_LOCATION = "add_location";
+    public static final String STAGE_BULK_INSERT = "bulk_insert";
+    public static final String STAGE_ARCHIVE = "archive";
+    public static final String STAGE_COMPACT = "compact";
+    public static final String STAGE_SNAPSHOT = "snapshot";
+    public static final String STAGE_WEAR_PUT = "wear_put";
+    public static final String STAGE_WIDGET_BROADCAST = "widget_broadcast";
+    public static final String STAGE_MUZEI = "muzei";
+    public static final String STAGE_NOTIFY = "notify";
+    public static final String STAGE_HOURLY_DOWNLOAD = "hourly_download";
+    public static final String STAGE_HOURLY_INSERT = "hourly_insert";
+    // The current weather of the other saved places, by city id
+    public static final String STAGE_GROUP_DOWNLOAD = "group_download";
+    public static final String STAGE_GROUP_INSERT = "group_insert";
+    // The whole sync, from begin() to finish()
+    public static final String STAGE_SYNC = "sync";
+
+    // About twenty syncs worth of stages
+    static final int CAPACITY = 256;
+
+    private static final Stage[] sStages = new Stage[CAPACITY];
+    // Where the next stage goes, and how many were ever recorded
+    private static int sNext;
+    private static long sRecorded;
+    private static int sLastSyncId;
+
+    private final int mSyncId;
+    private final String mLocationSetting;
+    private final long mStartNanos;
+
+    private SyncTrace(int syncId, String locationSetting) {
+        mSyncId = syncId;
+        mLocationSetting = locationSetting;
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts the timeline of a new sync.
+     */
+    public static SyncTrace begin(String locationSetting) {
+        int syncId;
+        synchronized (sStages) {
+            syncId = ++sLastSyncId;
+        }
+        return new SyncTrace(syncId, locationSetting);
+    }
+
+    /**
+     * @return the start time to pass to {@link #record} once the stage is over.
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    public int getSyncId() {
+        return mSyncId;
+    }
+
+    /**
+     * Records a stage that started at startNanos, a value from {@link #now()}, and ends now.
+     *
+     * @param bytes The bytes the stage transferred, or 0.
+     * @param rows  The rows the stage produced or changed, or 0.
+     */
+    public void record(String stage, long startNanos, long bytes, int rows) {
+        long durationNanos = System.nanoTime() - startNanos;
+        add(new Stage(mSyncId, mLocationSetting, stage,
+                System.currentTimeMillis() - durationNanos / 1000000, durationNanos, bytes, rows));
+    }
+
+    /**
+     * Records the whole sync as a stage of its own.
+     */
+    public void finish(long bytes, int rows) {
+        record(STAGE_SYNC, mStartNanos, bytes, rows);
+    }
+
+    private static void add(Stage stage) {
+        synchronized (sStages) {
+            sStages[sNext] = stage;
+            sNext = (sNext + 1) % CAPACITY;
+            sRecorded++;
+        }
+    }
+
+    /**
+     * @return the stages in the buffer, oldest first.
+     */
+    public static List<Stage> getStages() {
+        synchronized (sStages) {
+            int count = (int) Math.min(sRecorded, CAPACITY);
+            List<Stage> stages = new ArrayList<Stage>(count);
+            int first = (sNext - count + CAPACITY) % CAPACITY;
+            for (int i = 0; i < count; i++) {
+                stages.add(sStages[(first + i) % CAPACITY]);
+            }
+            return stages;
+        }
+    }
+
+    public static void clear() {
+        synchronized (sStages) {
+            for (int i = 0; i < CAPACITY; i++) {
+                sStages[i] = null;
+            }
+            sNext = 0;
+            sRecorded = 0;
+        }
+    }
+
+    /**
+     * A stage of a sync, as recorded.
+     */
+    public static class Stage {
+        public final int syncId;
+        public final String locationSetting;
+        public final String name;
+        // Wall clock time the stage started at
+        public final long startMillis;
+        public final long durationNanos;
+        public final long bytes;
+        public final int rows;
+
+        Stage(int syncId, String locationSetting, String name, long startMillis,
+              long durationNanos, long bytes, int rows) {
+            this.syncId = syncId;
+            this.locationSetting = locationSetting;
+            this.name = name;
+            this.startMillis = startMillis;
+            this.durationNanos = durationNanos;
+            this.bytes = bytes;
+            this.rows = rows;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
@@ -25,7 +26,7 @@ import java.util.concurrent.ExecutionException;
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
-    public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
+    public static final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
     private static final String[] FORECAST_COLUMNS = {
             WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
             WeatherContract.WeatherEntry.COLUMN_DATE,
@@ -44,132 +45,142 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
-        return new RemoteViewsFactory() {
-            private Cursor data = null;
+        return new DetailViewsFactory(this);
+    }
 
-            @Override
-            public void onCreate() {
-                // Nothing to do
+    /**
+     * The rows of the widget, the forecast of the preferred location from today on.
+     */
+    public static class DetailViewsFactory implements RemoteViewsFactory {
+        private final Context mContext;
+        private Cursor data = null;
+
+        public DetailViewsFactory(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public void onCreate() {
+            // Nothing to do
+        }
+
+        @Override
+        public void onDataSetChanged() {
+            if (data != null) {
+                data.close();
             }
-
-            @Override
-            public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
-                // This method is called by the app hosting the widget (e.g., the launcher)
-                // However, our ContentProvider is not exported so it doesn't have access to the
-                // data. Therefore we need to clear (and finally restore) the calling identity so
-                // that calls use our process and permission
-                final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
-                        null,
-                        null,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-                Binder.restoreCallingIdentity(identityToken);
-            }
-
-            @Override
-            public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+            // This method is called by the app hosting the widget (e.g., the launcher)
+            // However, our ContentProvider is not exported so it doesn't have access to the
+            // data. Therefore we need to clear (and finally restore) the calling identity so
+            // that calls use our process and permission
+            final long identityToken = Binder.clearCallingIdentity();
+            String location = Utility.getPreferredLocation(mContext);
+            Uri weatherForLocationUri = WeatherContract.WeatherEntry
+                    .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+            data = mContext.getContentResolver().query(weatherForLocationUri,
+                    FORECAST_COLUMNS,
+                    null,
+                    null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            Binder.restoreCallingIdentity(identityToken);
+        }
+
+        @Override
+        public void onDestroy() {
+            if (data != null) {
+                data.close();
+                data = null;
             }
-
-            @Override
-            public int getCount() {
-                return data == null ? 0 : data.getCount();
+        }
+
+        @Override
+        public int getCount() {
+            return data == null ? 0 : data.getCount();
+        }
+
+        @Override
+        public RemoteViews getViewAt(int position) {
+            if (position == AdapterView.INVALID_POSITION ||
+                    data == null || !data.moveToPosition(position)) {
+                return null;
             }
-
-            @Override
-            public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
-                    return null;
-                }
-                RemoteViews views = new RemoteViews(getPackageName(),
-                        R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
-                int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
-                if (weatherArtImage != null) {
-                    views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
-                } else {
-                    views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+            RemoteViews views = new RemoteViews(mContext.getPackageName(),
+                    R.layout.widget_detail_list_item);
+            int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+            int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+            Bitmap weatherArtImage = null;
+            if ( !Utility.usingLocalGraphics(mContext) ) {
+                String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
+                        mContext, weatherId);
+                try {
+                    weatherArtImage = Glide.with(mContext)
+                            .load(weatherArtResourceUrl)
+                            .asBitmap()
+                            .error(weatherArtResourceId)
+                            .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
                 }
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                    setRemoteContentDescription(views, description);
-                }
-                views.setTextViewText(R.id.widget_date, formattedDate);
-                views.setTextViewText(R.id.widget_description, description);
-                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-                final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
-                        dateInMillis);
-                fillInIntent.setData(weatherUri);
-                views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
-                return views;
             }
-
-            @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
-            private void setRemoteContentDescription(RemoteViews views, String description) {
-                views.setContentDescription(R.id.widget_icon, description);
+            String description = data.getString(INDEX_WEATHER_DESC);
+            long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+            String formattedDate = Utility.getFriendlyDayString(
+                    mContext, dateInMillis, false);
+            double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
+            double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+            String formattedMaxTemperature =
+                    Utility.formatTemperature(mContext, maxTemp);
+            String formattedMinTemperature =
+                    Utility.formatTemperature(mContext, minTemp);
+            if (weatherArtImage != null) {
+                views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+            } else {
+                views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
             }
-
-            @Override
-            public RemoteViews getLoadingView() {
-                return new RemoteViews(getPackageName(), R.layout.widget_detail_list_item);
-            }
-
-            @Override
-            public int getViewTypeCount() {
-                return 1;
-            }
-
-            @Override
-            public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
-                return position;
-            }
-
-            @Override
-            public boolean hasStableIds() {
-                return true;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+                setRemoteContentDescription(views, description);
             }
-        };
+            views.setTextViewText(R.id.widget_date, formattedDate);
+            views.setTextViewText(R.id.widget_description, description);
+            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+            final Intent fillInIntent = new Intent();
+            String locationSetting =
+                    Utility.getPreferredLocation(mContext);
+            Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                    locationSetting,
+                    dateInMillis);
+            fillInIntent.setData(weatherUri);
+            views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+            return views;
+        }
+
+        @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+        private void setRemoteContentDescription(RemoteViews views, String description) {
+            views.setContentDescription(R.id.widget_icon, description);
+        }
+
+        @Override
+        public RemoteViews getLoadingView() {
+            return new RemoteViews(mContext.getPackageName(), R.layout.widget_detail_list_item);
+        }
+
+        @Override
+        public int getViewTypeCount() {
+            return 1;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            if (data.moveToPosition(position))
+                return data.getLong(INDEX_WEATHER_ID);
+            return position;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
     }
 }
@@ -20,6 +20,7 @@ import android.app.IntentService;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
@@ -32,6 +33,7 @@ import android.widget.RemoteViews;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.TodaySnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
@@ -61,64 +63,98 @@ public class TodayWidgetIntentService extends IntentService {
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
 
-        // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
-            return;
+        // Find the correct layout based on each widget's width
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        int[] layoutIds = new int[appWidgetIds.length];
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetIds[i]);
+            if (widgetWidth >= largeWidth) {
+                layoutIds[i] = R.layout.widget_today_large;
+            } else if (widgetWidth >= defaultWidth) {
+                layoutIds[i] = R.layout.widget_today;
+            } else {
+                layoutIds[i] = R.layout.widget_today_small;
+            }
         }
-        if (!data.moveToFirst()) {
-            data.close();
+
+        RemoteViews[] views = buildViews(this, layoutIds);
+        if (views == null) {
             return;
         }
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            // Tell the AppWidgetManager to perform an update on the current app widget
+            appWidgetManager.updateAppWidget(appWidgetIds[i], views[i]);
+        }
+    }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
+    /**
+     * Reads today's forecast of the preferred location and fills a RemoteViews with it for every
+     * layout, all a refresh of the widgets does but handing them to the AppWidgetManager.
+     *
+     * @return the views, in the order of the layouts, or null if there is no forecast.
+     */
+    public static RemoteViews[] buildViews(Context context, int[] layoutIds) {
+        String location = Utility.getPreferredLocation(context);
+        int weatherId;
+        String description;
+        double maxTemp;
+        double minTemp;
+        // Today from the snapshot the sync published, without starting the provider
+        TodaySnapshot snapshot = TodaySnapshot.read(context, location);
+        int today = snapshot == null ? -1 : snapshot.findFirstDayFrom(
+                WeatherContract.normalizeDate(System.currentTimeMillis()));
+        if (today != -1) {
+            weatherId = snapshot.getWeatherId(today);
+            description = snapshot.getDescription(today);
+            maxTemp = snapshot.getHigh(today);
+            minTemp = snapshot.getLow(today);
+        } else {
+            // Get today's data from the ContentProvider
+            Uri weatherForLocationUri =
+                    WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                            location, System.currentTimeMillis());
+            Cursor data = context.getContentResolver().query(weatherForLocationUri,
+                    FORECAST_COLUMNS, null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            if (data == null) {
+                return null;
+            }
+            if (!data.moveToFirst()) {
+                data.close();
+                return null;
+            }
+
+            // Extract the weather data from the Cursor
+            weatherId = data.getInt(INDEX_WEATHER_ID);
+            description = data.getString(INDEX_SHORT_DESC);
+            maxTemp = data.getDouble(INDEX_MAX_TEMP);
+            minTemp = data.getDouble(INDEX_MIN_TEMP);
+            data.close();
+        }
         int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
+        String formattedMaxTemperature = Utility.formatTemperature(context, maxTemp);
+        String formattedMinTemperature = Utility.formatTemperature(context, minTemp);
 
-        // Perform this loop procedure for each Today widget
-        for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
-            } else {
-                layoutId = R.layout.widget_today_small;
-            }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, launchIntent, 0);
+
+        RemoteViews[] views = new RemoteViews[layoutIds.length];
+        for (int i = 0; i < layoutIds.length; i++) {
+            views[i] = new RemoteViews(context.getPackageName(), layoutIds[i]);
 
             // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+            views[i].setImageViewResource(R.id.widget_icon, weatherArtResourceId);
             // Content Descriptions for RemoteViews were only added in ICS MR1
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
+                setRemoteContentDescription(views[i], description);
             }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
-
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            views[i].setTextViewText(R.id.widget_description, description);
+            views[i].setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+            views[i].setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+            views[i].setOnClickPendingIntent(R.id.widget, pendingIntent);
         }
+        return views;
     }
 
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
@@ -145,7 +181,7 @@ public class TodayWidgetIntentService extends IntentService {
     }
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
-    private void setRemoteContentDescription(RemoteViews views, String description) {
+    private static void setRemoteContentDescription(RemoteViews views, String description) {
         views.setContentDescription(R.id.widget_icon, description);
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    A keystroke in the location preference: the suggestions for what was typed so far and the
+    check that enables OK.  The index holds 200k made-up cities, about as many as
+    OpenWeatherMap's list, and is mapped from a file the way the app maps its asset.  Short
+    prefixes are the worst case, they land among the most cities.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CityIndexBenchmark {
+
+    private static final int CITIES = 200000;
+    private static final int SUGGESTIONS = 5;
+    private static final String[] SYLLABLES = {"san", "ta", "mo", "un", "vi", "ew", "ber",
+            "lin", "os", "ka", "ri", "to", "no", "pa", "lo", "ma", "de", "ham", "burg", "ville"};
+    private static final String[] COUNTRIES = {"US", "DE", "FR", "BR", "IN", "JP", "GB", "IT"};
+
+    @Param({"m", "mo", "mount", "Mountain View"})
+    public String typed;
+
+    private File mFile;
+    private RandomAccessFile mMapped;
+    private CityIndex mIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        CityIndex.Writer writer = new CityIndex.Writer();
+        writer.add(5375480, "Mountain View", "US", 37.38605, -122.08385);
+        while (writer.size() < CITIES) {
+            StringBuilder name = new StringBuilder();
+            int syllables = 2 + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            writer.add(writer.size(), name.toString(),
+                    COUNTRIES[random.nextInt(COUNTRIES.length)],
+                    random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+        }
+
+        mFile = File.createTempFile("cities", ".idx");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            writer.writeTo(out);
+        } finally {
+            out.close();
+        }
+        mMapped = new RandomAccessFile(mFile, "r");
+        mIndex = CityIndex.wrap(mMapped.getChannel()
+                .map(FileChannel.MapMode.READ_ONLY, 0, mMapped.length()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mMapped.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public int[] suggest() {
+        return mIndex.findPrefix(typed, SUGGESTIONS);
+    }
+
+    @Benchmark
+    public boolean accept() {
+        return mIndex.accepts(typed);
+    }
+
+    // What the dialog shows for each suggestion
+    @Benchmark
+    public int suggestWithLabels() {
+        int length = 0;
+        for (int city : mIndex.findPrefix(typed, SUGGESTIONS)) {
+            length += mIndex.getLocationSetting(city).length();
+        }
+        return length;
+    }
+}
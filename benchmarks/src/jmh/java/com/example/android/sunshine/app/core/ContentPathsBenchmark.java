@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+    Building and reading the weather URIs of a location and day, the work behind
+    WeatherEntry.buildWeatherLocationWithDate(), getLocationSettingFromUri() and getDateFromUri().
+    A zip code needs no escaping, a city name does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ContentPathsBenchmark {
+
+    private static final String CONTENT_URI = "content://com.example.android.sunshine.app/weather";
+    private static final long DATE = 1419033600000L;
+
+    @Param({"94043", "Mountain View, CA"})
+    public String location;
+
+    private String mEncodedPath;
+
+    @Setup
+    public void setUp() {
+        mEncodedPath = "/weather/" + ContentPaths.encode(location) + "/" + DATE;
+    }
+
+    @Benchmark
+    public String buildLocationWithDate() {
+        return ContentPaths.appendSegments(CONTENT_URI, location, DATE);
+    }
+
+    @Benchmark
+    public String getLocationSetting() {
+        return ContentPaths.getSegment(mEncodedPath, 1);
+    }
+
+    @Benchmark
+    public long getDate() {
+        return ContentPaths.getLongSegment(mEncodedPath, 2);
+    }
+}
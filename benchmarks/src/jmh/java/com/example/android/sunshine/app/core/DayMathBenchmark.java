@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The start of the day of a timestamp, as WeatherContract.normalizeDate() computes it for every
+    URI and query, against a Calendar doing the same.  A zone with daylight saving time and one
+    without, the first takes the extra offset lookup on the days it changes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DayMathBenchmark {
+
+    @Param({"America/Los_Angeles", "UTC"})
+    public String zoneId;
+
+    private TimeZone mZone;
+    private long mMillis;
+
+    @Setup
+    public void setUp() {
+        mZone = TimeZone.getTimeZone(zoneId);
+        // December 20th, 2014, in the afternoon
+        mMillis = 1419033600000L + 15 * 3600 * 1000L;
+    }
+
+    @Benchmark
+    public long normalizeDate() {
+        return DayMath.normalizeDate(mMillis, mZone);
+    }
+
+    @Benchmark
+    public long calendar() {
+        Calendar calendar = Calendar.getInstance(mZone);
+        calendar.setTimeInMillis(mMillis);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+}
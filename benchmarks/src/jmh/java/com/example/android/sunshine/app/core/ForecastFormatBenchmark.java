@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    Decoding a daily forecast body into its days, OpenWeatherMap's JSON against the proxy's
+    binary encoding of the same forecast.  Like the ForecastSources of the sync, decoding starts
+    from the bytes of the body.  What each format costs on the wire is printed at the start of
+    the trial, as is and gzipped the way the HTTP client asks for it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ForecastFormatBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"json", "binary"})
+    public String format;
+
+    // The sync asks for 14 days, 16 is the most the API returns
+    @Param({"14", "16"})
+    public int days;
+
+    private byte[] mBody;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        String json = ForecastJsonParserBenchmark.forecastJson("Mountain View", days);
+        if ("json".equals(format)) {
+            mBody = json.getBytes(UTF_8);
+        } else {
+            // What the proxy does with the forecast it gets from OpenWeatherMap
+            BinaryForecast.Writer writer = new BinaryForecast.Writer();
+            ForecastJsonParser.parse(json, writer);
+            mBody = writer.toByteArray();
+        }
+        System.out.println(String.format(Locale.US, "%s, %d days: %d bytes, %d gzipped",
+                format, days, mBody.length, gzippedSize(mBody)));
+    }
+
+    private static int gzippedSize(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(body);
+        gzip.close();
+        return out.size();
+    }
+
+    @Benchmark
+    public int decode(final Blackhole blackhole) throws IOException, JSONException {
+        ForecastHandler handler = new ForecastHandler() {
+            @Override
+            public void onCity(long cityId, String cityName, double latitude,
+                               double longitude, int dayCount) {
+                blackhole.consume(cityId);
+                blackhole.consume(cityName);
+                blackhole.consume(latitude + longitude);
+            }
+
+            @Override
+            public void onDay(int index, int weatherId, String description, double low,
+                              double high, int humidity, double pressure, double windSpeed,
+                              double windDirection) {
+                blackhole.consume(weatherId);
+                blackhole.consume(description);
+                blackhole.consume(low + high + humidity + pressure + windSpeed + windDirection);
+            }
+        };
+        if ("json".equals(format)) {
+            return ForecastJsonParser.parse(new String(mBody, UTF_8), handler);
+        }
+        return BinaryForecast.decode(mBody, handler);
+    }
+}
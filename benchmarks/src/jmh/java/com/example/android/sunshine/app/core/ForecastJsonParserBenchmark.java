@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Mapping a daily forecast response to its days, what the sync adapter does with every
+    download.  The payload is shaped like OpenWeatherMap's, as the app's test fixtures build it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ForecastJsonParserBenchmark {
+
+    private static final String[] DESCRIPTIONS = {"Clear", "Clouds", "Rain", "Snow", "Drizzle"};
+    private static final int[] WEATHER_IDS = {800, 803, 500, 600, 300};
+
+    // The sync asks for 14 days, 16 is the most the API returns
+    @Param({"14", "16"})
+    public int days;
+
+    private String mJson;
+
+    @Setup
+    public void setUp() {
+        mJson = forecastJson("Mountain View", days);
+    }
+
+    @Benchmark
+    public int parse(final Blackhole blackhole) throws JSONException {
+        return ForecastJsonParser.parse(mJson, new ForecastHandler() {
+            @Override
+            public void onCity(long cityId, String cityName, double latitude,
+                               double longitude, int dayCount) {
+                blackhole.consume(cityId);
+                blackhole.consume(cityName);
+                blackhole.consume(latitude + longitude);
+            }
+
+            @Override
+            public void onDay(int index, int weatherId, String description, double low,
+                              double high, int humidity, double pressure, double windSpeed,
+                              double windDirection) {
+                blackhole.consume(weatherId);
+                blackhole.consume(description);
+                blackhole.consume(low + high + humidity + pressure + windSpeed + windDirection);
+            }
+        });
+    }
+
+    // Shaped like the real thing, seeded by the city
+    static String forecastJson(String city, int days) {
+        Random random = new Random(city.hashCode());
+        StringBuilder json = new StringBuilder(512 * days);
+        json.append(String.format(Locale.US,
+                "{\"city\":{\"id\":%d,\"name\":\"%s\",\"coord\":{\"lon\":%.4f,\"lat\":%.4f},"
+                        + "\"country\":\"US\",\"population\":0},\"cod\":\"200\","
+                        + "\"message\":0.0123,\"cnt\":%d,\"list\":[",
+                Math.abs(city.hashCode()), city, random.nextDouble() * 360 - 180,
+                random.nextDouble() * 180 - 90, days));
+        long dt = 1400000000L;
+        for (int i = 0; i < days; i++) {
+            int kind = random.nextInt(DESCRIPTIONS.length);
+            double min = random.nextDouble() * 20;
+            double max = min + random.nextDouble() * 10;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,\"night\":%.2f,"
+                            + "\"eve\":%.2f,\"morn\":%.2f},\"pressure\":%.2f,\"humidity\":%d,"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"%s\",\"description\":\"%s\","
+                            + "\"icon\":\"01d\"}],\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                    dt + i * 86400L, (min + max) / 2, min, max, min + 1, max - 1, min + 2,
+                    990 + random.nextDouble() * 40, random.nextInt(100), WEATHER_IDS[kind],
+                    DESCRIPTIONS[kind], DESCRIPTIONS[kind].toLowerCase(Locale.US),
+                    random.nextDouble() * 15, random.nextInt(360), random.nextInt(100)));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+}
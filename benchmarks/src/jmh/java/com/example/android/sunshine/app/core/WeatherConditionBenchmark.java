@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The condition of the ids a forecast list shows, by table lookup, against the chain of range
+    comparisons Utility used to run for every icon and art.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WeatherConditionBenchmark {
+
+    // The ids of the forecasts most cities get, plus a few with no artwork
+    private static final int[] COMMON_IDS = {800, 801, 802, 803, 804, 500, 501, 502, 520, 600,
+            601, 701, 741, 300, 211, 781, 900, 0};
+
+    private int[] mIds;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mIds = new int[1024];
+        for (int i = 0; i < mIds.length; i++) {
+            mIds[i] = COMMON_IDS[random.nextInt(COMMON_IDS.length)];
+        }
+    }
+
+    @Benchmark
+    public void forWeatherId(Blackhole blackhole) {
+        for (int id : mIds) {
+            blackhole.consume(WeatherCondition.forWeatherId(id));
+        }
+    }
+
+    @Benchmark
+    public void rangeChain(Blackhole blackhole) {
+        for (int id : mIds) {
+            blackhole.consume(rangeChain(id));
+        }
+    }
+
+    private static WeatherCondition rangeChain(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return WeatherCondition.STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return WeatherCondition.LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return WeatherCondition.RAIN;
+        } else if (weatherId == 511) {
+            return WeatherCondition.SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return WeatherCondition.RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return WeatherCondition.SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return WeatherCondition.FOG;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return WeatherCondition.STORM;
+        } else if (weatherId == 800) {
+            return WeatherCondition.CLEAR;
+        } else if (weatherId == 801) {
+            return WeatherCondition.LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return WeatherCondition.CLOUDS;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Turns a list of cities in the format of OpenWeatherMap's city.list.json(.gz), from
+ * http://bulk.openweathermap.org/sample/, into the city index the app ships as an asset.  Both
+ * forms of the list are read, a JSON array and one city object per line.
+ *
+ * Usage: CityIndexTool city.list.json.gz cities.idx
+ */
+public class CityIndexTool {
+
+    public static void main(String[] args) throws IOException, JSONException {
+        if (args.length != 2) {
+            System.err.println("Usage: CityIndexTool <city.list.json[.gz]> <cities.idx>");
+            System.exit(1);
+        }
+        CityIndex.Writer writer = new CityIndex.Writer();
+        int skipped = 0;
+        String list = read(args[0]).trim();
+        if (list.startsWith("[")) {
+            JSONArray cities = new JSONArray(list);
+            for (int i = 0; i < cities.length(); i++) {
+                if (!add(writer, cities.getJSONObject(i))) {
+                    skipped++;
+                }
+            }
+        } else {
+            for (String line : list.split("\n")) {
+                if (line.trim().length() > 0 && !add(writer, new JSONObject(line))) {
+                    skipped++;
+                }
+            }
+        }
+
+        OutputStream out = new FileOutputStream(args[1]);
+        try {
+            writer.writeTo(out);
+        } finally {
+            out.close();
+        }
+        System.out.println(writer.size() + " cities written to " + args[1] + ", "
+                + skipped + " left out");
+    }
+
+    private static boolean add(CityIndex.Writer writer, JSONObject city) throws JSONException {
+        JSONObject coord = city.getJSONObject("coord");
+        return writer.add(city.getInt("id"), city.getString("name"),
+                city.optString("country", null), coord.getDouble("lat"), coord.getDouble("lon"));
+    }
+
+    private static String read(String path) throws IOException {
+        InputStream in = new FileInputStream(path);
+        if (path.endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, read);
+            }
+            return text.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}